@@ -8,10 +8,20 @@ import io.searchbox.client.config.idle.IdleConnectionReaper;
 import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import org.graylog.jest.okhttp.batch.GetBatcher;
+import org.graylog.jest.okhttp.batch.RefreshCoordinator;
+import org.graylog.jest.okhttp.batch.SearchBatcher;
+import org.graylog.jest.okhttp.bulk.ShardRouter;
+import org.graylog.jest.okhttp.bulk.RetryingBulkExecutor;
+import org.graylog.jest.okhttp.cache.RequestCoalescer;
+import org.graylog.jest.okhttp.cache.ResponseCache;
 import org.graylog.jest.okhttp.config.HttpClientConfig;
+import org.graylog.jest.okhttp.config.discovery.NodeAttributeChecker;
 import org.graylog.jest.okhttp.config.idle.HttpReapableConnectionManager;
 import org.graylog.jest.okhttp.http.JestHttpClient;
 import org.graylog.jest.okhttp.http.okhttp.GzipRequestInterceptor;
+import org.graylog.jest.okhttp.ratelimit.ByteBudget;
+import org.graylog.jest.okhttp.ratelimit.RateLimit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +48,11 @@ public class JestClientFactory {
         client.setServers(httpClientConfig.getServerList());
         final ConnectionPool connectionPool = getConnectionPool();
         client.setOkHttpClient(createOkHttpClient(connectionPool));
+        client.setRoutingRules(httpClientConfig.getRoutingRules());
+        client.setResponseFilters(httpClientConfig.getResponseFilters(), httpClientConfig.getDefaultResponseFilter());
+        client.setLocalZone(httpClientConfig.getZoneAttribute(), httpClientConfig.getLocalZone());
+        client.setZoneSaturationThreshold(httpClientConfig.getZoneSaturationThreshold());
+        client.setFailedServerCooldown(httpClientConfig.getFailedServerCooldown(), TimeUnit.MILLISECONDS);
 
         // set custom gson instance
         Gson gson = httpClientConfig.getGson();
@@ -47,6 +62,63 @@ public class JestClientFactory {
             log.info("Using custom GSON instance");
             client.setGson(gson);
         }
+        if (httpClientConfig.getJsonCodec() != null) {
+            log.info("Using custom JSON codec {}", httpClientConfig.getJsonCodec().getClass().getName());
+            client.setJsonCodec(httpClientConfig.getJsonCodec());
+        }
+        client.setActionTimeouts(httpClientConfig.getActionTimeouts());
+        client.setActionPriorities(httpClientConfig.getActionPriorities());
+        if (httpClientConfig.isPriorityLanes()) {
+            log.info("Priority lanes enabled with concurrency {}", httpClientConfig.getLaneConcurrency());
+            client.setPriorityLanes(httpClientConfig.getLaneConcurrency());
+        }
+        if (httpClientConfig.getTenantScheduler() != null) {
+            log.info("Tenant scheduling enabled using header {}", httpClientConfig.getTenantHeader());
+            client.setTenantScheduler(httpClientConfig.getTenantScheduler(), httpClientConfig.getTenantHeader());
+        }
+        if (!httpClientConfig.getRateLimits().isEmpty()) {
+            log.info("Rate limits enabled: {}", httpClientConfig.getRateLimits());
+        }
+        client.getRateLimiter().setMode(httpClientConfig.getRateLimitMode());
+        for (RateLimit rateLimit : httpClientConfig.getRateLimits()) {
+            client.getRateLimiter().setLimit(rateLimit);
+        }
+        if (httpClientConfig.getMaxInFlightBytes() > 0) {
+            log.info("In-flight bytes budget of {} bytes enabled", httpClientConfig.getMaxInFlightBytes());
+            client.setByteBudget(new ByteBudget(httpClientConfig.getMaxInFlightBytes(), httpClientConfig.isBlockOnInFlightBytes()));
+        }
+        client.setSpillThreshold(httpClientConfig.getSpillThreshold(), httpClientConfig.getSpillDirectory());
+        client.setFailedBulkItemsOnly(httpClientConfig.isFailedBulkItemsOnly());
+        client.setRetryingBulkExecutor(new RetryingBulkExecutor(client, httpClientConfig.getBulkMaxRetries(),
+                httpClientConfig.getBulkInitialBackoff(), httpClientConfig.getBulkMaxBackoff(), TimeUnit.MILLISECONDS));
+
+        if (httpClientConfig.getResponseCacheMaxBytes() > 0) {
+            log.info("Response cache enabled for {}", httpClientConfig.getCacheableActions());
+            client.setResponseCache(new ResponseCache(httpClientConfig.getResponseCacheMaxBytes(),
+                    httpClientConfig.getResponseCacheTtl(), TimeUnit.MILLISECONDS, httpClientConfig.getCacheableActions()));
+        }
+        if (httpClientConfig.getGetBatchWindow() > 0) {
+            log.info("Get batching enabled with a window of {}ms", httpClientConfig.getGetBatchWindow());
+            client.addBatcher(new GetBatcher(client, client.getGson(), httpClientConfig.getGetBatchWindow(),
+                    TimeUnit.MILLISECONDS, httpClientConfig.getGetBatchMaxSize()));
+        }
+        if (httpClientConfig.getSearchBatchWindow() > 0) {
+            log.info("Search batching enabled with a window of {}ms", httpClientConfig.getSearchBatchWindow());
+            client.addBatcher(new SearchBatcher(client, client.getGson(), httpClientConfig.getSearchBatchWindow(),
+                    TimeUnit.MILLISECONDS, httpClientConfig.getSearchBatchMaxSize()));
+        }
+        if (httpClientConfig.getRefreshInterval() > 0) {
+            log.info("Refresh and flush coalescing enabled with an interval of {}ms", httpClientConfig.getRefreshInterval());
+            client.addBatcher(new RefreshCoordinator(client, httpClientConfig.getRefreshInterval(), TimeUnit.MILLISECONDS));
+        }
+        if (httpClientConfig.getShardRoutingRefreshInterval() > 0) {
+            log.info("Shard-aware bulk requests enabled, refreshing the routing table every {}ms", httpClientConfig.getShardRoutingRefreshInterval());
+            client.setShardRouter(new ShardRouter(client, client.getGson(), httpClientConfig.getShardRoutingRefreshInterval(), TimeUnit.MILLISECONDS));
+        }
+        if (httpClientConfig.isRequestCoalescing()) {
+            log.info("Request coalescing enabled for {}", httpClientConfig.getCoalescableActions());
+            client.setRequestCoalescer(new RequestCoalescer(httpClientConfig.getCoalescableActions()));
+        }
 
         // set discovery (should be set after setting the httpClient on jestClient)
         if (httpClientConfig.isDiscoveryEnabled()) {
@@ -60,6 +132,12 @@ public class JestClientFactory {
             nodeChecker.awaitRunning();
         } else {
             log.info("Node Discovery disabled...");
+            if (!httpClientConfig.getRoutingRules().isEmpty() || httpClientConfig.getLocalZone() != null) {
+                log.warn("Routing rules and zone awareness require node discovery, all requests will use the full server pool");
+            }
+            if (httpClientConfig.getShardRoutingRefreshInterval() > 0) {
+                log.warn("Shard-aware bulk requests require node discovery, bulk requests won't be split");
+            }
         }
 
         // schedule idle connection reaping if configured
@@ -137,9 +215,21 @@ public class JestClientFactory {
 
     // Extension point
     protected NodeChecker createNodeChecker(JestHttpClient client, HttpClientConfig httpClientConfig) {
+        if (requiresNodeAttributes(httpClientConfig)) {
+            return new NodeAttributeChecker(client, httpClientConfig);
+        }
         return new NodeChecker(client, httpClientConfig);
     }
 
+    /**
+     * @return <code>true</code> if the client needs the discovered nodes, i. e. for routing rules, zone awareness
+     * or shard-aware bulk requests
+     */
+    private boolean requiresNodeAttributes(HttpClientConfig httpClientConfig) {
+        return !httpClientConfig.getRoutingRules().isEmpty() || httpClientConfig.getLocalZone() != null
+                || httpClientConfig.getShardRoutingRefreshInterval() > 0;
+    }
+
     // Extension point
     /* TODO: Find out how to implement this in OkHttp. Maybe using an Interceptor?
     protected HttpClientContext createPreemptiveAuthContext(Set<HttpUrl> targetHosts) {
@@ -0,0 +1,71 @@
+package org.graylog.jest.okhttp.action;
+
+import com.google.common.collect.ImmutableSet;
+import io.searchbox.action.Action;
+import io.searchbox.core.SearchScroll;
+
+import java.util.Set;
+
+/**
+ * Helpers for inspecting {@link Action actions} independently of their concrete type.
+ */
+public final class Actions {
+    private static final String SCROLL = "scroll";
+    private static final Set<String> READ_METHODS = ImmutableSet.of("GET", "HEAD");
+    // endpoints which only read, although their request body is usually sent with POST
+    private static final Set<String> READ_ENDPOINTS = ImmutableSet.of(
+            "_search", "_msearch", "_mget", "_count", "_explain", "_validate", "_field_caps",
+            "_termvectors", "_mtermvectors", "_analyze");
+
+    private Actions() {
+    }
+
+    /**
+     * @return <code>true</code> if the action opens or continues a scroll, i. e. it's a {@link SearchScroll} or its
+     * URI carries a <code>scroll</code> parameter
+     */
+    public static boolean isScroll(Action<?> action) {
+        return action instanceof SearchScroll || hasParameter(action, SCROLL);
+    }
+
+    /**
+     * @return <code>true</code> if the action is sent with a read method or with <code>POST</code> to a read
+     * endpoint such as <code>_search</code> or <code>_mget</code>
+     */
+    public static boolean isReadOnly(Action<?> action) {
+        final String method = action.getRestMethodName();
+        if (method != null && READ_METHODS.contains(method)) {
+            return true;
+        }
+        if (!"POST".equals(method) || action.getURI() == null) {
+            return false;
+        }
+
+        final String uri = action.getURI();
+        final int queryStart = uri.indexOf('?');
+        for (String segment : (queryStart < 0 ? uri : uri.substring(0, queryStart)).split("/")) {
+            if (READ_ENDPOINTS.contains(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the query string of the URI of the action contains the given parameter
+     */
+    public static boolean hasParameter(Action<?> action, String name) {
+        final String uri = action.getURI();
+        final int queryStart = uri == null ? -1 : uri.indexOf('?');
+        if (queryStart < 0) {
+            return false;
+        }
+        for (String parameter : uri.substring(queryStart + 1).split("&")) {
+            final int separator = parameter.indexOf('=');
+            if (name.equals(separator < 0 ? parameter : parameter.substring(0, separator))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
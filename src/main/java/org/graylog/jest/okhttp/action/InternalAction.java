@@ -0,0 +1,12 @@
+package org.graylog.jest.okhttp.action;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+
+/**
+ * Marks actions the client sends on its own behalf, e. g. cluster state probes or batched multi get and multi
+ * search requests, whose responses are parsed by the client and therefore must not be shaped by settings meant
+ * for the caller's actions, such as the default response filter.
+ */
+public interface InternalAction<T extends JestResult> extends Action<T> {
+}
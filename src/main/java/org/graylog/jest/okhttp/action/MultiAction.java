@@ -0,0 +1,23 @@
+package org.graylog.jest.okhttp.action;
+
+import io.searchbox.client.JestResult;
+
+/**
+ * An {@link InternalAction internal action} sending several actions of the same type as one request, e. g. a multi
+ * get combining individual gets.
+ * <p>
+ * {@link org.graylog.jest.okhttp.http.JestHttpClient} applies the rate limits, timeouts and priorities configured
+ * for the combined action type to the request. The request takes one token of the rate limit per combined action.
+ * </p>
+ */
+public interface MultiAction<T extends JestResult> extends InternalAction<T> {
+    /**
+     * @return the type of the actions combined into this request
+     */
+    Class<?> getCombinedActionType();
+
+    /**
+     * @return the number of actions combined into this request
+     */
+    int getCombinedActionCount();
+}
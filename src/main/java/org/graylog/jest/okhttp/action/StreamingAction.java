@@ -0,0 +1,28 @@
+package org.graylog.jest.okhttp.action;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import okio.BufferedSink;
+
+import java.io.IOException;
+
+/**
+ * An action which writes its payload directly into the request body instead of materializing it as a
+ * {@link String} through {@link Action#getData(com.google.gson.Gson)}.
+ * <p>
+ * {@link org.graylog.jest.okhttp.http.JestHttpClient} always uses {@link #writeTo(BufferedSink)} for these
+ * actions, {@link Action#getData(com.google.gson.Gson)} is only meant for logging and debugging.
+ * </p>
+ */
+public interface StreamingAction<T extends JestResult> extends Action<T> {
+    /**
+     * Writes the payload of this action into the given sink. Might be called more than once, e. g. when the
+     * request is retried or redirected.
+     */
+    void writeTo(BufferedSink sink) throws IOException;
+
+    /**
+     * @return the number of bytes written by {@link #writeTo(BufferedSink)} or <code>-1</code> if unknown
+     */
+    long contentLength();
+}
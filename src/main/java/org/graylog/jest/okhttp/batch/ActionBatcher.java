@@ -0,0 +1,254 @@
+package org.graylog.jest.okhttp.batch;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects concurrent actions of the same type into batches which are sent as a single request, e. g. individual
+ * gets as one multi get.
+ * <p>
+ * A batch is sent once it holds the maximum number of actions or once its time window has elapsed, whichever comes
+ * first. Only actions with the same {@link #batchKey(Action) batch key} share a batch. Batches are executed
+ * asynchronously through the client and their result is split into the results of the individual actions.
+ * </p>
+ *
+ * @param <A> the type of the batched actions
+ * @param <R> the result type of the batched actions
+ */
+public abstract class ActionBatcher<A extends Action<R>, R extends JestResult> {
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+    // sending a batch may block, e. g. on a blocking rate limit, so batches are never sent from the timer thread
+    private static final ExecutorService SENDER = createSender();
+
+    private final Class<A> actionType;
+    private final JestClient client;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ConcurrentMap<Object, Batch> openBatches = new ConcurrentHashMap<>();
+    private final LongAdder actions = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param actionType   the type of the batched actions
+     * @param client       the client executing the batches
+     * @param window       the maximum time an action waits for other actions to join its batch
+     * @param maxBatchSize the maximum number of actions per batch
+     */
+    protected ActionBatcher(Class<A> actionType, JestClient client, long window, TimeUnit unit, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+        }
+        this.actionType = actionType;
+        this.client = client;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "jest-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ExecutorService createSender() {
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "jest-batch-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the key of the batches the given action may join or <code>null</code> if it can't be batched
+     */
+    protected abstract Object batchKey(A action);
+
+    /**
+     * Creates the action sending the given actions, which all have the same batch key, as one request.
+     */
+    protected abstract Action<? extends JestResult> createBatch(List<A> actions);
+
+    /**
+     * Splits the result of a batch into the results of its actions, in the order of the actions.
+     */
+    protected abstract List<R> split(List<A> actions, JestResult batchResult);
+
+    /**
+     * @return <code>true</code> if the given action is handled by this batcher
+     */
+    public boolean accepts(Action<?> action) {
+        return actionType.isInstance(action) && batchKey(actionType.cast(action)) != null;
+    }
+
+    /**
+     * Adds the given action to a batch.
+     *
+     * @return the result of the action once its batch has completed
+     * @throws IllegalArgumentException if the action isn't {@link #accepts(Action) accepted} by this batcher
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends JestResult> CompletableFuture<T> submit(Action<T> action) {
+        if (!accepts(action)) {
+            throw new IllegalArgumentException("Action can't be batched: " + action);
+        }
+        final A batchedAction = actionType.cast(action);
+        final Entry entry = new Entry(batchedAction);
+        final Object key = batchKey(batchedAction);
+        actions.increment();
+
+        while (true) {
+            final Batch batch = openBatches.computeIfAbsent(key, Batch::new);
+            final int size = batch.add(entry);
+            if (size > 0) {
+                if (size == 1) {
+                    TIMER.schedule(() -> SENDER.execute(batch::flush), windowNanos, TimeUnit.NANOSECONDS);
+                }
+                if (size >= maxBatchSize) {
+                    batch.flush();
+                }
+                return (CompletableFuture<T>) entry.future;
+            }
+            // the batch has been closed concurrently
+            openBatches.remove(key, batch);
+        }
+    }
+
+    /**
+     * Adds the given action to a batch and waits for its result.
+     */
+    public <T extends JestResult> T execute(Action<T> action) throws IOException {
+        try {
+            return submit(action).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for batched request");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return the number of actions which have been submitted
+     */
+    public long getActions() {
+        return actions.sum();
+    }
+
+    /**
+     * @return the number of batch requests which have been sent
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    private void execute(List<Entry> entries) {
+        final List<A> batchedActions = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            batchedActions.add(entry.action);
+        }
+        batches.increment();
+
+        final Action<? extends JestResult> batch;
+        try {
+            batch = createBatch(batchedActions);
+        } catch (RuntimeException e) {
+            fail(entries, e);
+            return;
+        }
+        client.executeAsync(batch, new JestResultHandler<JestResult>() {
+            @Override
+            public void completed(JestResult result) {
+                final List<R> results;
+                try {
+                    results = split(batchedActions, result);
+                } catch (RuntimeException e) {
+                    fail(entries, e);
+                    return;
+                }
+                for (int i = 0; i < entries.size(); i++) {
+                    entries.get(i).future.complete(results.get(i));
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                fail(entries, ex);
+            }
+        });
+    }
+
+    private void fail(List<Entry> entries, Throwable throwable) {
+        for (Entry entry : entries) {
+            entry.future.completeExceptionally(throwable);
+        }
+    }
+
+    private class Entry {
+        private final A action;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private Entry(A action) {
+            this.action = action;
+        }
+    }
+
+    private class Batch {
+        private final Object key;
+        private final List<Entry> entries = new ArrayList<>();
+        private boolean closed = false;
+
+        private Batch(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the size of the batch including the given entry or <code>0</code> if the batch has been closed
+         */
+        private synchronized int add(Entry entry) {
+            if (closed) {
+                return 0;
+            }
+            entries.add(entry);
+            return entries.size();
+        }
+
+        private void flush() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            openBatches.remove(key, this);
+            execute(entries);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.graylog.jest.okhttp.batch;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded path segments and query parameters of the URI of an action.
+ */
+final class ActionUri {
+    final List<String> segments;
+    final Map<String, String> parameters;
+
+    private ActionUri(List<String> segments, Map<String, String> parameters) {
+        this.segments = segments;
+        this.parameters = parameters;
+    }
+
+    static ActionUri parse(String uri) {
+        final int queryStart = uri.indexOf('?');
+        final String path = queryStart < 0 ? uri : uri.substring(0, queryStart);
+        final List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(decode(segment));
+            }
+        }
+
+        final Map<String, String> parameters = new LinkedHashMap<>();
+        if (queryStart >= 0) {
+            for (String parameter : uri.substring(queryStart + 1).split("&")) {
+                if (parameter.isEmpty()) {
+                    continue;
+                }
+                final int separator = parameter.indexOf('=');
+                final String name = decode(separator < 0 ? parameter : parameter.substring(0, separator));
+                parameters.put(name, separator < 0 ? "" : decode(parameter.substring(separator + 1)));
+            }
+        }
+        return new ActionUri(Collections.unmodifiableList(segments), Collections.unmodifiableMap(parameters));
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
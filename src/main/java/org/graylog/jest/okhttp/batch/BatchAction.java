@@ -0,0 +1,106 @@
+package org.graylog.jest.okhttp.batch;
+
+import com.google.gson.Gson;
+import io.searchbox.action.AbstractAction;
+import io.searchbox.action.GenericResultAbstractAction;
+import io.searchbox.client.JestResult;
+import org.graylog.jest.okhttp.action.MultiAction;
+
+import java.util.Map;
+
+/**
+ * Batch request with a prepared body, e. g. a multi get or a multi search.
+ */
+final class BatchAction extends GenericResultAbstractAction implements MultiAction<JestResult> {
+    private final String endpoint;
+    private final String body;
+    private final String restMethodName;
+    private final Class<?> combinedActionType;
+    private final int combinedActionCount;
+
+    private BatchAction(Builder builder) {
+        super(builder);
+        this.endpoint = builder.endpoint;
+        this.body = builder.body;
+        this.restMethodName = builder.restMethodName;
+        this.combinedActionType = builder.combinedActionType;
+        this.combinedActionCount = builder.combinedActionCount;
+        setURI(buildURI());
+    }
+
+    @Override
+    protected String buildURI() {
+        return super.buildURI() + "/" + endpoint;
+    }
+
+    @Override
+    public String getRestMethodName() {
+        return restMethodName;
+    }
+
+    @Override
+    public String getData(Gson gson) {
+        return body;
+    }
+
+    @Override
+    public Class<?> getCombinedActionType() {
+        return combinedActionType;
+    }
+
+    @Override
+    public int getCombinedActionCount() {
+        return combinedActionCount;
+    }
+
+    static class Builder extends AbstractAction.Builder<BatchAction, Builder> {
+        private final String endpoint;
+        private final String body;
+        private final Class<?> combinedActionType;
+        private String restMethodName = "POST";
+        private int combinedActionCount = 1;
+
+        /**
+         * @param endpoint           the endpoint of the batch request, e. g. <code>_mget</code>
+         * @param body               the request body
+         * @param combinedActionType the type of the actions sent with the batch request
+         */
+        Builder(String endpoint, String body, Class<?> combinedActionType) {
+            this.endpoint = endpoint;
+            this.body = body;
+            this.combinedActionType = combinedActionType;
+        }
+
+        Builder restMethodName(String restMethodName) {
+            this.restMethodName = restMethodName;
+            return this;
+        }
+
+        /**
+         * Sets the number of actions sent with the batch request, <code>1</code> by default, e. g. for identical
+         * actions which are sent once.
+         */
+        Builder combinedActions(int combinedActionCount) {
+            this.combinedActionCount = combinedActionCount;
+            return this;
+        }
+
+        /**
+         * Sets the given parameters and headers shared by all actions of the batch.
+         */
+        Builder shared(Map<String, String> parameters, Map<String, Object> headers) {
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                setParameter(parameter.getKey(), parameter.getValue());
+            }
+            if (!headers.isEmpty()) {
+                setHeader(headers);
+            }
+            return this;
+        }
+
+        @Override
+        public BatchAction build() {
+            return new BatchAction(this);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.graylog.jest.okhttp.batch;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.DocumentResult;
+import io.searchbox.core.Get;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches concurrent {@link Get} actions into multi get requests and hands each caller the result of its document,
+ * as if it had been fetched individually.
+ * <p>
+ * Gets are batched if they address a single document by index, type and id, have the same headers and only use
+ * parameters which can be applied to the whole multi get, e. g. <code>_source</code> or <code>preference</code>.
+ * Routing is passed per document. Other gets, e. g. with a <code>version</code>, are executed as usual.
+ * </p>
+ */
+public class GetBatcher extends ActionBatcher<Get, DocumentResult> {
+    private static final String ROUTING = "routing";
+    private static final Set<String> BATCH_PARAMETERS = ImmutableSet.of(
+            "_source", "_source_include", "_source_includes", "_source_exclude", "_source_excludes",
+            "stored_fields", "fields", "preference", "realtime", "refresh");
+
+    private final Gson gson;
+
+    public GetBatcher(JestClient client, Gson gson, long window, TimeUnit unit, int maxBatchSize) {
+        super(Get.class, client, window, unit, maxBatchSize);
+        this.gson = gson;
+    }
+
+    @Override
+    protected Object batchKey(Get get) {
+        final DocumentTarget target = DocumentTarget.parse(get.getURI());
+        return target == null ? null : Arrays.asList(target.parameters, get.getHeaders());
+    }
+
+    @Override
+    protected Action<? extends JestResult> createBatch(List<Get> gets) {
+        final JsonArray docs = new JsonArray();
+        for (Get get : gets) {
+            final DocumentTarget target = DocumentTarget.parse(get.getURI());
+            if (target == null) {
+                throw new IllegalStateException("Get can't be batched: " + get.getURI());
+            }
+            final JsonObject doc = new JsonObject();
+            doc.addProperty("_index", target.index);
+            doc.addProperty("_type", target.type);
+            doc.addProperty("_id", target.id);
+            if (target.routing != null) {
+                doc.addProperty(ROUTING, target.routing);
+            }
+            docs.add(doc);
+        }
+
+        final JsonObject body = new JsonObject();
+        body.add("docs", docs);
+        // all gets of a batch share their parameters and headers
+        final Get first = gets.get(0);
+        return new BatchAction.Builder("_mget", gson.toJson(body), Get.class)
+                .combinedActions(gets.size())
+                .shared(DocumentTarget.parse(first.getURI()).parameters, first.getHeaders())
+                .build();
+    }
+
+    @Override
+    protected List<DocumentResult> split(List<Get> gets, JestResult batchResult) {
+        final List<DocumentResult> results = new ArrayList<>(gets.size());
+        final JsonObject json = batchResult.getJsonObject();
+        final JsonElement docs = json == null ? null : json.get("docs");
+        if (!batchResult.isSucceeded() || docs == null || !docs.isJsonArray() || docs.getAsJsonArray().size() != gets.size()) {
+            // the whole request failed, every get fails the same way
+            for (Get get : gets) {
+                results.add(get.createNewElasticSearchResult(batchResult.getJsonString(), batchResult.getResponseCode(),
+                        batchResult.getErrorMessage(), gson));
+            }
+            return results;
+        }
+
+        final JsonArray docArray = docs.getAsJsonArray();
+        for (int i = 0; i < gets.size(); i++) {
+            final JsonObject doc = docArray.get(i).getAsJsonObject();
+            final int statusCode = statusCode(doc);
+            results.add(gets.get(i).createNewElasticSearchResult(gson.toJson(doc), statusCode,
+                    statusCode == 200 ? "OK" : statusCode == 404 ? "Not Found" : "Internal Server Error", gson));
+        }
+        return results;
+    }
+
+    /**
+     * @return the status code Elasticsearch would have returned for an individual get of the given document
+     */
+    private static int statusCode(JsonObject doc) {
+        final JsonElement error = doc.get("error");
+        if (error != null && !error.isJsonNull()) {
+            final JsonElement type = error.isJsonObject() ? error.getAsJsonObject().get("type") : null;
+            return type != null && "index_not_found_exception".equals(type.getAsString()) ? 404 : 500;
+        }
+        final JsonElement found = doc.get("found");
+        return found != null && found.getAsBoolean() ? 200 : 404;
+    }
+
+    /**
+     * Document addressed by the URI of a get.
+     */
+    static final class DocumentTarget {
+        final String index;
+        final String type;
+        final String id;
+        final String routing;
+        final Map<String, String> parameters;
+
+        private DocumentTarget(String index, String type, String id, String routing, Map<String, String> parameters) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.routing = routing;
+            this.parameters = parameters;
+        }
+
+        /**
+         * @return the addressed document or <code>null</code> if the URI doesn't address a single document or uses
+         * parameters which can't be batched
+         */
+        static DocumentTarget parse(String uri) {
+            final ActionUri actionUri = ActionUri.parse(uri);
+            if (actionUri.segments.size() != 3) {
+                return null;
+            }
+
+            String routing = null;
+            final Map<String, String> parameters = new LinkedHashMap<>();
+            for (Map.Entry<String, String> parameter : actionUri.parameters.entrySet()) {
+                if (ROUTING.equals(parameter.getKey())) {
+                    routing = parameter.getValue();
+                } else if (BATCH_PARAMETERS.contains(parameter.getKey())) {
+                    parameters.put(parameter.getKey(), parameter.getValue());
+                } else {
+                    return null;
+                }
+            }
+            final List<String> segments = actionUri.segments;
+            return new DocumentTarget(segments.get(0), segments.get(1), segments.get(2), routing, parameters);
+        }
+    }
+}
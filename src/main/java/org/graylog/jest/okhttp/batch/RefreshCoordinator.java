@@ -0,0 +1,54 @@
+package org.graylog.jest.okhttp.batch;
+
+import io.searchbox.action.Action;
+import io.searchbox.action.GenericResultAbstractAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.indices.Flush;
+import io.searchbox.indices.Refresh;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces {@link Refresh} and {@link Flush} actions on the same indices issued within an interval into a single
+ * call, which is sent once the interval has elapsed. All callers of an interval receive the result of that call.
+ * <p>
+ * As the call is sent after the last caller of the interval has joined, it covers all writes its callers completed
+ * before requesting the refresh or flush. The shared result must be treated as read-only.
+ * </p>
+ */
+public class RefreshCoordinator extends ActionBatcher<GenericResultAbstractAction, JestResult> {
+    public RefreshCoordinator(JestClient client, long interval, TimeUnit unit) {
+        super(GenericResultAbstractAction.class, client, interval, unit, Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected Object batchKey(GenericResultAbstractAction action) {
+        if (!(action instanceof Refresh) && !(action instanceof Flush)) {
+            return null;
+        }
+        return Arrays.asList(action.getClass(), action.getURI(), action.getHeaders());
+    }
+
+    @Override
+    protected Action<? extends JestResult> createBatch(List<GenericResultAbstractAction> actions) {
+        // all actions of a batch are identical, the copy isn't coalesced again by the client
+        final GenericResultAbstractAction first = actions.get(0);
+        String uri = first.getURI();
+        while (uri.startsWith("/")) {
+            uri = uri.substring(1);
+        }
+        return new BatchAction.Builder(uri, null, first.getClass())
+                .restMethodName(first.getRestMethodName())
+                .shared(Collections.<String, String>emptyMap(), first.getHeaders())
+                .build();
+    }
+
+    @Override
+    protected List<JestResult> split(List<GenericResultAbstractAction> actions, JestResult batchResult) {
+        return Collections.nCopies(actions.size(), batchResult);
+    }
+}
@@ -0,0 +1,178 @@
+package org.graylog.jest.okhttp.batch;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches concurrent {@link Search} actions into multi search requests and hands each caller the response of its
+ * search. A failing search only fails its own caller.
+ * <p>
+ * Searches are batched if they have the same headers and only use parameters which can be passed per search in the
+ * multi search header, e. g. <code>routing</code> or <code>preference</code>. Other searches, e. g. scrolls, are
+ * executed as usual.
+ * </p>
+ */
+public class SearchBatcher extends ActionBatcher<Search, SearchResult> {
+    private static final String SEARCH_ENDPOINT = "_search";
+    private static final Set<String> HEADER_PARAMETERS = ImmutableSet.of(
+            "routing", "preference", "search_type", "request_cache",
+            "allow_no_indices", "expand_wildcards", "ignore_unavailable");
+    private static final Set<String> BATCH_PARAMETERS = ImmutableSet.of("typed_keys", "rest_total_hits_as_int");
+    private static final Splitter COMMA = Splitter.on(',').omitEmptyStrings().trimResults();
+
+    private final Gson gson;
+    private final JsonParser jsonParser = new JsonParser();
+
+    public SearchBatcher(JestClient client, Gson gson, long window, TimeUnit unit, int maxBatchSize) {
+        super(Search.class, client, window, unit, maxBatchSize);
+        this.gson = gson;
+    }
+
+    @Override
+    protected Object batchKey(Search search) {
+        final SearchTarget target = SearchTarget.parse(search.getURI());
+        return target == null ? null : Arrays.asList(target.batchParameters, search.getHeaders());
+    }
+
+    @Override
+    protected Action<? extends JestResult> createBatch(List<Search> searches) {
+        final StringBuilder body = new StringBuilder();
+        for (Search search : searches) {
+            final SearchTarget target = SearchTarget.parse(search.getURI());
+            if (target == null) {
+                throw new IllegalStateException("Search can't be batched: " + search.getURI());
+            }
+            final JsonObject header = new JsonObject();
+            if (!target.indices.isEmpty()) {
+                header.add("index", toArray(target.indices));
+            }
+            if (!target.types.isEmpty()) {
+                header.add("type", toArray(target.types));
+            }
+            for (Map.Entry<String, String> parameter : target.headerParameters.entrySet()) {
+                header.addProperty(parameter.getKey(), parameter.getValue());
+            }
+            body.append(gson.toJson(header)).append('\n');
+
+            // each search has to be written on a single line
+            final String query = search.getData(gson);
+            final JsonElement source = query == null || query.trim().isEmpty() ? new JsonObject() : jsonParser.parse(query);
+            body.append(gson.toJson(source)).append('\n');
+        }
+
+        // all searches of a batch share their parameters and headers
+        final Search first = searches.get(0);
+        return new BatchAction.Builder("_msearch", body.toString(), Search.class)
+                .combinedActions(searches.size())
+                .shared(SearchTarget.parse(first.getURI()).batchParameters, first.getHeaders())
+                .build();
+    }
+
+    private static JsonArray toArray(List<String> values) {
+        final JsonArray array = new JsonArray();
+        for (String value : values) {
+            array.add(new JsonPrimitive(value));
+        }
+        return array;
+    }
+
+    @Override
+    protected List<SearchResult> split(List<Search> searches, JestResult batchResult) {
+        final List<SearchResult> results = new ArrayList<>(searches.size());
+        final JsonObject json = batchResult.getJsonObject();
+        final JsonElement responses = json == null ? null : json.get("responses");
+        if (!batchResult.isSucceeded() || responses == null || !responses.isJsonArray() || responses.getAsJsonArray().size() != searches.size()) {
+            // the whole request failed, every search fails the same way
+            for (Search search : searches) {
+                results.add(search.createNewElasticSearchResult(batchResult.getJsonString(), batchResult.getResponseCode(),
+                        batchResult.getErrorMessage(), gson));
+            }
+            return results;
+        }
+
+        final JsonArray responseArray = responses.getAsJsonArray();
+        for (int i = 0; i < searches.size(); i++) {
+            final JsonObject response = responseArray.get(i).getAsJsonObject();
+            final int statusCode = statusCode(response);
+            results.add(searches.get(i).createNewElasticSearchResult(gson.toJson(response), statusCode,
+                    statusCode == 200 ? "OK" : "Error", gson));
+        }
+        return results;
+    }
+
+    /**
+     * @return the status code Elasticsearch would have returned for the individual search
+     */
+    private static int statusCode(JsonObject response) {
+        final JsonElement status = response.get("status");
+        if (status != null && status.isJsonPrimitive()) {
+            return status.getAsInt();
+        }
+        final JsonElement error = response.get("error");
+        return error != null && !error.isJsonNull() ? 500 : 200;
+    }
+
+    /**
+     * Indices, types and parameters of the URI of a search.
+     */
+    static final class SearchTarget {
+        final List<String> indices;
+        final List<String> types;
+        final Map<String, String> headerParameters;
+        final Map<String, String> batchParameters;
+
+        private SearchTarget(List<String> indices, List<String> types, Map<String, String> headerParameters, Map<String, String> batchParameters) {
+            this.indices = indices;
+            this.types = types;
+            this.headerParameters = headerParameters;
+            this.batchParameters = batchParameters;
+        }
+
+        /**
+         * @return the target of the search or <code>null</code> if the URI isn't a search or uses parameters which
+         * can't be batched
+         */
+        static SearchTarget parse(String uri) {
+            final ActionUri actionUri = ActionUri.parse(uri);
+            final List<String> segments = actionUri.segments;
+            if (segments.isEmpty() || segments.size() > 3 || !SEARCH_ENDPOINT.equals(segments.get(segments.size() - 1))) {
+                return null;
+            }
+
+            final Map<String, String> headerParameters = new LinkedHashMap<>();
+            final Map<String, String> batchParameters = new LinkedHashMap<>();
+            for (Map.Entry<String, String> parameter : actionUri.parameters.entrySet()) {
+                if (HEADER_PARAMETERS.contains(parameter.getKey())) {
+                    headerParameters.put(parameter.getKey(), parameter.getValue());
+                } else if (BATCH_PARAMETERS.contains(parameter.getKey())) {
+                    batchParameters.put(parameter.getKey(), parameter.getValue());
+                } else {
+                    return null;
+                }
+            }
+
+            final List<String> indices = segments.size() > 1 ? COMMA.splitToList(segments.get(0)) : new ArrayList<>();
+            final List<String> types = segments.size() > 2 ? COMMA.splitToList(segments.get(1)) : new ArrayList<>();
+            return new SearchTarget(indices, types, headerParameters, batchParameters);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Streaming parser for bulk responses which only materializes the failed items.
+ * <p>
+ * If the top-level <code>errors</code> flag is <code>false</code>, parsing stops right away and the items aren't
+ * read at all, so the cost of acknowledging a successful bulk request doesn't grow with its size.
+ * </p>
+ */
+public class BulkResponseParser {
+    private static final String ERROR_MESSAGE = "One or more of the items in the Bulk request failed, check BulkResult.getItems() for more information.";
+
+    private final Gson gson;
+
+    public BulkResponseParser(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * @param reader       the (successful) bulk response, not closed by this method
+     * @param responseCode the HTTP status code of the response
+     */
+    public FailedItemsBulkResult parse(Reader reader, int responseCode) throws IOException {
+        final JsonReader jsonReader = new JsonReader(reader);
+        final JsonParser jsonParser = new JsonParser();
+        final JsonObject jsonObject = new JsonObject();
+        final JsonArray failedItems = new JsonArray();
+        int[] failedPositions = new int[0];
+        int itemCount = -1;
+        boolean errors = false;
+
+        try {
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                final String name = jsonReader.nextName();
+                if ("errors".equals(name)) {
+                    errors = jsonReader.nextBoolean();
+                    if (!errors) {
+                        // Elasticsearch writes "errors" before "items", so there's nothing left of interest
+                        break;
+                    }
+                } else if ("items".equals(name) && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                    itemCount = 0;
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) {
+                        final JsonElement item = jsonParser.parse(jsonReader);
+                        if (isFailed(item)) {
+                            failedItems.add(item);
+                            if (failedPositions.length < failedItems.size()) {
+                                failedPositions = Arrays.copyOf(failedPositions, Math.max(8, failedPositions.length * 2));
+                            }
+                            failedPositions[failedItems.size() - 1] = itemCount;
+                        }
+                        itemCount++;
+                    }
+                    jsonReader.endArray();
+                } else if ("took".equals(name) && jsonReader.peek() == JsonToken.NUMBER) {
+                    jsonObject.addProperty("took", jsonReader.nextLong());
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+
+        errors = errors || failedItems.size() > 0;
+        jsonObject.addProperty("errors", errors);
+        jsonObject.add("items", failedItems);
+
+        final FailedItemsBulkResult result = new FailedItemsBulkResult(gson, Arrays.copyOf(failedPositions, failedItems.size()), itemCount);
+        result.setResponseCode(responseCode);
+        result.setJsonObject(jsonObject);
+        result.setJsonString(jsonObject.toString());
+        result.setPathToResult("items");
+        result.setSucceeded(!errors);
+        if (errors) {
+            result.setErrorMessage(ERROR_MESSAGE);
+        }
+        return result;
+    }
+
+    private static boolean isFailed(JsonElement item) {
+        if (!item.isJsonObject()) {
+            return false;
+        }
+        for (Map.Entry<String, JsonElement> operation : item.getAsJsonObject().entrySet()) {
+            final JsonElement details = operation.getValue();
+            if (details.isJsonObject() && details.getAsJsonObject().has("error")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+package org.graylog.jest.okhttp.bulk;
+
+import io.searchbox.core.BulkResult;
+
+/**
+ * Outcome of a bulk request sent by {@link CollapsingBulkBuffer}, together with the number of operations which
+ * have been collapsed into the items of the request.
+ */
+public class CollapsedBulkResult {
+    private final BulkResult bulkResult;
+    private final int operations;
+    private final int items;
+    private final int mergedUpdates;
+
+    CollapsedBulkResult(BulkResult bulkResult, int operations, int items, int mergedUpdates) {
+        this.bulkResult = bulkResult;
+        this.operations = operations;
+        this.items = items;
+        this.mergedUpdates = mergedUpdates;
+    }
+
+    public boolean isSucceeded() {
+        return bulkResult.isSucceeded();
+    }
+
+    /**
+     * @return the result of the bulk request, its items correspond to the collapsed operations
+     */
+    public BulkResult getBulkResult() {
+        return bulkResult;
+    }
+
+    /**
+     * @return the number of operations added to the buffer during the flush window
+     */
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the number of items sent in the bulk request
+     */
+    public int getItems() {
+        return items;
+    }
+
+    /**
+     * @return the number of operations which have been superseded by or merged into a later operation on the same
+     * document
+     */
+    public int getCollapsedOperations() {
+        return operations - items;
+    }
+
+    /**
+     * @return the number of partial updates which have been merged into a preceding index or update operation
+     */
+    public int getMergedUpdates() {
+        return mergedUpdates;
+    }
+}
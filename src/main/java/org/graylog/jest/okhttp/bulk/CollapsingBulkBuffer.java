@@ -0,0 +1,372 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.BulkResult;
+import okio.ByteString;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Buffers {@link RawBulk.Item bulk operations} for a flush window and collapses the operations on the same
+ * document (index, type, id and routing) before sending them as one bulk request.
+ * <p>
+ * An index or delete operation supersedes the pending operation on its document. A partial update (a payload
+ * consisting of <code>doc</code> and optionally <code>doc_as_upsert</code> or <code>detect_noop</code>) is merged
+ * into a pending index operation or into a pending partial update with the same <code>doc_as_upsert</code> flag,
+ * the same way Elasticsearch merges partial documents. All other operations, e. g. creates, scripted updates and
+ * documents with auto-generated ids, are sent as they are, after the pending operations on their document.
+ * </p>
+ * <p>
+ * The buffer is flushed once the flush window of its first pending operation has elapsed or once it holds the
+ * maximum number of items, whichever comes first.
+ * </p>
+ */
+public class CollapsingBulkBuffer implements Closeable {
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+    // sending a bulk request may block, e. g. on a blocking rate limit, so windows are never sent from the timer thread
+    private static final ExecutorService SENDER = createSender();
+    private static final Set<String> PARTIAL_UPDATE_FIELDS = ImmutableSet.of("doc", "doc_as_upsert", "detect_noop");
+
+    private final JestClient client;
+    private final String defaultIndex;
+    private final String defaultType;
+    private final long windowNanos;
+    private final int maxItems;
+    private final JsonParser jsonParser = new JsonParser();
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder collapsedOperations = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    private Window window;
+
+    /**
+     * @param defaultIndex the index of operations without an index, may be <code>null</code>
+     * @param defaultType  the type of operations without a type, may be <code>null</code>
+     * @param flushWindow  the maximum time an operation is buffered
+     * @param maxItems     the maximum number of items per bulk request
+     */
+    public CollapsingBulkBuffer(JestClient client, String defaultIndex, String defaultType, long flushWindow, TimeUnit unit, int maxItems) {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("Maximum number of items must be positive: " + maxItems);
+        }
+        this.client = requireNonNull(client, "Client must not be null");
+        this.defaultIndex = defaultIndex;
+        this.defaultType = defaultType;
+        this.windowNanos = unit.toNanos(flushWindow);
+        this.maxItems = maxItems;
+    }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "jest-bulk-buffer-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ExecutorService createSender() {
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "jest-bulk-buffer-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds the operation to the current flush window.
+     *
+     * @return the result of the bulk request the operation, or the operation superseding it, has been sent with
+     */
+    public CompletableFuture<CollapsedBulkResult> add(RawBulk.Item item) {
+        requireNonNull(item, "Item must not be null");
+        operations.increment();
+
+        final Window current;
+        final boolean full;
+        synchronized (this) {
+            if (window == null) {
+                window = new Window();
+                final Window scheduled = window;
+                TIMER.schedule(() -> SENDER.execute(() -> flush(scheduled)), windowNanos, TimeUnit.NANOSECONDS);
+            }
+            current = window;
+            current.add(item);
+            full = current.items.size() >= maxItems;
+            if (full) {
+                window = null;
+            }
+        }
+
+        if (full) {
+            send(current);
+        }
+        return current.future;
+    }
+
+    /**
+     * Sends the pending operations right away.
+     *
+     * @return the result of the bulk request or <code>null</code> if there were no pending operations
+     */
+    public CompletableFuture<CollapsedBulkResult> flush() {
+        final Window current;
+        synchronized (this) {
+            current = window;
+            window = null;
+        }
+        if (current == null) {
+            return null;
+        }
+        send(current);
+        return current.future;
+    }
+
+    private void flush(Window scheduled) {
+        synchronized (this) {
+            if (window != scheduled) {
+                // already sent because it was full or flushed explicitly
+                return;
+            }
+            window = null;
+        }
+        send(scheduled);
+    }
+
+    /**
+     * Sends the pending operations without waiting for the result.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void send(Window sent) {
+        flushes.increment();
+        collapsedOperations.add(sent.operations - sent.items.size());
+
+        final RawBulk bulk = new RawBulk.Builder()
+                .defaultIndex(defaultIndex)
+                .defaultType(defaultType)
+                .addItems(sent.items)
+                .build();
+        try {
+            client.executeAsync(bulk, new JestResultHandler<BulkResult>() {
+                @Override
+                public void completed(BulkResult result) {
+                    sent.future.complete(new CollapsedBulkResult(result, sent.operations, sent.items.size(), sent.mergedUpdates));
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    sent.future.completeExceptionally(ex);
+                }
+            });
+        } catch (RuntimeException e) {
+            sent.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return the number of operations which have been added
+     */
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    /**
+     * @return the number of operations which haven't been sent because they have been superseded by or merged into
+     * a later operation on the same document
+     */
+    public long getCollapsedOperations() {
+        return collapsedOperations.sum();
+    }
+
+    /**
+     * @return the number of bulk requests which have been sent
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the operation replacing the pending and the next operation on the same document or <code>null</code>
+     * if they can't be collapsed.
+     */
+    private RawBulk.Item collapse(RawBulk.Item pending, RawBulk.Item next) {
+        switch (next.getOperation()) {
+            case "index":
+            case "delete":
+                return next;
+            case "update":
+                return mergeUpdate(pending, next);
+            default:
+                return null;
+        }
+    }
+
+    private RawBulk.Item mergeUpdate(RawBulk.Item pending, RawBulk.Item update) {
+        final JsonObject payload = partialUpdate(update);
+        if (payload == null) {
+            return null;
+        }
+
+        if ("index".equals(pending.getOperation())) {
+            final JsonObject source = parse(pending.getSource());
+            if (source == null) {
+                return null;
+            }
+            merge(source, payload.getAsJsonObject("doc"));
+            return RawBulk.Item.index(pending.getIndex(), pending.getType(), pending.getId(), ByteString.encodeUtf8(source.toString()))
+                    .withRouting(pending.getRouting());
+        } else if ("update".equals(pending.getOperation())) {
+            final JsonObject pendingPayload = partialUpdate(pending);
+            // an upsert may create a document which the other update expects to exist, or vice versa
+            if (pendingPayload == null || docAsUpsert(pendingPayload) != docAsUpsert(payload)) {
+                return null;
+            }
+            merge(pendingPayload.getAsJsonObject("doc"), payload.getAsJsonObject("doc"));
+            if (payload.has("detect_noop")) {
+                pendingPayload.add("detect_noop", payload.get("detect_noop"));
+            }
+            return RawBulk.Item.update(pending.getIndex(), pending.getType(), pending.getId(), ByteString.encodeUtf8(pendingPayload.toString()))
+                    .withRouting(pending.getRouting());
+        }
+        return null;
+    }
+
+    /**
+     * @return the payload of the given update if it's a partial document, <code>null</code> otherwise
+     */
+    private JsonObject partialUpdate(RawBulk.Item update) {
+        final JsonObject payload = parse(update.getSource());
+        if (payload == null || !payload.has("doc") || !payload.get("doc").isJsonObject()) {
+            return null;
+        }
+        for (Map.Entry<String, JsonElement> field : payload.entrySet()) {
+            if (!PARTIAL_UPDATE_FIELDS.contains(field.getKey())) {
+                return null;
+            }
+        }
+        return payload;
+    }
+
+    private static boolean docAsUpsert(JsonObject payload) {
+        final JsonElement docAsUpsert = payload.get("doc_as_upsert");
+        return docAsUpsert != null && docAsUpsert.isJsonPrimitive() && docAsUpsert.getAsBoolean();
+    }
+
+    private JsonObject parse(ByteString source) {
+        if (source == null) {
+            return null;
+        }
+        try {
+            final JsonElement element = jsonParser.parse(source.utf8());
+            return element.isJsonObject() ? element.getAsJsonObject() : null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Merges the partial document into the target like Elasticsearch does: objects are merged recursively, all
+     * other values are replaced.
+     */
+    private static void merge(JsonObject target, JsonObject partial) {
+        for (Map.Entry<String, JsonElement> entry : partial.entrySet()) {
+            final JsonElement existing = target.get(entry.getKey());
+            if (existing != null && existing.isJsonObject() && entry.getValue().isJsonObject()) {
+                merge(existing.getAsJsonObject(), entry.getValue().getAsJsonObject());
+            } else {
+                target.add(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private class Window {
+        private final List<RawBulk.Item> items = new ArrayList<>();
+        private final Map<DocumentKey, Integer> positions = new HashMap<>();
+        private final CompletableFuture<CollapsedBulkResult> future = new CompletableFuture<>();
+        private int operations = 0;
+        private int mergedUpdates = 0;
+
+        private void add(RawBulk.Item item) {
+            operations++;
+            final DocumentKey key = item.getId() == null ? null : new DocumentKey(
+                    item.getIndex() == null ? defaultIndex : item.getIndex(),
+                    item.getType() == null ? defaultType : item.getType(),
+                    item.getId(),
+                    item.getRouting());
+
+            final Integer position = key == null ? null : positions.get(key);
+            if (position != null) {
+                final RawBulk.Item collapsed = collapse(items.get(position), item);
+                if (collapsed != null) {
+                    if (collapsed != item) {
+                        mergedUpdates++;
+                    }
+                    items.set(position, collapsed);
+                    return;
+                }
+            }
+
+            if (key != null) {
+                positions.put(key, items.size());
+            }
+            items.add(item);
+        }
+    }
+
+    private static class DocumentKey {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final String routing;
+
+        private DocumentKey(String index, String type, String id, String routing) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.routing = routing;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final DocumentKey that = (DocumentKey) o;
+            return Objects.equals(index, that.index) && Objects.equals(type, that.type)
+                    && Objects.equals(id, that.id) && Objects.equals(routing, that.routing);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, type, id, routing);
+        }
+    }
+}
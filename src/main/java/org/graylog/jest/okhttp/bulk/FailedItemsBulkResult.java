@@ -0,0 +1,41 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.Gson;
+import io.searchbox.core.BulkResult;
+
+import java.util.Arrays;
+
+/**
+ * {@link BulkResult} which only contains the failed items of a bulk response.
+ * <p>
+ * {@link #getItems()} and {@link #getFailedItems()} both return the failed items only, the position of each of
+ * these items in the original bulk request is available through {@link #getFailedItemPositions()}.
+ * </p>
+ *
+ * @see BulkResponseParser
+ */
+public class FailedItemsBulkResult extends BulkResult {
+    private final int[] failedItemPositions;
+    private final int itemCount;
+
+    public FailedItemsBulkResult(Gson gson, int[] failedItemPositions, int itemCount) {
+        super(gson);
+        this.failedItemPositions = failedItemPositions;
+        this.itemCount = itemCount;
+    }
+
+    /**
+     * @return the positions of the failed items in the bulk request, in the same order as {@link #getFailedItems()}
+     */
+    public int[] getFailedItemPositions() {
+        return Arrays.copyOf(failedItemPositions, failedItemPositions.length);
+    }
+
+    /**
+     * @return the number of items in the bulk response or <code>-1</code> if the items haven't been read because
+     * none of them failed
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+}
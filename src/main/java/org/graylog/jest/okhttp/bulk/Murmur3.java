@@ -0,0 +1,46 @@
+package org.graylog.jest.okhttp.bulk;
+
+/**
+ * The routing hash of Elasticsearch: 32-bit MurmurHash3 (x86 variant, seed 0) over the UTF-16 little-endian bytes
+ * of the routing value.
+ */
+final class Murmur3 {
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private Murmur3() {
+    }
+
+    static int hash(String routing) {
+        final int length = routing.length() * 2;
+        int h1 = 0;
+
+        // every two chars form one little-endian block of four bytes
+        final int blocks = routing.length() / 2;
+        for (int i = 0; i < blocks; i++) {
+            final int k1 = routing.charAt(2 * i) | (routing.charAt(2 * i + 1) << 16);
+            h1 ^= mixK1(k1);
+            h1 = Integer.rotateLeft(h1, 13);
+            h1 = h1 * 5 + 0xe6546b64;
+        }
+
+        if (routing.length() % 2 != 0) {
+            h1 ^= mixK1(routing.charAt(routing.length() - 1));
+        }
+
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+}
@@ -0,0 +1,335 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import io.searchbox.action.AbstractAction;
+import io.searchbox.core.BulkResult;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import org.graylog.jest.okhttp.action.StreamingAction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bulk action for documents which are already serialized as UTF-8 encoded JSON.
+ * <p>
+ * In contrast to {@link io.searchbox.core.Bulk}, the action metadata lines and the document bytes are written
+ * directly into the request body without converting them into an intermediate {@link String}.
+ * </p>
+ * <pre>
+ * RawBulk bulk = new RawBulk.Builder()
+ *     .defaultIndex("twitter")
+ *     .defaultType("tweet")
+ *     .addItem(RawBulk.Item.index(null, null, "1", documentBytes))
+ *     .addItem(RawBulk.Item.delete("twitter", "tweet", "2"))
+ *     .build();
+ * </pre>
+ * Documents must be serialized on a single line, i. e. must not contain unescaped line breaks.
+ */
+public class RawBulk extends AbstractAction<BulkResult> implements StreamingAction<BulkResult> {
+    private static final byte NEWLINE = '\n';
+
+    private final List<Item> items;
+    private final long contentLength;
+
+    protected RawBulk(Builder builder) {
+        super(builder);
+        indexName = builder.defaultIndex;
+        typeName = builder.defaultType;
+        items = Collections.unmodifiableList(new ArrayList<>(builder.items));
+
+        long length = 0L;
+        for (Item item : items) {
+            length += item.contentLength();
+        }
+        contentLength = length;
+
+        setURI(builder.uri == null ? buildURI() : builder.uri);
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public String getDefaultIndex() {
+        return indexName;
+    }
+
+    public String getDefaultType() {
+        return typeName;
+    }
+
+    /**
+     * @return a bulk with the given items and the defaults, URI and headers of this bulk
+     */
+    RawBulk withItems(List<Item> items) {
+        final Builder builder = new Builder()
+                .defaultIndex(indexName)
+                .defaultType(typeName)
+                .addItems(items)
+                .setHeader(getHeaders());
+        builder.uri = getURI();
+        return builder.build();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        for (Item item : items) {
+            item.writeTo(sink);
+        }
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Only used for logging and debugging, the request body is written through {@link #writeTo(BufferedSink)}.
+     */
+    @Override
+    public String getData(Gson gson) {
+        final Buffer buffer = new Buffer();
+        try {
+            writeTo(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't write bulk request into buffer", e);
+        }
+        return buffer.readUtf8();
+    }
+
+    @Override
+    public String getRestMethodName() {
+        return "POST";
+    }
+
+    @Override
+    protected String buildURI() {
+        return super.buildURI() + "/_bulk";
+    }
+
+    @Override
+    public BulkResult createNewElasticSearchResult(String responseBody, int statusCode, String reasonPhrase, Gson gson) {
+        final BulkResult result = createNewElasticSearchResult(new BulkResult(gson), responseBody, statusCode, reasonPhrase, gson);
+        final JsonObject jsonObject = result.getJsonObject();
+        if (result.isSucceeded() && jsonObject != null && jsonObject.has("errors") && jsonObject.get("errors").getAsBoolean()) {
+            result.setSucceeded(false);
+            result.setErrorMessage("One or more of the items in the Bulk request failed, check BulkResult.getItems() for more information.");
+        }
+        return result;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), items);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+
+        RawBulk rhs = (RawBulk) obj;
+        return super.equals(obj) && Objects.equals(items, rhs.items);
+    }
+
+    /**
+     * A single bulk operation with its pre-serialized document.
+     */
+    public static final class Item {
+        private final String operation;
+        private final String index;
+        private final String type;
+        private final String id;
+        private final String routing;
+        private final ByteString metadata;
+        private final byte[] sourceBytes;
+        private final ByteString source;
+
+        private Item(String operation, String index, String type, String id, String routing, byte[] sourceBytes, ByteString source) {
+            this.operation = requireNonNull(operation, "Operation must not be null");
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.routing = routing;
+            this.sourceBytes = sourceBytes;
+            this.source = source;
+            this.metadata = metadataLine(operation, index, type, id, routing);
+        }
+
+        public static Item index(String index, String type, String id, byte[] source) {
+            return new Item("index", index, type, id, null, requireNonNull(source, "Source must not be null"), null);
+        }
+
+        public static Item index(String index, String type, String id, ByteString source) {
+            return new Item("index", index, type, id, null, null, requireNonNull(source, "Source must not be null"));
+        }
+
+        public static Item create(String index, String type, String id, byte[] source) {
+            return new Item("create", index, type, id, null, requireNonNull(source, "Source must not be null"), null);
+        }
+
+        public static Item create(String index, String type, String id, ByteString source) {
+            return new Item("create", index, type, id, null, null, requireNonNull(source, "Source must not be null"));
+        }
+
+        /**
+         * @param payload the complete update request body, e. g. <code>{"doc":{...}}</code>
+         */
+        public static Item update(String index, String type, String id, byte[] payload) {
+            return new Item("update", index, type, requireNonNull(id, "Id must not be null"), null, requireNonNull(payload, "Payload must not be null"), null);
+        }
+
+        /**
+         * @param payload the complete update request body, e. g. <code>{"doc":{...}}</code>
+         */
+        public static Item update(String index, String type, String id, ByteString payload) {
+            return new Item("update", index, type, requireNonNull(id, "Id must not be null"), null, null, requireNonNull(payload, "Payload must not be null"));
+        }
+
+        public static Item delete(String index, String type, String id) {
+            return new Item("delete", index, type, requireNonNull(id, "Id must not be null"), null, null, null);
+        }
+
+        /**
+         * @return a copy of this item with the given routing value
+         */
+        public Item withRouting(String routing) {
+            return new Item(operation, index, type, id, routing, sourceBytes, source);
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRouting() {
+            return routing;
+        }
+
+        /**
+         * @return the document of this item or <code>null</code> for delete operations
+         */
+        public ByteString getSource() {
+            if (sourceBytes != null) {
+                return ByteString.of(sourceBytes);
+            }
+            return source;
+        }
+
+        long contentLength() {
+            long length = metadata.size() + 1;
+            if (sourceBytes != null) {
+                length += sourceBytes.length + 1;
+            } else if (source != null) {
+                length += source.size() + 1;
+            }
+            return length;
+        }
+
+        void writeTo(BufferedSink sink) throws IOException {
+            sink.write(metadata).writeByte(NEWLINE);
+            if (sourceBytes != null) {
+                sink.write(sourceBytes).writeByte(NEWLINE);
+            } else if (source != null) {
+                sink.write(source).writeByte(NEWLINE);
+            }
+        }
+
+        private static ByteString metadataLine(String operation, String index, String type, String id, String routing) {
+            final JsonObject details = new JsonObject();
+            if (index != null) {
+                details.addProperty("_index", index);
+            }
+            if (type != null) {
+                details.addProperty("_type", type);
+            }
+            if (id != null) {
+                details.addProperty("_id", id);
+            }
+            if (routing != null) {
+                details.addProperty("_routing", routing);
+            }
+            final JsonObject metadata = new JsonObject();
+            metadata.add(operation, details);
+            return ByteString.encodeUtf8(metadata.toString());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Item item = (Item) o;
+            return Objects.equals(metadata, item.metadata) && Objects.equals(getSource(), item.getSource());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(metadata, getSource());
+        }
+    }
+
+    public static class Builder extends AbstractAction.Builder<RawBulk, Builder> {
+        private final List<Item> items = new ArrayList<>();
+        private String defaultIndex;
+        private String defaultType;
+        private String uri;
+
+        public Builder defaultIndex(String defaultIndex) {
+            this.defaultIndex = defaultIndex;
+            return this;
+        }
+
+        public Builder defaultType(String defaultType) {
+            this.defaultType = defaultType;
+            return this;
+        }
+
+        public Builder addItem(Item item) {
+            this.items.add(requireNonNull(item, "Item must not be null"));
+            return this;
+        }
+
+        public Builder addItems(Collection<Item> items) {
+            for (Item item : items) {
+                addItem(item);
+            }
+            return this;
+        }
+
+        @Override
+        public RawBulk build() {
+            return new RawBulk(this);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package org.graylog.jest.okhttp.bulk;
+
+import io.searchbox.action.Action;
+import io.searchbox.action.BulkableAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Executes bulk requests and resubmits the items rejected by Elasticsearch (HTTP status 429 or
+ * <code>es_rejected_execution_exception</code>) or by an unavailable node (HTTP status 503, e. g. the items of a
+ * sub-bulk which couldn't be sent by {@link ShardRouter shard-aware bulk requests}) with exponential backoff.
+ * <p>
+ * The backoff is shared by all bulk requests executed through the same instance: while rejections last, every
+ * submission waits for the current backoff, which lowers the outgoing bulk rate. The backoff decays again with
+ * every bulk request without rejections.
+ * </p>
+ */
+public class RetryingBulkExecutor {
+    private static final Logger log = LoggerFactory.getLogger(RetryingBulkExecutor.class);
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+    private static final String REJECTED_EXECUTION = "es_rejected_execution_exception";
+
+    private final JestClient client;
+    private final int maxRetries;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    private final Object lock = new Object();
+    private long backoffNanos = 0L;
+    private long pauseUntilNanos = 0L;
+
+    public RetryingBulkExecutor(JestClient client, int maxRetries, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        this.client = requireNonNull(client, "Client must not be null");
+        this.maxRetries = maxRetries;
+        this.initialBackoffNanos = unit.toNanos(initialBackoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+    }
+
+    /**
+     * @return a factory for {@link Bulk} actions with the given default index and type
+     */
+    public static Function<List<BulkableAction>, Bulk> bulk(String defaultIndex, String defaultType) {
+        return actions -> new Bulk.Builder()
+                .defaultIndex(defaultIndex)
+                .defaultType(defaultType)
+                .addAction(actions)
+                .build();
+    }
+
+    /**
+     * @return a factory for {@link RawBulk} actions with the given default index and type
+     */
+    public static Function<List<RawBulk.Item>, RawBulk> rawBulk(String defaultIndex, String defaultType) {
+        return items -> new RawBulk.Builder()
+                .defaultIndex(defaultIndex)
+                .defaultType(defaultType)
+                .addItems(items)
+                .build();
+    }
+
+    /**
+     * @param items       the bulk items
+     * @param bulkFactory creates the bulk action for the given list of items; called once for the initial request and
+     *                    once for every retry with the rejected items only
+     */
+    public <I> RetryingBulkResult execute(List<I> items, Function<List<I>, ? extends Action<BulkResult>> bulkFactory) throws IOException {
+        List<I> pending = items;
+        int[] positions = identity(items.size());
+        final List<RetryingBulkResult.FailedItem> failedItems = new ArrayList<>();
+        int attempts = 0;
+        int retriedItems = 0;
+
+        while (!pending.isEmpty()) {
+            awaitBackoff();
+            final BulkResult result = client.execute(bulkFactory.apply(pending));
+            attempts++;
+
+            final List<I> rejected = new ArrayList<>();
+            final List<Integer> rejectedPositions = new ArrayList<>();
+            final boolean retriesLeft = attempts <= maxRetries;
+            final boolean rejections;
+
+            if (result.getResponseCode() == TOO_MANY_REQUESTS) {
+                rejections = true;
+                for (int i = 0; i < pending.size(); i++) {
+                    if (retriesLeft) {
+                        rejected.add(pending.get(i));
+                        rejectedPositions.add(positions[i]);
+                    } else {
+                        failedItems.add(new RetryingBulkResult.FailedItem(positions[i], null, result.getErrorMessage()));
+                    }
+                }
+            } else if (!isHttpSuccessful(result.getResponseCode())) {
+                rejections = false;
+                for (int position : positions) {
+                    failedItems.add(new RetryingBulkResult.FailedItem(position, null, result.getErrorMessage()));
+                }
+            } else {
+                rejections = collectFailures(result, pending, positions, retriesLeft, rejected, rejectedPositions, failedItems);
+            }
+
+            onResult(rejections);
+            if (!rejected.isEmpty() && retriesLeft) {
+                log.debug("Retrying {} rejected bulk items (attempt {} of {})", rejected.size(), attempts, maxRetries);
+                retriedItems += rejected.size();
+            }
+
+            pending = rejected;
+            positions = rejectedPositions.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        failedItems.sort((a, b) -> Integer.compare(a.getPosition(), b.getPosition()));
+        return new RetryingBulkResult(failedItems, attempts, retriedItems);
+    }
+
+    /**
+     * @return <code>true</code> if any of the items has been rejected
+     */
+    private <I> boolean collectFailures(BulkResult result, List<I> pending, int[] positions, boolean retriesLeft,
+                                     List<I> rejected, List<Integer> rejectedPositions,
+                                     List<RetryingBulkResult.FailedItem> failedItems) {
+        final List<BulkResult.BulkResultItem> failed;
+        final int[] failedIndexes;
+        if (result instanceof FailedItemsBulkResult) {
+            failed = result.getFailedItems();
+            failedIndexes = ((FailedItemsBulkResult) result).getFailedItemPositions();
+        } else {
+            final List<BulkResult.BulkResultItem> items = result.getItems();
+            failed = new ArrayList<>();
+            final List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (items.get(i).error != null) {
+                    failed.add(items.get(i));
+                    indexes.add(i);
+                }
+            }
+            failedIndexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        boolean rejections = false;
+        for (int i = 0; i < failed.size(); i++) {
+            final BulkResult.BulkResultItem item = failed.get(i);
+            final int index = failedIndexes[i];
+            final boolean isRejected = isRejected(item);
+            rejections |= isRejected;
+            if (retriesLeft && isRejected) {
+                rejected.add(pending.get(index));
+                rejectedPositions.add(positions[index]);
+            } else {
+                failedItems.add(new RetryingBulkResult.FailedItem(positions[index], item, item.error));
+            }
+        }
+        return rejections;
+    }
+
+    private static boolean isRejected(BulkResult.BulkResultItem item) {
+        return item.status == TOO_MANY_REQUESTS || item.status == SERVICE_UNAVAILABLE || (item.error != null && item.error.contains(REJECTED_EXECUTION));
+    }
+
+    private static boolean isHttpSuccessful(int responseCode) {
+        return responseCode / 100 == 2;
+    }
+
+    private static int[] identity(int size) {
+        final int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+        }
+        return positions;
+    }
+
+    private void onResult(boolean rejections) {
+        synchronized (lock) {
+            if (rejections) {
+                backoffNanos = backoffNanos == 0L ? initialBackoffNanos : Math.min(maxBackoffNanos, backoffNanos * 2);
+                pauseUntilNanos = System.nanoTime() + backoffNanos;
+            } else if (backoffNanos != 0L) {
+                backoffNanos = backoffNanos / 2 < initialBackoffNanos ? 0L : backoffNanos / 2;
+            }
+        }
+    }
+
+    private void awaitBackoff() throws InterruptedIOException {
+        final long waitNanos;
+        synchronized (lock) {
+            waitNanos = pauseUntilNanos - System.nanoTime();
+        }
+        if (waitNanos > 0L) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while backing off from rejected bulk request");
+            }
+        }
+    }
+
+    /**
+     * @return the current backoff applied to bulk submissions
+     */
+    public long getCurrentBackoff(TimeUnit unit) {
+        synchronized (lock) {
+            return unit.convert(backoffNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
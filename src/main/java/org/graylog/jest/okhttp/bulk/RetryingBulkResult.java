@@ -0,0 +1,76 @@
+package org.graylog.jest.okhttp.bulk;
+
+import io.searchbox.core.BulkResult;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk request executed by {@link RetryingBulkExecutor}.
+ */
+public class RetryingBulkResult {
+    private final List<FailedItem> failedItems;
+    private final int attempts;
+    private final int retriedItems;
+
+    RetryingBulkResult(List<FailedItem> failedItems, int attempts, int retriedItems) {
+        this.failedItems = Collections.unmodifiableList(failedItems);
+        this.attempts = attempts;
+        this.retriedItems = retriedItems;
+    }
+
+    public boolean isSucceeded() {
+        return failedItems.isEmpty();
+    }
+
+    /**
+     * @return the items which failed permanently or were still rejected after the last retry
+     */
+    public List<FailedItem> getFailedItems() {
+        return failedItems;
+    }
+
+    /**
+     * @return the number of bulk requests sent, including the initial one
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return the total number of items which have been resubmitted
+     */
+    public int getRetriedItems() {
+        return retriedItems;
+    }
+
+    public static class FailedItem {
+        private final int position;
+        private final BulkResult.BulkResultItem item;
+        private final String errorMessage;
+
+        FailedItem(int position, BulkResult.BulkResultItem item, String errorMessage) {
+            this.position = position;
+            this.item = item;
+            this.errorMessage = errorMessage;
+        }
+
+        /**
+         * @return the position of the item in the original list of items
+         */
+        public int getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the failed item of the bulk response or <code>null</code> if the whole bulk request failed
+         */
+        public BulkResult.BulkResultItem getItem() {
+            return item;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.action.AbstractAction;
+import io.searchbox.action.GenericResultAbstractAction;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.BulkResult;
+import org.graylog.jest.okhttp.action.InternalAction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Splits {@link RawBulk raw bulk requests} into one sub-bulk per node holding the primary shards of their items,
+ * so that Elasticsearch doesn't have to forward the items from a coordinating node to the primaries.
+ * <p>
+ * The {@link ShardRoutingTable routing table} is fetched from the cluster state and refreshed once the refresh
+ * interval has elapsed or after it has been {@link #invalidate() invalidated}, e. g. when a sub-bulk failed because
+ * shards have been relocated. Refreshes run in the background, bulk requests are split with the stale routing table
+ * meanwhile: it only costs the extra hop, Elasticsearch still forwards items sent to the wrong node.
+ * </p>
+ * <p>
+ * Items whose shard can't be computed, e. g. documents with auto-generated ids or items of unknown indices, are
+ * added to the largest sub-bulk.
+ * </p>
+ */
+public class ShardRouter {
+    private static final Logger log = LoggerFactory.getLogger(ShardRouter.class);
+    private static final String ERROR_MESSAGE = "One or more of the items in the Bulk request failed, check BulkResult.getItems() for more information.";
+    private static final ExecutorService REFRESHER = createRefresher();
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final JestClient client;
+    private final Gson gson;
+    private final long refreshIntervalNanos;
+    private final Ticker ticker;
+    private final Executor refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder routedItems = new LongAdder();
+    private final LongAdder unroutedItems = new LongAdder();
+
+    private volatile ShardRoutingTable routingTable;
+    private volatile long fetchedNanos;
+    private volatile boolean invalidated = true;
+
+    public ShardRouter(JestClient client, Gson gson, long refreshInterval, TimeUnit unit) {
+        this(client, gson, refreshInterval, unit, Ticker.systemTicker(), REFRESHER);
+    }
+
+    @VisibleForTesting
+    ShardRouter(JestClient client, Gson gson, long refreshInterval, TimeUnit unit, Ticker ticker, Executor refresher) {
+        this.client = requireNonNull(client, "Client must not be null");
+        this.gson = requireNonNull(gson, "Gson must not be null");
+        this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+        this.ticker = ticker;
+        this.refresher = refresher;
+    }
+
+    private static ExecutorService createRefresher() {
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "jest-shard-router-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the current routing table without waiting. If it's outdated, a refresh is started in the background
+     * unless one is already running.
+     *
+     * @return the current routing table or <code>null</code> if it couldn't be fetched yet
+     */
+    public ShardRoutingTable getRoutingTable() {
+        if (isOutdated() && refreshing.compareAndSet(false, true)) {
+            invalidated = false;
+            fetchedNanos = ticker.read();
+            try {
+                refresher.execute(this::refresh);
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+                log.warn("Couldn't start refreshing the routing table", e);
+            }
+        }
+        return routingTable;
+    }
+
+    private boolean isOutdated() {
+        return invalidated || ticker.read() - fetchedNanos >= refreshIntervalNanos;
+    }
+
+    private void refresh() {
+        refreshes.increment();
+        try {
+            final JestResult result = client.execute(new RoutingState.Builder().build());
+            if (result.isSucceeded() && result.getJsonObject() != null) {
+                routingTable = ShardRoutingTable.parse(result.getJsonObject());
+            } else {
+                log.warn("Couldn't fetch routing table: {}", result.getErrorMessage());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Couldn't fetch routing table", e);
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Forces a refresh of the routing table once the next bulk request is split.
+     */
+    public void invalidate() {
+        invalidated = true;
+    }
+
+    /**
+     * Splits the bulk request by the nodes holding the primary shards of its items.
+     *
+     * @param nodeServers the servers of the known nodes by their node id
+     * @return the sub-bulks in the order of their first item or an empty list if none of the items could be routed
+     */
+    public List<Split> split(RawBulk bulk, Map<String, String> nodeServers) {
+        final ShardRoutingTable table = getRoutingTable();
+        final List<RawBulk.Item> items = bulk.getItems();
+        if (table == null || table.size() == 0 || items.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        final Map<String, List<Integer>> positionsByServer = new LinkedHashMap<>();
+        final List<Integer> unrouted = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            final RawBulk.Item item = items.get(i);
+            final String index = item.getIndex() == null ? bulk.getDefaultIndex() : item.getIndex();
+            final String node = table.primaryNode(index, item.getId(), item.getRouting());
+            final String server = node == null ? null : nodeServers.get(node);
+            if (server == null) {
+                unrouted.add(i);
+            } else {
+                positionsByServer.computeIfAbsent(server, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        unroutedItems.add(unrouted.size());
+        routedItems.add(items.size() - unrouted.size());
+        if (positionsByServer.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        if (!unrouted.isEmpty()) {
+            List<Integer> largest = null;
+            for (List<Integer> positions : positionsByServer.values()) {
+                if (largest == null || positions.size() > largest.size()) {
+                    largest = positions;
+                }
+            }
+            largest.addAll(unrouted);
+            Collections.sort(largest);
+        }
+
+        final List<Split> splits = new ArrayList<>(positionsByServer.size());
+        for (Map.Entry<String, List<Integer>> entry : positionsByServer.entrySet()) {
+            final int[] positions = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            final RawBulk subBulk;
+            if (positions.length == items.size()) {
+                subBulk = bulk;
+            } else {
+                final List<RawBulk.Item> subItems = new ArrayList<>(positions.length);
+                for (int position : positions) {
+                    subItems.add(items.get(position));
+                }
+                subBulk = bulk.withItems(subItems);
+            }
+            splits.add(new Split(entry.getKey(), subBulk, positions));
+        }
+        return splits;
+    }
+
+    /**
+     * @return the result of a sub-bulk which failed with the given exception, e. g. because its node couldn't be
+     * reached, which {@link #merge(RawBulk, List, List) merge} reports as failed items with status 503 and the
+     * message of the exception
+     */
+    public BulkResult failedResult(Exception cause) {
+        final BulkResult result = new BulkResult(gson);
+        result.setResponseCode(SERVICE_UNAVAILABLE);
+        result.setSucceeded(false);
+        result.setErrorMessage(cause.getMessage() == null ? cause.toString() : cause.getMessage());
+        return result;
+    }
+
+    /**
+     * Reassembles the results of the sub-bulks into the result of the original bulk request, with its items in the
+     * original order. Sub-bulks which failed as a whole are reported as failed items with the status code of their
+     * response, so that rejected or unreachable sub-bulks can be retried item by item.
+     *
+     * @param results the results of the sub-bulks, in the order of the splits
+     */
+    public BulkResult merge(RawBulk bulk, List<Split> splits, List<BulkResult> results) {
+        final int itemCount = bulk.getItems().size();
+        final JsonElement[] items = new JsonElement[itemCount];
+        boolean failedItemsOnly = true;
+        boolean errors = false;
+        long took = 0L;
+        int commonResponseCode = -1;
+
+        for (int i = 0; i < splits.size(); i++) {
+            final Split split = splits.get(i);
+            final BulkResult result = results.get(i);
+            final int responseCode = result.getResponseCode();
+            commonResponseCode = commonResponseCode == -1 || commonResponseCode == responseCode ? responseCode : 200;
+
+            final JsonObject jsonObject = result.getJsonObject();
+            if (responseCode / 100 != 2 || jsonObject == null || !jsonObject.has("items")) {
+                errors = true;
+                for (int position : split.positions) {
+                    items[position] = failedItem(bulk, bulk.getItems().get(position), responseCode, result.getErrorMessage());
+                }
+                continue;
+            }
+
+            if (jsonObject.has("took")) {
+                took = Math.max(took, jsonObject.get("took").getAsLong());
+            }
+            errors |= jsonObject.has("errors") && jsonObject.get("errors").getAsBoolean();
+
+            final JsonArray resultItems = jsonObject.getAsJsonArray("items");
+            if (result instanceof FailedItemsBulkResult) {
+                final int[] failedPositions = ((FailedItemsBulkResult) result).getFailedItemPositions();
+                for (int j = 0; j < failedPositions.length; j++) {
+                    items[split.positions[failedPositions[j]]] = resultItems.get(j);
+                }
+            } else {
+                failedItemsOnly = false;
+                for (int j = 0; j < resultItems.size() && j < split.positions.length; j++) {
+                    items[split.positions[j]] = resultItems.get(j);
+                }
+            }
+        }
+
+        final JsonArray mergedItems = new JsonArray();
+        final List<Integer> positions = new ArrayList<>();
+        for (int position = 0; position < itemCount; position++) {
+            if (items[position] != null) {
+                mergedItems.add(items[position]);
+                positions.add(position);
+            }
+        }
+
+        final JsonObject jsonObject = new JsonObject();
+        jsonObject.addProperty("took", took);
+        jsonObject.addProperty("errors", errors);
+        jsonObject.add("items", mergedItems);
+
+        final BulkResult result;
+        if (failedItemsOnly) {
+            final int[] failedPositions = positions.stream().mapToInt(Integer::intValue).toArray();
+            result = new FailedItemsBulkResult(gson, failedPositions, errors ? itemCount : -1);
+        } else {
+            result = new BulkResult(gson);
+        }
+        result.setResponseCode(commonResponseCode);
+        result.setJsonObject(jsonObject);
+        result.setJsonString(jsonObject.toString());
+        result.setPathToResult("items");
+        result.setSucceeded(!errors);
+        if (errors) {
+            result.setErrorMessage(ERROR_MESSAGE);
+        }
+        return result;
+    }
+
+    private static JsonObject failedItem(RawBulk bulk, RawBulk.Item item, int status, String reason) {
+        final JsonObject error = new JsonObject();
+        error.addProperty("type", "bulk_request_failed");
+        error.addProperty("reason", reason);
+
+        final JsonObject details = new JsonObject();
+        details.addProperty("_index", item.getIndex() == null ? bulk.getDefaultIndex() : item.getIndex());
+        details.addProperty("_type", item.getType() == null ? bulk.getDefaultType() : item.getType());
+        details.addProperty("_id", item.getId());
+        details.addProperty("status", status);
+        details.add("error", error);
+
+        final JsonObject failedItem = new JsonObject();
+        failedItem.add(item.getOperation(), details);
+        return failedItem;
+    }
+
+    /**
+     * @return the number of times the routing table has been fetched
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return the number of bulk items which have been sent to the node holding their primary shard
+     */
+    public long getRoutedItems() {
+        return routedItems.sum();
+    }
+
+    /**
+     * @return the number of bulk items whose primary shard couldn't be determined
+     */
+    public long getUnroutedItems() {
+        return unroutedItems.sum();
+    }
+
+    /**
+     * A sub-bulk together with the server it has to be sent to.
+     */
+    public static final class Split {
+        private final String server;
+        private final RawBulk bulk;
+        private final int[] positions;
+
+        private Split(String server, RawBulk bulk, int[] positions) {
+            this.server = server;
+            this.bulk = bulk;
+            this.positions = positions;
+        }
+
+        public String getServer() {
+            return server;
+        }
+
+        public RawBulk getBulk() {
+            return bulk;
+        }
+
+        /**
+         * @return the positions of the items of this sub-bulk in the original bulk request
+         */
+        public int[] getPositions() {
+            return Arrays.copyOf(positions, positions.length);
+        }
+    }
+
+    private static class RoutingState extends GenericResultAbstractAction implements InternalAction<JestResult> {
+        private static final String FILTER_PATH = "metadata.indices.*.settings.index.number_of_shards,"
+                + "metadata.indices.*.settings.index.routing_partition_size,"
+                + "metadata.indices.*.routing_num_shards,"
+                + "metadata.indices.*.aliases,"
+                + "routing_table.indices.*.shards.*.primary,"
+                + "routing_table.indices.*.shards.*.node,"
+                + "routing_table.indices.*.shards.*.state";
+
+        private RoutingState(Builder builder) {
+            super(builder);
+            setURI(buildURI());
+        }
+
+        @Override
+        protected String buildURI() {
+            return super.buildURI() + "/_cluster/state/metadata,routing_table";
+        }
+
+        @Override
+        public String getRestMethodName() {
+            return "GET";
+        }
+
+        private static class Builder extends AbstractAction.Builder<RoutingState, Builder> {
+            private Builder() {
+                setParameter("filter_path", FILTER_PATH);
+            }
+
+            @Override
+            public RoutingState build() {
+                return new RoutingState(this);
+            }
+        }
+    }
+}
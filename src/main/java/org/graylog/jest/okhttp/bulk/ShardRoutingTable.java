@@ -0,0 +1,191 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the primary shards of all indices and the nodes holding them, taken from the
+ * <code>metadata</code> and <code>routing_table</code> sections of the cluster state.
+ * <p>
+ * Shards are computed like Elasticsearch does: the MurmurHash3 of the routing value (the document id if there is
+ * no explicit routing), scaled down from the number of routing shards to the number of primary shards and offset
+ * within the routing partition if the index uses one.
+ * </p>
+ */
+public class ShardRoutingTable {
+    static final ShardRoutingTable EMPTY = new ShardRoutingTable(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, IndexRouting> indices;
+    private final Map<String, String> aliases;
+
+    private ShardRoutingTable(Map<String, IndexRouting> indices, Map<String, String> aliases) {
+        this.indices = indices;
+        this.aliases = aliases;
+    }
+
+    /**
+     * @param clusterState the cluster state including at least its <code>metadata</code> and
+     *                     <code>routing_table</code> sections
+     */
+    public static ShardRoutingTable parse(JsonObject clusterState) {
+        final JsonObject metadata = object(object(clusterState, "metadata"), "indices");
+        final JsonObject routingTable = object(object(clusterState, "routing_table"), "indices");
+        if (metadata == null || routingTable == null) {
+            return EMPTY;
+        }
+
+        final Map<String, IndexRouting> indices = new HashMap<>();
+        final Map<String, String> aliases = new HashMap<>();
+        final Set<String> ambiguousAliases = new HashSet<>();
+        for (Map.Entry<String, JsonElement> entry : metadata.entrySet()) {
+            final String index = entry.getKey();
+            final JsonObject indexMetadata = entry.getValue().getAsJsonObject();
+            final IndexRouting indexRouting = parseIndex(indexMetadata, object(routingTable, index));
+            if (indexRouting == null) {
+                continue;
+            }
+            indices.put(index, indexRouting);
+
+            final JsonElement indexAliases = indexMetadata.get("aliases");
+            if (indexAliases != null && indexAliases.isJsonArray()) {
+                for (JsonElement alias : indexAliases.getAsJsonArray()) {
+                    // aliases pointing to several indices can't be resolved without their write index
+                    if (aliases.put(alias.getAsString(), index) != null) {
+                        ambiguousAliases.add(alias.getAsString());
+                    }
+                }
+            }
+        }
+        aliases.keySet().removeAll(ambiguousAliases);
+        return new ShardRoutingTable(indices, aliases);
+    }
+
+    private static IndexRouting parseIndex(JsonObject indexMetadata, JsonObject indexRoutingTable) {
+        final JsonObject settings = object(object(indexMetadata, "settings"), "index");
+        final JsonObject shards = object(indexRoutingTable, "shards");
+        if (settings == null || shards == null || !settings.has("number_of_shards")) {
+            return null;
+        }
+
+        final int numberOfShards = settings.get("number_of_shards").getAsInt();
+        final int routingNumShards = indexMetadata.has("routing_num_shards") ? indexMetadata.get("routing_num_shards").getAsInt() : numberOfShards;
+        final int routingPartitionSize = settings.has("routing_partition_size") ? settings.get("routing_partition_size").getAsInt() : 1;
+        if (numberOfShards < 1 || routingNumShards % numberOfShards != 0) {
+            return null;
+        }
+
+        final String[] primaryNodes = new String[numberOfShards];
+        for (Map.Entry<String, JsonElement> shard : shards.entrySet()) {
+            final int shardId = Integer.parseInt(shard.getKey());
+            if (shardId < 0 || shardId >= numberOfShards || !shard.getValue().isJsonArray()) {
+                continue;
+            }
+            for (JsonElement copy : shard.getValue().getAsJsonArray()) {
+                final JsonObject shardRouting = copy.getAsJsonObject();
+                if (isActivePrimary(shardRouting)) {
+                    primaryNodes[shardId] = shardRouting.get("node").getAsString();
+                }
+            }
+        }
+        return new IndexRouting(numberOfShards, routingNumShards, routingPartitionSize, primaryNodes);
+    }
+
+    private static boolean isActivePrimary(JsonObject shardRouting) {
+        final JsonElement primary = shardRouting.get("primary");
+        final JsonElement node = shardRouting.get("node");
+        final JsonElement state = shardRouting.get("state");
+        return primary != null && primary.getAsBoolean()
+                && node != null && !node.isJsonNull()
+                // a relocating primary stays on its source node until the relocation has finished
+                && state != null && ("STARTED".equals(state.getAsString()) || "RELOCATING".equals(state.getAsString()));
+    }
+
+    private static JsonObject object(JsonObject parent, String name) {
+        if (parent == null) {
+            return null;
+        }
+        final JsonElement element = parent.get(name);
+        return element != null && element.isJsonObject() ? element.getAsJsonObject() : null;
+    }
+
+    /**
+     * @return the number of indices whose shards can be computed
+     */
+    public int size() {
+        return indices.size();
+    }
+
+    /**
+     * @param index   the name of an index or of an alias pointing to a single index
+     * @param id      the document id, <code>null</code> for auto-generated ids
+     * @param routing the custom routing value, <code>null</code> to route by id
+     * @return the id of the node holding the primary shard of the document or <code>null</code> if it's unknown
+     */
+    public String primaryNode(String index, String id, String routing) {
+        final IndexRouting indexRouting = indexRouting(index);
+        if (indexRouting == null) {
+            return null;
+        }
+        final int shardId = indexRouting.shardId(id, routing);
+        return shardId < 0 ? null : indexRouting.primaryNodes[shardId];
+    }
+
+    /**
+     * @return the primary shard of the document or <code>-1</code> if it can't be computed
+     * @see #primaryNode(String, String, String)
+     */
+    public int shardId(String index, String id, String routing) {
+        final IndexRouting indexRouting = indexRouting(index);
+        return indexRouting == null ? -1 : indexRouting.shardId(id, routing);
+    }
+
+    private IndexRouting indexRouting(String index) {
+        if (index == null) {
+            return null;
+        }
+        final IndexRouting indexRouting = indices.get(index);
+        if (indexRouting != null) {
+            return indexRouting;
+        }
+        final String aliasedIndex = aliases.get(index);
+        return aliasedIndex == null ? null : indices.get(aliasedIndex);
+    }
+
+    private static class IndexRouting {
+        private final int numberOfShards;
+        private final int routingNumShards;
+        private final int routingPartitionSize;
+        private final String[] primaryNodes;
+
+        private IndexRouting(int numberOfShards, int routingNumShards, int routingPartitionSize, String[] primaryNodes) {
+            this.numberOfShards = numberOfShards;
+            this.routingNumShards = routingNumShards;
+            this.routingPartitionSize = routingPartitionSize;
+            this.primaryNodes = primaryNodes;
+        }
+
+        private int shardId(String id, String routing) {
+            final int hash;
+            if (routing != null && routingPartitionSize > 1) {
+                if (id == null) {
+                    // the offset within the partition depends on the id generated by Elasticsearch
+                    return -1;
+                }
+                hash = Murmur3.hash(routing) + Math.floorMod(Murmur3.hash(id), routingPartitionSize);
+            } else if (routing != null) {
+                hash = Murmur3.hash(routing);
+            } else if (id != null) {
+                hash = Murmur3.hash(id);
+            } else {
+                return -1;
+            }
+            return Math.floorMod(hash, routingNumShards) / (routingNumShards / numberOfShards);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.graylog.jest.okhttp.cache;
+
+/**
+ * Status line and body of an HTTP response which can be turned into a fresh result by every cache hit.
+ */
+public final class CachedResponse {
+    private final int code;
+    private final String message;
+    private final String body;
+
+    public CachedResponse(int code, String message, String body) {
+        this.code = code;
+        this.message = message;
+        this.body = body;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @return <code>true</code> if the response is successful and may be cached
+     */
+    public boolean isCacheable() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * @return the approximate heap size of this response in bytes
+     */
+    int weight() {
+        return 64 + (body == null ? 0 : body.length() * 2) + (message == null ? 0 : message.length() * 2);
+    }
+}
@@ -0,0 +1,156 @@
+package org.graylog.jest.okhttp.cache;
+
+import com.google.common.collect.ImmutableSet;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import org.graylog.jest.okhttp.action.Actions;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces identical idempotent requests which are in flight at the same time, so that only the first caller
+ * (the leader) sends a request and all other callers receive its result.
+ * <p>
+ * The deserialized result is shared by all callers of a flight and must therefore be treated as read-only.
+ * </p>
+ */
+public class RequestCoalescer {
+    private final Set<Class<?>> coalescableActions;
+    private final ConcurrentMap<RequestKey, CompletableFuture<JestResult>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalescedRequests = new LongAdder();
+
+    public RequestCoalescer(Set<Class<?>> coalescableActions) {
+        this.coalescableActions = ImmutableSet.copyOf(coalescableActions);
+    }
+
+    /**
+     * @return <code>true</code> if the given action only reads and is an instance of one of the coalescable action
+     * types, scrolls are never coalesced because every call advances the scroll
+     */
+    public boolean isCoalescable(Action<?> action) {
+        if (Actions.isScroll(action) || !Actions.isReadOnly(action)) {
+            return false;
+        }
+        for (Class<?> coalescableAction : coalescableActions) {
+            if (coalescableAction.isInstance(action)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Joins the flight for the given request or starts a new one if there is none.
+     */
+    public Flight join(RequestKey key) {
+        requests.increment();
+        final CompletableFuture<JestResult> future = new CompletableFuture<>();
+        final CompletableFuture<JestResult> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalescedRequests.increment();
+            return new Flight(key, existing, false);
+        }
+        return new Flight(key, future, true);
+    }
+
+    /**
+     * @return the number of requests which joined a coalescable flight
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return the number of requests which have been served by another caller's request
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.sum();
+    }
+
+    public class Flight {
+        private final RequestKey key;
+        private final CompletableFuture<JestResult> future;
+        private final boolean leader;
+
+        private Flight(RequestKey key, CompletableFuture<JestResult> future, boolean leader) {
+            this.key = key;
+            this.future = future;
+            this.leader = leader;
+        }
+
+        /**
+         * @return <code>true</code> if the caller has to execute the request and complete this flight
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        public CompletableFuture<JestResult> future() {
+            return future;
+        }
+
+        public void complete(JestResult result) {
+            inFlight.remove(key, future);
+            future.complete(result);
+        }
+
+        public void fail(Throwable throwable) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(throwable);
+        }
+
+        /**
+         * Waits for the result of the leader.
+         */
+        public JestResult await() throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for coalesced request");
+            } catch (ExecutionException e) {
+                throw rethrow(e);
+            }
+        }
+
+        /**
+         * Waits at most the given time for the result of the leader.
+         *
+         * @return the result of the leader or <code>null</code> if the timeout has elapsed first
+         */
+        public JestResult await(long timeout, TimeUnit unit) throws IOException {
+            try {
+                return future.get(timeout, unit);
+            } catch (TimeoutException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for coalesced request");
+            } catch (ExecutionException e) {
+                throw rethrow(e);
+            }
+        }
+
+        private IOException rethrow(ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                return (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            return new IOException(cause);
+        }
+    }
+}
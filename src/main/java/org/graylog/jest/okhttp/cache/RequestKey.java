@@ -0,0 +1,80 @@
+package org.graylog.jest.okhttp.cache;
+
+import io.searchbox.action.Action;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Identifies a request independently of the server it has been sent to: the action type, HTTP method, path,
+ * query string and a hash of the payload.
+ */
+public final class RequestKey {
+    private final Class<?> actionType;
+    private final String method;
+    private final String path;
+    private final String query;
+    private final ByteString payloadHash;
+    private final int hashCode;
+
+    private RequestKey(Class<?> actionType, String method, String path, String query, ByteString payloadHash) {
+        this.actionType = actionType;
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.payloadHash = payloadHash;
+        this.hashCode = Objects.hash(actionType, method, path, query, payloadHash);
+    }
+
+    public static RequestKey of(Action<?> action, Request request) throws IOException {
+        final HttpUrl url = request.url();
+        final RequestBody body = request.body();
+        final ByteString payloadHash;
+        if (body == null) {
+            payloadHash = ByteString.EMPTY;
+        } else {
+            final Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            payloadHash = buffer.readByteString().sha256();
+        }
+        return new RequestKey(action.getClass(), request.method(), url.encodedPath(), url.encodedQuery(), payloadHash);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final RequestKey that = (RequestKey) o;
+        return hashCode == that.hashCode &&
+                Objects.equals(actionType, that.actionType) &&
+                Objects.equals(method, that.method) &&
+                Objects.equals(path, that.path) &&
+                Objects.equals(query, that.query) &&
+                Objects.equals(payloadHash, that.payloadHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestKey{" +
+                "actionType=" + actionType.getSimpleName() +
+                ", method='" + method + '\'' +
+                ", path='" + path + '\'' +
+                ", query='" + query + '\'' +
+                ", payloadHash=" + payloadHash.hex() +
+                '}';
+    }
+}
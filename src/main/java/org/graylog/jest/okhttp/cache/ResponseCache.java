@@ -0,0 +1,127 @@
+package org.graylog.jest.okhttp.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.searchbox.action.Action;
+import org.graylog.jest.okhttp.action.Actions;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory-bounded cache for the responses of read-only actions.
+ * <p>
+ * Entries expire after a fixed time to live and are evicted in least-recently-used order once the approximate
+ * size of all cached responses exceeds the configured limit. Concurrent loads of the same key are coalesced into a
+ * single request, see {@link #load(RequestKey)}. Only successful responses are cached.
+ * </p>
+ */
+public class ResponseCache {
+    private final Cache<RequestKey, CachedResponse> cache;
+    private final Set<Class<?>> cacheableActions;
+    // only the flights are used, so no action type needs to be coalescable
+    private final RequestCoalescer loads = new RequestCoalescer(Collections.emptySet());
+
+    public ResponseCache(long maxBytes, long ttl, TimeUnit unit, Set<Class<?>> cacheableActions) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((RequestKey key, CachedResponse response) -> response.weight())
+                .expireAfterWrite(ttl, unit)
+                .recordStats()
+                .build();
+        this.cacheableActions = ImmutableSet.copyOf(cacheableActions);
+    }
+
+    /**
+     * @return <code>true</code> if the given action only reads and is an instance of one of the cacheable action
+     * types, scrolls are never cached
+     */
+    public boolean isCacheable(Action<?> action) {
+        if (Actions.isScroll(action) || !Actions.isReadOnly(action)) {
+            return false;
+        }
+        for (Class<?> cacheableAction : cacheableActions) {
+            if (cacheableAction.isInstance(action)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the cached response for the given key or loads it. Concurrent calls for the same key wait for a single
+     * load. Responses which are not {@link CachedResponse#isCacheable() cacheable} are returned to all waiting
+     * callers but not cached.
+     */
+    public CachedResponse get(RequestKey key, Callable<CachedResponse> loader) throws IOException {
+        try {
+            return cache.get(key, () -> {
+                final CachedResponse response = loader.call();
+                if (!response.isCacheable()) {
+                    throw new UncacheableResponseException(response);
+                }
+                return response;
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UncacheableResponseException) {
+                return ((UncacheableResponseException) cause).response;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Joins the load of the given key or starts a new one if there is none. The leader of the flight sends the
+     * request, {@link #put(RequestKey, CachedResponse) puts} the response and completes the flight, all other callers
+     * wait for it, e. g. with a deadline, and then read the response from the cache.
+     */
+    public RequestCoalescer.Flight load(RequestKey key) {
+        return loads.join(key);
+    }
+
+    public CachedResponse getIfPresent(RequestKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(RequestKey key, CachedResponse response) {
+        if (response.isCacheable()) {
+            cache.put(key, response);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return hit, miss, load and eviction statistics of this cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static class UncacheableResponseException extends Exception {
+        private final CachedResponse response;
+
+        private UncacheableResponseException(CachedResponse response) {
+            super(null, null, false, false);
+            this.response = response;
+        }
+    }
+}
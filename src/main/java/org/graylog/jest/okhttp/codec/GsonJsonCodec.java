@@ -0,0 +1,32 @@
+package org.graylog.jest.okhttp.codec;
+
+import com.google.gson.Gson;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The default {@link JsonCodec} which delegates to the Gson based serialization of the actions.
+ */
+public class GsonJsonCodec implements JsonCodec {
+    private final Gson gson;
+
+    public GsonJsonCodec(Gson gson) {
+        this.gson = requireNonNull(gson, "gson");
+    }
+
+    public Gson getGson() {
+        return gson;
+    }
+
+    @Override
+    public String encode(Action<?> action) {
+        return action.getData(gson);
+    }
+
+    @Override
+    public <T extends JestResult> T decode(Action<T> action, String body, int statusCode, String reasonPhrase) {
+        return action.createNewElasticSearchResult(body, statusCode, reasonPhrase, gson);
+    }
+}
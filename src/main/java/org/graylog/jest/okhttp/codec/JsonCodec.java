@@ -0,0 +1,36 @@
+package org.graylog.jest.okhttp.codec;
+
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Serializes request payloads and deserializes responses of actions.
+ * <p>
+ * Implementations must be thread-safe. Results still expose Gson trees through {@link JestResult#getJsonObject()},
+ * so alternative implementations have to produce results which are compatible with the result types of Jest.
+ * </p>
+ *
+ * @see GsonJsonCodec
+ */
+public interface JsonCodec {
+    /**
+     * @return the serialized payload of the given action or <code>null</code> if the action has no payload
+     */
+    String encode(Action<?> action);
+
+    /**
+     * Creates the result of the given action from an already buffered response body.
+     */
+    <T extends JestResult> T decode(Action<T> action, String body, int statusCode, String reasonPhrase);
+
+    /**
+     * Creates the result of the given action from the response body. Streaming implementations should override
+     * this method, the default implementation buffers the complete body.
+     */
+    default <T extends JestResult> T decode(Action<T> action, ResponseBody body, int statusCode, String reasonPhrase) throws IOException {
+        return decode(action, body == null ? null : body.string(), statusCode, reasonPhrase);
+    }
+}
@@ -1,8 +1,18 @@
 package org.graylog.jest.okhttp.config;
 
 import io.searchbox.client.config.ClientConfig;
+import io.searchbox.core.Count;
+import io.searchbox.core.Get;
+import io.searchbox.core.MultiGet;
+import io.searchbox.core.Search;
 import okhttp3.Authenticator;
 import okhttp3.HttpUrl;
+import org.graylog.jest.okhttp.codec.JsonCodec;
+import org.graylog.jest.okhttp.config.routing.RoutingRule;
+import org.graylog.jest.okhttp.http.Priority;
+import org.graylog.jest.okhttp.ratelimit.RateLimit;
+import org.graylog.jest.okhttp.ratelimit.RateLimiter;
+import org.graylog.jest.okhttp.tenant.TenantScheduler;
 import org.graylog.jest.okhttp.http.okhttp.BasicAuthenticator;
 
 import javax.net.SocketFactory;
@@ -11,14 +21,21 @@ import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
+import java.io.File;
 import java.net.Proxy;
 import java.net.ProxySelector;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,6 +53,41 @@ public class HttpClientConfig extends ClientConfig {
     private final Authenticator proxyAuthenticator;
     private final ProxySelector proxySelector;
     private Set<HttpUrl> preemptiveAuthTargetHosts;
+    private final List<RoutingRule> routingRules;
+    private final String zoneAttribute;
+    private final String localZone;
+    private final int zoneSaturationThreshold;
+    private final long failedServerCooldown;
+    private final boolean failedBulkItemsOnly;
+    private final int bulkMaxRetries;
+    private final long bulkInitialBackoff;
+    private final long bulkMaxBackoff;
+    private final long responseCacheMaxBytes;
+    private final long responseCacheTtl;
+    private final Set<Class<?>> cacheableActions;
+    private final boolean requestCoalescing;
+    private final Set<Class<?>> coalescableActions;
+    private final Map<Class<?>, List<String>> responseFilters;
+    private final List<String> defaultResponseFilter;
+    private final JsonCodec jsonCodec;
+    private final long spillThreshold;
+    private final File spillDirectory;
+    private final Map<Class<?>, Long> actionTimeouts;
+    private final boolean priorityLanes;
+    private final Map<Priority, Integer> laneConcurrency;
+    private final Map<Class<?>, Priority> actionPriorities;
+    private final TenantScheduler tenantScheduler;
+    private final String tenantHeader;
+    private final List<RateLimit> rateLimits;
+    private final RateLimiter.Mode rateLimitMode;
+    private final long maxInFlightBytes;
+    private final boolean blockOnInFlightBytes;
+    private final long getBatchWindow;
+    private final int getBatchMaxSize;
+    private final long searchBatchWindow;
+    private final int searchBatchMaxSize;
+    private final long refreshInterval;
+    private final long shardRoutingRefreshInterval;
 
     public HttpClientConfig(Builder builder) {
         super(builder);
@@ -48,6 +100,41 @@ public class HttpClientConfig extends ClientConfig {
         this.proxyAuthenticator = builder.proxyAuthenticator;
         this.proxySelector = builder.proxySelector;
         this.preemptiveAuthTargetHosts = builder.preemptiveAuthTargetHosts;
+        this.routingRules = Collections.unmodifiableList(new ArrayList<>(builder.routingRules));
+        this.zoneAttribute = builder.zoneAttribute;
+        this.localZone = builder.localZone;
+        this.zoneSaturationThreshold = builder.zoneSaturationThreshold;
+        this.failedServerCooldown = builder.failedServerCooldown;
+        this.failedBulkItemsOnly = builder.failedBulkItemsOnly;
+        this.bulkMaxRetries = builder.bulkMaxRetries;
+        this.bulkInitialBackoff = builder.bulkInitialBackoff;
+        this.bulkMaxBackoff = builder.bulkMaxBackoff;
+        this.responseCacheMaxBytes = builder.responseCacheMaxBytes;
+        this.responseCacheTtl = builder.responseCacheTtl;
+        this.cacheableActions = Collections.unmodifiableSet(new LinkedHashSet<>(builder.cacheableActions));
+        this.requestCoalescing = builder.requestCoalescing;
+        this.coalescableActions = Collections.unmodifiableSet(new LinkedHashSet<>(builder.coalescableActions));
+        this.responseFilters = Collections.unmodifiableMap(new LinkedHashMap<>(builder.responseFilters));
+        this.defaultResponseFilter = Collections.unmodifiableList(new ArrayList<>(builder.defaultResponseFilter));
+        this.jsonCodec = builder.jsonCodec;
+        this.spillThreshold = builder.spillThreshold;
+        this.spillDirectory = builder.spillDirectory;
+        this.actionTimeouts = Collections.unmodifiableMap(new LinkedHashMap<>(builder.actionTimeouts));
+        this.priorityLanes = builder.priorityLanes;
+        this.laneConcurrency = Collections.unmodifiableMap(new EnumMap<>(builder.laneConcurrency));
+        this.actionPriorities = Collections.unmodifiableMap(new LinkedHashMap<>(builder.actionPriorities));
+        this.tenantScheduler = builder.tenantScheduler;
+        this.tenantHeader = builder.tenantHeader;
+        this.rateLimits = Collections.unmodifiableList(new ArrayList<>(builder.rateLimits));
+        this.rateLimitMode = builder.rateLimitMode;
+        this.maxInFlightBytes = builder.maxInFlightBytes;
+        this.blockOnInFlightBytes = builder.blockOnInFlightBytes;
+        this.getBatchWindow = builder.getBatchWindow;
+        this.getBatchMaxSize = builder.getBatchMaxSize;
+        this.searchBatchWindow = builder.searchBatchWindow;
+        this.searchBatchMaxSize = builder.searchBatchMaxSize;
+        this.refreshInterval = builder.refreshInterval;
+        this.shardRoutingRefreshInterval = builder.shardRoutingRefreshInterval;
     }
 
     public int getWriteTimeout() {
@@ -86,6 +173,146 @@ public class HttpClientConfig extends ClientConfig {
         return preemptiveAuthTargetHosts;
     }
 
+    public List<RoutingRule> getRoutingRules() {
+        return routingRules;
+    }
+
+    public String getZoneAttribute() {
+        return zoneAttribute;
+    }
+
+    public String getLocalZone() {
+        return localZone;
+    }
+
+    public int getZoneSaturationThreshold() {
+        return zoneSaturationThreshold;
+    }
+
+    public long getFailedServerCooldown() {
+        return failedServerCooldown;
+    }
+
+    public boolean isFailedBulkItemsOnly() {
+        return failedBulkItemsOnly;
+    }
+
+    public int getBulkMaxRetries() {
+        return bulkMaxRetries;
+    }
+
+    public long getBulkInitialBackoff() {
+        return bulkInitialBackoff;
+    }
+
+    public long getBulkMaxBackoff() {
+        return bulkMaxBackoff;
+    }
+
+    public long getResponseCacheMaxBytes() {
+        return responseCacheMaxBytes;
+    }
+
+    public long getResponseCacheTtl() {
+        return responseCacheTtl;
+    }
+
+    public Set<Class<?>> getCacheableActions() {
+        return cacheableActions;
+    }
+
+    public boolean isRequestCoalescing() {
+        return requestCoalescing;
+    }
+
+    public Set<Class<?>> getCoalescableActions() {
+        return coalescableActions;
+    }
+
+    public Map<Class<?>, List<String>> getResponseFilters() {
+        return responseFilters;
+    }
+
+    public List<String> getDefaultResponseFilter() {
+        return defaultResponseFilter;
+    }
+
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    public long getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public Map<Class<?>, Long> getActionTimeouts() {
+        return actionTimeouts;
+    }
+
+    public boolean isPriorityLanes() {
+        return priorityLanes;
+    }
+
+    public Map<Priority, Integer> getLaneConcurrency() {
+        return laneConcurrency;
+    }
+
+    public Map<Class<?>, Priority> getActionPriorities() {
+        return actionPriorities;
+    }
+
+    public TenantScheduler getTenantScheduler() {
+        return tenantScheduler;
+    }
+
+    public String getTenantHeader() {
+        return tenantHeader;
+    }
+
+    public List<RateLimit> getRateLimits() {
+        return rateLimits;
+    }
+
+    public RateLimiter.Mode getRateLimitMode() {
+        return rateLimitMode;
+    }
+
+    public long getMaxInFlightBytes() {
+        return maxInFlightBytes;
+    }
+
+    public boolean isBlockOnInFlightBytes() {
+        return blockOnInFlightBytes;
+    }
+
+    public long getGetBatchWindow() {
+        return getBatchWindow;
+    }
+
+    public int getGetBatchMaxSize() {
+        return getBatchMaxSize;
+    }
+
+    public long getSearchBatchWindow() {
+        return searchBatchWindow;
+    }
+
+    public int getSearchBatchMaxSize() {
+        return searchBatchMaxSize;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public long getShardRoutingRefreshInterval() {
+        return shardRoutingRefreshInterval;
+    }
+
     public static class Builder extends ClientConfig.AbstractBuilder<HttpClientConfig, Builder> {
 
         private int writeTimeout = 3000;
@@ -97,6 +324,41 @@ public class HttpClientConfig extends ClientConfig {
         private Authenticator proxyAuthenticator;
         private ProxySelector proxySelector;
         private Set<HttpUrl> preemptiveAuthTargetHosts = Collections.emptySet();
+        private List<RoutingRule> routingRules = new ArrayList<>();
+        private String zoneAttribute = "zone";
+        private String localZone;
+        private int zoneSaturationThreshold = 0;
+        private long failedServerCooldown = 10000L;
+        private boolean failedBulkItemsOnly = false;
+        private int bulkMaxRetries = 3;
+        private long bulkInitialBackoff = 50L;
+        private long bulkMaxBackoff = 5000L;
+        private long responseCacheMaxBytes = 0L;
+        private long responseCacheTtl = 1000L;
+        private Set<Class<?>> cacheableActions = new LinkedHashSet<>(Arrays.asList(Search.class, Count.class, Get.class));
+        private boolean requestCoalescing = false;
+        private Set<Class<?>> coalescableActions = new LinkedHashSet<>(Arrays.asList(Search.class, Count.class, Get.class, MultiGet.class));
+        private Map<Class<?>, List<String>> responseFilters = new LinkedHashMap<>();
+        private List<String> defaultResponseFilter = new ArrayList<>();
+        private JsonCodec jsonCodec;
+        private long spillThreshold = 0L;
+        private File spillDirectory;
+        private Map<Class<?>, Long> actionTimeouts = new LinkedHashMap<>();
+        private boolean priorityLanes = false;
+        private Map<Priority, Integer> laneConcurrency = new EnumMap<>(Priority.class);
+        private Map<Class<?>, Priority> actionPriorities = new LinkedHashMap<>();
+        private TenantScheduler tenantScheduler;
+        private String tenantHeader = "X-Tenant-Id";
+        private List<RateLimit> rateLimits = new ArrayList<>();
+        private RateLimiter.Mode rateLimitMode = RateLimiter.Mode.BLOCKING;
+        private long maxInFlightBytes = 0L;
+        private boolean blockOnInFlightBytes = true;
+        private long getBatchWindow = 0L;
+        private int getBatchMaxSize = 100;
+        private long searchBatchWindow = 0L;
+        private int searchBatchMaxSize = 30;
+        private long refreshInterval = 0L;
+        private long shardRoutingRefreshInterval = 0L;
 
         public Builder(HttpClientConfig httpClientConfig) {
             super(httpClientConfig);
@@ -109,6 +371,42 @@ public class HttpClientConfig extends ClientConfig {
             this.proxyAuthenticator = httpClientConfig.proxyAuthenticator;
             this.proxySelector = httpClientConfig.proxySelector;
             this.preemptiveAuthTargetHosts = httpClientConfig.preemptiveAuthTargetHosts;
+            this.routingRules = new ArrayList<>(httpClientConfig.routingRules);
+            this.zoneAttribute = httpClientConfig.zoneAttribute;
+            this.localZone = httpClientConfig.localZone;
+            this.zoneSaturationThreshold = httpClientConfig.zoneSaturationThreshold;
+            this.failedServerCooldown = httpClientConfig.failedServerCooldown;
+            this.failedBulkItemsOnly = httpClientConfig.failedBulkItemsOnly;
+            this.bulkMaxRetries = httpClientConfig.bulkMaxRetries;
+            this.bulkInitialBackoff = httpClientConfig.bulkInitialBackoff;
+            this.bulkMaxBackoff = httpClientConfig.bulkMaxBackoff;
+            this.responseCacheMaxBytes = httpClientConfig.responseCacheMaxBytes;
+            this.responseCacheTtl = httpClientConfig.responseCacheTtl;
+            this.cacheableActions = new LinkedHashSet<>(httpClientConfig.cacheableActions);
+            this.requestCoalescing = httpClientConfig.requestCoalescing;
+            this.coalescableActions = new LinkedHashSet<>(httpClientConfig.coalescableActions);
+            this.responseFilters = new LinkedHashMap<>(httpClientConfig.responseFilters);
+            this.defaultResponseFilter = new ArrayList<>(httpClientConfig.defaultResponseFilter);
+            this.jsonCodec = httpClientConfig.jsonCodec;
+            this.spillThreshold = httpClientConfig.spillThreshold;
+            this.spillDirectory = httpClientConfig.spillDirectory;
+            this.actionTimeouts = new LinkedHashMap<>(httpClientConfig.actionTimeouts);
+            this.priorityLanes = httpClientConfig.priorityLanes;
+            this.laneConcurrency = new EnumMap<>(Priority.class);
+            this.laneConcurrency.putAll(httpClientConfig.laneConcurrency);
+            this.actionPriorities = new LinkedHashMap<>(httpClientConfig.actionPriorities);
+            this.tenantScheduler = httpClientConfig.tenantScheduler;
+            this.tenantHeader = httpClientConfig.tenantHeader;
+            this.rateLimits = new ArrayList<>(httpClientConfig.rateLimits);
+            this.rateLimitMode = httpClientConfig.rateLimitMode;
+            this.maxInFlightBytes = httpClientConfig.maxInFlightBytes;
+            this.blockOnInFlightBytes = httpClientConfig.blockOnInFlightBytes;
+            this.getBatchWindow = httpClientConfig.getBatchWindow;
+            this.getBatchMaxSize = httpClientConfig.getBatchMaxSize;
+            this.searchBatchWindow = httpClientConfig.searchBatchWindow;
+            this.searchBatchMaxSize = httpClientConfig.searchBatchMaxSize;
+            this.refreshInterval = httpClientConfig.refreshInterval;
+            this.shardRoutingRefreshInterval = httpClientConfig.shardRoutingRefreshInterval;
         }
 
         public Builder(Collection<String> serverUris) {
@@ -230,6 +528,347 @@ public class HttpClientConfig extends ClientConfig {
             return this;
         }
 
+        /**
+         * Adds a rule routing a class of actions to a subset of the discovered nodes.
+         * <p>
+         * Rules are evaluated in the order they have been added and the first rule applying to an action wins.
+         * Routing rules require node discovery to be enabled.
+         * </p>
+         *
+         * @see RoutingRule
+         */
+        public Builder routingRule(RoutingRule routingRule) {
+            this.routingRules.add(routingRule);
+            return this;
+        }
+
+        public Builder routingRules(List<RoutingRule> routingRules) {
+            if (routingRules != null) {
+                this.routingRules = new ArrayList<>(routingRules);
+            }
+            return this;
+        }
+
+        /**
+         * Prefer discovered nodes in the given zone, e. g. nodes started with <code>node.attr.zone: us-east-1a</code>.
+         * <p>
+         * Requests only spill over to nodes in other zones if all nodes in the local zone are unhealthy or saturated.
+         * Zone awareness requires node discovery to be enabled, use {@link #discoveryFilter(String)} to restrict
+         * the set of discovered nodes.
+         * </p>
+         *
+         * @param zoneAttribute the node attribute holding the zone of a node, <code>zone</code> by default
+         * @param localZone     the zone of this client
+         */
+        public Builder localZone(String zoneAttribute, String localZone) {
+            this.zoneAttribute = zoneAttribute;
+            this.localZone = localZone;
+            return this;
+        }
+
+        public Builder localZone(String localZone) {
+            this.localZone = localZone;
+            return this;
+        }
+
+        /**
+         * Sets the number of in-flight requests after which a server is considered saturated and requests spill over
+         * to servers in other zones. <code>0</code> (the default) disables the saturation check.
+         */
+        public Builder zoneSaturationThreshold(int maxInFlightRequestsPerServer) {
+            this.zoneSaturationThreshold = maxInFlightRequestsPerServer;
+            return this;
+        }
+
+        /**
+         * Sets the time in milliseconds a server is avoided after a failed request, 10 seconds by default.
+         */
+        public Builder failedServerCooldown(long failedServerCooldown) {
+            this.failedServerCooldown = failedServerCooldown;
+            return this;
+        }
+
+        /**
+         * Only materialize the failed items of bulk responses instead of parsing every item.
+         * <p>
+         * Successful bulk responses are acknowledged without reading their items at all. Results of bulk actions are
+         * instances of {@link org.graylog.jest.okhttp.bulk.FailedItemsBulkResult} in this case.
+         * </p>
+         */
+        public Builder failedBulkItemsOnly(boolean failedBulkItemsOnly) {
+            this.failedBulkItemsOnly = failedBulkItemsOnly;
+            return this;
+        }
+
+        /**
+         * Sets the retry policy for rejected bulk items used by
+         * {@link org.graylog.jest.okhttp.http.JestHttpClient#executeWithRetries(List, java.util.function.Function)}.
+         *
+         * @param maxRetries     maximum number of retries of rejected items, 3 by default
+         * @param initialBackoff initial backoff in milliseconds, 50 ms by default
+         * @param maxBackoff     maximum backoff in milliseconds, 5 seconds by default
+         */
+        public Builder bulkRetries(int maxRetries, long initialBackoff, long maxBackoff) {
+            this.bulkMaxRetries = maxRetries;
+            this.bulkInitialBackoff = initialBackoff;
+            this.bulkMaxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * Enables caching the responses of read-only actions.
+         *
+         * @param maxBytes the approximate maximum size of all cached responses in bytes, <code>0</code> disables caching
+         * @param ttl      the time to live of a cached response in milliseconds
+         * @see #cacheableActions(Set)
+         */
+        public Builder responseCache(long maxBytes, long ttl) {
+            this.responseCacheMaxBytes = maxBytes;
+            this.responseCacheTtl = ttl;
+            return this;
+        }
+
+        /**
+         * Sets the action types whose responses may be cached, {@link Search}, {@link Count} and {@link Get} by default.
+         * Scrolls and actions which aren't read-only are never cached, even if their type has been added.
+         */
+        public Builder cacheableActions(Set<Class<?>> cacheableActions) {
+            if (cacheableActions != null) {
+                this.cacheableActions = new LinkedHashSet<>(cacheableActions);
+            }
+            return this;
+        }
+
+        /**
+         * Lets identical idempotent requests which are in flight at the same time share a single HTTP call.
+         * The result is shared by all callers and must be treated as read-only.
+         *
+         * @see #coalescableActions(Set)
+         */
+        public Builder requestCoalescing(boolean requestCoalescing) {
+            this.requestCoalescing = requestCoalescing;
+            return this;
+        }
+
+        /**
+         * Sets the action types which may be coalesced, {@link Search}, {@link Count}, {@link Get} and
+         * {@link MultiGet} by default. Scrolls and actions which aren't read-only are never coalesced, even if their
+         * type has been added.
+         */
+        public Builder coalescableActions(Set<Class<?>> coalescableActions) {
+            if (coalescableActions != null) {
+                this.coalescableActions = new LinkedHashSet<>(coalescableActions);
+            }
+            return this;
+        }
+
+        /**
+         * Restricts responses of the given action type to the given <code>filter_path</code> expressions, e.g.
+         * <code>hits.hits._source</code> and <code>aggregations</code> for searches. <code>error</code> and
+         * <code>status</code> are always kept. Result types return <code>null</code> for fields which have been
+         * filtered out, so only filter fields the application does not read.
+         * <p>
+         * Actions which already carry a <code>filter_path</code> parameter are left unchanged.
+         * </p>
+         */
+        public Builder responseFilter(Class<?> actionType, String... filterPaths) {
+            this.responseFilters.put(actionType, Arrays.asList(filterPaths));
+            return this;
+        }
+
+        /**
+         * Restricts responses of all actions without a more specific {@link #responseFilter(Class, String...)} to
+         * the given <code>filter_path</code> expressions.
+         */
+        public Builder defaultResponseFilter(String... filterPaths) {
+            this.defaultResponseFilter = Arrays.asList(filterPaths);
+            return this;
+        }
+
+        /**
+         * Sets a custom codec for request payloads and responses, the {@link org.graylog.jest.okhttp.codec.GsonJsonCodec}
+         * based on the configured Gson instance is used by default.
+         */
+        public Builder jsonCodec(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+            return this;
+        }
+
+        /**
+         * Buffers request bodies larger than the given number of bytes in temporary files, so that large bulk
+         * requests do not stay on the heap while they are sent and can be replayed from disk on retries.
+         * Disabled by default.
+         */
+        public Builder spillThreshold(long spillThreshold) {
+            this.spillThreshold = spillThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the directory for temporary request body files, the default temporary directory is used by default.
+         */
+        public Builder spillDirectory(File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        /**
+         * Gives actions of the given type their own time budget instead of the connect, read and write timeouts.
+         * Calls are cancelled once the budget is used up and searches pass the remaining budget on to
+         * Elasticsearch as <code>timeout</code>. The first matching action type wins.
+         */
+        public Builder actionTimeout(Class<?> actionType, long timeoutMillis) {
+            this.actionTimeouts.put(actionType, timeoutMillis);
+            return this;
+        }
+
+        /**
+         * Runs calls in separate lanes per {@link Priority}, each with its own concurrency budget and queue, so
+         * that batch work can't starve interactive requests. All lanes share the same connection pool.
+         */
+        public Builder priorityLanes(boolean priorityLanes) {
+            this.priorityLanes = priorityLanes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent calls of the given lane, 64 by default.
+         */
+        public Builder laneConcurrency(Priority priority, int maxConcurrency) {
+            this.laneConcurrency.put(priority, maxConcurrency);
+            return this;
+        }
+
+        /**
+         * Runs actions of the given type in the lane of the given priority, all other actions use
+         * {@link Priority#NORMAL}. The first matching action type wins.
+         */
+        public Builder actionPriority(Class<?> actionType, Priority priority) {
+            this.actionPriorities.put(actionType, priority);
+            return this;
+        }
+
+        /**
+         * Admits calls through the given scheduler, which queues them per tenant in weighted fair order and enforces
+         * the quotas of each tenant before they reach the HTTP client. Disabled by default.
+         *
+         * @see #tenantHeader(String)
+         */
+        public Builder tenantScheduler(TenantScheduler tenantScheduler) {
+            this.tenantScheduler = tenantScheduler;
+            return this;
+        }
+
+        /**
+         * Sets the action header holding the tenant key of a call, <code>X-Tenant-Id</code> by default. Calls without
+         * the header belong to {@link TenantScheduler#DEFAULT_TENANT}.
+         */
+        public Builder tenantHeader(String tenantHeader) {
+            this.tenantHeader = tenantHeader;
+            return this;
+        }
+
+        /**
+         * Limits the calls of the given action type across all servers, allowing bursts of up to one second worth of
+         * calls.
+         */
+        public Builder rateLimit(Class<?> actionType, double permitsPerSecond) {
+            return rateLimit(actionType, permitsPerSecond, Math.max(1.0d, permitsPerSecond));
+        }
+
+        /**
+         * Limits the calls of the given action type across all servers. Actions are limited by the first matching
+         * action type, limits can be changed at runtime through {@link org.graylog.jest.okhttp.http.JestHttpClient#getRateLimiter()}.
+         */
+        public Builder rateLimit(Class<?> actionType, double permitsPerSecond, double burst) {
+            this.rateLimits.add(new RateLimit(actionType, null, permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Limits the calls of the given action type to the given server, in addition to a limit across all servers.
+         */
+        public Builder rateLimit(Class<?> actionType, String server, double permitsPerSecond, double burst) {
+            this.rateLimits.add(new RateLimit(actionType, server, permitsPerSecond, burst));
+            return this;
+        }
+
+        /**
+         * Sets whether rate limited calls wait for their turn or fail with a
+         * {@link org.graylog.jest.okhttp.ratelimit.RateLimitExceededException}, blocking by default. Asynchronous calls
+         * block the calling thread in blocking mode.
+         */
+        public Builder rateLimitMode(RateLimiter.Mode rateLimitMode) {
+            this.rateLimitMode = rateLimitMode;
+            return this;
+        }
+
+        /**
+         * Bounds the bytes of request and response bodies held by calls in flight, accounted with their content
+         * lengths until the response has been consumed. Disabled by default.
+         */
+        public Builder maxInFlightBytes(long maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+            return this;
+        }
+
+        /**
+         * Sets whether calls exceeding the in-flight bytes budget wait for other calls to complete or fail with a
+         * {@link org.graylog.jest.okhttp.ratelimit.ByteBudgetExceededException}, blocking by default.
+         */
+        public Builder blockOnInFlightBytes(boolean blockOnInFlightBytes) {
+            this.blockOnInFlightBytes = blockOnInFlightBytes;
+            return this;
+        }
+
+        /**
+         * Collects concurrent {@link Get} actions into multi get requests, sent once the given window has elapsed
+         * or the batch holds the given number of gets. Batched gets bypass the response cache and request
+         * coalescing. Disabled by default.
+         *
+         * @param windowMillis maximum time in milliseconds a get waits for others to join its batch
+         * @param maxBatchSize maximum number of gets per multi get, 100 by default
+         */
+        public Builder getBatching(long windowMillis, int maxBatchSize) {
+            this.getBatchWindow = windowMillis;
+            this.getBatchMaxSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Collects concurrent {@link Search} actions into multi search requests, sent once the given window has
+         * elapsed or the batch holds the given number of searches. Each search still receives its own result or
+         * failure. Batched searches bypass the response cache and request coalescing. Disabled by default.
+         *
+         * @param windowMillis maximum time in milliseconds a search waits for others to join its batch
+         * @param maxBatchSize maximum number of searches per multi search, 30 by default
+         */
+        public Builder searchBatching(long windowMillis, int maxBatchSize) {
+            this.searchBatchWindow = windowMillis;
+            this.searchBatchMaxSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Coalesces {@link io.searchbox.indices.Refresh refreshes} and {@link io.searchbox.indices.Flush flushes} of
+         * the same indices within the given interval into a single call, sent once the interval has elapsed.
+         * Disabled by default.
+         */
+        public Builder refreshInterval(long intervalMillis) {
+            this.refreshInterval = intervalMillis;
+            return this;
+        }
+
+        /**
+         * Sends the items of {@link org.graylog.jest.okhttp.bulk.RawBulk raw bulk requests} directly to the nodes
+         * holding their primary shards, based on the routing table of the cluster state which is refreshed after the
+         * given interval. Requires node discovery. Disabled by default.
+         */
+        public Builder shardAwareBulks(long routingRefreshIntervalMillis) {
+            this.shardRoutingRefreshInterval = routingRefreshIntervalMillis;
+            return this;
+        }
+
         public HttpClientConfig build() {
             // Lazily initialize if necessary, as the call can be expensive when done eagerly.
             if (this.authenticator == null) {
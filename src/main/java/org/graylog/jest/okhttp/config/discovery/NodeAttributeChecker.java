@@ -0,0 +1,217 @@
+package org.graylog.jest.okhttp.config.discovery;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.config.discovery.NodeChecker;
+import io.searchbox.client.config.exception.CouldNotConnectException;
+import io.searchbox.cluster.NodesInfo;
+import okhttp3.HttpUrl;
+import org.graylog.jest.okhttp.config.HttpClientConfig;
+import org.graylog.jest.okhttp.http.JestHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Node discovery which, in addition to the server list maintained by {@link NodeChecker}, keeps track of the
+ * roles and custom attributes of the discovered nodes so that requests can be routed to a subset of the cluster.
+ *
+ * @see org.graylog.jest.okhttp.config.routing.RoutingRule
+ */
+public class NodeAttributeChecker extends NodeChecker {
+    private static final Logger log = LoggerFactory.getLogger(NodeAttributeChecker.class);
+
+    // Matches "inet[/127.0.0.1:9200]" (Elasticsearch 1.x), "hostname/127.0.0.1:9200" and "127.0.0.1:9200"
+    private static final Pattern INET_ADDRESS_PATTERN = Pattern.compile("(?:inet\\[)?(?:(?:[^:]+)?/)?([^:]+):(\\d+)]?");
+
+    private final JestHttpClient client;
+    private final Action<JestResult> action;
+    private final String defaultScheme;
+    private final Set<String> bootstrapServerList;
+    private volatile Set<String> discoveredServers;
+
+    public NodeAttributeChecker(JestHttpClient client, HttpClientConfig httpClientConfig) {
+        super(client, httpClientConfig);
+        this.client = client;
+
+        final NodesInfo.Builder builder = new NodesInfo.Builder().withHttp();
+        if (!Strings.isNullOrEmpty(httpClientConfig.getDiscoveryFilter())) {
+            builder.addNode(httpClientConfig.getDiscoveryFilter());
+        }
+        this.action = builder.build();
+        this.defaultScheme = normalizeScheme(httpClientConfig.getDefaultSchemeForDiscoveredNodes());
+        this.bootstrapServerList = ImmutableSet.copyOf(httpClientConfig.getServerList());
+        this.discoveredServers = bootstrapServerList;
+    }
+
+    @Override
+    protected void runOneIteration() throws Exception {
+        final JestResult result;
+        try {
+            result = client.execute(action);
+        } catch (CouldNotConnectException e) {
+            log.error("Connect exception executing NodesInfo", e);
+            removeServer(e.getHost());
+            return;
+        } catch (Exception e) {
+            log.error("Error executing NodesInfo, falling back to bootstrap server list", e);
+            discoveredServers = bootstrapServerList;
+            client.setServers(bootstrapServerList);
+            client.setNodes(Collections.emptySet());
+            return;
+        }
+
+        if (!result.isSucceeded()) {
+            log.warn("NodesInfo request resulted in error: {}", result.getErrorMessage());
+            return;
+        }
+
+        final List<NodeInfo> nodes = parseNodes(result.getJsonObject(), defaultScheme);
+        if (nodes.isEmpty()) {
+            log.warn("No nodes with HTTP enabled found, keeping current server list");
+            return;
+        }
+
+        final Set<String> servers = new LinkedHashSet<>(nodes.size());
+        for (NodeInfo node : nodes) {
+            servers.add(node.getServer());
+        }
+
+        log.debug("Discovered {} nodes: {}", nodes.size(), nodes);
+        discoveredServers = servers;
+        client.setServers(servers);
+        client.setNodes(nodes);
+    }
+
+    /**
+     * Removes the unreachable server from the server list and its node from the discovered nodes, like
+     * {@link NodeChecker} does, and falls back to the bootstrap server list once no server is left.
+     *
+     * @param host the URL the connection failed for, possibly including the path of the request
+     */
+    private void removeServer(String host) {
+        final HttpUrl url = HttpUrl.parse(host);
+        final Set<String> servers = new LinkedHashSet<>(discoveredServers);
+        servers.removeIf(server -> isServerOf(server, host, url));
+        final List<NodeInfo> nodes = new ArrayList<>(client.getNodes());
+        nodes.removeIf(node -> isServerOf(node.getServer(), host, url));
+
+        log.warn("Removing unreachable server {}", host);
+        if (servers.isEmpty()) {
+            discoveredServers = bootstrapServerList;
+            client.setServers(bootstrapServerList);
+            client.setNodes(Collections.emptySet());
+        } else {
+            discoveredServers = servers;
+            client.setServers(servers);
+            client.setNodes(nodes);
+        }
+    }
+
+    private static boolean isServerOf(String server, String host, HttpUrl url) {
+        if (server.equals(host)) {
+            return true;
+        }
+        final HttpUrl serverUrl = HttpUrl.parse(server);
+        return url != null && serverUrl != null && serverUrl.scheme().equals(url.scheme())
+                && serverUrl.host().equals(url.host()) && serverUrl.port() == url.port();
+    }
+
+    @VisibleForTesting
+    static List<NodeInfo> parseNodes(JsonObject nodesInfo, String scheme) {
+        final JsonElement nodesElement = nodesInfo == null ? null : nodesInfo.get("nodes");
+        if (nodesElement == null || !nodesElement.isJsonObject()) {
+            return Collections.emptyList();
+        }
+
+        final List<NodeInfo> nodes = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : nodesElement.getAsJsonObject().entrySet()) {
+            final JsonObject node = entry.getValue().getAsJsonObject();
+            final String address = httpAddress(node);
+            if (address == null) {
+                continue;
+            }
+
+            final Matcher matcher = INET_ADDRESS_PATTERN.matcher(address);
+            if (!matcher.matches()) {
+                log.debug("Couldn't parse HTTP address \"{}\" of node {}", address, entry.getKey());
+                continue;
+            }
+
+            final Map<String, String> attributes = attributes(node);
+            final String server = scheme + matcher.group(1) + ":" + matcher.group(2);
+            nodes.add(new NodeInfo(entry.getKey(), server, roles(node, attributes), attributes));
+        }
+
+        return nodes;
+    }
+
+    private static String httpAddress(JsonObject node) {
+        final JsonElement http = node.get("http");
+        if (http != null && http.isJsonObject()) {
+            final JsonElement publishAddress = http.getAsJsonObject().get("publish_address");
+            if (publishAddress != null && publishAddress.isJsonPrimitive()) {
+                return publishAddress.getAsString();
+            }
+        }
+
+        final JsonElement httpAddress = node.get("http_address");
+        return httpAddress != null && httpAddress.isJsonPrimitive() ? httpAddress.getAsString() : null;
+    }
+
+    private static Map<String, String> attributes(JsonObject node) {
+        final JsonElement attributesElement = node.get("attributes");
+        if (attributesElement == null || !attributesElement.isJsonObject()) {
+            return Collections.emptyMap();
+        }
+
+        final Map<String, String> attributes = new HashMap<>();
+        for (Map.Entry<String, JsonElement> attribute : attributesElement.getAsJsonObject().entrySet()) {
+            if (attribute.getValue().isJsonPrimitive()) {
+                attributes.put(attribute.getKey(), attribute.getValue().getAsString());
+            }
+        }
+        return attributes;
+    }
+
+    private static Set<String> roles(JsonObject node, Map<String, String> attributes) {
+        final Set<String> roles = new HashSet<>();
+        final JsonElement rolesElement = node.get("roles");
+        if (rolesElement != null && rolesElement.isJsonArray()) {
+            for (JsonElement role : rolesElement.getAsJsonArray()) {
+                roles.add(role.getAsString());
+            }
+        } else {
+            // Elasticsearch 2.x and earlier only expose the node type through the "master" and "data" attributes
+            if (!"false".equals(attributes.get("master"))) {
+                roles.add(NodeInfo.ROLE_MASTER);
+            }
+            if (!"false".equals(attributes.get("data"))) {
+                roles.add(NodeInfo.ROLE_DATA);
+            }
+        }
+        return roles;
+    }
+
+    private static String normalizeScheme(String scheme) {
+        if (Strings.isNullOrEmpty(scheme)) {
+            return "http://";
+        }
+        return scheme.endsWith("://") ? scheme : scheme + "://";
+    }
+}
@@ -0,0 +1,95 @@
+package org.graylog.jest.okhttp.config.discovery;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable view of a single discovered Elasticsearch node: its HTTP address, roles and custom node attributes.
+ */
+public class NodeInfo {
+    public static final String ROLE_MASTER = "master";
+    public static final String ROLE_DATA = "data";
+    public static final String ROLE_INGEST = "ingest";
+
+    private final String id;
+    private final String server;
+    private final Set<String> roles;
+    private final Map<String, String> attributes;
+
+    public NodeInfo(String id, String server, Set<String> roles, Map<String, String> attributes) {
+        this.id = requireNonNull(id, "Node id must not be null");
+        this.server = requireNonNull(server, "Server must not be null");
+        this.roles = Collections.unmodifiableSet(new HashSet<>(roles));
+        this.attributes = Collections.unmodifiableMap(new HashMap<>(attributes));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the server URI of this node as used by the client, e. g. <code>http://10.0.0.1:9200</code>
+     */
+    public String getServer() {
+        return server;
+    }
+
+    public Set<String> getRoles() {
+        return roles;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    public boolean hasRole(String role) {
+        return roles.contains(role);
+    }
+
+    public String getAttribute(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * @return <code>true</code> if the node is neither master-eligible, nor a data or ingest node
+     */
+    public boolean isCoordinatingOnly() {
+        return !hasRole(ROLE_MASTER) && !hasRole(ROLE_DATA) && !hasRole(ROLE_INGEST);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        NodeInfo nodeInfo = (NodeInfo) o;
+        return Objects.equals(id, nodeInfo.id) &&
+                Objects.equals(server, nodeInfo.server) &&
+                Objects.equals(roles, nodeInfo.roles) &&
+                Objects.equals(attributes, nodeInfo.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, server, roles, attributes);
+    }
+
+    @Override
+    public String toString() {
+        return "NodeInfo{" +
+                "id='" + id + '\'' +
+                ", server='" + server + '\'' +
+                ", roles=" + roles +
+                ", attributes=" + attributes +
+                '}';
+    }
+}
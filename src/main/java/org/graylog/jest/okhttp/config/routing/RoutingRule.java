@@ -0,0 +1,135 @@
+package org.graylog.jest.okhttp.config.routing;
+
+import io.searchbox.action.Action;
+import org.graylog.jest.okhttp.config.discovery.NodeInfo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Maps a class of actions to the subset of discovered nodes which should serve them.
+ * <p>
+ * Nodes are selected by their roles and custom node attributes as reported by the Nodes Info API, so routing rules
+ * require node discovery to be enabled. If no discovered node matches a rule, the full server pool is used.
+ * </p>
+ * <pre>
+ * // send searches to coordinating-only nodes and keep bulk requests on ingest nodes
+ * new HttpClientConfig.Builder("http://localhost:9200")
+ *     .discoveryEnabled(true)
+ *     .routingRule(new RoutingRule.Builder(Search.class).coordinatingOnly().build())
+ *     .routingRule(new RoutingRule.Builder(Bulk.class).requireRole("ingest").build())
+ *     .build();
+ * </pre>
+ */
+public class RoutingRule {
+    /**
+     * Matches all actions of the cluster administration API, i. e. all actions in the <code>io.searchbox.cluster</code> package.
+     */
+    public static final Predicate<Action<?>> CLUSTER_ADMIN_ACTIONS =
+            action -> action.getClass().getName().startsWith("io.searchbox.cluster.");
+
+    private final Predicate<Action<?>> actionMatcher;
+    private final Set<String> requiredRoles;
+    private final Map<String, String> requiredAttributes;
+    private final boolean coordinatingOnly;
+
+    private RoutingRule(Builder builder) {
+        this.actionMatcher = builder.actionMatcher;
+        this.requiredRoles = Collections.unmodifiableSet(new HashSet<>(builder.requiredRoles));
+        this.requiredAttributes = Collections.unmodifiableMap(new HashMap<>(builder.requiredAttributes));
+        this.coordinatingOnly = builder.coordinatingOnly;
+    }
+
+    public boolean appliesTo(Action<?> action) {
+        return actionMatcher.test(action);
+    }
+
+    public boolean matches(NodeInfo node) {
+        if (coordinatingOnly && !node.isCoordinatingOnly()) {
+            return false;
+        }
+        if (!node.getRoles().containsAll(requiredRoles)) {
+            return false;
+        }
+        for (Map.Entry<String, String> attribute : requiredAttributes.entrySet()) {
+            if (!attribute.getValue().equals(node.getAttribute(attribute.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Set<String> getRequiredRoles() {
+        return requiredRoles;
+    }
+
+    public Map<String, String> getRequiredAttributes() {
+        return requiredAttributes;
+    }
+
+    public boolean isCoordinatingOnly() {
+        return coordinatingOnly;
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingRule{" +
+                "requiredRoles=" + requiredRoles +
+                ", requiredAttributes=" + requiredAttributes +
+                ", coordinatingOnly=" + coordinatingOnly +
+                '}';
+    }
+
+    public static class Builder {
+        private final Predicate<Action<?>> actionMatcher;
+        private final Set<String> requiredRoles = new HashSet<>();
+        private final Map<String, String> requiredAttributes = new HashMap<>();
+        private boolean coordinatingOnly = false;
+
+        /**
+         * @param actionType the rule applies to all actions which are instances of this type
+         */
+        public Builder(Class<?> actionType) {
+            requireNonNull(actionType, "Action type must not be null");
+            this.actionMatcher = actionType::isInstance;
+        }
+
+        public Builder(Predicate<Action<?>> actionMatcher) {
+            this.actionMatcher = requireNonNull(actionMatcher, "Action matcher must not be null");
+        }
+
+        /**
+         * Only route to nodes with the given role, e. g. <code>ingest</code> or <code>data</code>.
+         */
+        public Builder requireRole(String role) {
+            this.requiredRoles.add(role);
+            return this;
+        }
+
+        /**
+         * Only route to nodes with the given custom attribute, e. g. <code>node.attr.box_type: hot</code>.
+         */
+        public Builder requireAttribute(String name, String value) {
+            this.requiredAttributes.put(name, value);
+            return this;
+        }
+
+        /**
+         * Only route to nodes which are neither master-eligible, nor data or ingest nodes.
+         */
+        public Builder coordinatingOnly() {
+            this.coordinatingOnly = true;
+            return this;
+        }
+
+        public RoutingRule build() {
+            return new RoutingRule(this);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.graylog.jest.okhttp.http;
+
+import okhttp3.Call;
+import okhttp3.Request;
+import org.graylog.jest.okhttp.ratelimit.ByteBudget;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call state attached to every {@link Request} prepared by {@link JestHttpClient} as its tag.
+ */
+final class CallContext {
+    static final CallContext NONE = new CallContext(null);
+
+    final String server;
+    /**
+     * Type of the action of the call, <code>null</code> for internal calls.
+     */
+    final Class<?> actionType;
+    /**
+     * Time budget of the call in milliseconds, <code>0</code> if the call has no deadline.
+     */
+    final long timeoutMillis;
+    final long deadlineNanos;
+    final Priority priority;
+    /**
+     * Tenant key of the call, <code>null</code> for calls without a tenant.
+     */
+    final String tenant;
+    /**
+     * Number of actions sent with the call, i. e. the tokens it takes from the rate limit of its action type.
+     */
+    final int actionCount;
+    /**
+     * Time at which an asynchronous call has been enqueued, <code>0</code> for synchronous calls.
+     */
+    volatile long enqueuedNanos = 0L;
+    /**
+     * Bytes of the byte budget reserved for the request body, given back once the response has arrived.
+     */
+    volatile ByteBudget.Reservation requestReservation;
+    private volatile ScheduledFuture<?> cancellation;
+    private final Queue<Runnable> releases = new ConcurrentLinkedQueue<>();
+
+    CallContext(String server) {
+        this(null, server, 0L, Priority.NORMAL, null);
+    }
+
+    CallContext(Class<?> actionType, String server, long timeoutMillis, Priority priority, String tenant) {
+        this(actionType, server, timeoutMillis, priority, tenant, 1);
+    }
+
+    CallContext(Class<?> actionType, String server, long timeoutMillis, Priority priority, String tenant, int actionCount) {
+        this.actionType = actionType;
+        this.server = server;
+        this.timeoutMillis = timeoutMillis;
+        this.priority = priority;
+        this.tenant = tenant;
+        this.actionCount = actionCount;
+        this.deadlineNanos = timeoutMillis > 0L ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0L;
+    }
+
+    static CallContext of(Request request) {
+        final Object tag = request.tag();
+        return tag instanceof CallContext ? (CallContext) tag : NONE;
+    }
+
+    boolean hasDeadline() {
+        return timeoutMillis > 0L;
+    }
+
+    /**
+     * @return the remaining time budget in milliseconds, never less than <code>0</code>
+     */
+    long remainingMillis() {
+        return Math.max(0L, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    boolean isExpired() {
+        return hasDeadline() && deadlineNanos - System.nanoTime() <= 0L;
+    }
+
+    /**
+     * Cancels the given call once the deadline has passed.
+     */
+    void cancelAtDeadline(Call call) {
+        if (hasDeadline()) {
+            cancellation = DeadlineTimer.schedule(call::cancel, deadlineNanos - System.nanoTime());
+        }
+    }
+
+    /**
+     * Holds the given permit of a priority lane until the call has completed.
+     */
+    void holdPermit(Semaphore semaphore) {
+        releases.add(semaphore::release);
+    }
+
+    /**
+     * Runs the given action once the call has completed.
+     */
+    void onCompleted(Runnable release) {
+        releases.add(release);
+    }
+
+    /**
+     * Stops watching the deadline and releases the slot of the call, to be called once the response has been
+     * consumed.
+     */
+    void completed() {
+        final ScheduledFuture<?> future = cancellation;
+        if (future != null) {
+            future.cancel(false);
+        }
+        Runnable release;
+        while ((release = releases.poll()) != null) {
+            release.run();
+        }
+    }
+
+    /**
+     * @return a timeout exception if the given failure has been caused by the expired deadline, the failure otherwise
+     */
+    IOException translate(IOException e) {
+        if (isExpired() && !(e instanceof SocketTimeoutException)) {
+            final SocketTimeoutException timeout = new SocketTimeoutException("Deadline of " + timeoutMillis + "ms exceeded");
+            timeout.initCause(e);
+            return timeout;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,30 @@
+package org.graylog.jest.okhttp.http;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared timer cancelling calls whose deadline has passed.
+ */
+final class DeadlineTimer {
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private DeadlineTimer() {
+    }
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "jest-deadline-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most calls complete before their deadline, don't keep their cancelled tasks around
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        return EXECUTOR.schedule(task, Math.max(0L, delayNanos), TimeUnit.NANOSECONDS);
+    }
+}
@@ -2,15 +2,20 @@ package org.graylog.jest.okhttp.http;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
 import io.searchbox.action.Action;
 import io.searchbox.client.AbstractJestClient;
 import io.searchbox.client.JestResult;
 import io.searchbox.client.JestResultHandler;
 import io.searchbox.client.config.exception.CouldNotConnectException;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.BulkResult;
+import io.searchbox.core.Search;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -19,14 +24,63 @@ import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.conn.HttpHostConnectException;
+import org.graylog.jest.okhttp.action.Actions;
+import org.graylog.jest.okhttp.action.MultiAction;
+import org.graylog.jest.okhttp.action.StreamingAction;
+import org.graylog.jest.okhttp.batch.ActionBatcher;
+import org.graylog.jest.okhttp.bulk.BulkResponseParser;
+import org.graylog.jest.okhttp.bulk.CollapsingBulkBuffer;
+import org.graylog.jest.okhttp.bulk.FailedItemsBulkResult;
+import org.graylog.jest.okhttp.bulk.RawBulk;
+import org.graylog.jest.okhttp.bulk.RetryingBulkExecutor;
+import org.graylog.jest.okhttp.bulk.RetryingBulkResult;
+import org.graylog.jest.okhttp.bulk.ShardRouter;
+import org.graylog.jest.okhttp.cache.CachedResponse;
+import org.graylog.jest.okhttp.cache.RequestCoalescer;
+import org.graylog.jest.okhttp.cache.RequestKey;
+import org.graylog.jest.okhttp.cache.ResponseCache;
+import org.graylog.jest.okhttp.codec.GsonJsonCodec;
+import org.graylog.jest.okhttp.codec.JsonCodec;
+import org.graylog.jest.okhttp.config.discovery.NodeInfo;
+import org.graylog.jest.okhttp.config.routing.RoutingRule;
+import org.graylog.jest.okhttp.http.okhttp.ByteCountingResponseBody;
+import org.graylog.jest.okhttp.http.okhttp.SpilledRequestBody;
+import org.graylog.jest.okhttp.http.okhttp.StreamingActionRequestBody;
+import org.graylog.jest.okhttp.ratelimit.ByteBudget;
+import org.graylog.jest.okhttp.ratelimit.RateLimiter;
+import org.graylog.jest.okhttp.ratelimit.ThrottledException;
+import org.graylog.jest.okhttp.scroll.SlicedScrollExporter;
+import org.graylog.jest.okhttp.search.HitIterator;
+import org.graylog.jest.okhttp.stats.ServerStatsRegistry;
+import org.graylog.jest.okhttp.tenant.TenantScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * @author Dogukan Sonmez
@@ -35,6 +89,8 @@ import java.util.concurrent.TimeUnit;
 public class JestHttpClient extends AbstractJestClient {
 
     private final static Logger log = LoggerFactory.getLogger(JestHttpClient.class);
+    private static final String TIMEOUT = "timeout";
+    private static final int MAX_CLIENT_VIEWS = 64;
 
     protected MediaType requestContentType = MediaType.parse("application/json; utf-8");
 
@@ -42,33 +98,476 @@ public class JestHttpClient extends AbstractJestClient {
 
     private HttpClientContext httpClientContextTemplate;
 
+    private final ServerStatsRegistry serverStats = new ServerStatsRegistry();
+
+    private final ServerSelector serverSelector = new ServerSelector(serverStats);
+
+    private volatile BulkResponseParser bulkResponseParser;
+
+    private volatile RetryingBulkExecutor retryingBulkExecutor;
+
+    private volatile ResponseCache responseCache;
+
+    private volatile RequestCoalescer requestCoalescer;
+
+    private volatile ResponseFilters responseFilters = ResponseFilters.NONE;
+
+    private volatile Map<String, HttpUrl> serverUrls = Collections.emptyMap();
+
+    private volatile JsonCodec jsonCodec = new GsonJsonCodec(gson);
+
+    private volatile long spillThreshold = 0L;
+
+    private volatile Map<Class<?>, Long> actionTimeouts = Collections.emptyMap();
+
+    private final ConcurrentMap<ClientView, OkHttpClient> clientViews = new ConcurrentHashMap<>();
+
+    private volatile PriorityLanes priorityLanes;
+
+    private volatile Map<Class<?>, Priority> actionPriorities = Collections.emptyMap();
+
+    private volatile File spillDirectory;
+
+    private volatile TenantScheduler tenantScheduler;
+
+    private volatile String tenantHeader;
+
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    private volatile ByteBudget byteBudget;
+
+    private final Interceptor byteBudgetInterceptor = this::reserveBodyBytes;
+
+    private volatile List<ActionBatcher<?, ?>> batchers = Collections.emptyList();
+
+    private volatile ShardRouter shardRouter;
+
     /**
      * @throws IOException              in case of a problem or the connection was aborted during request,
      *                                  or in case of a problem while reading the response stream
      * @throws CouldNotConnectException if an {@link HttpHostConnectException} is encountered
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends JestResult> T execute(Action<T> clientRequest) throws IOException {
-        Request request = prepareRequest(clientRequest);
-        Response response = null;
+        final ActionBatcher<?, ?> batcher = batcherFor(clientRequest);
+        if (batcher != null) {
+            return batcher.execute(clientRequest);
+        }
+
+        final ShardRouter router = shardRouter;
+        if (router != null && clientRequest instanceof RawBulk) {
+            final List<ShardRouter.Split> splits = router.split((RawBulk) clientRequest, nodeServers());
+            if (splits.size() == 1) {
+                return executePrepared(clientRequest, prepareRequest(clientRequest, splits.get(0).getServer()));
+            } else if (!splits.isEmpty()) {
+                return (T) await(executeSplits(router, (RawBulk) clientRequest, splits));
+            }
+        }
+        return executePrepared(clientRequest, prepareRequest(clientRequest));
+    }
+
+    /**
+     * Executes the action within the given time budget, overriding the configured timeouts. The call is cancelled
+     * once the budget is used up and searches pass the budget on to Elasticsearch as <code>timeout</code>.
+     *
+     * @throws java.net.SocketTimeoutException if the deadline has passed before the response has been read
+     */
+    public <T extends JestResult> T execute(Action<T> clientRequest, long timeout, TimeUnit unit) throws IOException {
+        return executePrepared(clientRequest, prepareRequest(clientRequest, selectServer(clientRequest), unit.toMillis(timeout)));
+    }
+
+    /**
+     * Executes the action in the lane of the given priority instead of the configured one.
+     *
+     * @see #setPriorityLanes(Map)
+     */
+    public <T extends JestResult> T execute(Action<T> clientRequest, Priority priority) throws IOException {
+        return executePrepared(clientRequest, prepareRequest(clientRequest, selectServer(clientRequest), timeoutFor(clientRequest), priority));
+    }
+
+    private <T extends JestResult> T executePrepared(Action<T> clientRequest, Request request) throws IOException {
+        try {
+            final ResponseCache cache = responseCache;
+            if (cache != null && cache.isCacheable(clientRequest)) {
+                return executeCached(cache, clientRequest, request);
+            }
+
+            final RequestCoalescer coalescer = requestCoalescer;
+            if (coalescer != null && coalescer.isCoalescable(clientRequest)) {
+                return executeCoalesced(coalescer, clientRequest, request);
+            }
+
+            return execute(clientRequest, request);
+        } finally {
+            release(request);
+        }
+    }
+
+    /**
+     * Returns the cached response or loads it with a single request for all concurrent callers. Callers waiting for
+     * the load of another caller give up once their own deadline has passed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends JestResult> T executeCached(ResponseCache cache, Action<T> clientRequest, Request request) throws IOException {
+        final RequestKey cacheKey = requestKey(clientRequest, request);
+        final CachedResponse cachedResponse = cache.getIfPresent(cacheKey);
+        if (cachedResponse != null) {
+            return createResult(clientRequest, cachedResponse);
+        }
+
+        final RequestCoalescer.Flight flight = cache.load(cacheKey);
+        if (!flight.isLeader()) {
+            final JestResult result = awaitFlight(flight, CallContext.of(request));
+            // uncacheable responses, e. g. errors, are shared with the other callers
+            final CachedResponse loaded = cache.getIfPresent(cacheKey);
+            return loaded == null ? (T) result : createResult(clientRequest, loaded);
+        }
+
+        try {
+            final CachedResponse loaded = fetch(request);
+            cache.put(cacheKey, loaded);
+            final T result = createResult(clientRequest, loaded);
+            flight.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.fail(e);
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends JestResult> T executeCoalesced(RequestCoalescer coalescer, Action<T> clientRequest, Request request) throws IOException {
+        final RequestCoalescer.Flight flight = coalescer.join(requestKey(clientRequest, request));
+        if (!flight.isLeader()) {
+            return (T) awaitFlight(flight, CallContext.of(request));
+        }
+
+        try {
+            final T result = execute(clientRequest, request);
+            flight.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.fail(e);
+            throw e;
+        }
+    }
+
+    private <T extends JestResult> T execute(Action<T> clientRequest, Request request) throws IOException {
+        final Response response = openResponse(request);
         try {
-            response = executeRequest(request);
             return deserializeResponse(response, request, clientRequest);
-        } catch (ConnectException ex) {
-            throw new CouldNotConnectException(request.url().toString(), ex);
+        } catch (IOException e) {
+            throw CallContext.of(request).translate(e);
+        } finally {
+            CallContext.of(request).completed();
+            if (response.body() != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Sends the sub-bulks in parallel, each one to the node holding the primary shards of its items, and merges
+     * their results in the order of the original items. If a sub-bulk fails with an exception, the routing table
+     * is invalidated and its items are reported as failed items, see {@link ShardRouter#failedResult(Exception)},
+     * so that the items of the other sub-bulks aren't sent again. Only if all sub-bulks fail with an exception does
+     * the whole bulk request fail.
+     */
+    private CompletableFuture<BulkResult> executeSplits(ShardRouter router, RawBulk bulk, List<ShardRouter.Split> splits) {
+        final List<CompletableFuture<BulkResult>> futures = new ArrayList<>(splits.size());
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final AtomicInteger failedSplits = new AtomicInteger();
+        for (ShardRouter.Split split : splits) {
+            final CompletableFuture<BulkResult> future = new CompletableFuture<>();
+            executeAsyncRequest(split.getBulk(), new JestResultHandler<BulkResult>() {
+                @Override
+                public void completed(BulkResult result) {
+                    future.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    failure.compareAndSet(null, ex);
+                    failedSplits.incrementAndGet();
+                    future.complete(router.failedResult(ex));
+                }
+            }, prepareRequest(split.getBulk(), split.getServer()));
+            futures.add(future);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    if (failure.get() != null) {
+                        router.invalidate();
+                        if (failedSplits.get() == splits.size()) {
+                            throw new CompletionException(failure.get());
+                        }
+                    }
+                    final List<BulkResult> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<BulkResult> future : futures) {
+                        results.add(future.join());
+                    }
+                    return router.merge(bulk, splits, results);
+                });
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for sub-bulk requests");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private Map<String, String> nodeServers() {
+        final Map<String, String> nodeServers = new HashMap<>();
+        for (NodeInfo node : getNodes()) {
+            nodeServers.put(node.getId(), node.getServer());
+        }
+        return nodeServers;
+    }
+
+    /**
+     * Executes a bulk request and resubmits the items rejected by Elasticsearch with exponential backoff.
+     *
+     * @param items       the bulk items, e. g. {@link io.searchbox.action.BulkableAction bulkable actions} or
+     *                    {@link RawBulk.Item raw bulk items}
+     * @param bulkFactory creates the bulk action for a list of items, see {@link RetryingBulkExecutor#bulk(String, String)}
+     *                    and {@link RetryingBulkExecutor#rawBulk(String, String)}
+     * @throws IllegalStateException if no {@link #setRetryingBulkExecutor(RetryingBulkExecutor) retrying bulk executor}
+     *                               has been set, {@link org.graylog.jest.okhttp.JestClientFactory} sets one
+     * @see RetryingBulkExecutor
+     */
+    public <I> RetryingBulkResult executeWithRetries(List<I> items, Function<List<I>, ? extends Action<BulkResult>> bulkFactory) throws IOException {
+        final RetryingBulkExecutor executor = retryingBulkExecutor;
+        if (executor == null) {
+            throw new IllegalStateException("No retrying bulk executor has been set");
+        }
+        return executor.execute(items, bulkFactory);
+    }
+
+    /**
+     * Creates a buffer which collapses the bulk operations on the same document within the flush window before
+     * sending them through this client.
+     *
+     * @see CollapsingBulkBuffer
+     */
+    public CollapsingBulkBuffer collapsingBulkBuffer(String defaultIndex, String defaultType, long flushWindow, TimeUnit unit, int maxItems) {
+        return new CollapsingBulkBuffer(this, defaultIndex, defaultType, flushWindow, unit, maxItems);
+    }
+
+    /**
+     * Creates an exporter which reads all documents matching the given query through concurrent sliced scrolls.
+     *
+     * @see SlicedScrollExporter
+     */
+    public SlicedScrollExporter.Builder slicedScrollExporter(String query) {
+        return new SlicedScrollExporter.Builder(this, query);
+    }
+
+    /**
+     * Executes the search and binds the <code>_source</code> of each hit into the given type while the response
+     * is being read. The returned iterator must be closed if it is not consumed completely.
+     *
+     * @throws IOException if the request failed or Elasticsearch responded with an error
+     */
+    public <S> HitIterator<S> streamHits(Search search, Class<S> sourceType) throws IOException {
+        return streamHits(search, gson.getAdapter(sourceType));
+    }
+
+    public <S> HitIterator<S> streamHits(Search search, TypeAdapter<S> sourceAdapter) throws IOException {
+        final Request request = prepareRequest(search);
+        final Response response;
+        try {
+            response = openResponse(request);
         } finally {
-            if (response != null && response.body() != null) {
+            release(request);
+        }
+        final CallContext context = CallContext.of(request);
+        final ResponseBody responseBody = response.body();
+        if (!response.isSuccessful() || responseBody == null) {
+            try {
+                throw new IOException("Search failed with " + response.code() + " " + response.message()
+                        + (responseBody == null ? "" : ": " + responseBody.string()));
+            } finally {
+                context.completed();
                 response.close();
             }
         }
+        return new HitIterator<>(sourceAdapter, responseBody.charStream(), () -> {
+            context.completed();
+            response.close();
+        });
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T extends JestResult> void executeAsync(final Action<T> clientRequest, final JestResultHandler<? super T> resultHandler) {
-        final Request request = prepareRequest(clientRequest);
+        final ActionBatcher<?, ?> batcher = batcherFor(clientRequest);
+        if (batcher != null) {
+            batcher.submit(clientRequest).whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    resultHandler.completed(result);
+                } else {
+                    resultHandler.failed(throwable instanceof Exception ? (Exception) throwable : new IOException(throwable));
+                }
+            });
+            return;
+        }
+
+        final ShardRouter router = shardRouter;
+        if (router != null && clientRequest instanceof RawBulk) {
+            final List<ShardRouter.Split> splits = router.split((RawBulk) clientRequest, nodeServers());
+            if (splits.size() == 1) {
+                executeAsyncPrepared(clientRequest, resultHandler, prepareRequest(clientRequest, splits.get(0).getServer()));
+                return;
+            } else if (!splits.isEmpty()) {
+                executeSplits(router, (RawBulk) clientRequest, splits).whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        resultHandler.completed((T) result);
+                    } else {
+                        final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                        resultHandler.failed(cause instanceof Exception ? (Exception) cause : new IOException(cause));
+                    }
+                });
+                return;
+            }
+        }
+        executeAsyncPrepared(clientRequest, resultHandler, prepareRequest(clientRequest));
+    }
+
+    /**
+     * Executes the action asynchronously within the given time budget, overriding the configured timeouts.
+     *
+     * @see #execute(Action, long, TimeUnit)
+     */
+    public <T extends JestResult> void executeAsync(final Action<T> clientRequest, final JestResultHandler<? super T> resultHandler, long timeout, TimeUnit unit) {
+        executeAsyncPrepared(clientRequest, resultHandler, prepareRequest(clientRequest, selectServer(clientRequest), unit.toMillis(timeout)));
+    }
+
+    /**
+     * Executes the action asynchronously in the lane of the given priority instead of the configured one.
+     *
+     * @see #setPriorityLanes(Map)
+     */
+    public <T extends JestResult> void executeAsync(final Action<T> clientRequest, final JestResultHandler<? super T> resultHandler, Priority priority) {
+        executeAsyncPrepared(clientRequest, resultHandler, prepareRequest(clientRequest, selectServer(clientRequest), timeoutFor(clientRequest), priority));
+    }
+
+    private <T extends JestResult> void executeAsyncPrepared(final Action<T> clientRequest, final JestResultHandler<? super T> resultHandler, final Request request) {
+        final ResponseCache cache = responseCache;
+        if (cache != null && cache.isCacheable(clientRequest)) {
+            final RequestKey cacheKey;
+            try {
+                cacheKey = requestKey(clientRequest, request);
+            } catch (IOException e) {
+                release(request);
+                resultHandler.failed(e);
+                return;
+            }
+
+            final CachedResponse cachedResponse = cache.getIfPresent(cacheKey);
+            if (cachedResponse != null) {
+                release(request);
+                resultHandler.completed(createResult(clientRequest, cachedResponse));
+            } else {
+                executeAsyncCached(cache, cacheKey, clientRequest, resultHandler, request);
+            }
+            return;
+        }
+
+        final RequestCoalescer coalescer = requestCoalescer;
+        if (coalescer != null && coalescer.isCoalescable(clientRequest)) {
+            executeAsyncCoalesced(coalescer, clientRequest, resultHandler, request);
+            return;
+        }
+
         executeAsyncRequest(clientRequest, resultHandler, request);
     }
 
+    /**
+     * Loads a missing cache entry with a single request for all concurrent callers. The leader's callback puts the
+     * response into the cache, the other callers create their results from the cached response.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends JestResult> void executeAsyncCached(ResponseCache cache, RequestKey cacheKey, Action<T> clientRequest, JestResultHandler<? super T> resultHandler, Request request) {
+        final RequestCoalescer.Flight flight = cache.load(cacheKey);
+        flight.future().whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                resultHandler.failed(throwable instanceof Exception ? (Exception) throwable : new IOException(throwable));
+                return;
+            }
+            // uncacheable responses, e. g. errors, are shared with the other callers
+            final CachedResponse cachedResponse = flight.isLeader() ? null : cache.getIfPresent(cacheKey);
+            resultHandler.completed(cachedResponse == null ? (T) result : createResult(clientRequest, cachedResponse));
+        });
+
+        if (flight.isLeader()) {
+            serverStats.requestStarted(CallContext.of(request).server);
+            enqueue(request, new DefaultCallback<T>(clientRequest, new JestResultHandler<T>() {
+                @Override
+                public void completed(T result) {
+                    flight.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    flight.fail(ex);
+                }
+            }, cacheKey));
+        } else {
+            release(request);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends JestResult> void executeAsyncCoalesced(RequestCoalescer coalescer, Action<T> clientRequest, JestResultHandler<? super T> resultHandler, Request request) {
+        final RequestCoalescer.Flight flight;
+        try {
+            flight = coalescer.join(requestKey(clientRequest, request));
+        } catch (IOException e) {
+            release(request);
+            resultHandler.failed(e);
+            return;
+        }
+
+        flight.future().whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                resultHandler.completed((T) result);
+            } else {
+                resultHandler.failed(throwable instanceof Exception ? (Exception) throwable : new IOException(throwable));
+            }
+        });
+
+        if (flight.isLeader()) {
+            executeAsyncRequest(clientRequest, new JestResultHandler<T>() {
+                @Override
+                public void completed(T result) {
+                    flight.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    flight.fail(ex);
+                }
+            }, request);
+        } else {
+            release(request);
+        }
+    }
+
     @Override
     public void shutdownClient() {
         super.shutdownClient();
@@ -76,20 +575,173 @@ public class JestHttpClient extends AbstractJestClient {
         if (okHttpClient != null) {
             okHttpClient.connectionPool().evictAll();
         }
+        final PriorityLanes lanes = priorityLanes;
+        if (lanes != null) {
+            lanes.shutdown();
+        }
     }
 
     protected <T extends JestResult> Request prepareRequest(final Action<T> clientRequest) {
-        String elasticSearchRestUrl = getRequestURL(getNextServer(), clientRequest.getURI());
-        Request.Builder requestBuilder = constructHttpMethod(clientRequest.getRestMethodName(), elasticSearchRestUrl, clientRequest.getData(gson));
+        return prepareRequest(clientRequest, selectServer(clientRequest));
+    }
 
-        log.debug("Request method={} url={}", clientRequest.getRestMethodName(), elasticSearchRestUrl);
+    protected <T extends JestResult> Request prepareRequest(final Action<T> clientRequest, final String server) {
+        return prepareRequest(clientRequest, server, timeoutFor(clientRequest));
+    }
+
+    protected <T extends JestResult> Request prepareRequest(final Action<T> clientRequest, final String server, final long timeoutMillis) {
+        return prepareRequest(clientRequest, server, timeoutMillis, priorityFor(clientRequest));
+    }
+
+    /**
+     * @param timeoutMillis time budget of the call in milliseconds, <code>0</code> for the timeouts of the HTTP client
+     * @param priority      the lane of the call if priority lanes are enabled
+     */
+    protected <T extends JestResult> Request prepareRequest(final Action<T> clientRequest, final String server, final long timeoutMillis, final Priority priority) {
+        final CallContext context = new CallContext(actionTypeOf(clientRequest), server, timeoutMillis, priority, tenantOf(clientRequest),
+                actionCountOf(clientRequest));
+        final String methodName = clientRequest.getRestMethodName();
+        final HttpUrl baseUrl = baseUrl(server);
+        final Request.Builder requestBuilder;
+        if (baseUrl == null) {
+            final String elasticSearchRestUrl = withSearchTimeout(clientRequest, context,
+                    responseFilters.apply(clientRequest, getRequestURL(server, clientRequest.getURI())));
+            requestBuilder = createHttpMethod(methodName, elasticSearchRestUrl, createRequestBody(clientRequest));
+            log.debug("Request method={} url={}", methodName, elasticSearchRestUrl);
+        } else {
+            final HttpUrl url = withSearchTimeout(clientRequest, context,
+                    responseFilters.apply(clientRequest, resolve(baseUrl, clientRequest.getURI())));
+            requestBuilder = createHttpMethod(methodName, url, createRequestBody(clientRequest));
+            log.debug("Request method={} url={}", methodName, url);
+        }
 
         // add headers added to action
-        for (Entry<String, Object> header : clientRequest.getHeaders().entrySet()) {
-            requestBuilder.addHeader(header.getKey(), header.getValue().toString());
+        final Map<String, Object> headers = clientRequest.getHeaders();
+        if (!headers.isEmpty()) {
+            for (Entry<String, Object> header : headers.entrySet()) {
+                requestBuilder.addHeader(header.getKey(), header.getValue().toString());
+            }
+        }
+
+        return requestBuilder
+                .tag(context)
+                .build();
+    }
+
+    /**
+     * Passes the time budget of a search on to Elasticsearch, so that it returns partial results instead of
+     * working on after the call has been cancelled.
+     */
+    private static HttpUrl withSearchTimeout(Action<?> clientRequest, CallContext context, HttpUrl url) {
+        if (!context.hasDeadline() || !(clientRequest instanceof Search) || url.queryParameter(TIMEOUT) != null) {
+            return url;
+        }
+        return url.newBuilder()
+                .addQueryParameter(TIMEOUT, context.remainingMillis() + "ms")
+                .build();
+    }
+
+    /**
+     * Passes the time budget of a search on to Elasticsearch.
+     *
+     * @see #withSearchTimeout(Action, CallContext, HttpUrl)
+     */
+    private static String withSearchTimeout(Action<?> clientRequest, CallContext context, String url) {
+        if (!context.hasDeadline() || !(clientRequest instanceof Search) || Actions.hasParameter(clientRequest, TIMEOUT)) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? '?' : '&') + TIMEOUT + '=' + context.remainingMillis() + "ms";
+    }
+
+    /**
+     * Identifies the request for the response cache and the request coalescer. The <code>timeout</code> passed on
+     * to Elasticsearch by {@link #withSearchTimeout(Action, CallContext, HttpUrl)} is left out, as it differs with the
+     * remaining time budget of every call.
+     */
+    RequestKey requestKey(Action<?> clientRequest, Request request) throws IOException {
+        final HttpUrl url = request.url();
+        if (url.queryParameter(TIMEOUT) == null || Actions.hasParameter(clientRequest, TIMEOUT)) {
+            return RequestKey.of(clientRequest, request);
+        }
+        final HttpUrl withoutTimeout = url.newBuilder()
+                .removeAllQueryParameters(TIMEOUT)
+                .build();
+        return RequestKey.of(clientRequest, request.newBuilder().url(withoutTimeout).build());
+    }
+
+    /**
+     * @return the type whose rate limits, timeouts and priorities apply to the given action, i. e. the type of the
+     * combined actions for {@link MultiAction multi actions}
+     */
+    private static Class<?> actionTypeOf(Action<?> clientRequest) {
+        if (clientRequest instanceof MultiAction && ((MultiAction<?>) clientRequest).getCombinedActionType() != null) {
+            return ((MultiAction<?>) clientRequest).getCombinedActionType();
+        }
+        return clientRequest.getClass();
+    }
+
+    /**
+     * @return the number of actions sent with the given action, i. e. the number of combined actions for
+     * {@link MultiAction multi actions}
+     */
+    private static int actionCountOf(Action<?> clientRequest) {
+        if (clientRequest instanceof MultiAction) {
+            return Math.max(1, ((MultiAction<?>) clientRequest).getCombinedActionCount());
+        }
+        return 1;
+    }
+
+    private Priority priorityFor(Action<?> clientRequest) {
+        final Class<?> actionType = actionTypeOf(clientRequest);
+        for (Entry<Class<?>, Priority> entry : actionPriorities.entrySet()) {
+            if (entry.getKey().isAssignableFrom(actionType)) {
+                return entry.getValue();
+            }
+        }
+        return Priority.NORMAL;
+    }
+
+    private long timeoutFor(Action<?> clientRequest) {
+        final Class<?> actionType = actionTypeOf(clientRequest);
+        for (Entry<Class<?>, Long> entry : actionTimeouts.entrySet()) {
+            if (entry.getKey().isAssignableFrom(actionType)) {
+                return entry.getValue();
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Returns the parsed URL of the given server, served from the cache for all servers in the current pool.
+     */
+    private HttpUrl baseUrl(String server) {
+        final HttpUrl baseUrl = serverUrls.get(server);
+        return baseUrl == null ? HttpUrl.parse(server) : baseUrl;
+    }
+
+    /**
+     * Appends the already encoded URI of an action to the given base URL without re-parsing the whole URL.
+     */
+    static HttpUrl resolve(HttpUrl baseUrl, String uri) {
+        final int queryStart = uri.indexOf('?');
+        final String path = queryStart < 0 ? uri : uri.substring(0, queryStart);
+        final HttpUrl.Builder builder = baseUrl.newBuilder();
+        if (!path.isEmpty()) {
+            builder.addEncodedPathSegments(path.charAt(0) == '/' ? path.substring(1) : path);
+        }
+        if (queryStart >= 0) {
+            builder.encodedQuery(uri.substring(queryStart + 1));
         }
+        return builder.build();
+    }
 
-        return requestBuilder.build();
+    /**
+     * Selects the server for the given action, honoring the configured routing rules and falling back to the full
+     * server pool if no rule applies.
+     */
+    protected String selectServer(Action<?> clientRequest) {
+        final String server = serverSelector.select(clientRequest);
+        return server == null ? getNextServer() : server;
     }
 
     protected Response executeRequest(Request request) throws IOException {
@@ -97,7 +749,205 @@ public class JestHttpClient extends AbstractJestClient {
             // return httpClient.execute(request, createContextInstance());
         }
 
-        return okHttpClient.newCall(request).execute();
+        final CallContext context = CallContext.of(request);
+        acquireRateLimit(context);
+        final TenantScheduler scheduler = tenantScheduler;
+        if (scheduler != null && context != CallContext.NONE) {
+            acquireTenantSlot(scheduler, context);
+        }
+        final PriorityLanes lanes = priorityLanes;
+        if (lanes != null && context != CallContext.NONE) {
+            lanes.acquire(context);
+        }
+        return newCall(request).execute();
+    }
+
+    /**
+     * Reserves the request body from the byte budget once the call actually starts, i. e. after it has left the
+     * queue of the dispatcher, so that queued calls never hold bytes running calls are waiting for. Once the response
+     * headers have arrived, the request bytes are given back and the response body is accounted without waiting.
+     */
+    private Response reserveBodyBytes(Interceptor.Chain chain) throws IOException {
+        final Request request = chain.request();
+        final CallContext context = CallContext.of(request);
+        context.requestReservation = reserveBytes(context, requestBytes(request));
+        return accountResponseBytes(context, chain.proceed(request));
+    }
+
+    /**
+     * Reserves the given number of bytes of the byte budget until the call has completed.
+     *
+     * @return the reservation or <code>null</code> if there is no budget
+     */
+    private ByteBudget.Reservation reserveBytes(CallContext context, long bytes) throws IOException {
+        final ByteBudget budget = byteBudget;
+        if (budget == null || context == CallContext.NONE || bytes <= 0L) {
+            return null;
+        }
+
+        final ByteBudget.Reservation reservation;
+        if (context.hasDeadline()) {
+            reservation = budget.reserve(bytes, Math.max(1L, context.remainingMillis()), TimeUnit.MILLISECONDS);
+            if (reservation == null) {
+                throw new SocketTimeoutException("Deadline of " + context.timeoutMillis
+                        + "ms exceeded while waiting for " + bytes + " bytes of the byte budget");
+            }
+        } else {
+            reservation = budget.reserve(bytes);
+        }
+        context.onCompleted(reservation::close);
+        return reservation;
+    }
+
+    /**
+     * Swaps the reservation of the sent request body for the response body. The response is already on its way, so
+     * its bytes are accounted without waiting, even beyond the budget, and only delay calls which start later. The
+     * bytes of a response body of unknown length, e. g. a chunked or transparently decompressed one, are accounted
+     * while they are read.
+     */
+    private Response accountResponseBytes(CallContext context, Response response) {
+        final ByteBudget.Reservation requestReservation = context.requestReservation;
+        if (requestReservation != null) {
+            requestReservation.close();
+        }
+        final ByteBudget budget = byteBudget;
+        final ResponseBody body = response.body();
+        if (budget == null || context == CallContext.NONE || body == null) {
+            return response;
+        }
+        if (body.contentLength() >= 0L) {
+            context.onCompleted(budget.account(body.contentLength())::close);
+            return response;
+        }
+
+        final ByteBudget.Reservation reservation = budget.account(0L);
+        context.onCompleted(reservation::close);
+        return response.newBuilder()
+                .body(new ByteCountingResponseBody(body, reservation::add))
+                .build();
+    }
+
+    private static long requestBytes(Request request) throws IOException {
+        final RequestBody body = request.body();
+        return body == null ? 0L : body.contentLength();
+    }
+
+    private void acquireRateLimit(CallContext context) throws IOException {
+        if (context.actionType == null) {
+            return;
+        }
+        if (context.hasDeadline()) {
+            if (!rateLimiter.acquire(context.actionType, context.server, context.actionCount, Math.max(1L, context.remainingMillis()), TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("Deadline of " + context.timeoutMillis
+                        + "ms exceeded while waiting for the rate limit of " + context.actionType.getSimpleName());
+            }
+        } else {
+            rateLimiter.acquire(context.actionType, context.server, context.actionCount, 0L, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void acquireTenantSlot(TenantScheduler scheduler, CallContext context) throws IOException {
+        if (context.hasDeadline()) {
+            if (!scheduler.acquire(context.tenant, Math.max(1L, context.remainingMillis()), TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("Deadline of " + context.timeoutMillis
+                        + "ms exceeded while waiting for a slot of tenant " + context.tenant);
+            }
+        } else {
+            scheduler.acquire(context.tenant);
+        }
+        context.onCompleted(() -> scheduler.release(context.tenant));
+    }
+
+    /**
+     * Waits for the result of the leader of a coalesced request, at most until the deadline of the call.
+     */
+    private static JestResult awaitFlight(RequestCoalescer.Flight flight, CallContext context) throws IOException {
+        if (!context.hasDeadline()) {
+            return flight.await();
+        }
+        final JestResult result = flight.await(Math.max(1L, context.remainingMillis()), TimeUnit.MILLISECONDS);
+        if (result == null) {
+            throw new SocketTimeoutException("Deadline of " + context.timeoutMillis
+                    + "ms exceeded while waiting for a coalesced request");
+        }
+        return result;
+    }
+
+    /**
+     * Enqueues the call of the given request, after it has been admitted by the rate limiter and the tenant scheduler
+     * if configured. A blocking rate limiter blocks the calling thread. The byte budget is reserved once the
+     * dispatcher starts the call.
+     */
+    private void enqueue(Request request, Callback callback) {
+        final CallContext context = CallContext.of(request);
+        final Call call = newCall(request);
+        try {
+            acquireRateLimit(context);
+        } catch (IOException e) {
+            callback.onFailure(call, e);
+            return;
+        }
+        final TenantScheduler scheduler = tenantScheduler;
+        if (scheduler == null || context == CallContext.NONE) {
+            context.enqueuedNanos = System.nanoTime();
+            call.enqueue(callback);
+            return;
+        }
+
+        try {
+            scheduler.submit(context.tenant, () -> {
+                context.onCompleted(() -> scheduler.release(context.tenant));
+                context.enqueuedNanos = System.nanoTime();
+                call.enqueue(callback);
+            });
+        } catch (ThrottledException e) {
+            callback.onFailure(call, e);
+        }
+    }
+
+    /**
+     * @return the tenant key of the given action taken from the configured header, <code>null</code> if there is none
+     */
+    private String tenantOf(Action<?> clientRequest) {
+        final String header = tenantHeader;
+        if (header == null) {
+            return null;
+        }
+        final Object tenant = clientRequest.getHeaders().get(header);
+        return tenant == null ? null : tenant.toString();
+    }
+
+    /**
+     * Creates the call for the given request. Calls with a deadline use a view of the HTTP client with timeouts
+     * matching their budget, sharing its connection pool and dispatcher, and are cancelled at their deadline.
+     */
+    private Call newCall(Request request) {
+        final CallContext context = CallContext.of(request);
+        final PriorityLanes lanes = priorityLanes;
+        final OkHttpClient laneClient = lanes == null ? okHttpClient : lanes.client(context.priority);
+        final OkHttpClient client = context.hasDeadline() ? clientWithTimeout(laneClient, context.timeoutMillis) : laneClient;
+        final Call call = client.newCall(request);
+        context.cancelAtDeadline(call);
+        return call;
+    }
+
+    private OkHttpClient clientWithTimeout(OkHttpClient client, long timeoutMillis) {
+        final ClientView key = new ClientView(client, timeoutMillis);
+        final OkHttpClient cached = clientViews.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final OkHttpClient view = client.newBuilder()
+                .connectTimeout(Math.min(timeoutMillis, client.connectTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .readTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+        // budgets passed per call may vary arbitrarily, only keep a bounded number of views
+        if (clientViews.size() < MAX_CLIENT_VIEWS) {
+            clientViews.putIfAbsent(key, view);
+        }
+        return view;
     }
 
     protected <T extends JestResult> void executeAsyncRequest(Action<T> clientRequest, JestResultHandler<? super T> resultHandler, Request request) {
@@ -105,7 +955,83 @@ public class JestHttpClient extends AbstractJestClient {
             // return asyncClient.execute(request, createContextInstance(), new DefaultCallback<T>(clientRequest, resultHandler));
         }
 
-        okHttpClient.newCall(request).enqueue(new DefaultCallback<T>(clientRequest, resultHandler));
+        serverStats.requestStarted(CallContext.of(request).server);
+        enqueue(request, new DefaultCallback<T>(clientRequest, resultHandler));
+    }
+
+    /**
+     * Executes the request and records the outcome in the server statistics as soon as the response headers have
+     * been received.
+     */
+    private Response openResponse(Request request) throws IOException {
+        final String server = CallContext.of(request).server;
+        final long startNanos = serverStats.requestStarted(server);
+        final Response response;
+        try {
+            response = executeRequest(request);
+        } catch (ConnectException ex) {
+            CallContext.of(request).completed();
+            serverStats.requestCompleted(server, startNanos, true);
+            throw new CouldNotConnectException(request.url().toString(), ex);
+        } catch (ThrottledException e) {
+            CallContext.of(request).completed();
+            serverStats.requestAborted(server);
+            throw e;
+        } catch (IOException e) {
+            CallContext.of(request).completed();
+            serverStats.requestCompleted(server, startNanos, true);
+            throw CallContext.of(request).translate(e);
+        } catch (RuntimeException | Error e) {
+            CallContext.of(request).completed();
+            serverStats.requestCompleted(server, startNanos, true);
+            throw e;
+        }
+        serverStats.requestCompleted(server, startNanos, false);
+        return response;
+    }
+
+    /**
+     * Executes the request and reads the complete response, e. g. for caching it.
+     */
+    private CachedResponse fetch(Request request) throws IOException {
+        return exchange(request, JestHttpClient::readResponse);
+    }
+
+    /**
+     * Executes the given request synchronously and hands the response to the given reader before closing it.
+     */
+    <R> R exchange(Request request, ResponseReader<R> reader) throws IOException {
+        final String server = CallContext.of(request).server;
+        boolean failed = true;
+        boolean aborted = false;
+        final long startNanos = serverStats.requestStarted(server);
+        try (Response response = executeRequest(request)) {
+            failed = false;
+            return reader.read(response);
+        } catch (ConnectException ex) {
+            throw new CouldNotConnectException(request.url().toString(), ex);
+        } catch (ThrottledException e) {
+            aborted = true;
+            throw e;
+        } catch (IOException e) {
+            throw CallContext.of(request).translate(e);
+        } finally {
+            CallContext.of(request).completed();
+            if (aborted) {
+                serverStats.requestAborted(server);
+            } else {
+                serverStats.requestCompleted(server, startNanos, failed);
+            }
+        }
+    }
+
+    private static CachedResponse readResponse(Response response) throws IOException {
+        final ResponseBody responseBody = response.body();
+        return new CachedResponse(response.code(), response.message(), responseBody == null ? null : responseBody.string());
+    }
+
+    <T extends JestResult> T createResult(Action<T> clientRequest, CachedResponse response) {
+        return jsonCodec.decode(clientRequest, response.getBody(), response.getCode(), response.getMessage());
     }
 
     protected HttpClientContext createContextInstance() {
@@ -116,44 +1042,108 @@ public class JestHttpClient extends AbstractJestClient {
         return context;
     }
 
+    /**
+     * Creates the request body for the given action. Payloads of {@link StreamingAction streaming actions} are
+     * written directly into the request without materializing them as {@link String}.
+     */
+    protected RequestBody createRequestBody(Action<?> clientRequest) {
+        if (clientRequest instanceof StreamingAction) {
+            return createStreamingRequestBody((StreamingAction<?>) clientRequest);
+        }
+
+        final String payload = jsonCodec.encode(clientRequest);
+        if (payload != null && spillThreshold > 0 && payload.length() > spillThreshold && hasRequestBody(clientRequest)) {
+            try {
+                return SpilledRequestBody.create(requestContentType, payload, spillDirectory);
+            } catch (IOException e) {
+                log.warn("Couldn't buffer request body in temporary file, keeping it in memory.", e);
+            }
+        }
+        return RequestBody.create(requestContentType, payload == null ? "" : payload);
+    }
+
+    private RequestBody createStreamingRequestBody(StreamingAction<?> clientRequest) {
+        if (spillThreshold > 0 && hasRequestBody(clientRequest)) {
+            try {
+                if (clientRequest.contentLength() > spillThreshold) {
+                    return SpilledRequestBody.create(requestContentType, clientRequest, spillDirectory);
+                }
+            } catch (IOException e) {
+                log.warn("Couldn't buffer request body in temporary file, streaming it from the action.", e);
+            }
+        }
+        return new StreamingActionRequestBody(requestContentType, clientRequest);
+    }
+
+    private static boolean hasRequestBody(Action<?> clientRequest) {
+        final String methodName = clientRequest.getRestMethodName();
+        return !"GET".equalsIgnoreCase(methodName) && !"HEAD".equalsIgnoreCase(methodName);
+    }
+
+    /**
+     * Deletes the temporary file of a request body which has been buffered on disk.
+     */
+    private static void release(Request request) {
+        final RequestBody body = request.body();
+        if (body instanceof SpilledRequestBody) {
+            ((SpilledRequestBody) body).release();
+        }
+    }
+
+    /**
+     * @deprecated {@link #prepareRequest(Action, String, long, Priority)} no longer calls this method, because the
+     * request body isn't always a string: it may be streamed from a {@link StreamingAction} or buffered on disk.
+     * Override {@link #createRequestBody(Action)} to customize the request body and
+     * {@link #createHttpMethod(String, HttpUrl, RequestBody)} or {@link #createHttpMethod(String, String, RequestBody)}
+     * to customize the request.
+     */
+    @Deprecated
     protected Request.Builder constructHttpMethod(String methodName, String url, String payload) {
-        Request.Builder requestBuilder = new Request.Builder()
-                .url(url);
-
-        final RequestBody requestBody = RequestBody.create(requestContentType, payload == null ? "" : payload);
-
-        if (methodName.equalsIgnoreCase("POST")) {
-            requestBuilder = requestBuilder.post(requestBody);
-            log.debug("POST method created based on client request");
-        } else if (methodName.equalsIgnoreCase("PUT")) {
-            requestBuilder = requestBuilder.put(requestBody);
-            log.debug("PUT method created based on client request");
-        } else if (methodName.equalsIgnoreCase("DELETE")) {
-            requestBuilder = requestBuilder.delete(requestBody);
-            log.debug("DELETE method created based on client request");
-        } else if (methodName.equalsIgnoreCase("GET")) {
-            requestBuilder = requestBuilder.get();
-            // Required for Multi GET, but throws Exception:
-            //   java.lang.IllegalArgumentException: method GET must not have a request body.
-            // requestBuilder = requestBuilder.method("GET", requestBody);
-            log.debug("GET method created based on client request");
-        } else if (methodName.equalsIgnoreCase("HEAD")) {
-            requestBuilder = requestBuilder.head();
-            log.debug("HEAD method created based on client request");
-        }
-
-        return requestBuilder;
+        return createHttpMethod(methodName, url, RequestBody.create(requestContentType, payload == null ? "" : payload));
+    }
+
+    protected Request.Builder createHttpMethod(String methodName, String url, RequestBody requestBody) {
+        return applyMethod(new Request.Builder().url(url), methodName, requestBody);
     }
 
+    protected Request.Builder createHttpMethod(String methodName, HttpUrl url, RequestBody requestBody) {
+        return applyMethod(new Request.Builder().url(url), methodName, requestBody);
+    }
+
+    private Request.Builder applyMethod(Request.Builder requestBuilder, String methodName, RequestBody requestBody) {
+        switch (methodName) {
+            case "POST":
+                log.debug("POST method created based on client request");
+                return requestBuilder.post(requestBody);
+            case "PUT":
+                log.debug("PUT method created based on client request");
+                return requestBuilder.put(requestBody);
+            case "DELETE":
+                log.debug("DELETE method created based on client request");
+                return requestBuilder.delete(requestBody);
+            case "GET":
+                // Required for Multi GET, but throws Exception:
+                //   java.lang.IllegalArgumentException: method GET must not have a request body.
+                // requestBuilder = requestBuilder.method("GET", requestBody);
+                log.debug("GET method created based on client request");
+                return requestBuilder.get();
+            case "HEAD":
+                log.debug("HEAD method created based on client request");
+                return requestBuilder.head();
+            default:
+                final String upperCaseMethodName = methodName.toUpperCase(Locale.ENGLISH);
+                return upperCaseMethodName.equals(methodName) ? requestBuilder : applyMethod(requestBuilder, upperCaseMethodName, requestBody);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
     private <T extends JestResult> T deserializeResponse(Response response, final Request httpRequest, Action<T> clientRequest) throws IOException {
         try {
             final ResponseBody responseBody = response.body();
-            return clientRequest.createNewElasticSearchResult(
-                    responseBody == null ? null : responseBody.string(),
-                    response.code(),
-                    response.message(),
-                    gson
-            );
+            if (bulkResponseParser != null && responseBody != null && response.isSuccessful() && isBulk(clientRequest)) {
+                return (T) bulkResponseParser.parse(responseBody.charStream(), response.code());
+            }
+            return jsonCodec.decode(clientRequest, responseBody, response.code(), response.message());
         } catch (com.google.gson.JsonSyntaxException e) {
             for (String mimeType : response.headers("Content-Type")) {
                 if (!mimeType.startsWith("application/json")) {
@@ -167,12 +1157,82 @@ public class JestHttpClient extends AbstractJestClient {
         }
     }
 
+    private static boolean isBulk(Action<?> clientRequest) {
+        return clientRequest instanceof Bulk || clientRequest instanceof RawBulk;
+    }
+
+    /**
+     * Sets the executor used by {@link #executeWithRetries(List, Function)}, configured with the retry settings of
+     * the {@link org.graylog.jest.okhttp.config.HttpClientConfig}.
+     */
+    public void setRetryingBulkExecutor(RetryingBulkExecutor retryingBulkExecutor) {
+        this.retryingBulkExecutor = retryingBulkExecutor;
+    }
+
+    /**
+     * Sets the cache for the responses of read-only actions, <code>null</code> disables caching.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the <code>filter_path</code> expressions which are added to requests in order to shrink responses.
+     *
+     * @param filterPaths        filter paths per action type, the first matching entry wins
+     * @param defaultFilterPaths filter paths for all other actions, may be empty
+     */
+    public void setResponseFilters(Map<Class<?>, List<String>> filterPaths, List<String> defaultFilterPaths) {
+        this.responseFilters = new ResponseFilters(filterPaths, defaultFilterPaths);
+    }
+
+    /**
+     * Creates a helper for polling cluster metadata which skips deserialization of unchanged responses.
+     *
+     * @param versionProbe whether to check the cluster state version before fetching metadata
+     */
+    public MetadataPoller metadataPoller(boolean versionProbe) {
+        return new MetadataPoller(this, versionProbe);
+    }
+
+    /**
+     * Sets the coalescer for identical idempotent requests in flight at the same time, <code>null</code> disables
+     * coalescing.
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
     public OkHttpClient getOkHttpClient() {
         return okHttpClient;
     }
 
+    /**
+     * Sets the HTTP client, derived with an interceptor accounting request and response bodies in the byte budget.
+     * The derived client shares the connection pool and dispatcher of the given client.
+     */
     public JestHttpClient setOkHttpClient(OkHttpClient okHttpClient) {
-        this.okHttpClient = okHttpClient;
+        if (okHttpClient.interceptors().contains(byteBudgetInterceptor)) {
+            this.okHttpClient = okHttpClient;
+        } else {
+            // first, so that the bytes are accounted even if another interceptor answers the call itself
+            final OkHttpClient.Builder builder = okHttpClient.newBuilder();
+            builder.interceptors().add(0, byteBudgetInterceptor);
+            this.okHttpClient = builder.build();
+        }
+        this.clientViews.clear();
+        final PriorityLanes lanes = priorityLanes;
+        if (lanes != null) {
+            lanes.setOkHttpClient(this.okHttpClient);
+        }
         return this;
     }
 
@@ -182,6 +1242,155 @@ public class JestHttpClient extends AbstractJestClient {
 
     public void setGson(Gson gson) {
         this.gson = gson;
+        if (jsonCodec instanceof GsonJsonCodec) {
+            this.jsonCodec = new GsonJsonCodec(gson);
+        }
+        if (bulkResponseParser != null) {
+            this.bulkResponseParser = new BulkResponseParser(gson);
+        }
+    }
+
+    /**
+     * Buffers request bodies larger than the given threshold in temporary files instead of on the heap.
+     *
+     * @param spillThreshold size in bytes above which request bodies are written to disk, <code>0</code> to disable
+     * @param spillDirectory directory for the temporary files or <code>null</code> for the default temporary directory
+     */
+    public void setSpillThreshold(long spillThreshold, File spillDirectory) {
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Sets time budgets per action type in milliseconds, overriding the timeouts of the HTTP client. The first
+     * matching entry wins.
+     */
+    public void setActionTimeouts(Map<Class<?>, Long> actionTimeouts) {
+        this.actionTimeouts = Collections.unmodifiableMap(new LinkedHashMap<>(actionTimeouts));
+    }
+
+    /**
+     * Enables priority lanes with the given maximum number of concurrent calls per lane, <code>null</code> disables
+     * them. Lanes without a configured concurrency allow 64 concurrent calls.
+     */
+    public void setPriorityLanes(Map<Priority, Integer> concurrency) {
+        if (concurrency == null) {
+            this.priorityLanes = null;
+            return;
+        }
+        final PriorityLanes lanes = new PriorityLanes(concurrency);
+        if (okHttpClient != null) {
+            lanes.setOkHttpClient(okHttpClient);
+        }
+        this.priorityLanes = lanes;
+    }
+
+    /**
+     * Sets the priority per action type, the first matching entry wins. Other actions use {@link Priority#NORMAL}.
+     */
+    public void setActionPriorities(Map<Class<?>, Priority> actionPriorities) {
+        this.actionPriorities = Collections.unmodifiableMap(new LinkedHashMap<>(actionPriorities));
+    }
+
+    /**
+     * @return the queueing statistics of the given lane or <code>null</code> if priority lanes are disabled
+     */
+    public LaneStats getLaneStats(Priority priority) {
+        final PriorityLanes lanes = priorityLanes;
+        return lanes == null ? null : lanes.getStats(priority);
+    }
+
+    /**
+     * Admits calls through the given scheduler before they are passed on to the HTTP client, <code>null</code>
+     * disables tenant scheduling.
+     *
+     * @param tenantHeader name of the action header holding the tenant key of a call
+     */
+    public void setTenantScheduler(TenantScheduler tenantScheduler, String tenantHeader) {
+        this.tenantHeader = tenantHeader;
+        this.tenantScheduler = tenantScheduler;
+    }
+
+    public TenantScheduler getTenantScheduler() {
+        return tenantScheduler;
+    }
+
+    /**
+     * @return the rate limiter of all calls, limits can be changed at any time
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Bounds the bytes of request and response bodies buffered by calls in flight, <code>null</code> disables the
+     * budget. Request bodies are reserved with their content length when the call starts and held until the response
+     * has arrived. Responses are accounted with their <code>Content-Length</code> until they have been consumed,
+     * without waiting for the budget; responses without it aren't accounted.
+     */
+    public void setByteBudget(ByteBudget byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    public ByteBudget getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Adds a batcher which collects the actions it accepts into batch requests. Batching applies to
+     * {@link #execute(Action)} and {@link #executeAsync(Action, JestResultHandler)}, the first accepting batcher wins.
+     * Each batch request is subject to the rate limits, timeouts and priorities of the type of its actions.
+     */
+    public synchronized void addBatcher(ActionBatcher<?, ?> batcher) {
+        final List<ActionBatcher<?, ?>> updated = new ArrayList<>(batchers);
+        updated.add(batcher);
+        this.batchers = Collections.unmodifiableList(updated);
+    }
+
+    public List<ActionBatcher<?, ?>> getBatchers() {
+        return batchers;
+    }
+
+    /**
+     * Splits {@link RawBulk raw bulk requests} by the nodes holding the primary shards of their items,
+     * <code>null</code> disables splitting. The servers of the nodes are taken from {@link #getNodes()}, so this
+     * requires node discovery.
+     */
+    public void setShardRouter(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    public ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    private ActionBatcher<?, ?> batcherFor(Action<?> clientRequest) {
+        for (ActionBatcher<?, ?> batcher : batchers) {
+            if (batcher.accepts(clientRequest)) {
+                return batcher;
+            }
+        }
+        return null;
+    }
+
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    /**
+     * Replaces the codec used to serialize request payloads and deserialize responses. A later call to
+     * {@link #setGson(Gson)} only replaces the default {@link GsonJsonCodec}.
+     */
+    public void setJsonCodec(JsonCodec jsonCodec) {
+        this.jsonCodec = jsonCodec;
+    }
+
+    /**
+     * If enabled, responses of {@link Bulk} and {@link RawBulk} actions are streamed and only the failed items are
+     * materialized. The results are instances of {@link FailedItemsBulkResult}.
+     */
+    public void setFailedBulkItemsOnly(boolean failedBulkItemsOnly) {
+        this.bulkResponseParser = failedBulkItemsOnly ? new BulkResponseParser(gson) : null;
     }
 
     public HttpClientContext getHttpClientContextTemplate() {
@@ -192,6 +1401,66 @@ public class JestHttpClient extends AbstractJestClient {
         this.httpClientContextTemplate = httpClientContext;
     }
 
+    public void setRoutingRules(List<RoutingRule> routingRules) {
+        serverSelector.setRoutingRules(routingRules);
+    }
+
+    /**
+     * Replaces the server pool, together with the request statistics and the parsed {@link HttpUrl} of each server.
+     * The statistics of servers which are no longer part of the pool are dropped.
+     */
+    @Override
+    public void setServers(Set<String> servers) {
+        super.setServers(servers);
+        serverStats.setServers(servers);
+        final Map<String, HttpUrl> urls = new HashMap<>();
+        for (String server : servers) {
+            final HttpUrl url = HttpUrl.parse(server);
+            if (url != null) {
+                urls.put(server, url);
+            }
+        }
+        serverUrls = Collections.unmodifiableMap(urls);
+    }
+
+    /**
+     * @return the request statistics of all servers
+     */
+    public ServerStatsRegistry getServerStats() {
+        return serverStats;
+    }
+
+    /**
+     * Updates the roles and attributes of the discovered nodes used for routing requests.
+     *
+     * @see org.graylog.jest.okhttp.config.discovery.NodeAttributeChecker
+     */
+    public void setNodes(Collection<NodeInfo> nodes) {
+        serverSelector.setNodes(nodes);
+    }
+
+    public Collection<NodeInfo> getNodes() {
+        return serverSelector.getNodes();
+    }
+
+    /**
+     * Prefer servers whose node attribute <code>zoneAttribute</code> equals <code>localZone</code> and only spill
+     * over to other zones when all local servers are unhealthy or saturated.
+     *
+     * @see #setZoneSaturationThreshold(int)
+     */
+    public void setLocalZone(String zoneAttribute, String localZone) {
+        serverSelector.setLocalZone(zoneAttribute, localZone);
+    }
+
+    public void setZoneSaturationThreshold(int maxInFlightRequestsPerServer) {
+        serverSelector.setSaturationThreshold(maxInFlightRequestsPerServer);
+    }
+
+    public void setFailedServerCooldown(long duration, TimeUnit unit) {
+        serverSelector.setFailureCooldown(duration, unit);
+    }
+
     @VisibleForTesting
     @Override
     public int getServerPoolSize() {
@@ -207,22 +1476,44 @@ public class JestHttpClient extends AbstractJestClient {
     protected class DefaultCallback<T extends JestResult> implements Callback {
         private final Action<T> clientRequest;
         private final JestResultHandler<? super T> resultHandler;
+        private final RequestKey cacheKey;
+        private final long startNanos = System.nanoTime();
 
         public DefaultCallback(Action<T> clientRequest, JestResultHandler<? super T> resultHandler) {
+            this(clientRequest, resultHandler, null);
+        }
+
+        private DefaultCallback(Action<T> clientRequest, JestResultHandler<? super T> resultHandler, RequestKey cacheKey) {
             this.clientRequest = clientRequest;
             this.resultHandler = resultHandler;
+            this.cacheKey = cacheKey;
         }
 
         @Override
         public void onResponse(Call call, Response response) throws IOException {
+            release(call.request());
+            serverStats.requestCompleted(CallContext.of(call.request()).server, startNanos, false);
             T jestResult = null;
             try {
-                jestResult = deserializeResponse(response, call.request(), clientRequest);
+                final ResponseCache cache = responseCache;
+                if (cacheKey != null && cache != null) {
+                    final CachedResponse cachedResponse = readResponse(response);
+                    cache.put(cacheKey, cachedResponse);
+                    jestResult = createResult(clientRequest, cachedResponse);
+                } else {
+                    jestResult = deserializeResponse(response, call.request(), clientRequest);
+                }
             } catch (Exception e) {
-                onFailure(call, new IOException(e));
+                failed(new IOException(e));
             } catch (Throwable t) {
-                onFailure(call, new IOException("Problem during request processing", t));
+                failed(new IOException("Problem during request processing", t));
+            } finally {
+                // streaming decoders such as the bulk response parser stop reading early and don't close the body
+                if (response.body() != null) {
+                    response.close();
+                }
             }
+            CallContext.of(call.request()).completed();
             if (jestResult != null) {
                 resultHandler.completed(jestResult);
             }
@@ -230,6 +1521,18 @@ public class JestHttpClient extends AbstractJestClient {
 
         @Override
         public void onFailure(Call call, IOException ex) {
+            release(call.request());
+            final CallContext context = CallContext.of(call.request());
+            context.completed();
+            if (ex instanceof ThrottledException) {
+                serverStats.requestAborted(context.server);
+            } else {
+                serverStats.requestCompleted(context.server, startNanos, true);
+            }
+            failed(context.translate(ex));
+        }
+
+        private void failed(IOException ex) {
             log.error("Exception occurred during async execution.", ex);
             if (ex instanceof HttpHostConnectException) {
                 String host = ((HttpHostConnectException) ex).getHost().toURI();
@@ -240,4 +1543,35 @@ public class JestHttpClient extends AbstractJestClient {
         }
     }
 
+    @FunctionalInterface
+    interface ResponseReader<R> {
+        R read(Response response) throws IOException;
+    }
+
+    private static final class ClientView {
+        private final OkHttpClient client;
+        private final long timeoutMillis;
+
+        private ClientView(OkHttpClient client, long timeoutMillis) {
+            this.client = client;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ClientView that = (ClientView) o;
+            return client == that.client && timeoutMillis == that.timeoutMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(client) + Long.hashCode(timeoutMillis);
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package org.graylog.jest.okhttp.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queueing statistics of a {@link Priority} lane.
+ */
+public final class LaneStats {
+    private final Priority priority;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder queueDelayNanos = new LongAdder();
+    private final LongAccumulator maxQueueDelayNanos = new LongAccumulator(Math::max, 0L);
+
+    LaneStats(Priority priority) {
+        this.priority = priority;
+    }
+
+    void record(long queueDelayNanos) {
+        calls.increment();
+        this.queueDelayNanos.add(queueDelayNanos);
+        maxQueueDelayNanos.accumulate(queueDelayNanos);
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the number of calls which have left the queue of this lane
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public double getMeanQueueDelay(TimeUnit unit) {
+        final long count = calls.sum();
+        return count == 0L ? 0.0d : (double) queueDelayNanos.sum() / count / unit.toNanos(1L);
+    }
+
+    public long getMaxQueueDelay(TimeUnit unit) {
+        return unit.convert(maxQueueDelayNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "LaneStats{" +
+                "priority=" + priority +
+                ", calls=" + getCalls() +
+                ", meanQueueDelayMillis=" + getMeanQueueDelay(TimeUnit.MILLISECONDS) +
+                ", maxQueueDelayMillis=" + getMaxQueueDelay(TimeUnit.MILLISECONDS) +
+                '}';
+    }
+}
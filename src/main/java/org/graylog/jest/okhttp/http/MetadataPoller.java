@@ -0,0 +1,252 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.base.Joiner;
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import io.searchbox.action.AbstractAction;
+import io.searchbox.action.Action;
+import io.searchbox.action.GenericResultAbstractAction;
+import io.searchbox.client.JestResult;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.graylog.jest.okhttp.action.InternalAction;
+import org.graylog.jest.okhttp.cache.CachedResponse;
+import org.graylog.jest.okhttp.cache.RequestKey;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Polls cluster metadata such as mappings, settings, aliases or the cluster state and returns the previously
+ * deserialized result if the response did not change since the last poll.
+ * <p>
+ * Response bytes are hashed while they are read, so unchanged responses are neither decoded nor handed to Gson.
+ * If the version probe is enabled, the cluster state version is checked first and the metadata request is skipped
+ * entirely as long as the version did not change.
+ * </p>
+ * <p>
+ * Results returned by the poller are shared between polls and must be treated as read-only.
+ * </p>
+ */
+public class MetadataPoller {
+    private static final String FILTER_PATH = "filter_path";
+
+    private final JestHttpClient client;
+    private final boolean versionProbe;
+    private final ConcurrentMap<RequestKey, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    MetadataPoller(JestHttpClient client, boolean versionProbe) {
+        this.client = client;
+        this.versionProbe = versionProbe;
+    }
+
+    /**
+     * Polls the given action and returns the last result if the response is unchanged.
+     *
+     * @param filterPaths optional <code>filter_path</code> expressions to restrict the response to the fields of interest
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends JestResult> T poll(Action<T> action, String... filterPaths) throws IOException {
+        polls.increment();
+
+        final Request request = withFilterPath(client.prepareRequest(action), filterPaths);
+        final RequestKey key = client.requestKey(action, request);
+        final Snapshot previous = snapshots.get(key);
+
+        final ClusterVersion version = versionProbe ? probeVersion() : null;
+        if (previous != null && version != null && version.equals(previous.version)) {
+            skipped.increment();
+            return (T) previous.result;
+        }
+
+        final Fetched fetched = client.exchange(request, MetadataPoller::read);
+        if (previous != null && previous.code == fetched.code && Arrays.equals(previous.digest, fetched.digest)) {
+            unchanged.increment();
+            snapshots.replace(key, previous, new Snapshot(previous.code, previous.digest, version, previous.result));
+            return (T) previous.result;
+        }
+
+        final T result = client.createResult(action, new CachedResponse(fetched.code, fetched.message, fetched.body()));
+        if (fetched.code >= 200 && fetched.code < 300) {
+            snapshots.put(key, new Snapshot(fetched.code, fetched.digest, version, result));
+        }
+        return result;
+    }
+
+    /**
+     * Drops all snapshots, so that the next poll deserializes every response again.
+     */
+    public void reset() {
+        snapshots.clear();
+    }
+
+    public long getPolls() {
+        return polls.sum();
+    }
+
+    /**
+     * @return the number of polls which fetched a response identical to the previous one
+     */
+    public long getUnchanged() {
+        return unchanged.sum();
+    }
+
+    /**
+     * @return the number of polls which were answered after the cluster state version probe only
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    private ClusterVersion probeVersion() throws IOException {
+        final JestResult result = client.execute(new ClusterStateVersion.Builder().build());
+        if (!result.isSucceeded() || result.getJsonObject() == null) {
+            return null;
+        }
+        final JsonObject jsonObject = result.getJsonObject();
+        final JsonElement version = jsonObject.get("version");
+        final JsonElement stateUuid = jsonObject.get("state_uuid");
+        if (version == null || !version.isJsonPrimitive()) {
+            return null;
+        }
+        return new ClusterVersion(version.getAsLong(), stateUuid == null || stateUuid.isJsonNull() ? null : stateUuid.getAsString());
+    }
+
+    static Request withFilterPath(Request request, String... filterPaths) {
+        if (filterPaths == null || filterPaths.length == 0) {
+            return request;
+        }
+        final HttpUrl url = request.url().newBuilder()
+                .setQueryParameter(FILTER_PATH, Joiner.on(',').join(filterPaths))
+                .build();
+        return request.newBuilder().url(url).build();
+    }
+
+    private static Fetched read(Response response) throws IOException {
+        final ResponseBody responseBody = response.body();
+        if (responseBody == null) {
+            return new Fetched(response.code(), response.message(), null, StandardCharsets.UTF_8, new byte[0]);
+        }
+
+        final MessageDigest digest = sha256();
+        final byte[] bytes;
+        try (InputStream inputStream = new DigestInputStream(responseBody.byteStream(), digest)) {
+            bytes = ByteStreams.toByteArray(inputStream);
+        }
+
+        // the bytes are only decoded if the response changed
+        final MediaType contentType = responseBody.contentType();
+        final Charset charset = contentType == null ? StandardCharsets.UTF_8 : contentType.charset(StandardCharsets.UTF_8);
+        return new Fetched(response.code(), response.message(), bytes, charset, digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private static class Fetched {
+        private final int code;
+        private final String message;
+        private final byte[] bytes;
+        private final Charset charset;
+        private final byte[] digest;
+
+        private Fetched(int code, String message, byte[] bytes, Charset charset, byte[] digest) {
+            this.code = code;
+            this.message = message;
+            this.bytes = bytes;
+            this.charset = charset;
+            this.digest = digest;
+        }
+
+        private String body() {
+            return bytes == null ? null : new String(bytes, charset);
+        }
+    }
+
+    private static class Snapshot {
+        private final int code;
+        private final byte[] digest;
+        private final ClusterVersion version;
+        private final JestResult result;
+
+        private Snapshot(int code, byte[] digest, ClusterVersion version, JestResult result) {
+            this.code = code;
+            this.digest = digest;
+            this.version = version;
+            this.result = result;
+        }
+    }
+
+    private static class ClusterVersion {
+        private final long version;
+        private final String stateUuid;
+
+        private ClusterVersion(long version, String stateUuid) {
+            this.version = version;
+            this.stateUuid = stateUuid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final ClusterVersion that = (ClusterVersion) o;
+            return version == that.version && Objects.equals(stateUuid, that.stateUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, stateUuid);
+        }
+    }
+
+    private static class ClusterStateVersion extends GenericResultAbstractAction implements InternalAction<JestResult> {
+        private ClusterStateVersion(Builder builder) {
+            super(builder);
+            setURI(buildURI());
+        }
+
+        @Override
+        protected String buildURI() {
+            return super.buildURI() + "/_cluster/state/version";
+        }
+
+        @Override
+        public String getRestMethodName() {
+            return "GET";
+        }
+
+        private static class Builder extends AbstractAction.Builder<ClusterStateVersion, Builder> {
+            @Override
+            public ClusterStateVersion build() {
+                return new ClusterStateVersion(this);
+            }
+        }
+    }
+}
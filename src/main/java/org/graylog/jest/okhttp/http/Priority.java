@@ -0,0 +1,17 @@
+package org.graylog.jest.okhttp.http;
+
+/**
+ * Priority class of a call. Each priority has its own concurrency budget and queue, so batch work can't starve
+ * interactive requests.
+ */
+public enum Priority {
+    /**
+     * User-facing requests, e. g. searches on behalf of a user.
+     */
+    HIGH,
+    NORMAL,
+    /**
+     * Background work, e. g. bulk indexing or scrolling.
+     */
+    LOW
+}
@@ -0,0 +1,158 @@
+package org.graylog.jest.okhttp.http;
+
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Separate concurrency budgets and queues per {@link Priority}.
+ * <p>
+ * Asynchronous calls are queued in a {@link Dispatcher} per lane, synchronous calls wait for a permit of the lane's
+ * semaphore. Asynchronous calls take a permit of the same semaphore once their dispatcher starts them, so that the
+ * concurrency of a lane is the budget of all its calls. All lanes share the connection pool of the underlying HTTP
+ * client.
+ * </p>
+ */
+class PriorityLanes {
+    static final int DEFAULT_CONCURRENCY = 64;
+
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+
+    PriorityLanes(Map<Priority, Integer> concurrency) {
+        for (Priority priority : Priority.values()) {
+            final Integer maxConcurrency = concurrency.get(priority);
+            lanes.put(priority, new Lane(priority, maxConcurrency == null ? DEFAULT_CONCURRENCY : maxConcurrency));
+        }
+    }
+
+    /**
+     * Derives the HTTP client of each lane from the given client, keeping its connection pool.
+     */
+    void setOkHttpClient(OkHttpClient okHttpClient) {
+        for (Lane lane : lanes.values()) {
+            final OkHttpClient.Builder builder = okHttpClient.newBuilder().dispatcher(lane.dispatcher);
+            builder.interceptors().add(0, this::startAsyncCall);
+            lane.client = builder.build();
+        }
+    }
+
+    /**
+     * Takes a slot of the lane for an asynchronous call once the dispatcher starts it and records the time the call
+     * spent in the queue of its lane. Synchronous calls hold their slot already.
+     */
+    private Response startAsyncCall(Interceptor.Chain chain) throws IOException {
+        final CallContext context = CallContext.of(chain.request());
+        final long enqueuedNanos = context.enqueuedNanos;
+        if (enqueuedNanos != 0L && context != CallContext.NONE) {
+            holdSlot(context);
+            recordQueueDelay(context.priority, System.nanoTime() - enqueuedNanos);
+        }
+        return chain.proceed(chain.request());
+    }
+
+    OkHttpClient client(Priority priority) {
+        return lanes.get(priority).client;
+    }
+
+    /**
+     * Waits for a slot of the given lane for a synchronous call.
+     *
+     * @return the permit which has to be released once the call has completed
+     */
+    Semaphore acquire(Priority priority) throws IOException {
+        return acquire(priority, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits at most the given time for a slot of the given lane for a synchronous call.
+     *
+     * @param timeout the maximum time to wait, <code>0</code> to wait without limit
+     * @return the permit which has to be released once the call has completed or <code>null</code> if the waiting
+     * time elapsed
+     */
+    Semaphore acquire(Priority priority, long timeout, TimeUnit unit) throws IOException {
+        final Lane lane = lanes.get(priority);
+        final long start = System.nanoTime();
+        try {
+            if (timeout <= 0L) {
+                lane.permits.acquire();
+            } else if (!lane.permits.tryAcquire(timeout, unit)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a " + priority + " priority slot");
+        }
+        lane.stats.record(System.nanoTime() - start);
+        return lane.permits;
+    }
+
+    /**
+     * Waits for a slot of the lane of the given synchronous call, at most until its deadline, and holds it until the
+     * call has completed.
+     *
+     * @throws SocketTimeoutException if the deadline of the call has passed first
+     */
+    void acquire(CallContext context) throws IOException {
+        final long start = System.nanoTime();
+        holdSlot(context);
+        recordQueueDelay(context.priority, System.nanoTime() - start);
+    }
+
+    private void holdSlot(CallContext context) throws IOException {
+        final Semaphore permits = lanes.get(context.priority).permits;
+        try {
+            if (!context.hasDeadline()) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(Math.max(1L, context.remainingMillis()), TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("Deadline of " + context.timeoutMillis
+                        + "ms exceeded while waiting for a " + context.priority + " priority slot");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a " + context.priority + " priority slot");
+        }
+        context.holdPermit(permits);
+    }
+
+    void recordQueueDelay(Priority priority, long queueDelayNanos) {
+        lanes.get(priority).stats.record(queueDelayNanos);
+    }
+
+    LaneStats getStats(Priority priority) {
+        return lanes.get(priority).stats;
+    }
+
+    /**
+     * Shuts down the executors of the dispatchers of all lanes once their running calls have completed.
+     */
+    void shutdown() {
+        for (Lane lane : lanes.values()) {
+            lane.dispatcher.executorService().shutdown();
+        }
+    }
+
+    private static class Lane {
+        private final Dispatcher dispatcher;
+        private final Semaphore permits;
+        private final LaneStats stats;
+        private volatile OkHttpClient client;
+
+        private Lane(Priority priority, int maxConcurrency) {
+            this.dispatcher = new Dispatcher();
+            this.dispatcher.setMaxRequests(maxConcurrency);
+            this.dispatcher.setMaxRequestsPerHost(maxConcurrency);
+            this.permits = new Semaphore(maxConcurrency, true);
+            this.stats = new LaneStats(priority);
+        }
+    }
+}
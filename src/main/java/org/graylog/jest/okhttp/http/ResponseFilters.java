@@ -0,0 +1,110 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.searchbox.action.Action;
+import io.searchbox.cluster.NodesInfo;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.SearchScroll;
+import okhttp3.HttpUrl;
+import org.graylog.jest.okhttp.action.Actions;
+import org.graylog.jest.okhttp.action.InternalAction;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Appends <code>filter_path</code> to request URLs, so that Elasticsearch only returns the parts of a response
+ * the caller is interested in. <code>error</code> and <code>status</code> are always kept, so failed requests can
+ * still be reported properly.
+ * <p>
+ * The default filter only applies to the caller's own actions. Actions whose responses the client parses itself,
+ * i. e. {@link InternalAction internal actions}, node discovery and scrolls, are never filtered by default, and
+ * <code>_scroll_id</code> is kept in the filtered responses of scrolls.
+ * </p>
+ */
+class ResponseFilters {
+    static final ResponseFilters NONE = new ResponseFilters(Collections.emptyMap(), Collections.emptyList());
+
+    private static final String FILTER_PATH = "filter_path";
+    private static final List<String> ALWAYS_KEPT = ImmutableList.of("error", "status");
+    private static final String SCROLL_ID = "_scroll_id";
+    private static final List<Class<?>> UNFILTERED_BY_DEFAULT = ImmutableList.of(
+            InternalAction.class, NodesInfo.class, SearchScroll.class, ClearScroll.class);
+
+    private final Map<Class<?>, String> filterPaths;
+    private final String defaultFilterPath;
+
+    ResponseFilters(Map<Class<?>, List<String>> filterPaths, List<String> defaultFilterPaths) {
+        final ImmutableMap.Builder<Class<?>, String> builder = ImmutableMap.builder();
+        for (Map.Entry<Class<?>, List<String>> entry : filterPaths.entrySet()) {
+            final String filterPath = join(entry.getValue());
+            if (filterPath != null) {
+                builder.put(entry.getKey(), filterPath);
+            }
+        }
+        this.filterPaths = builder.build();
+        this.defaultFilterPath = join(defaultFilterPaths);
+    }
+
+    /**
+     * @return the <code>filter_path</code> for the given action or <code>null</code> if its response is not filtered
+     */
+    String filterPathFor(Action<?> action) {
+        for (Map.Entry<Class<?>, String> entry : filterPaths.entrySet()) {
+            if (entry.getKey().isInstance(action)) {
+                final String filterPath = entry.getValue();
+                return Actions.isScroll(action) && !filterPath.contains(SCROLL_ID) ? filterPath + ',' + SCROLL_ID : filterPath;
+            }
+        }
+        return defaultFilterPath == null || isUnfilteredByDefault(action) ? null : defaultFilterPath;
+    }
+
+    private static boolean isUnfilteredByDefault(Action<?> action) {
+        for (Class<?> type : UNFILTERED_BY_DEFAULT) {
+            if (type.isInstance(action)) {
+                return true;
+            }
+        }
+        return Actions.isScroll(action);
+    }
+
+    /**
+     * Adds the <code>filter_path</code> for the given action to the URL unless the action already specifies one.
+     */
+    String apply(Action<?> action, String url) {
+        if (filterPathFor(action) == null) {
+            return url;
+        }
+
+        final HttpUrl httpUrl = HttpUrl.parse(url);
+        return httpUrl == null ? url : apply(action, httpUrl).toString();
+    }
+
+    /**
+     * Adds the <code>filter_path</code> for the given action to the URL unless the action already specifies one.
+     */
+    HttpUrl apply(Action<?> action, HttpUrl url) {
+        final String filterPath = filterPathFor(action);
+        if (filterPath == null || url.queryParameter(FILTER_PATH) != null) {
+            return url;
+        }
+
+        return url.newBuilder()
+                .addQueryParameter(FILTER_PATH, filterPath)
+                .build();
+    }
+
+    private static String join(List<String> paths) {
+        if (paths == null || paths.isEmpty()) {
+            return null;
+        }
+        final Set<String> filterPaths = new LinkedHashSet<>(paths);
+        filterPaths.addAll(ALWAYS_KEPT);
+        return Joiner.on(',').join(filterPaths);
+    }
+}
@@ -0,0 +1,190 @@
+package org.graylog.jest.okhttp.http;
+
+import io.searchbox.action.Action;
+import org.graylog.jest.okhttp.config.discovery.NodeInfo;
+import org.graylog.jest.okhttp.config.routing.RoutingRule;
+import org.graylog.jest.okhttp.stats.ServerStats;
+import org.graylog.jest.okhttp.stats.ServerStatsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the server for an action based on the configured {@link RoutingRule routing rules}, the preferred zone
+ * and the roles and attributes of the discovered nodes.
+ * <p>
+ * The candidate servers of each rule are computed once whenever the rules, the preferred zone or the discovered
+ * nodes change, so selecting a server on the request path is a lock-free lookup in an immutable snapshot.
+ * </p><p>
+ * If a preferred zone is set, servers in that zone are selected as long as they are healthy and not saturated.
+ * Only then the selection spills over to servers in other zones.
+ * </p>
+ */
+class ServerSelector {
+    private final ServerStatsRegistry serverStats;
+
+    private volatile List<RoutingRule> routingRules = Collections.emptyList();
+    private volatile Collection<NodeInfo> nodes = Collections.emptyList();
+    private volatile String zoneAttribute;
+    private volatile String localZone;
+    private volatile int saturationThreshold = 0;
+    private volatile long failureCooldownNanos = TimeUnit.SECONDS.toNanos(10L);
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), Collections.emptyList(), null, null);
+
+    ServerSelector(ServerStatsRegistry serverStats) {
+        this.serverStats = serverStats;
+    }
+
+    synchronized void setRoutingRules(List<RoutingRule> routingRules) {
+        this.routingRules = new ArrayList<>(routingRules);
+        updateSnapshot();
+    }
+
+    synchronized void setNodes(Collection<NodeInfo> nodes) {
+        this.nodes = new ArrayList<>(nodes);
+        updateSnapshot();
+    }
+
+    /**
+     * @param zoneAttribute the node attribute holding the zone of a node, e. g. <code>zone</code>
+     * @param localZone     the zone of this client or <code>null</code> to disable zone awareness
+     */
+    synchronized void setLocalZone(String zoneAttribute, String localZone) {
+        this.zoneAttribute = zoneAttribute;
+        this.localZone = localZone;
+        updateSnapshot();
+    }
+
+    /**
+     * @param saturationThreshold number of in-flight requests after which a server is considered saturated,
+     *                            <code>0</code> for no limit
+     */
+    void setSaturationThreshold(int saturationThreshold) {
+        this.saturationThreshold = saturationThreshold;
+    }
+
+    void setFailureCooldown(long duration, TimeUnit unit) {
+        this.failureCooldownNanos = unit.toNanos(duration);
+    }
+
+    Collection<NodeInfo> getNodes() {
+        return Collections.unmodifiableCollection(nodes);
+    }
+
+    private void updateSnapshot() {
+        this.snapshot = new Snapshot(routingRules, nodes, zoneAttribute, localZone);
+    }
+
+    /**
+     * @return the server for the given action or <code>null</code> if neither a routing rule nor zone awareness
+     * applies or no suitable discovered node is available, in which case the full server pool should be used.
+     */
+    String select(Action<?> action) {
+        final Snapshot current = snapshot;
+        Candidates candidates = current.defaultCandidates;
+        for (int i = 0; i < current.rules.size(); i++) {
+            if (current.rules.get(i).appliesTo(action)) {
+                candidates = current.ruleCandidates[i];
+                break;
+            }
+        }
+        if (candidates == null) {
+            return null;
+        }
+
+        final long now = System.nanoTime();
+        String server = pick(candidates.local, candidates.localCounter, now, true);
+        if (server == null) {
+            server = pick(candidates.remote, candidates.remoteCounter, now, true);
+        }
+        if (server == null) {
+            // everything is saturated, stay in the local zone unless it is unhealthy
+            server = pick(candidates.local, candidates.localCounter, now, false);
+        }
+        return server;
+    }
+
+    private String pick(String[] servers, AtomicInteger counter, long now, boolean skipSaturated) {
+        final int length = servers.length;
+        if (length == 0) {
+            return null;
+        }
+
+        final int start = counter.getAndIncrement();
+        for (int i = 0; i < length; i++) {
+            final String server = servers[Math.floorMod(start + i, length)];
+            if (isAvailable(server, now, skipSaturated)) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    private boolean isAvailable(String server, long now, boolean skipSaturated) {
+        final ServerStats stats = serverStats.get(server);
+        if (stats == null) {
+            return true;
+        }
+        if (stats.isFailing(now, failureCooldownNanos)) {
+            return false;
+        }
+        return !skipSaturated || saturationThreshold <= 0 || stats.getInFlight() < saturationThreshold;
+    }
+
+    private static class Candidates {
+        private final String[] local;
+        private final String[] remote;
+        private final AtomicInteger localCounter = new AtomicInteger();
+        private final AtomicInteger remoteCounter = new AtomicInteger();
+
+        private Candidates(List<String> local, List<String> remote) {
+            this.local = local.toArray(new String[0]);
+            this.remote = remote.toArray(new String[0]);
+        }
+    }
+
+    private static class Snapshot {
+        private final List<RoutingRule> rules;
+        private final Candidates[] ruleCandidates;
+        private final Candidates defaultCandidates;
+
+        private Snapshot(List<RoutingRule> rules, Collection<NodeInfo> nodes, String zoneAttribute, String localZone) {
+            this.rules = rules;
+            this.ruleCandidates = new Candidates[rules.size()];
+            for (int i = 0; i < rules.size(); i++) {
+                final RoutingRule rule = rules.get(i);
+                final List<NodeInfo> matching = new ArrayList<>();
+                for (NodeInfo node : nodes) {
+                    if (rule.matches(node)) {
+                        matching.add(node);
+                    }
+                }
+                this.ruleCandidates[i] = candidates(matching, zoneAttribute, localZone);
+            }
+
+            // without routing rules only zone awareness changes the selection from the full server pool
+            this.defaultCandidates = localZone == null ? null : candidates(nodes, zoneAttribute, localZone);
+        }
+
+        private static Candidates candidates(Collection<NodeInfo> nodes, String zoneAttribute, String localZone) {
+            if (nodes.isEmpty()) {
+                return null;
+            }
+
+            final List<String> local = new ArrayList<>();
+            final List<String> remote = new ArrayList<>();
+            for (NodeInfo node : nodes) {
+                if (localZone == null || localZone.equals(node.getAttribute(zoneAttribute))) {
+                    local.add(node.getServer());
+                } else {
+                    remote.add(node.getServer());
+                }
+            }
+            return new Candidates(local, remote);
+        }
+    }
+}
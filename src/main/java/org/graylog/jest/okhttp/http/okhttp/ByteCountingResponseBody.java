@@ -0,0 +1,52 @@
+package org.graylog.jest.okhttp.http.okhttp;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Response body reporting the number of bytes read from it, e. g. to account a body of unknown length, such as a
+ * chunked or transparently decompressed one, while it's being read.
+ */
+public final class ByteCountingResponseBody extends ResponseBody {
+    private final ResponseBody delegate;
+    private final BufferedSource source;
+
+    public ByteCountingResponseBody(ResponseBody delegate, LongConsumer onRead) {
+        this.delegate = requireNonNull(delegate, "Response body must not be null");
+        requireNonNull(onRead, "Callback must not be null");
+        this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                final long read = super.read(sink, byteCount);
+                if (read > 0L) {
+                    onRead.accept(read);
+                }
+                return read;
+            }
+        });
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public BufferedSource source() {
+        return source;
+    }
+}
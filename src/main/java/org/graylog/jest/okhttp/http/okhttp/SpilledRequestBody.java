@@ -0,0 +1,100 @@
+package org.graylog.jest.okhttp.http.okhttp;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+import org.graylog.jest.okhttp.action.StreamingAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Request body which has been written to a temporary file, so that large payloads do not stay on the heap while
+ * they are sent and retries can replay the body from disk.
+ * <p>
+ * The file has to be {@link #release() released} once the call has completed.
+ * </p>
+ */
+public final class SpilledRequestBody extends RequestBody {
+    private static final String PREFIX = "jest-request-";
+    private static final String SUFFIX = ".json";
+
+    private final MediaType contentType;
+    private final File file;
+    private final long contentLength;
+
+    private SpilledRequestBody(MediaType contentType, File file) {
+        this.contentType = contentType;
+        this.file = file;
+        this.contentLength = file.length();
+    }
+
+    /**
+     * Writes the given payload into a temporary file in the given directory.
+     *
+     * @param directory the directory for the temporary file or <code>null</code> for the default temporary directory
+     */
+    public static SpilledRequestBody create(MediaType contentType, String payload, File directory) throws IOException {
+        final File file = File.createTempFile(PREFIX, SUFFIX, directory);
+        try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+            sink.writeString(payload, contentType == null ? StandardCharsets.UTF_8 : contentType.charset(StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+        return new SpilledRequestBody(contentType, file);
+    }
+
+    /**
+     * Writes the payload of the given action into a temporary file in the given directory.
+     *
+     * @param directory the directory for the temporary file or <code>null</code> for the default temporary directory
+     */
+    public static SpilledRequestBody create(MediaType contentType, StreamingAction<?> action, File directory) throws IOException {
+        final File file = File.createTempFile(PREFIX, SUFFIX, directory);
+        try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+            action.writeTo(sink);
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+        return new SpilledRequestBody(contentType, file);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        try (Source source = Okio.source(file)) {
+            sink.writeAll(source);
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Deletes the temporary file. The body cannot be written anymore afterwards.
+     */
+    public void release() {
+        delete(file);
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.graylog.jest.okhttp.http.okhttp;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.graylog.jest.okhttp.action.StreamingAction;
+
+import java.io.IOException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Request body writing the payload of a {@link StreamingAction} straight into the OkHttp sink.
+ */
+public final class StreamingActionRequestBody extends RequestBody {
+    private final MediaType contentType;
+    private final StreamingAction<?> action;
+
+    public StreamingActionRequestBody(MediaType contentType, StreamingAction<?> action) {
+        this.contentType = contentType;
+        this.action = requireNonNull(action, "Action must not be null");
+    }
+
+    @Override
+    public MediaType contentType() {
+        return contentType;
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return action.contentLength();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        action.writeTo(sink);
+    }
+}
@@ -0,0 +1,190 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Upper bound for the number of bytes buffered by calls in flight.
+ * <p>
+ * Calls reserve the size of their body before it is buffered and give it back once it has been consumed. A single
+ * reservation larger than the whole budget is granted once no other bytes are reserved, so that it can't wait forever.
+ * </p>
+ */
+public class ByteBudget {
+    private final long maxBytes;
+    private final boolean blocking;
+    private long reservedBytes = 0L;
+    private long peakBytes = 0L;
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param maxBytes the maximum number of bytes reserved at the same time
+     * @param blocking whether reservations exceeding the budget wait for other reservations to be released or fail
+     *                 with a {@link ByteBudgetExceededException}
+     */
+    public ByteBudget(long maxBytes, boolean blocking) {
+        if (maxBytes < 1L) {
+            throw new IllegalArgumentException("Budget must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.blocking = blocking;
+    }
+
+    /**
+     * Reserves the given number of bytes, waiting without limit in blocking mode.
+     *
+     * @throws ByteBudgetExceededException if the budget is non-blocking and exhausted
+     */
+    public Reservation reserve(long bytes) throws ByteBudgetExceededException, InterruptedIOException {
+        return reserve(bytes, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reserves the given number of bytes, waiting at most the given time in blocking mode.
+     *
+     * @param timeout the maximum time to wait, <code>0</code> to wait without limit
+     * @return the reservation or <code>null</code> if the waiting time elapsed
+     * @throws ByteBudgetExceededException if the budget is non-blocking and exhausted
+     */
+    public Reservation reserve(long bytes, long timeout, TimeUnit unit) throws ByteBudgetExceededException, InterruptedIOException {
+        if (bytes <= 0L) {
+            return new Reservation(0L);
+        }
+
+        synchronized (this) {
+            if (!fits(bytes)) {
+                if (!blocking) {
+                    rejected.increment();
+                    throw new ByteBudgetExceededException(bytes, "Budget of " + maxBytes + " bytes exhausted, "
+                            + reservedBytes + " bytes reserved, " + bytes + " bytes requested");
+                }
+
+                waits.increment();
+                final long deadlineNanos = timeout > 0L ? System.nanoTime() + unit.toNanos(timeout) : 0L;
+                try {
+                    while (!fits(bytes)) {
+                        if (deadlineNanos == 0L) {
+                            wait();
+                        } else {
+                            final long remainingNanos = deadlineNanos - System.nanoTime();
+                            if (remainingNanos <= 0L) {
+                                return null;
+                            }
+                            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for " + bytes + " bytes of the budget");
+                }
+            }
+
+            reservedBytes += bytes;
+            peakBytes = Math.max(peakBytes, reservedBytes);
+            return new Reservation(bytes);
+        }
+    }
+
+    /**
+     * Accounts the given number of bytes right away, even if the budget is exhausted, e. g. for a response body
+     * which is already being received. Later reservations wait until the bytes have been given back.
+     */
+    public synchronized Reservation account(long bytes) {
+        if (bytes <= 0L) {
+            return new Reservation(0L);
+        }
+        reservedBytes += bytes;
+        peakBytes = Math.max(peakBytes, reservedBytes);
+        return new Reservation(bytes);
+    }
+
+    private boolean fits(long bytes) {
+        return reservedBytes == 0L || reservedBytes + bytes <= maxBytes;
+    }
+
+    private synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        notifyAll();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    /**
+     * @return the highest number of bytes reserved at the same time
+     */
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * @return the number of reservations which had to wait
+     */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /**
+     * @return the number of reservations which have been rejected in non-blocking mode
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Bytes reserved from the budget, given back when closed. Closing a reservation more than once has no effect.
+     */
+    public final class Reservation implements AutoCloseable {
+        private final AtomicLong bytes;
+        private boolean closed = false;
+
+        private Reservation(long bytes) {
+            this.bytes = new AtomicLong(bytes);
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * Accounts further bytes right away, like {@link ByteBudget#account(long)}, e. g. for a response body of unknown length
+         * while it's being read. Has no effect once the reservation has been closed.
+         */
+        public void add(long added) {
+            if (added <= 0L) {
+                return;
+            }
+            synchronized (ByteBudget.this) {
+                if (closed) {
+                    return;
+                }
+                bytes.addAndGet(added);
+                reservedBytes += added;
+                peakBytes = Math.max(peakBytes, reservedBytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (ByteBudget.this) {
+                closed = true;
+                final long released = bytes.getAndSet(0L);
+                if (released > 0L) {
+                    release(released);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+/**
+ * Signals that a call has been rejected by a non-blocking {@link ByteBudget}.
+ */
+public class ByteBudgetExceededException extends ThrottledException {
+    private final long requestedBytes;
+
+    public ByteBudgetExceededException(long requestedBytes, String message) {
+        super(message);
+        this.requestedBytes = requestedBytes;
+    }
+
+    public long getRequestedBytes() {
+        return requestedBytes;
+    }
+}
@@ -0,0 +1,52 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import java.util.Objects;
+
+/**
+ * Configuration of a rate limit for an action type, optionally restricted to a single server.
+ */
+public final class RateLimit {
+    private final Class<?> actionType;
+    private final String server;
+    private final double permitsPerSecond;
+    private final double burst;
+
+    /**
+     * @param actionType       the action type, including its subtypes
+     * @param server           the server the limit applies to or <code>null</code> for a limit across all servers
+     * @param permitsPerSecond the maximum sustained number of calls per second
+     * @param burst            the maximum number of calls which may be sent at once
+     */
+    public RateLimit(Class<?> actionType, String server, double permitsPerSecond, double burst) {
+        this.actionType = Objects.requireNonNull(actionType, "actionType");
+        this.server = server;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+    }
+
+    public Class<?> getActionType() {
+        return actionType;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public double getBurst() {
+        return burst;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimit{" +
+                "actionType=" + actionType.getSimpleName() +
+                ", server='" + server + '\'' +
+                ", permitsPerSecond=" + permitsPerSecond +
+                ", burst=" + burst +
+                '}';
+    }
+}
@@ -0,0 +1,29 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+/**
+ * Signals that a call has been rejected by a non-blocking {@link RateLimiter}.
+ */
+public class RateLimitExceededException extends ThrottledException {
+    private final Class<?> actionType;
+    private final String server;
+
+    public RateLimitExceededException(Class<?> actionType, String server, String message) {
+        super(message);
+        this.actionType = actionType;
+        this.server = server;
+    }
+
+    /**
+     * @return the action type of the exceeded limit
+     */
+    public Class<?> getActionType() {
+        return actionType;
+    }
+
+    /**
+     * @return the server of the exceeded limit or <code>null</code> if the limit applies to all servers
+     */
+    public String getServer() {
+        return server;
+    }
+}
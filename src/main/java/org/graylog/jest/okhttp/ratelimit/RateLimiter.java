@@ -0,0 +1,286 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket rate limits per action type, optionally per server. Limits can be added, changed and removed at
+ * runtime.
+ * <p>
+ * An action is limited by the first configured action type it is an instance of. The limit across all servers and the
+ * limit of the target server of that type both apply. A call sending several actions at once, e. g. a multi get
+ * combining gets, takes one token per action.
+ * </p>
+ */
+public class RateLimiter {
+    public enum Mode {
+        /**
+         * Calls wait until tokens are available.
+         */
+        BLOCKING,
+        /**
+         * Calls are rejected with a {@link RateLimitExceededException} if no tokens are available.
+         */
+        NON_BLOCKING
+    }
+
+    private volatile Mode mode;
+    private volatile Map<Class<?>, Limits> limits = Collections.emptyMap();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder delayNanos = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RateLimiter() {
+        this(Mode.BLOCKING);
+    }
+
+    public RateLimiter(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Limits the calls of the given action type across all servers, replacing the rate of an existing limit.
+     */
+    public void setLimit(Class<?> actionType, double permitsPerSecond, double burst) {
+        setLimit(actionType, null, permitsPerSecond, burst);
+    }
+
+    /**
+     * Limits the calls of the given action type to the given server, replacing the rate of an existing limit.
+     *
+     * @param server the server or <code>null</code> to limit calls across all servers
+     */
+    public synchronized void setLimit(Class<?> actionType, String server, double permitsPerSecond, double burst) {
+        final Limits existing = limits.get(actionType);
+        final Limits typeLimits;
+        if (existing == null) {
+            typeLimits = new Limits();
+            final Map<Class<?>, Limits> updated = new LinkedHashMap<>(limits);
+            updated.put(actionType, typeLimits);
+            limits = Collections.unmodifiableMap(updated);
+        } else {
+            typeLimits = existing;
+        }
+        typeLimits.setRate(server, permitsPerSecond, burst);
+    }
+
+    public void setLimit(RateLimit rateLimit) {
+        setLimit(rateLimit.getActionType(), rateLimit.getServer(), rateLimit.getPermitsPerSecond(), rateLimit.getBurst());
+    }
+
+    /**
+     * Removes the limit of the given action type across all servers and the limits of all servers.
+     */
+    public synchronized void removeLimits(Class<?> actionType) {
+        if (limits.containsKey(actionType)) {
+            final Map<Class<?>, Limits> updated = new LinkedHashMap<>(limits);
+            updated.remove(actionType);
+            limits = Collections.unmodifiableMap(updated);
+        }
+    }
+
+    /**
+     * Removes the limit of the given action type to the given server.
+     *
+     * @param server the server or <code>null</code> to remove the limit across all servers
+     */
+    public synchronized void removeLimit(Class<?> actionType, String server) {
+        final Limits typeLimits = limits.get(actionType);
+        if (typeLimits != null) {
+            typeLimits.remove(server);
+        }
+    }
+
+    /**
+     * @return the configured limits in the order they are matched
+     */
+    public List<RateLimit> getLimits() {
+        final List<RateLimit> result = new ArrayList<>();
+        for (Map.Entry<Class<?>, Limits> entry : limits.entrySet()) {
+            final Limits typeLimits = entry.getValue();
+            final TokenBucket all = typeLimits.all;
+            if (all != null) {
+                result.add(new RateLimit(entry.getKey(), null, all.getPermitsPerSecond(), all.getCapacity()));
+            }
+            for (Map.Entry<String, TokenBucket> server : typeLimits.servers.entrySet()) {
+                result.add(new RateLimit(entry.getKey(), server.getKey(), server.getValue().getPermitsPerSecond(), server.getValue().getCapacity()));
+            }
+        }
+        return result;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Takes a token for a call of the given action type to the given server, waiting for it without limit or failing
+     * depending on the {@link Mode}.
+     *
+     * @throws RateLimitExceededException if the limiter is non-blocking and no token is available
+     * @throws InterruptedIOException     if the thread was interrupted while waiting for a token
+     */
+    public void acquire(Class<?> actionType, String server) throws RateLimitExceededException, InterruptedIOException {
+        acquire(actionType, server, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes a token for a call of the given action type to the given server, waiting at most the given time for it
+     * or failing depending on the {@link Mode}. A call takes a token from the limit of its type on all servers and
+     * from the limit on its server, if any, or from neither of them.
+     *
+     * @param timeout the maximum time to wait in blocking mode, <code>0</code> to wait without limit
+     * @return <code>false</code> if the tokens wouldn't have been available within the waiting time
+     * @throws RateLimitExceededException if the limiter is non-blocking and no token is available
+     * @throws InterruptedIOException     if the thread was interrupted while waiting for a token
+     */
+    public boolean acquire(Class<?> actionType, String server, long timeout, TimeUnit unit) throws RateLimitExceededException, InterruptedIOException {
+        return acquire(actionType, server, 1, timeout, unit);
+    }
+
+    /**
+     * Takes the given number of tokens for a call sending that many actions of the given type to the given server.
+     * Calls taking more tokens than a limit allows as burst are let through once its bucket is full.
+     *
+     * @see #acquire(Class, String, long, TimeUnit)
+     */
+    public boolean acquire(Class<?> actionType, String server, int permits, long timeout, TimeUnit unit) throws RateLimitExceededException, InterruptedIOException {
+        final Map<Class<?>, Limits> current = limits;
+        if (current.isEmpty()) {
+            return true;
+        }
+        final Class<?> limitedType = limitedType(current, actionType);
+        if (limitedType == null) {
+            return true;
+        }
+
+        final Limits typeLimits = current.get(limitedType);
+        final TokenBucket typeBucket = typeLimits.all;
+        final TokenBucket serverBucket = server == null ? null : typeLimits.servers.get(server);
+        if (mode == Mode.NON_BLOCKING) {
+            tryAcquire(limitedType, null, typeBucket, permits);
+            try {
+                tryAcquire(limitedType, server, serverBucket, permits);
+            } catch (RateLimitExceededException e) {
+                release(typeBucket, permits);
+                throw e;
+            }
+            return true;
+        }
+
+        final long typeWaitNanos = acquire(typeBucket, permits, unit.toNanos(timeout));
+        if (typeWaitNanos < 0L) {
+            return false;
+        }
+        final long serverWaitNanos;
+        try {
+            serverWaitNanos = acquire(serverBucket, permits, timeout > 0L ? Math.max(1L, unit.toNanos(timeout) - typeWaitNanos) : 0L);
+        } catch (InterruptedIOException e) {
+            release(typeBucket, permits);
+            throw e;
+        }
+        if (serverWaitNanos < 0L) {
+            release(typeBucket, permits);
+            return false;
+        }
+
+        final long waitNanos = typeWaitNanos + serverWaitNanos;
+        if (waitNanos > 0L) {
+            delayed.increment();
+            delayNanos.add(waitNanos);
+        }
+        return true;
+    }
+
+    private void tryAcquire(Class<?> actionType, String server, TokenBucket bucket, int permits) throws RateLimitExceededException {
+        if (bucket != null && !bucket.tryAcquire(permits)) {
+            rejected.increment();
+            throw new RateLimitExceededException(actionType, server, "Rate limit of " + bucket.getPermitsPerSecond()
+                    + " calls per second for " + actionType.getSimpleName() + (server == null ? "" : " on " + server) + " exceeded");
+        }
+    }
+
+    /**
+     * @return the time spent waiting in nanoseconds or <code>-1</code> if no token was available in time
+     */
+    private static long acquire(TokenBucket bucket, int permits, long timeoutNanos) throws InterruptedIOException {
+        if (bucket == null) {
+            return 0L;
+        }
+        try {
+            return bucket.acquire(permits, timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the rate limit");
+        }
+    }
+
+    private static void release(TokenBucket bucket, int permits) {
+        if (bucket != null) {
+            bucket.release(permits);
+        }
+    }
+
+    private static Class<?> limitedType(Map<Class<?>, Limits> limits, Class<?> actionType) {
+        for (Class<?> type : limits.keySet()) {
+            if (type.isAssignableFrom(actionType)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of calls which had to wait for a token
+     */
+    public long getDelayed() {
+        return delayed.sum();
+    }
+
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(delayNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of calls which have been rejected in non-blocking mode
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    private static final class Limits {
+        private volatile TokenBucket all;
+        private final ConcurrentMap<String, TokenBucket> servers = new ConcurrentHashMap<>();
+
+        private void setRate(String server, double permitsPerSecond, double burst) {
+            final TokenBucket bucket = server == null ? all : servers.get(server);
+            if (bucket != null) {
+                bucket.setRate(permitsPerSecond, burst);
+            } else if (server == null) {
+                all = new TokenBucket(permitsPerSecond, burst);
+            } else {
+                servers.put(server, new TokenBucket(permitsPerSecond, burst));
+            }
+        }
+
+        private void remove(String server) {
+            if (server == null) {
+                all = null;
+            } else {
+                servers.remove(server);
+            }
+        }
+    }
+}
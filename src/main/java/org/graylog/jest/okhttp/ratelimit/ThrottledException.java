@@ -0,0 +1,13 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import java.io.IOException;
+
+/**
+ * Signals that the client itself has rejected a call before sending it, e. g. because a rate limit was exceeded.
+ * Such rejections don't count as failures of the target server.
+ */
+public class ThrottledException extends IOException {
+    public ThrottledException(String message) {
+        super(message);
+    }
+}
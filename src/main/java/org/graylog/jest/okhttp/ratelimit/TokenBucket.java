@@ -0,0 +1,140 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket refilling at a fixed rate up to its capacity. The rate and capacity can be changed at runtime.
+ */
+public class TokenBucket {
+    private final Ticker ticker;
+    private double permitsPerSecond;
+    private double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    /**
+     * @param permitsPerSecond the refill rate
+     * @param capacity         the maximum number of tokens, i. e. the allowed burst
+     */
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this(permitsPerSecond, capacity, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    TokenBucket(double permitsPerSecond, double capacity, Ticker ticker) {
+        checkArguments(permitsPerSecond, capacity);
+        this.ticker = ticker;
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = ticker.read();
+    }
+
+    private static void checkArguments(double permitsPerSecond, double capacity) {
+        if (!(permitsPerSecond > 0.0d)) {
+            throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+        }
+        if (capacity < 1.0d) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+    }
+
+    /**
+     * Takes the given number of tokens if they are available. Requests larger than the bucket are let through once
+     * it is full, like in {@link #acquire(int, long, TimeUnit)}.
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        refill();
+        if (tokens >= Math.min(permits, capacity)) {
+            tokens -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Waits until the given number of tokens is available and takes them.
+     *
+     * @return the time spent waiting in nanoseconds
+     */
+    public long acquire(int permits) throws InterruptedException {
+        return acquire(permits, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits at most the given time until the given number of tokens is available and takes them. Gives up right
+     * away if the tokens won't be available in time.
+     *
+     * @param timeout the maximum time to wait, <code>0</code> to wait without limit
+     * @return the time spent waiting in nanoseconds or <code>-1</code> if the tokens weren't available in time
+     */
+    public long acquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        final long start = ticker.read();
+        final long timeoutNanos = unit.toNanos(timeout);
+        while (true) {
+            final long waitNanos;
+            synchronized (this) {
+                refill();
+                // requests larger than the bucket are let through once it is full
+                final double required = Math.min(permits, capacity);
+                if (tokens >= required) {
+                    tokens -= permits;
+                    return ticker.read() - start;
+                }
+                waitNanos = (long) Math.ceil((required - tokens) / permitsPerSecond * TimeUnit.SECONDS.toNanos(1L));
+            }
+            if (timeoutNanos > 0L && ticker.read() - start + waitNanos > timeoutNanos) {
+                return -1L;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1L));
+        }
+    }
+
+    /**
+     * Gives back tokens which have been taken but not used, e. g. because another limit rejected the call.
+     */
+    public synchronized void release(int permits) {
+        refill();
+        tokens = Math.min(capacity, tokens + permits);
+    }
+
+    /**
+     * Changes the refill rate and capacity, keeping the currently available tokens up to the new capacity.
+     */
+    public synchronized void setRate(double permitsPerSecond, double capacity) {
+        checkArguments(permitsPerSecond, capacity);
+        refill();
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public synchronized double getCapacity() {
+        return capacity;
+    }
+
+    public synchronized double getAvailableTokens() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        final long now = ticker.read();
+        final long elapsedNanos = now - lastRefillNanos;
+        if (elapsedNanos > 0L) {
+            tokens = Math.min(capacity, tokens + elapsedNanos * permitsPerSecond / TimeUnit.SECONDS.toNanos(1L));
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.graylog.jest.okhttp.scroll;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a single slice of a {@link SlicedScrollExporter}.
+ */
+public class SliceProgress {
+    private final int sliceId;
+    private final long hits;
+    private final long pages;
+    private final boolean finished;
+    private final long elapsedNanos;
+
+    SliceProgress(int sliceId, long hits, long pages, boolean finished, long elapsedNanos) {
+        this.sliceId = sliceId;
+        this.hits = hits;
+        this.pages = pages;
+        this.finished = finished;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getSliceId() {
+        return sliceId;
+    }
+
+    /**
+     * @return the number of hits handed to the consumer
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    public long getPages() {
+        return pages;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getHitsPerSecond() {
+        return elapsedNanos == 0L ? 0.0d : hits * 1_000_000_000.0d / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SliceProgress{" +
+                "sliceId=" + sliceId +
+                ", hits=" + hits +
+                ", pages=" + pages +
+                ", finished=" + finished +
+                ", hitsPerSecond=" + getHitsPerSecond() +
+                '}';
+    }
+}
@@ -0,0 +1,381 @@
+package org.graylog.jest.okhttp.scroll;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import io.searchbox.params.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Exports all documents matching a query through several <a href="https://www.elastic.co/guide/en/elasticsearch/reference/5.x/search-request-scroll.html#sliced-scroll">sliced scrolls</a>
+ * which are driven concurrently through {@link JestClient#executeAsync(Action, JestResultHandler)}.
+ * <p>
+ * The hits of all slices are merged into a bounded queue which is drained by the thread calling
+ * {@link #export(Consumer)}. A slice only requests its next page once its current page has been accepted by the
+ * queue, so a slow consumer throttles all slices. All scroll contexts are cleared when the export completes or fails.
+ * </p>
+ * <pre>
+ * SlicedScrollExporter exporter = new SlicedScrollExporter.Builder(client, "{\"query\":{\"match_all\":{}}}")
+ *     .addIndex("logs")
+ *     .slices(8)
+ *     .build();
+ * exporter.export(hit -&gt; write(hit.getAsJsonObject("_source")));
+ * </pre>
+ */
+public class SlicedScrollExporter {
+    private static final Logger log = LoggerFactory.getLogger(SlicedScrollExporter.class);
+
+    private final JestClient client;
+    private final String query;
+    private final List<String> indices;
+    private final List<String> types;
+    private final int slices;
+    private final String scroll;
+    private final int size;
+
+    private final BlockingQueue<Page> queue;
+    private final ConcurrentLinkedDeque<Page> parked = new ConcurrentLinkedDeque<>();
+    private final List<Slice> sliceStates = new ArrayList<>();
+    private final AtomicInteger activeSlices = new AtomicInteger();
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private volatile boolean closed = false;
+
+    private SlicedScrollExporter(Builder builder) {
+        this.client = builder.client;
+        this.query = builder.query;
+        this.indices = new ArrayList<>(builder.indices);
+        this.types = new ArrayList<>(builder.types);
+        this.slices = builder.slices;
+        this.scroll = builder.scroll;
+        this.size = builder.size;
+        this.queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+    }
+
+    /**
+     * Runs the export and hands every hit to the given consumer on the calling thread. Can only be called once.
+     *
+     * @return the progress of all slices after the export completed
+     */
+    public List<SliceProgress> export(Consumer<JsonObject> consumer) throws IOException {
+        synchronized (sliceStates) {
+            if (!sliceStates.isEmpty()) {
+                throw new IllegalStateException("Export has already been started");
+            }
+            for (int i = 0; i < slices; i++) {
+                sliceStates.add(new Slice(i));
+            }
+        }
+
+        activeSlices.set(slices);
+        try {
+            for (Slice slice : sliceStates) {
+                client.executeAsync(slice.initialSearch(), new PageHandler(slice));
+            }
+
+            while (failure.get() == null && (activeSlices.get() > 0 || !queue.isEmpty() || !parked.isEmpty())) {
+                final Page page = queue.poll(100L, TimeUnit.MILLISECONDS);
+                if (page != null) {
+                    for (JsonElement hit : page.hits) {
+                        consumer.accept(hit.getAsJsonObject());
+                    }
+                    page.slice.hits.add(page.hits.size());
+                    page.slice.pages.increment();
+                }
+                resumeParkedSlices();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, new InterruptedIOException("Interrupted while exporting"));
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            closed = true;
+            clearScrolls();
+        }
+
+        final Exception e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e != null) {
+            throw new IOException("Sliced scroll export failed", e);
+        }
+        return getProgress();
+    }
+
+    /**
+     * @return the current progress of all slices, can be called concurrently to {@link #export(Consumer)}
+     */
+    public List<SliceProgress> getProgress() {
+        final List<SliceProgress> progress = new ArrayList<>(sliceStates.size());
+        synchronized (sliceStates) {
+            for (Slice slice : sliceStates) {
+                progress.add(slice.progress());
+            }
+        }
+        return progress;
+    }
+
+    private void resumeParkedSlices() {
+        Page page;
+        while ((page = parked.pollFirst()) != null) {
+            if (!queue.offer(page)) {
+                parked.addFirst(page);
+                return;
+            }
+            requestNextPage(page.slice);
+        }
+    }
+
+    private void requestNextPage(Slice slice) {
+        if (closed) {
+            return;
+        }
+        final Action<JestResult> scrollAction = new SearchScroll.Builder(slice.scrollId, scroll).build();
+        client.executeAsync(scrollAction, new PageHandler(slice));
+    }
+
+    private void clearScrolls() {
+        final List<String> scrollIds = new ArrayList<>();
+        for (Slice slice : sliceStates) {
+            if (slice.scrollId != null) {
+                scrollIds.add(slice.scrollId);
+            }
+        }
+        if (scrollIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            final JestResult result = client.execute(clearScroll(scrollIds));
+            if (!result.isSucceeded()) {
+                log.warn("Couldn't clear scroll contexts: {}", result.getErrorMessage());
+            }
+        } catch (IOException e) {
+            log.warn("Couldn't clear scroll contexts", e);
+        }
+    }
+
+    private static ClearScroll clearScroll(Collection<String> scrollIds) {
+        final ClearScroll.Builder builder = new ClearScroll.Builder();
+        for (String scrollId : scrollIds) {
+            builder.addScrollId(scrollId);
+        }
+        return builder.build();
+    }
+
+    private class PageHandler implements JestResultHandler<JestResult> {
+        private final Slice slice;
+
+        private PageHandler(Slice slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public void completed(JestResult result) {
+            final JsonObject json = result.getJsonObject();
+            if (json != null && json.has("_scroll_id")) {
+                slice.scrollId = json.get("_scroll_id").getAsString();
+            }
+
+            if (closed) {
+                // the export has already finished, so nobody is going to clear this scroll context
+                if (slice.scrollId != null) {
+                    client.executeAsync(clearScroll(Collections.singleton(slice.scrollId)), new LoggingHandler());
+                }
+                return;
+            }
+            if (!result.isSucceeded()) {
+                failed(new IOException("Scroll request of slice " + slice.id + " failed: " + result.getErrorMessage()));
+                return;
+            }
+
+            final JsonArray hits = json.getAsJsonObject("hits").getAsJsonArray("hits");
+            if (hits.size() == 0) {
+                slice.finished();
+                activeSlices.decrementAndGet();
+                return;
+            }
+
+            final Page page = new Page(slice, hits);
+            if (queue.offer(page)) {
+                requestNextPage(slice);
+            } else {
+                parked.addLast(page);
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            log.debug("Slice {} failed", slice.id, ex);
+            failure.compareAndSet(null, ex);
+            activeSlices.decrementAndGet();
+        }
+    }
+
+    private static class LoggingHandler implements JestResultHandler<JestResult> {
+        @Override
+        public void completed(JestResult result) {
+            if (!result.isSucceeded()) {
+                log.warn("Couldn't clear scroll context: {}", result.getErrorMessage());
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            log.warn("Couldn't clear scroll context", ex);
+        }
+    }
+
+    private static class Page {
+        private final Slice slice;
+        private final JsonArray hits;
+
+        private Page(Slice slice, JsonArray hits) {
+            this.slice = slice;
+            this.hits = hits;
+        }
+    }
+
+    private class Slice {
+        private final int id;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder pages = new LongAdder();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos = 0L;
+        private volatile String scrollId;
+
+        private Slice(int id) {
+            this.id = id;
+        }
+
+        private Search initialSearch() {
+            final JsonObject sliceQuery = new JsonParser().parse(query).getAsJsonObject();
+            if (slices > 1) {
+                final JsonObject slice = new JsonObject();
+                slice.addProperty("id", id);
+                slice.addProperty("max", slices);
+                sliceQuery.add("slice", slice);
+            }
+            if (!sliceQuery.has("sort")) {
+                // scrolling in index order is the most efficient way to export documents
+                final JsonArray sort = new JsonArray();
+                sort.add(new JsonPrimitive("_doc"));
+                sliceQuery.add("sort", sort);
+            }
+
+            final Search.Builder builder = new Search.Builder(sliceQuery.toString())
+                    .setParameter(Parameters.SCROLL, scroll)
+                    .setParameter(Parameters.SIZE, size);
+            for (String index : indices) {
+                builder.addIndex(index);
+            }
+            for (String type : types) {
+                builder.addType(type);
+            }
+            return builder.build();
+        }
+
+        private void finished() {
+            endNanos = System.nanoTime();
+        }
+
+        private SliceProgress progress() {
+            final long end = endNanos == 0L ? System.nanoTime() : endNanos;
+            return new SliceProgress(id, hits.sum(), pages.sum(), endNanos != 0L, end - startNanos);
+        }
+    }
+
+    public static class Builder {
+        private final JestClient client;
+        private final String query;
+        private final List<String> indices = new ArrayList<>();
+        private final List<String> types = new ArrayList<>();
+        private int slices = Runtime.getRuntime().availableProcessors();
+        private String scroll = "1m";
+        private int size = 1000;
+        private int queueCapacity = 16;
+
+        public Builder(JestClient client, String query) {
+            this.client = requireNonNull(client, "Client must not be null");
+            this.query = requireNonNull(query, "Query must not be null");
+        }
+
+        public Builder addIndex(String index) {
+            this.indices.add(index);
+            return this;
+        }
+
+        public Builder addType(String type) {
+            this.types.add(type);
+            return this;
+        }
+
+        /**
+         * Sets the number of slices, which should not exceed the number of shards of the exported indices.
+         */
+        public Builder slices(int slices) {
+            if (slices < 1) {
+                throw new IllegalArgumentException("Number of slices must be positive");
+            }
+            this.slices = slices;
+            return this;
+        }
+
+        /**
+         * Sets the keep-alive time of the scroll contexts, e. g. <code>1m</code>.
+         */
+        public Builder scroll(String scroll) {
+            this.scroll = scroll;
+            return this;
+        }
+
+        /**
+         * Sets the number of hits per page and slice.
+         */
+        public Builder size(int size) {
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pages buffered for the consumer.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public SlicedScrollExporter build() {
+            return new SlicedScrollExporter(this);
+        }
+    }
+}
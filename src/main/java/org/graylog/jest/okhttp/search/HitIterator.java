@@ -0,0 +1,198 @@
+package org.graylog.jest.okhttp.search;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over the hits of a search response while it is being read, binding each <code>_source</code> directly
+ * into the target type without building an intermediate JSON tree.
+ * <p>
+ * Fields of the response following <code>hits.hits</code>, e. g. aggregations, are not read. The iterator has to be
+ * closed if it is not consumed completely, so that the underlying connection is released.
+ * </p>
+ *
+ * @param <T> type of the source documents
+ */
+public class HitIterator<T> implements Iterator<StreamedHit<T>>, Closeable {
+    private final TypeAdapter<T> sourceAdapter;
+    private final JsonReader reader;
+    private final Closeable resource;
+    private long total = -1L;
+    private boolean inHits = false;
+    private boolean closed = false;
+
+    /**
+     * @param sourceAdapter adapter binding the <code>_source</code> of a hit
+     * @param body          the search response body
+     * @param resource      closed once all hits have been read or the iterator is closed
+     */
+    public HitIterator(TypeAdapter<T> sourceAdapter, Reader body, Closeable resource) throws IOException {
+        this.sourceAdapter = sourceAdapter;
+        this.reader = new JsonReader(body);
+        this.resource = resource;
+        try {
+            seekHits();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private void seekHits() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("hits".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    final String name = reader.nextName();
+                    if ("total".equals(name)) {
+                        total = readTotal();
+                    } else if ("hits".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                        reader.beginArray();
+                        inHits = true;
+                        return;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        close();
+    }
+
+    private long readTotal() throws IOException {
+        // Elasticsearch 7 returns an object with the value and its relation
+        if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+            long value = -1L;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("value".equals(reader.nextName())) {
+                    value = reader.nextLong();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return value;
+        }
+        return reader.nextLong();
+    }
+
+    /**
+     * @return the total number of matching documents or <code>-1</code> if the response did not contain it
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        try {
+            if (inHits && reader.hasNext()) {
+                return true;
+            }
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException(e);
+        }
+        closeQuietly();
+        return false;
+    }
+
+    @Override
+    public StreamedHit<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return readHit();
+        } catch (IOException e) {
+            closeQuietly();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    private StreamedHit<T> readHit() throws IOException {
+        String index = null;
+        String type = null;
+        String id = null;
+        Double score = null;
+        T source = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "_index":
+                    index = reader.nextString();
+                    break;
+                case "_type":
+                    type = reader.nextString();
+                    break;
+                case "_id":
+                    id = reader.nextString();
+                    break;
+                case "_score":
+                    score = reader.nextDouble();
+                    break;
+                case "_source":
+                    source = sourceAdapter.read(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new StreamedHit<>(index, type, id, score, source);
+    }
+
+    /**
+     * @return a sequential stream of the remaining hits which closes this iterator when it is closed
+     */
+    public Stream<StreamedHit<T>> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::closeQuietly);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            resource.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException ignored) {
+            // nothing left to read from the response
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.graylog.jest.okhttp.search;
+
+/**
+ * A search hit whose source has been bound directly from the response stream.
+ *
+ * @param <T> type of the source document
+ */
+public class StreamedHit<T> {
+    private final String index;
+    private final String type;
+    private final String id;
+    private final Double score;
+    private final T source;
+
+    public StreamedHit(String index, String type, String id, Double score, T source) {
+        this.index = index;
+        this.type = type;
+        this.id = id;
+        this.score = score;
+        this.source = source;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the score of the hit or <code>null</code> if the hits were not scored
+     */
+    public Double getScore() {
+        return score;
+    }
+
+    /**
+     * @return the source of the hit or <code>null</code> if the source was not returned
+     */
+    public T getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamedHit{" +
+                "index='" + index + '\'' +
+                ", type='" + type + '\'' +
+                ", id='" + id + '\'' +
+                ", score=" + score +
+                ", source=" + source +
+                '}';
+    }
+}
@@ -0,0 +1,153 @@
+package org.graylog.jest.okhttp.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request statistics of a single server. All updates are lock-free, so they can be made on the request path.
+ * <p>
+ * A request counts as failed if no response could be received, e. g. because the connection was refused. HTTP
+ * error responses count as successful requests from the server's point of view.
+ * </p>
+ */
+public final class ServerStats {
+    /**
+     * Weight of the latest sample in the latency moving average.
+     */
+    static final double LATENCY_ALPHA = 0.2d;
+    private static final long NO_LATENCY = Double.doubleToLongBits(-1.0d);
+
+    private final String server;
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong latencyEwmaNanos = new AtomicLong(NO_LATENCY);
+    private volatile long lastFailureNanos = 0L;
+    private volatile boolean lastFailed = false;
+
+    ServerStats(String server) {
+        this.server = server;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    void requestStarted() {
+        inFlight.increment();
+    }
+
+    void requestAborted() {
+        inFlight.decrement();
+    }
+
+    void requestCompleted(long latencyNanos, boolean failed) {
+        inFlight.decrement();
+        if (failed) {
+            failures.increment();
+            lastFailureNanos = System.nanoTime();
+            lastFailed = true;
+        } else {
+            successes.increment();
+            if (lastFailed) {
+                lastFailed = false;
+            }
+            updateLatency(latencyNanos);
+        }
+    }
+
+    private void updateLatency(long latencyNanos) {
+        while (true) {
+            final long currentBits = latencyEwmaNanos.get();
+            final double current = Double.longBitsToDouble(currentBits);
+            final double updated = current < 0.0d ? latencyNanos : current + LATENCY_ALPHA * (latencyNanos - current);
+            if (latencyEwmaNanos.compareAndSet(currentBits, Double.doubleToLongBits(updated))) {
+                return;
+            }
+        }
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the exponentially weighted moving average of the latency of successful requests or <code>-1</code>
+     * if there was no successful request yet
+     */
+    public double getLatencyEwma(TimeUnit unit) {
+        final double nanos = Double.longBitsToDouble(latencyEwmaNanos.get());
+        return nanos < 0.0d ? -1.0d : nanos / unit.toNanos(1L);
+    }
+
+    /**
+     * @return <code>true</code> if the last request to this server failed less than the given duration before
+     * <code>nowNanos</code>
+     */
+    public boolean isFailing(long nowNanos, long cooldownNanos) {
+        return lastFailed && nowNanos - lastFailureNanos < cooldownNanos;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(server, getInFlight(), getSuccesses(), getFailures(), getLatencyEwma(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Immutable point-in-time view of the statistics of a server.
+     */
+    public static final class Snapshot {
+        private final String server;
+        private final long inFlight;
+        private final long successes;
+        private final long failures;
+        private final double latencyEwmaMillis;
+
+        Snapshot(String server, long inFlight, long successes, long failures, double latencyEwmaMillis) {
+            this.server = server;
+            this.inFlight = inFlight;
+            this.successes = successes;
+            this.failures = failures;
+            this.latencyEwmaMillis = latencyEwmaMillis;
+        }
+
+        public String getServer() {
+            return server;
+        }
+
+        public long getInFlight() {
+            return inFlight;
+        }
+
+        public long getSuccesses() {
+            return successes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public double getLatencyEwmaMillis() {
+            return latencyEwmaMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "server='" + server + '\'' +
+                    ", inFlight=" + inFlight +
+                    ", successes=" + successes +
+                    ", failures=" + failures +
+                    ", latencyEwmaMillis=" + latencyEwmaMillis +
+                    '}';
+        }
+    }
+}
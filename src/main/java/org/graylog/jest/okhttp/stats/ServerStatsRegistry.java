@@ -0,0 +1,104 @@
+package org.graylog.jest.okhttp.stats;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the {@link ServerStats statistics} of all servers, keyed by server URL.
+ * <p>
+ * The registry is an immutable map which is replaced whenever the server list changes, so looking up and updating
+ * the statistics of a server never blocks. Statistics of servers which remain in the server list are retained.
+ * </p>
+ */
+public class ServerStatsRegistry {
+    private volatile Map<String, ServerStats> stats = Collections.emptyMap();
+
+    /**
+     * Replaces the known servers, keeping the statistics of servers which are still present.
+     */
+    public synchronized void setServers(Collection<String> servers) {
+        final Map<String, ServerStats> current = stats;
+        final Map<String, ServerStats> updated = new HashMap<>();
+        for (String server : servers) {
+            final ServerStats serverStats = current.get(server);
+            updated.put(server, serverStats == null ? new ServerStats(server) : serverStats);
+        }
+        stats = Collections.unmodifiableMap(updated);
+    }
+
+    /**
+     * @return the statistics of the given server or <code>null</code> if the server is unknown
+     */
+    public ServerStats get(String server) {
+        return stats.get(server);
+    }
+
+    /**
+     * Records the start of a request to the given server.
+     *
+     * @return the start time to pass to {@link #requestCompleted(String, long, boolean)}
+     */
+    public long requestStarted(String server) {
+        if (server != null) {
+            getOrCreate(server).requestStarted();
+        }
+        return System.nanoTime();
+    }
+
+    public void requestCompleted(String server, long startNanos, boolean failed) {
+        if (server == null) {
+            return;
+        }
+        final ServerStats serverStats = stats.get(server);
+        if (serverStats != null) {
+            serverStats.requestCompleted(System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    /**
+     * Records that a request to the given server has been given up before it was sent, e. g. because it was rejected
+     * by the client itself. Neither its latency nor a failure are recorded.
+     */
+    public void requestAborted(String server) {
+        if (server == null) {
+            return;
+        }
+        final ServerStats serverStats = stats.get(server);
+        if (serverStats != null) {
+            serverStats.requestAborted();
+        }
+    }
+
+    /**
+     * @return immutable snapshots of the statistics of all known servers
+     */
+    public Map<String, ServerStats.Snapshot> snapshot() {
+        final Map<String, ServerStats.Snapshot> snapshots = new LinkedHashMap<>();
+        for (ServerStats serverStats : stats.values()) {
+            snapshots.put(serverStats.getServer(), serverStats.snapshot());
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    private ServerStats getOrCreate(String server) {
+        final ServerStats serverStats = stats.get(server);
+        return serverStats == null ? add(server) : serverStats;
+    }
+
+    private synchronized ServerStats add(String server) {
+        final ServerStats existing = stats.get(server);
+        if (existing != null) {
+            return existing;
+        }
+
+        // requests to servers outside the server list, e. g. discovered nodes, are tracked as well
+        final ServerStats serverStats = new ServerStats(server);
+        final Map<String, ServerStats> updated = new HashMap<>(stats);
+        updated.put(server, serverStats);
+        stats = Collections.unmodifiableMap(updated);
+        return serverStats;
+    }
+}
@@ -0,0 +1,19 @@
+package org.graylog.jest.okhttp.tenant;
+
+import org.graylog.jest.okhttp.ratelimit.ThrottledException;
+
+/**
+ * Signals that a call has been rejected because its tenant exceeded its quota.
+ */
+public class TenantQuotaExceededException extends ThrottledException {
+    private final String tenant;
+
+    public TenantQuotaExceededException(String tenant, String message) {
+        super(message);
+        this.tenant = tenant;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+}
@@ -0,0 +1,432 @@
+package org.graylog.jest.okhttp.tenant;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import org.graylog.jest.okhttp.ratelimit.TokenBucket;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits calls of several tenants to a shared concurrency budget in weighted fair order.
+ * <p>
+ * Calls exceeding the budget or the in-flight limit of their tenant are queued per tenant. Whenever a slot becomes
+ * available, the queued call with the lowest start tag is admitted (start-time fair queuing), so that each backlogged
+ * tenant receives slots in proportion to its weight, regardless of how many calls it has queued. Calls exceeding the
+ * rate limit or the queue limit of their tenant are rejected with a {@link TenantQuotaExceededException}.
+ * </p>
+ * <p>
+ * The state of tenants without calls in flight or queued is dropped, including their statistics, once they have
+ * been idle for the {@link Builder#idleTimeout(long, TimeUnit) idle timeout}.
+ * </p>
+ */
+public class TenantScheduler {
+    /**
+     * Tenant of calls without a tenant key.
+     */
+    public static final String DEFAULT_TENANT = "default";
+    private static final long DEFAULT_IDLE_TIMEOUT_MINUTES = 10L;
+
+    private final int maxConcurrency;
+    private final int maxInFlightPerTenant;
+    private final int maxQueuedPerTenant;
+    private final double defaultWeight;
+    private final Map<String, Double> weights;
+    private final double defaultRate;
+    private final Map<String, Double> rates;
+    private final long idleTimeoutNanos;
+    private final Ticker ticker;
+
+    private final Object lock = new Object();
+    private final Map<String, Tenant> tenants = new HashMap<>();
+    private final Set<Tenant> backlogged = new LinkedHashSet<>();
+    private int inFlight = 0;
+    private double virtualTime = 0.0d;
+    private long lastEvictionNanos;
+
+    private TenantScheduler(Builder builder) {
+        this.maxConcurrency = builder.maxConcurrency;
+        this.maxInFlightPerTenant = builder.maxInFlightPerTenant > 0 ? builder.maxInFlightPerTenant : builder.maxConcurrency;
+        this.maxQueuedPerTenant = builder.maxQueuedPerTenant;
+        this.defaultWeight = builder.defaultWeight;
+        this.weights = Collections.unmodifiableMap(new HashMap<>(builder.weights));
+        this.defaultRate = builder.defaultRate;
+        this.rates = Collections.unmodifiableMap(new HashMap<>(builder.rates));
+        this.idleTimeoutNanos = builder.idleTimeoutNanos;
+        this.ticker = builder.ticker;
+        this.lastEvictionNanos = ticker.read();
+    }
+
+    /**
+     * Admits a call of the given tenant, running the given action either immediately or once a slot is available.
+     * The slot has to be given back with {@link #release(String)} once the call has completed.
+     *
+     * @throws TenantQuotaExceededException if the tenant exceeded its rate or queue limit
+     */
+    public void submit(String tenant, Runnable onAdmitted) throws TenantQuotaExceededException {
+        if (enqueue(tenant, onAdmitted) == null) {
+            onAdmitted.run();
+        }
+    }
+
+    /**
+     * Waits for a slot for a call of the given tenant.
+     *
+     * @throws TenantQuotaExceededException if the tenant exceeded its rate or queue limit
+     */
+    public void acquire(String tenant) throws IOException {
+        acquire(tenant, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Waits at most the given time for a slot for a call of the given tenant.
+     *
+     * @param timeout the maximum time to wait, <code>0</code> to wait without limit
+     * @return <code>false</code> if the waiting time elapsed before a slot was available
+     * @throws TenantQuotaExceededException if the tenant exceeded its rate or queue limit
+     */
+    public boolean acquire(String tenant, long timeout, TimeUnit unit) throws IOException {
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Waiter waiter = enqueue(tenant, admitted::countDown);
+        if (waiter == null) {
+            return true;
+        }
+
+        try {
+            if (timeout <= 0L) {
+                admitted.await();
+                return true;
+            } else if (admitted.await(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            if (!cancel(tenant, waiter)) {
+                release(tenant);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a slot of tenant " + tenantKey(tenant));
+        }
+
+        if (!cancel(tenant, waiter)) {
+            // admitted while timing out
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives back the slot of a completed call of the given tenant and admits queued calls.
+     */
+    public void release(String tenant) {
+        final List<Waiter> admitted;
+        synchronized (lock) {
+            final Tenant state = tenants.get(tenantKey(tenant));
+            if (state == null || state.inFlight == 0) {
+                throw new IllegalStateException("No call of tenant " + tenantKey(tenant) + " in flight");
+            }
+            state.inFlight--;
+            inFlight--;
+            state.lastActiveNanos = ticker.read();
+            admitted = dispatch();
+        }
+        for (Waiter waiter : admitted) {
+            waiter.onAdmitted.run();
+        }
+    }
+
+    /**
+     * @return the statistics of the given tenant or <code>null</code> if the tenant has not made any calls yet or
+     * has been evicted after being idle
+     */
+    public TenantStats getStats(String tenant) {
+        synchronized (lock) {
+            final Tenant state = tenants.get(tenantKey(tenant));
+            return state == null ? null : state.stats;
+        }
+    }
+
+    /**
+     * @return the statistics of all tenants which have made calls, by tenant key
+     */
+    public Map<String, TenantStats> getStats() {
+        final Map<String, TenantStats> stats = new LinkedHashMap<>();
+        synchronized (lock) {
+            for (Tenant state : tenants.values()) {
+                stats.put(state.name, state.stats);
+            }
+        }
+        return stats;
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getQueued(String tenant) {
+        synchronized (lock) {
+            final Tenant state = tenants.get(tenantKey(tenant));
+            return state == null ? 0 : state.queue.size();
+        }
+    }
+
+    /**
+     * @return <code>null</code> if the call has been admitted immediately, the queued call otherwise
+     */
+    private Waiter enqueue(String tenant, Runnable onAdmitted) throws TenantQuotaExceededException {
+        synchronized (lock) {
+            evictIdleTenants();
+            final Tenant state = tenant(tenantKey(tenant));
+            if (state.rateLimit != null && !state.rateLimit.tryAcquire()) {
+                state.stats.rejected();
+                throw new TenantQuotaExceededException(state.name, "Tenant " + state.name + " exceeded its rate limit of "
+                        + state.rateLimit.getPermitsPerSecond() + " calls per second");
+            }
+
+            final double startTag = Math.max(virtualTime, state.lastFinishTag);
+            if (state.queue.isEmpty() && state.inFlight < maxInFlightPerTenant && inFlight < maxConcurrency) {
+                state.lastFinishTag = startTag + 1.0d / state.weight;
+                admit(state, 0L);
+                return null;
+            }
+            if (state.queue.size() >= maxQueuedPerTenant) {
+                state.stats.rejected();
+                throw new TenantQuotaExceededException(state.name, "Tenant " + state.name + " exceeded its limit of "
+                        + maxQueuedPerTenant + " queued calls");
+            }
+
+            state.lastFinishTag = startTag + 1.0d / state.weight;
+            final Waiter waiter = new Waiter(onAdmitted, startTag);
+            state.queue.add(waiter);
+            backlogged.add(state);
+            return waiter;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the call was still queued and has been removed
+     */
+    private boolean cancel(String tenant, Waiter waiter) {
+        synchronized (lock) {
+            final Tenant state = tenants.get(tenantKey(tenant));
+            if (state != null && state.queue.remove(waiter)) {
+                if (state.queue.isEmpty()) {
+                    backlogged.remove(state);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private List<Waiter> dispatch() {
+        final List<Waiter> admitted = new ArrayList<>();
+        while (inFlight < maxConcurrency) {
+            Tenant next = null;
+            for (Tenant state : backlogged) {
+                if (state.inFlight < maxInFlightPerTenant
+                        && (next == null || state.queue.peek().startTag < next.queue.peek().startTag)) {
+                    next = state;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+
+            final Waiter waiter = next.queue.poll();
+            if (next.queue.isEmpty()) {
+                backlogged.remove(next);
+            }
+            virtualTime = waiter.startTag;
+            admit(next, System.nanoTime() - waiter.enqueuedNanos);
+            admitted.add(waiter);
+        }
+        return admitted;
+    }
+
+    private void admit(Tenant state, long waitNanos) {
+        state.inFlight++;
+        inFlight++;
+        state.stats.admitted(waitNanos);
+    }
+
+    /**
+     * Drops the state of the tenants which have neither calls in flight nor queued and have been idle for the idle
+     * timeout. Runs at most once per idle timeout.
+     */
+    private void evictIdleTenants() {
+        final long now = ticker.read();
+        if (now - lastEvictionNanos < idleTimeoutNanos) {
+            return;
+        }
+        lastEvictionNanos = now;
+
+        final Iterator<Tenant> iterator = tenants.values().iterator();
+        while (iterator.hasNext()) {
+            final Tenant state = iterator.next();
+            if (state.inFlight == 0 && state.queue.isEmpty() && now - state.lastActiveNanos >= idleTimeoutNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private Tenant tenant(String name) {
+        Tenant state = tenants.get(name);
+        if (state == null) {
+            final Double weight = weights.get(name);
+            final Double rate = rates.containsKey(name) ? rates.get(name) : defaultRate;
+            state = new Tenant(name, weight == null ? defaultWeight : weight,
+                    rate != null && rate > 0.0d ? new TokenBucket(rate, Math.max(1.0d, rate)) : null);
+            tenants.put(name, state);
+        }
+        state.lastActiveNanos = ticker.read();
+        return state;
+    }
+
+    private static String tenantKey(String tenant) {
+        return tenant == null || tenant.isEmpty() ? DEFAULT_TENANT : tenant;
+    }
+
+    public static Builder builder(int maxConcurrency) {
+        return new Builder(maxConcurrency);
+    }
+
+    private static final class Tenant {
+        private final String name;
+        private final double weight;
+        private final TokenBucket rateLimit;
+        private final TenantStats stats;
+        private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+        private int inFlight = 0;
+        private double lastFinishTag = 0.0d;
+        private long lastActiveNanos;
+
+        private Tenant(String name, double weight, TokenBucket rateLimit) {
+            this.name = name;
+            this.weight = weight;
+            this.rateLimit = rateLimit;
+            this.stats = new TenantStats(name);
+        }
+    }
+
+    private static final class Waiter {
+        private final Runnable onAdmitted;
+        private final double startTag;
+        private final long enqueuedNanos = System.nanoTime();
+
+        private Waiter(Runnable onAdmitted, double startTag) {
+            this.onAdmitted = onAdmitted;
+            this.startTag = startTag;
+        }
+    }
+
+    public static class Builder {
+        private final int maxConcurrency;
+        private int maxInFlightPerTenant = 0;
+        private int maxQueuedPerTenant = Integer.MAX_VALUE;
+        private double defaultWeight = 1.0d;
+        private final Map<String, Double> weights = new HashMap<>();
+        private double defaultRate = 0.0d;
+        private final Map<String, Double> rates = new HashMap<>();
+        private long idleTimeoutNanos = TimeUnit.MINUTES.toNanos(DEFAULT_IDLE_TIMEOUT_MINUTES);
+        private Ticker ticker = Ticker.systemTicker();
+
+        /**
+         * @param maxConcurrency maximum number of concurrent calls of all tenants
+         */
+        public Builder(int maxConcurrency) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("Maximum concurrency must be positive: " + maxConcurrency);
+            }
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        /**
+         * Limits the number of concurrent calls of each tenant, by default a single tenant may use the whole budget.
+         */
+        public Builder maxInFlightPerTenant(int maxInFlightPerTenant) {
+            this.maxInFlightPerTenant = maxInFlightPerTenant;
+            return this;
+        }
+
+        /**
+         * Limits the number of queued calls of each tenant, further calls are rejected.
+         */
+        public Builder maxQueuedPerTenant(int maxQueuedPerTenant) {
+            this.maxQueuedPerTenant = maxQueuedPerTenant;
+            return this;
+        }
+
+        public Builder defaultWeight(double defaultWeight) {
+            this.defaultWeight = checkWeight(defaultWeight);
+            return this;
+        }
+
+        /**
+         * Sets the share of the given tenant relative to the other tenants, <code>1</code> by default.
+         */
+        public Builder weight(String tenant, double weight) {
+            this.weights.put(tenant, checkWeight(weight));
+            return this;
+        }
+
+        /**
+         * Limits the calls per second of each tenant, further calls are rejected. <code>0</code> disables the limit.
+         */
+        public Builder defaultRateLimit(double callsPerSecond) {
+            this.defaultRate = callsPerSecond;
+            return this;
+        }
+
+        /**
+         * Limits the calls per second of the given tenant, overriding the default limit. <code>0</code> disables the
+         * limit.
+         */
+        public Builder rateLimit(String tenant, double callsPerSecond) {
+            this.rates.put(tenant, callsPerSecond);
+            return this;
+        }
+
+        /**
+         * Sets the time after which the state of a tenant without calls in flight or queued is dropped, 10 minutes
+         * by default.
+         */
+        public Builder idleTimeout(long idleTimeout, TimeUnit unit) {
+            if (idleTimeout <= 0L) {
+                throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeout);
+            }
+            this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+            return this;
+        }
+
+        @VisibleForTesting
+        Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        private static double checkWeight(double weight) {
+            if (!(weight > 0.0d)) {
+                throw new IllegalArgumentException("Weight must be positive: " + weight);
+            }
+            return weight;
+        }
+
+        public TenantScheduler build() {
+            return new TenantScheduler(this);
+        }
+    }
+}
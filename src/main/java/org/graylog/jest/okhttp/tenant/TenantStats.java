@@ -0,0 +1,68 @@
+package org.graylog.jest.okhttp.tenant;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission statistics of a tenant.
+ */
+public final class TenantStats {
+    private final String tenant;
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0L);
+
+    TenantStats(String tenant) {
+        this.tenant = tenant;
+    }
+
+    void admitted(long waitNanos) {
+        admitted.increment();
+        this.waitNanos.add(waitNanos);
+        maxWaitNanos.accumulate(waitNanos);
+    }
+
+    void rejected() {
+        rejected.increment();
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * @return the number of calls which have been passed on to the HTTP client
+     */
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /**
+     * @return the number of calls which have been rejected because of the quotas of the tenant
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public double getMeanWait(TimeUnit unit) {
+        final long count = admitted.sum();
+        return count == 0L ? 0.0d : (double) waitNanos.sum() / count / unit.toNanos(1L);
+    }
+
+    public long getMaxWait(TimeUnit unit) {
+        return unit.convert(maxWaitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "TenantStats{" +
+                "tenant='" + tenant + '\'' +
+                ", admitted=" + getAdmitted() +
+                ", rejected=" + getRejected() +
+                ", meanWaitMillis=" + getMeanWait(TimeUnit.MILLISECONDS) +
+                ", maxWaitMillis=" + getMaxWait(TimeUnit.MILLISECONDS) +
+                '}';
+    }
+}
@@ -2,8 +2,10 @@ package org.graylog.jest.okhttp;
 
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakFilters;
 import com.carrotsearch.randomizedtesting.annotations.ThreadLeakScope;
+import io.searchbox.client.JestResultHandler;
 import io.searchbox.cluster.Health;
 import io.searchbox.common.OkHttpThreadsFilter;
+import io.searchbox.core.BulkResult;
 import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import org.elasticsearch.common.settings.Settings;
@@ -11,12 +13,15 @@ import org.elasticsearch.node.Node;
 import org.elasticsearch.test.ESIntegTestCase;
 import org.elasticsearch.test.ESIntegTestCase.ClusterScope;
 import org.elasticsearch.test.ESIntegTestCase.Scope;
+import org.graylog.jest.okhttp.bulk.RawBulk;
 import org.graylog.jest.okhttp.config.HttpClientConfig;
 import org.graylog.jest.okhttp.http.JestHttpClient;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -186,6 +191,45 @@ public class JestClientFactoryIntegrationTest extends ESIntegTestCase {
         shutdownOkHttp(jestClient.getOkHttpClient());
     }
 
+    @Test
+    public void testAsyncBulkReleasesConnections() throws Exception {
+        internalCluster().ensureAtLeastNumDataNodes(1);
+
+        factory.setHttpClientConfig(new HttpClientConfig
+                .Builder("http://localhost:" + cluster().httpAddresses()[0].getPort())
+                .multiThreaded(true)
+                .failedBulkItemsOnly(true)
+                .build());
+        JestHttpClient jestClient = (JestHttpClient) factory.getObject();
+        assertNotNull(jestClient);
+
+        for (int x = 0; x < 10; ++x) {
+            final RawBulk bulk = new RawBulk.Builder()
+                    .defaultIndex("async-bulk")
+                    .defaultType("doc")
+                    .addItem(RawBulk.Item.index(null, null, String.valueOf(x), "{\"x\":1}".getBytes(StandardCharsets.UTF_8)))
+                    .build();
+            final CompletableFuture<BulkResult> future = new CompletableFuture<>();
+            jestClient.executeAsync(bulk, new JestResultHandler<BulkResult>() {
+                @Override
+                public void completed(BulkResult result) {
+                    future.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+            assertTrue(future.get(10L, TimeUnit.SECONDS).isSucceeded());
+        }
+
+        // sequential calls reuse a single connection as long as every response is closed
+        assertEquals(1, getPoolSize(jestClient));
+        jestClient.shutdownClient();
+        shutdownOkHttp(jestClient.getOkHttpClient());
+    }
+
     /**
      * Forgive me these sins.  This is the only way I can think of to determine the *actual* size of the connection pool
      * without wrapping large quantities of the underlying client.
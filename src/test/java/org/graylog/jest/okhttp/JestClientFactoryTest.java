@@ -5,17 +5,26 @@ import io.searchbox.client.config.ClientConfig;
 import io.searchbox.client.config.discovery.NodeChecker;
 import okhttp3.Authenticator;
 import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.graylog.jest.okhttp.config.HttpClientConfig;
+import org.graylog.jest.okhttp.config.discovery.NodeAttributeChecker;
+import org.graylog.jest.okhttp.config.discovery.NodeInfo;
 import org.graylog.jest.okhttp.http.JestHttpClient;
 import org.graylog.jest.okhttp.http.okhttp.BasicAuthenticator;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Collection;
 import java.util.HashSet;
 
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -88,6 +97,30 @@ public class JestClientFactoryTest {
                                                                     Mockito.same(httpClientConfig));
     }
 
+    @Test
+    public void shardAwareBulksDiscoverNodes() throws Exception {
+        final String nodesInfo = "{\"nodes\":{\"n1\":{\"roles\":[\"data\"],\"http\":{\"publish_address\":\"127.0.0.1:9200\"}}}}";
+        final NodesInfoJestClientFactory factory = new NodesInfoJestClientFactory(nodesInfo);
+        factory.setHttpClientConfig(new HttpClientConfig.Builder("http://localhost:9200")
+                .discoveryEnabled(true)
+                .shardAwareBulks(1000L)
+                .build());
+        final JestHttpClient jestClient = (JestHttpClient) factory.getObject();
+        try {
+            assertTrue(factory.nodeChecker instanceof NodeAttributeChecker);
+
+            Collection<NodeInfo> nodes = jestClient.getNodes();
+            for (int i = 0; i < 50 && nodes.isEmpty(); i++) {
+                Thread.sleep(100L);
+                nodes = jestClient.getNodes();
+            }
+            assertFalse(nodes.isEmpty());
+            assertEquals("http://127.0.0.1:9200", nodes.iterator().next().getServer());
+        } finally {
+            jestClient.shutdownClient();
+        }
+    }
+
     @Test
     public void clientCreationWithPreemptiveAuth() {
         JestClientFactory factory = new JestClientFactory();
@@ -116,6 +149,32 @@ public class JestClientFactoryTest {
         }
     }
 
+    static class NodesInfoJestClientFactory extends JestClientFactory {
+        private final String nodesInfo;
+        private NodeChecker nodeChecker;
+
+        NodesInfoJestClientFactory(String nodesInfo) {
+            this.nodesInfo = nodesInfo;
+        }
+
+        @Override
+        protected OkHttpClient.Builder configureHttpClient(OkHttpClient.Builder builder) {
+            return builder.addInterceptor(chain -> new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create(MediaType.parse("application/json"), nodesInfo))
+                    .build());
+        }
+
+        @Override
+        protected NodeChecker createNodeChecker(JestHttpClient client, HttpClientConfig httpClientConfig) {
+            nodeChecker = super.createNodeChecker(client, httpClientConfig);
+            return nodeChecker;
+        }
+    }
+
     class OtherNodeChecker extends NodeChecker {
         OtherNodeChecker(JestClient jestClient, ClientConfig clientConfig) {
             super(jestClient, clientConfig);
@@ -0,0 +1,176 @@
+package org.graylog.jest.okhttp.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.DocumentResult;
+import io.searchbox.core.Get;
+import io.searchbox.core.Search;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class GetBatcherTest {
+    private final Gson gson = new Gson();
+    private final List<Action<?>> sent = new CopyOnWriteArrayList<>();
+    private JestClient client;
+    private volatile String responseBody;
+    private volatile IOException failure;
+    private volatile String sendingThread;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(JestClient.class);
+        doAnswer(invocation -> {
+            final Action<JestResult> action = (Action<JestResult>) invocation.getArguments()[0];
+            final JestResultHandler<JestResult> handler = (JestResultHandler<JestResult>) invocation.getArguments()[1];
+            sent.add(action);
+            sendingThread = Thread.currentThread().getName();
+            if (failure != null) {
+                handler.failed(failure);
+            } else {
+                handler.completed(action.createNewElasticSearchResult(responseBody, 200, "OK", gson));
+            }
+            return null;
+        }).when(client).executeAsync(any(Action.class), any(JestResultHandler.class));
+    }
+
+    private static JsonObject doc(String id, boolean found) {
+        final JsonObject doc = new JsonObject();
+        doc.addProperty("_index", "twitter");
+        doc.addProperty("_type", "tweet");
+        doc.addProperty("_id", id);
+        doc.addProperty("found", found);
+        if (found) {
+            final JsonObject source = new JsonObject();
+            source.addProperty("user", "kimchy");
+            doc.add("_source", source);
+        }
+        return doc;
+    }
+
+    private void respondWith(JsonObject... docs) {
+        final JsonArray array = new JsonArray();
+        for (JsonObject doc : docs) {
+            array.add(doc);
+        }
+        final JsonObject body = new JsonObject();
+        body.add("docs", array);
+        responseBody = gson.toJson(body);
+    }
+
+    @Test
+    public void sendsFullBatchAsMultiGetAndSplitsDocs() throws Exception {
+        respondWith(doc("1", true), doc("2", false));
+        final GetBatcher batcher = new GetBatcher(client, gson, 1L, TimeUnit.MINUTES, 2);
+
+        final CompletableFuture<DocumentResult> first = batcher.submit(new Get.Builder("twitter", "1").type("tweet").build());
+        final CompletableFuture<DocumentResult> second = batcher.submit(new Get.Builder("twitter", "2").type("tweet").build());
+
+        assertEquals(1, sent.size());
+        assertEquals("/_mget", sent.get(0).getURI());
+        assertEquals("POST", sent.get(0).getRestMethodName());
+        final JsonArray docs = gson.fromJson(sent.get(0).getData(gson), JsonObject.class).getAsJsonArray("docs");
+        assertEquals(2, docs.size());
+        assertEquals("2", docs.get(1).getAsJsonObject().get("_id").getAsString());
+
+        final DocumentResult found = first.get(1L, TimeUnit.SECONDS);
+        assertTrue(found.isSucceeded());
+        assertEquals("kimchy", found.getJsonObject().getAsJsonObject("_source").get("user").getAsString());
+        final DocumentResult missing = second.get(1L, TimeUnit.SECONDS);
+        assertFalse(missing.isSucceeded());
+        assertEquals(404, missing.getResponseCode());
+        assertEquals(2L, batcher.getActions());
+        assertEquals(1L, batcher.getBatches());
+    }
+
+    @Test
+    public void sendsBatchOnceWindowHasElapsed() throws Exception {
+        respondWith(doc("1", true));
+        final GetBatcher batcher = new GetBatcher(client, gson, 10L, TimeUnit.MILLISECONDS, 100);
+
+        final DocumentResult result = batcher.execute(new Get.Builder("twitter", "1").type("tweet").build());
+
+        assertTrue(result.isSucceeded());
+        assertEquals(1, sent.size());
+        // sending may block, so it must not hold up the timer of other batches
+        assertEquals("jest-batch-sender", sendingThread);
+    }
+
+    @Test
+    public void passesRoutingPerDocumentAndSeparatesParameters() throws Exception {
+        respondWith(doc("1", true), doc("2", true));
+        final GetBatcher batcher = new GetBatcher(client, gson, 1L, TimeUnit.MINUTES, 2);
+
+        batcher.submit(new Get.Builder("twitter", "1").type("tweet").setParameter("routing", "a").build());
+        batcher.submit(new Get.Builder("twitter", "3").type("tweet").setParameter("_source", "false").build());
+        batcher.submit(new Get.Builder("twitter", "2").type("tweet").build());
+
+        assertEquals(1, sent.size());
+        final JsonArray docs = gson.fromJson(sent.get(0).getData(gson), JsonObject.class).getAsJsonArray("docs");
+        assertEquals("a", docs.get(0).getAsJsonObject().get("routing").getAsString());
+        assertNull(docs.get(1).getAsJsonObject().get("routing"));
+        assertEquals("2", docs.get(1).getAsJsonObject().get("_id").getAsString());
+    }
+
+    @Test
+    public void acceptsOnlyGetsOfSingleDocumentsWithBatchableParameters() {
+        final GetBatcher batcher = new GetBatcher(client, gson, 1L, TimeUnit.MILLISECONDS, 10);
+
+        assertTrue(batcher.accepts(new Get.Builder("twitter", "1").type("tweet").setParameter("preference", "_local").build()));
+        assertFalse(batcher.accepts(new Get.Builder("twitter", "1").type("tweet").setParameter("version", 3).build()));
+        assertFalse(batcher.accepts(new Search.Builder("{}").build()));
+    }
+
+    @Test
+    public void decodesDocumentTarget() {
+        final GetBatcher.DocumentTarget target = GetBatcher.DocumentTarget.parse("twitter/tweet/a%2Fb?routing=r%2C1&realtime=false");
+
+        assertEquals("twitter", target.index);
+        assertEquals("tweet", target.type);
+        assertEquals("a/b", target.id);
+        assertEquals("r,1", target.routing);
+        assertEquals("false", target.parameters.get("realtime"));
+        assertNull(GetBatcher.DocumentTarget.parse("twitter/_search"));
+    }
+
+    @Test
+    public void failedBatchFailsAllGets() throws Exception {
+        failure = new IOException("Connection refused");
+        final GetBatcher batcher = new GetBatcher(client, gson, 1L, TimeUnit.MINUTES, 2);
+
+        final CompletableFuture<DocumentResult> first = batcher.submit(new Get.Builder("twitter", "1").type("tweet").build());
+        final CompletableFuture<DocumentResult> second = batcher.submit(new Get.Builder("twitter", "2").type("tweet").build());
+
+        for (CompletableFuture<DocumentResult> future : Arrays.asList(first, second)) {
+            try {
+                future.get(1L, TimeUnit.SECONDS);
+                fail("Expected batch to fail");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.graylog.jest.okhttp.batch;
+
+import com.google.gson.Gson;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Get;
+import io.searchbox.indices.Flush;
+import io.searchbox.indices.Refresh;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class RefreshCoordinatorTest {
+    private final Gson gson = new Gson();
+    private final List<Action<?>> sent = new CopyOnWriteArrayList<>();
+    private JestClient client;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(JestClient.class);
+        doAnswer(invocation -> {
+            final Action<JestResult> action = (Action<JestResult>) invocation.getArguments()[0];
+            final JestResultHandler<JestResult> handler = (JestResultHandler<JestResult>) invocation.getArguments()[1];
+            sent.add(action);
+            handler.completed(action.createNewElasticSearchResult("{\"_shards\":{\"total\":2,\"successful\":2,\"failed\":0}}", 200, "OK", gson));
+            return null;
+        }).when(client).executeAsync(any(Action.class), any(JestResultHandler.class));
+    }
+
+    @Test
+    public void coalescesRefreshesOfSameIndexWithinInterval() throws Exception {
+        final RefreshCoordinator coordinator = new RefreshCoordinator(client, 50L, TimeUnit.MILLISECONDS);
+
+        final CompletableFuture<JestResult> first = coordinator.submit(new Refresh.Builder().addIndex("twitter").build());
+        final CompletableFuture<JestResult> second = coordinator.submit(new Refresh.Builder().addIndex("twitter").build());
+        final CompletableFuture<JestResult> other = coordinator.submit(new Refresh.Builder().addIndex("other").build());
+        assertTrue(sent.isEmpty());
+
+        final JestResult result = first.get(1L, TimeUnit.SECONDS);
+        assertTrue(result.isSucceeded());
+        assertSame(result, second.get(1L, TimeUnit.SECONDS));
+        other.get(1L, TimeUnit.SECONDS);
+
+        assertEquals(2, sent.size());
+        for (Action<?> action : sent) {
+            // the shared call must not be coalesced again by the client
+            assertFalse(coordinator.accepts(action));
+            assertEquals("POST", action.getRestMethodName());
+        }
+    }
+
+    @Test
+    public void keepsRefreshAndFlushApart() throws Exception {
+        final RefreshCoordinator coordinator = new RefreshCoordinator(client, 10L, TimeUnit.MILLISECONDS);
+
+        final CompletableFuture<JestResult> refresh = coordinator.submit(new Refresh.Builder().addIndex("twitter").build());
+        final CompletableFuture<JestResult> flush = coordinator.submit(new Flush.Builder().addIndex("twitter").build());
+        refresh.get(1L, TimeUnit.SECONDS);
+        flush.get(1L, TimeUnit.SECONDS);
+
+        assertEquals(2, sent.size());
+        assertEquals(2L, coordinator.getBatches());
+    }
+
+    @Test
+    public void acceptsOnlyRefreshAndFlush() {
+        final RefreshCoordinator coordinator = new RefreshCoordinator(client, 10L, TimeUnit.MILLISECONDS);
+
+        assertTrue(coordinator.accepts(new Refresh.Builder().build()));
+        assertTrue(coordinator.accepts(new Flush.Builder().build()));
+        assertFalse(coordinator.accepts(new Get.Builder("twitter", "1").build()));
+    }
+}
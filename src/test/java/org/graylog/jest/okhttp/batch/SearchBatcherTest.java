@@ -0,0 +1,122 @@
+package org.graylog.jest.okhttp.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import io.searchbox.core.SearchScroll;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class SearchBatcherTest {
+    private static final String HITS = "{\"took\":1,\"hits\":{\"total\":1,\"hits\":[{\"_index\":\"twitter\",\"_type\":\"tweet\",\"_id\":\"1\",\"_source\":{\"user\":\"kimchy\"}}]},\"status\":200}";
+    private static final String ERROR = "{\"error\":{\"root_cause\":[],\"type\":\"index_not_found_exception\",\"reason\":\"no such index\"},\"status\":404}";
+
+    private final Gson gson = new Gson();
+    private final List<Action<?>> sent = new CopyOnWriteArrayList<>();
+    private JestClient client;
+    private volatile String responseBody;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(JestClient.class);
+        doAnswer(invocation -> {
+            final Action<JestResult> action = (Action<JestResult>) invocation.getArguments()[0];
+            final JestResultHandler<JestResult> handler = (JestResultHandler<JestResult>) invocation.getArguments()[1];
+            sent.add(action);
+            handler.completed(action.createNewElasticSearchResult(responseBody, 200, "OK", gson));
+            return null;
+        }).when(client).executeAsync(any(Action.class), any(JestResultHandler.class));
+    }
+
+    @Test
+    public void sendsSearchesAsMultiSearch() throws Exception {
+        responseBody = "{\"responses\":[" + HITS + "," + HITS + "]}";
+        final SearchBatcher batcher = new SearchBatcher(client, gson, 1L, TimeUnit.MINUTES, 2);
+
+        batcher.submit(new Search.Builder("{\n  \"query\": {\"match_all\": {}}\n}").addIndex("twitter").addIndex("other").addType("tweet")
+                .setParameter("routing", "kimchy").build());
+        batcher.submit(new Search.Builder("{\"size\":1}").build());
+
+        assertEquals(1, sent.size());
+        assertEquals("/_msearch", sent.get(0).getURI());
+        final String[] lines = sent.get(0).getData(gson).split("\n");
+        assertEquals(4, lines.length);
+
+        final JsonObject header = gson.fromJson(lines[0], JsonObject.class);
+        assertEquals(2, header.getAsJsonArray("index").size());
+        assertEquals("other", header.getAsJsonArray("index").get(1).getAsString());
+        assertEquals("tweet", header.getAsJsonArray("type").get(0).getAsString());
+        assertEquals("kimchy", header.get("routing").getAsString());
+        assertTrue(gson.fromJson(lines[1], JsonObject.class).has("query"));
+        assertNull(gson.fromJson(lines[2], JsonObject.class).get("routing"));
+        assertEquals(1, gson.fromJson(lines[3], JsonObject.class).get("size").getAsInt());
+    }
+
+    @Test
+    public void isolatesFailuresPerSearch() throws Exception {
+        responseBody = "{\"responses\":[" + HITS + "," + ERROR + "]}";
+        final SearchBatcher batcher = new SearchBatcher(client, gson, 1L, TimeUnit.MINUTES, 2);
+
+        final CompletableFuture<SearchResult> first = batcher.submit(new Search.Builder("{}").addIndex("twitter").build());
+        final CompletableFuture<SearchResult> second = batcher.submit(new Search.Builder("{}").addIndex("missing").build());
+
+        final SearchResult hits = first.get(1L, TimeUnit.SECONDS);
+        assertTrue(hits.isSucceeded());
+        assertEquals(1, hits.getSourceAsObjectList(JsonObject.class).size());
+        final SearchResult failed = second.get(1L, TimeUnit.SECONDS);
+        assertFalse(failed.isSucceeded());
+        assertEquals(404, failed.getResponseCode());
+    }
+
+    @Test
+    public void sendsBatchOnceWindowHasElapsed() throws Exception {
+        responseBody = "{\"responses\":[" + HITS + "]}";
+        final SearchBatcher batcher = new SearchBatcher(client, gson, 10L, TimeUnit.MILLISECONDS, 30);
+
+        final SearchResult result = batcher.execute(new Search.Builder("{}").addIndex("twitter").build());
+
+        assertTrue(result.isSucceeded());
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void acceptsOnlySearchesWithBatchableParameters() {
+        final SearchBatcher batcher = new SearchBatcher(client, gson, 1L, TimeUnit.MILLISECONDS, 30);
+
+        assertTrue(batcher.accepts(new Search.Builder("{}").addIndex("twitter").setParameter("preference", "_local").build()));
+        assertFalse(batcher.accepts(new Search.Builder("{}").addIndex("twitter").setParameter("scroll", "1m").build()));
+        assertFalse(batcher.accepts(new SearchScroll.Builder("id", "1m").build()));
+    }
+
+    @Test
+    public void parsesSearchTarget() {
+        final SearchBatcher.SearchTarget target = SearchBatcher.SearchTarget.parse("twitter%2Cother/tweet/_search?typed_keys=true&routing=a");
+
+        assertEquals(Arrays.asList("twitter", "other"), target.indices);
+        assertEquals(Arrays.asList("tweet"), target.types);
+        assertEquals("a", target.headerParameters.get("routing"));
+        assertEquals("true", target.batchParameters.get("typed_keys"));
+        assertTrue(SearchBatcher.SearchTarget.parse("/_search").indices.isEmpty());
+        assertNull(SearchBatcher.SearchTarget.parse("twitter/_count"));
+    }
+}
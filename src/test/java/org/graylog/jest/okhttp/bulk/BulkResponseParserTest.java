@@ -0,0 +1,53 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.Gson;
+import io.searchbox.core.BulkResult;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkResponseParserTest {
+    private final BulkResponseParser parser = new BulkResponseParser(new Gson());
+
+    @Test
+    public void shortCircuitsSuccessfulResponses() throws IOException {
+        // the trailing garbage proves that the items are never read
+        final String response = "{\"took\":30,\"errors\":false,\"items\":[{\"index\":{\"_id\":\"1\",\"status\":201}}, garbage";
+
+        final FailedItemsBulkResult result = parser.parse(new StringReader(response), 200);
+
+        assertTrue(result.isSucceeded());
+        assertEquals(-1, result.getItemCount());
+        assertTrue(result.getFailedItems().isEmpty());
+        assertEquals(0, result.getFailedItemPositions().length);
+    }
+
+    @Test
+    public void materializesFailedItemsOnly() throws IOException {
+        final String response = "{\"took\":30,\"errors\":true,\"items\":[" +
+                "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"1\",\"status\":201}}," +
+                "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"2\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"}}}," +
+                "{\"delete\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"3\",\"status\":200}}," +
+                "{\"update\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"4\",\"status\":404,\"error\":{\"type\":\"document_missing_exception\",\"reason\":\"missing\"}}}" +
+                "]}";
+
+        final FailedItemsBulkResult result = parser.parse(new StringReader(response), 200);
+
+        assertFalse(result.isSucceeded());
+        assertEquals(4, result.getItemCount());
+        assertArrayEquals(new int[]{1, 3}, result.getFailedItemPositions());
+
+        final List<BulkResult.BulkResultItem> failedItems = result.getFailedItems();
+        assertEquals(2, failedItems.size());
+        assertEquals("2", failedItems.get(0).id);
+        assertEquals(429, failedItems.get(0).status);
+        assertEquals("4", failedItems.get(1).id);
+    }
+}
@@ -0,0 +1,156 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.Gson;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.BulkResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class CollapsingBulkBufferTest {
+    private static final String SUCCEEDED = "{\"took\":1,\"errors\":false,\"items\":[]}";
+
+    private final Gson gson = new Gson();
+    private final List<RawBulk> sent = new CopyOnWriteArrayList<>();
+    private CollapsingBulkBuffer buffer;
+    private volatile String sendingThread;
+
+    @Before
+    public void setUp() {
+        buffer = new CollapsingBulkBuffer(mockClient(), "twitter", "doc", 1L, TimeUnit.MINUTES, 100);
+    }
+
+    @Test
+    public void keepsLastIndexOrDeletePerDocument() throws Exception {
+        buffer.add(RawBulk.Item.index(null, null, "1", bytes("{\"version\":1}")));
+        buffer.add(RawBulk.Item.index(null, null, "2", bytes("{\"version\":1}")));
+        buffer.add(RawBulk.Item.index(null, null, "1", bytes("{\"version\":2}")));
+        buffer.add(RawBulk.Item.index("twitter", "doc", "1", bytes("{\"version\":3}")));
+        buffer.add(RawBulk.Item.delete(null, null, "2"));
+        // different index, not the same document
+        buffer.add(RawBulk.Item.index("other", null, "1", bytes("{\"version\":1}")));
+
+        final CollapsedBulkResult result = buffer.flush().get(1L, TimeUnit.SECONDS);
+
+        assertTrue(result.isSucceeded());
+        assertEquals(6, result.getOperations());
+        assertEquals(3, result.getItems());
+        assertEquals(3, result.getCollapsedOperations());
+        assertEquals(0, result.getMergedUpdates());
+
+        final List<RawBulk.Item> items = sent.get(0).getItems();
+        assertEquals("{\"version\":3}", items.get(0).getSource().utf8());
+        assertEquals("delete", items.get(1).getOperation());
+        assertEquals("other", items.get(2).getIndex());
+    }
+
+    @Test
+    public void mergesPartialUpdates() throws Exception {
+        buffer.add(RawBulk.Item.index(null, null, "1", bytes("{\"user\":{\"name\":\"kimchy\",\"age\":30},\"likes\":1}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"doc\":{\"user\":{\"age\":31}}}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"doc\":{\"likes\":2}}")));
+        buffer.add(RawBulk.Item.update(null, null, "2", bytes("{\"doc\":{\"a\":1,\"b\":{\"c\":1}},\"doc_as_upsert\":true}")));
+        buffer.add(RawBulk.Item.update(null, null, "2", bytes("{\"doc\":{\"b\":{\"d\":2}},\"doc_as_upsert\":true}")));
+
+        final CollapsedBulkResult result = buffer.flush().get(1L, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getItems());
+        assertEquals(3, result.getMergedUpdates());
+        final List<RawBulk.Item> items = sent.get(0).getItems();
+        assertEquals("index", items.get(0).getOperation());
+        assertEquals("{\"user\":{\"name\":\"kimchy\",\"age\":31},\"likes\":2}", items.get(0).getSource().utf8());
+        assertEquals("update", items.get(1).getOperation());
+        assertEquals("{\"doc\":{\"a\":1,\"b\":{\"c\":1,\"d\":2}},\"doc_as_upsert\":true}", items.get(1).getSource().utf8());
+    }
+
+    @Test
+    public void keepsOperationsWhichCannotBeCollapsed() throws Exception {
+        buffer.add(RawBulk.Item.create(null, null, "1", bytes("{\"a\":1}")));
+        // the document may already exist, so the create may fail
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"doc\":{\"a\":2}}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"script\":{\"source\":\"ctx._source.a++\"}}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"doc\":{\"a\":3},\"doc_as_upsert\":true}")));
+        buffer.add(RawBulk.Item.index(null, null, null, bytes("{\"a\":1}")));
+        buffer.add(RawBulk.Item.index(null, null, null, bytes("{\"a\":1}")));
+
+        final CollapsedBulkResult result = buffer.flush().get(1L, TimeUnit.SECONDS);
+
+        assertEquals(6, result.getItems());
+        assertEquals(0, result.getCollapsedOperations());
+    }
+
+    @Test
+    public void collapsesOperationsAfterOperationWhichCannotBeCollapsed() throws Exception {
+        buffer.add(RawBulk.Item.index(null, null, "1", bytes("{\"a\":1}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"script\":{\"source\":\"ctx._source.a++\"}}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"doc\":{\"b\":1}}")));
+        buffer.add(RawBulk.Item.update(null, null, "1", bytes("{\"doc\":{\"c\":1}}")));
+
+        buffer.flush().get(1L, TimeUnit.SECONDS);
+
+        final List<RawBulk.Item> items = sent.get(0).getItems();
+        assertEquals(3, items.size());
+        assertEquals("{\"a\":1}", items.get(0).getSource().utf8());
+        assertEquals("{\"doc\":{\"b\":1,\"c\":1}}", items.get(2).getSource().utf8());
+    }
+
+    @Test
+    public void flushesOnceFull() throws Exception {
+        final CollapsingBulkBuffer small = new CollapsingBulkBuffer(mockClient(), "twitter", "doc", 1L, TimeUnit.MINUTES, 2);
+
+        final CompletableFuture<CollapsedBulkResult> first = small.add(RawBulk.Item.index(null, null, "1", bytes("{}")));
+        small.add(RawBulk.Item.index(null, null, "1", bytes("{}")));
+        assertTrue(sent.isEmpty());
+        final CompletableFuture<CollapsedBulkResult> last = small.add(RawBulk.Item.index(null, null, "2", bytes("{}")));
+
+        assertSame(first, last);
+        assertEquals(2, first.get(1L, TimeUnit.SECONDS).getItems());
+        assertEquals(1L, small.getFlushes());
+        assertEquals(1L, small.getCollapsedOperations());
+        assertNull(small.flush());
+    }
+
+    @Test
+    public void flushesOnceWindowHasElapsed() throws Exception {
+        final CollapsingBulkBuffer fast = new CollapsingBulkBuffer(mockClient(), "twitter", "doc", 10L, TimeUnit.MILLISECONDS, 100);
+
+        final CollapsedBulkResult result = fast.add(RawBulk.Item.index(null, null, "1", bytes("{}"))).get(1L, TimeUnit.SECONDS);
+
+        assertEquals(1, result.getItems());
+        assertEquals(1, sent.size());
+        assertEquals("jest-bulk-buffer-sender", sendingThread);
+    }
+
+    @SuppressWarnings("unchecked")
+    private JestClient mockClient() {
+        final JestClient client = mock(JestClient.class);
+        doAnswer(invocation -> {
+            final RawBulk bulk = (RawBulk) invocation.getArguments()[0];
+            final JestResultHandler<BulkResult> handler = (JestResultHandler<BulkResult>) invocation.getArguments()[1];
+            sent.add(bulk);
+            sendingThread = Thread.currentThread().getName();
+            handler.completed(bulk.createNewElasticSearchResult(SUCCEEDED, 200, "OK", gson));
+            return null;
+        }).when(client).executeAsync(any(Action.class), any(JestResultHandler.class));
+        return client;
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(UTF_8);
+    }
+}
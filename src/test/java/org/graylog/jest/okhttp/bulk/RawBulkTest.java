@@ -0,0 +1,37 @@
+package org.graylog.jest.okhttp.bulk;
+
+import okio.Buffer;
+import okio.ByteString;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class RawBulkTest {
+    @Test
+    public void writesMetadataAndDocuments() throws IOException {
+        final RawBulk bulk = new RawBulk.Builder()
+                .defaultIndex("twitter")
+                .defaultType("tweet")
+                .addItem(RawBulk.Item.index(null, null, "1", "{\"user\":\"kimchy\"}".getBytes(StandardCharsets.UTF_8)))
+                .addItem(RawBulk.Item.create("other", "doc", null, ByteString.encodeUtf8("{\"user\":\"jest\"}")))
+                .addItem(RawBulk.Item.delete("twitter", "tweet", "2").withRouting("r"))
+                .build();
+
+        final Buffer buffer = new Buffer();
+        bulk.writeTo(buffer);
+
+        final String expected = "{\"index\":{\"_id\":\"1\"}}\n" +
+                "{\"user\":\"kimchy\"}\n" +
+                "{\"create\":{\"_index\":\"other\",\"_type\":\"doc\"}}\n" +
+                "{\"user\":\"jest\"}\n" +
+                "{\"delete\":{\"_index\":\"twitter\",\"_type\":\"tweet\",\"_id\":\"2\",\"_routing\":\"r\"}}\n";
+        assertEquals(expected.length(), bulk.contentLength());
+        assertEquals(expected, buffer.readUtf8());
+        assertEquals(expected, bulk.getData(null));
+        assertEquals("POST", bulk.getRestMethodName());
+        assertEquals("twitter/tweet/_bulk", bulk.getURI());
+    }
+}
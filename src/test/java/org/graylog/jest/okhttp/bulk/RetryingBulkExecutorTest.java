@@ -0,0 +1,102 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.Gson;
+import io.searchbox.client.JestClient;
+import io.searchbox.core.BulkResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RetryingBulkExecutorTest {
+    private static final String REJECTED = "{\"took\":1,\"errors\":true,\"items\":[" +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"a\",\"status\":201}}," +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"b\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"}}}," +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"c\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\",\"reason\":\"failed to parse\"}}}" +
+            "]}";
+    private static final String REJECTED_SINGLE = "{\"took\":1,\"errors\":true,\"items\":[" +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"b\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"}}}" +
+            "]}";
+    private static final String UNAVAILABLE = "{\"took\":1,\"errors\":true,\"items\":[" +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"a\",\"status\":201}}," +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"b\",\"status\":503,\"error\":{\"type\":\"bulk_request_failed\",\"reason\":\"Connection reset\"}}}" +
+            "]}";
+    private static final String SUCCEEDED = "{\"took\":1,\"errors\":false,\"items\":[" +
+            "{\"index\":{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"b\",\"status\":201}}" +
+            "]}";
+
+    private JestClient client;
+    private List<List<String>> submitted;
+
+    @Before
+    public void setUp() {
+        client = mock(JestClient.class);
+        submitted = new ArrayList<>();
+    }
+
+    @Test
+    public void retriesRejectedItemsOnly() throws IOException {
+        when(client.execute(any(RawBulk.class))).thenReturn(result(REJECTED), result(SUCCEEDED));
+        final RetryingBulkExecutor executor = new RetryingBulkExecutor(client, 3, 1L, 10L, TimeUnit.MILLISECONDS);
+
+        final RetryingBulkResult result = executor.execute(Arrays.asList("a", "b", "c"), this::bulk);
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("b")), submitted);
+        assertFalse(result.isSucceeded());
+        assertEquals(2, result.getAttempts());
+        assertEquals(1, result.getRetriedItems());
+        assertEquals(1, result.getFailedItems().size());
+        assertEquals(2, result.getFailedItems().get(0).getPosition());
+        assertEquals(0L, executor.getCurrentBackoff(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void retriesItemsOfUnavailableNodes() throws IOException {
+        when(client.execute(any(RawBulk.class))).thenReturn(result(UNAVAILABLE), result(SUCCEEDED));
+        final RetryingBulkExecutor executor = new RetryingBulkExecutor(client, 3, 1L, 10L, TimeUnit.MILLISECONDS);
+
+        final RetryingBulkResult result = executor.execute(Arrays.asList("a", "b"), this::bulk);
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("b")), submitted);
+        assertTrue(result.isSucceeded());
+    }
+
+    @Test
+    public void givesUpAfterMaxRetries() throws IOException {
+        when(client.execute(any(RawBulk.class))).thenReturn(result(REJECTED), result(REJECTED_SINGLE));
+        final RetryingBulkExecutor executor = new RetryingBulkExecutor(client, 2, 1L, 10L, TimeUnit.MILLISECONDS);
+
+        final RetryingBulkResult result = executor.execute(Arrays.asList("a", "b", "c"), this::bulk);
+
+        assertEquals(3, result.getAttempts());
+        assertEquals(2, result.getRetriedItems());
+        assertEquals(2, result.getFailedItems().size());
+        assertEquals(1, result.getFailedItems().get(0).getPosition());
+        assertEquals(2, result.getFailedItems().get(1).getPosition());
+        assertTrue(executor.getCurrentBackoff(TimeUnit.MILLISECONDS) > 0L);
+    }
+
+    private RawBulk bulk(List<String> ids) {
+        submitted.add(new ArrayList<>(ids));
+        final RawBulk.Builder builder = new RawBulk.Builder().defaultIndex("test").defaultType("doc");
+        for (String id : ids) {
+            builder.addItem(RawBulk.Item.index(null, null, id, new byte[]{'{', '}'}));
+        }
+        return builder.build();
+    }
+
+    private static BulkResult result(String json) {
+        return new RawBulk.Builder().build().createNewElasticSearchResult(json, 200, "OK", new Gson());
+    }
+}
@@ -0,0 +1,239 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.BulkResult;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ShardRouterTest {
+    private static final Map<String, String> NODE_SERVERS = ImmutableMap.of(
+            "node-a", "http://10.0.0.1:9200",
+            "node-b", "http://10.0.0.2:9200");
+    private static final byte[] SOURCE = "{\"user\":\"kimchy\"}".getBytes(UTF_8);
+
+    private final Gson gson = new Gson();
+    private final ManualTicker ticker = new ManualTicker();
+    private JestClient client;
+    private ShardRouter router;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws IOException {
+        final JestResult state = new JestResult(gson);
+        state.setJsonObject(new JsonParser().parse(ShardRoutingTableTest.CLUSTER_STATE).getAsJsonObject());
+        state.setSucceeded(true);
+
+        client = mock(JestClient.class);
+        when(client.execute(any(Action.class))).thenReturn(state);
+        router = new ShardRouter(client, gson, 1L, TimeUnit.MINUTES, ticker, Runnable::run);
+    }
+
+    @Test
+    public void splitsBulkByPrimaryNode() {
+        // "1" and "2" are on shard 1 (node-b), "3" and "a" on shard 0 (node-a)
+        final RawBulk bulk = bulk("1", "3", "2", "a", null);
+
+        final List<ShardRouter.Split> splits = router.split(bulk, NODE_SERVERS);
+
+        assertEquals(2, splits.size());
+        assertEquals("http://10.0.0.2:9200", splits.get(0).getServer());
+        // the item with an auto-generated id joins the largest sub-bulk
+        assertArrayEquals(new int[]{0, 2, 4}, splits.get(0).getPositions());
+        assertEquals(Arrays.asList("1", "2", null), ids(splits.get(0).getBulk()));
+        assertEquals("http://10.0.0.1:9200", splits.get(1).getServer());
+        assertArrayEquals(new int[]{1, 3}, splits.get(1).getPositions());
+        assertEquals(Arrays.asList("3", "a"), ids(splits.get(1).getBulk()));
+        assertEquals(bulk.getURI(), splits.get(1).getBulk().getURI());
+        assertEquals(4L, router.getRoutedItems());
+        assertEquals(1L, router.getUnroutedItems());
+    }
+
+    @Test
+    public void keepsBulkOfSingleNode() {
+        final RawBulk bulk = bulk("3", "a");
+
+        final List<ShardRouter.Split> splits = router.split(bulk, NODE_SERVERS);
+
+        assertEquals(1, splits.size());
+        assertSame(bulk, splits.get(0).getBulk());
+    }
+
+    @Test
+    public void doesNotSplitWithoutKnownNodes() {
+        assertTrue(router.split(bulk("1", "3"), Collections.emptyMap()).isEmpty());
+        assertTrue(router.split(new RawBulk.Builder().defaultIndex("unknown").defaultType("doc")
+                .addItem(RawBulk.Item.index(null, null, "1", SOURCE)).build(), NODE_SERVERS).isEmpty());
+    }
+
+    @Test
+    public void mergesResultsInOriginalOrder() {
+        final RawBulk bulk = bulk("1", "3", "2", "a", null);
+        final List<ShardRouter.Split> splits = router.split(bulk, NODE_SERVERS);
+        final List<BulkResult> results = new ArrayList<>();
+        results.add(result(splits.get(0), "{\"took\":5,\"errors\":true,\"items\":[" +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"1\",\"status\":201}}," +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"2\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\"}}}," +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"x\",\"status\":201}}]}", 200));
+        results.add(result(splits.get(1), "{\"took\":7,\"errors\":false,\"items\":[" +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"3\",\"status\":201}}," +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"a\",\"status\":201}}]}", 200));
+
+        final BulkResult result = router.merge(bulk, splits, results);
+
+        assertFalse(result.isSucceeded());
+        assertEquals(200, result.getResponseCode());
+        assertEquals(7L, result.getJsonObject().get("took").getAsLong());
+        final List<String> ids = new ArrayList<>();
+        for (BulkResult.BulkResultItem item : result.getItems()) {
+            ids.add(item.id);
+        }
+        assertEquals(Arrays.asList("1", "3", "2", "a", "x"), ids);
+        assertEquals(1, result.getFailedItems().size());
+        assertEquals("2", result.getFailedItems().get(0).id);
+    }
+
+    @Test
+    public void reportsFailedSubBulksAsFailedItems() {
+        final RawBulk bulk = bulk("1", "3");
+        final List<ShardRouter.Split> splits = router.split(bulk, NODE_SERVERS);
+        final List<BulkResult> results = new ArrayList<>();
+        results.add(result(splits.get(0), "{\"error\":\"rejected\"}", 429));
+        results.add(result(splits.get(1), "{\"took\":1,\"errors\":false,\"items\":[" +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"3\",\"status\":201}}]}", 200));
+
+        final BulkResult result = router.merge(bulk, splits, results);
+
+        assertEquals(2, result.getItems().size());
+        assertEquals("1", result.getItems().get(0).id);
+        assertEquals(429, result.getItems().get(0).status);
+        assertEquals(201, result.getItems().get(1).status);
+    }
+
+    @Test
+    public void reportsSubBulksFailedWithExceptionAsFailedItems() {
+        final RawBulk bulk = bulk("1", "3");
+        final List<ShardRouter.Split> splits = router.split(bulk, NODE_SERVERS);
+        final List<BulkResult> results = new ArrayList<>();
+        results.add(router.failedResult(new IOException("Connection reset")));
+        results.add(result(splits.get(1), "{\"took\":1,\"errors\":false,\"items\":[" +
+                "{\"index\":{\"_index\":\"twitter\",\"_type\":\"doc\",\"_id\":\"3\",\"status\":201}}]}", 200));
+
+        final BulkResult result = router.merge(bulk, splits, results);
+
+        assertFalse(result.isSucceeded());
+        assertEquals(200, result.getResponseCode());
+        assertEquals(1, result.getFailedItems().size());
+        assertEquals("1", result.getFailedItems().get(0).id);
+        assertEquals(503, result.getFailedItems().get(0).status);
+        assertTrue(result.getFailedItems().get(0).error.contains("Connection reset"));
+        assertEquals(201, result.getItems().get(1).status);
+    }
+
+    @Test
+    public void refreshesRoutingTableAfterIntervalOrInvalidation() throws IOException {
+        router.getRoutingTable();
+        router.getRoutingTable();
+        assertEquals(1L, router.getRefreshes());
+
+        ticker.advance(1L, TimeUnit.MINUTES);
+        router.getRoutingTable();
+        assertEquals(2L, router.getRefreshes());
+
+        router.invalidate();
+        router.getRoutingTable();
+        assertEquals(3L, router.getRefreshes());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keepsRoutingTableIfRefreshFails() throws IOException {
+        final ShardRoutingTable table = router.getRoutingTable();
+        when(client.execute(any(Action.class))).thenThrow(new IOException("boom"));
+
+        router.invalidate();
+        assertSame(table, router.getRoutingTable());
+
+        final ShardRouter unavailable = new ShardRouter(client, gson, 1L, TimeUnit.MINUTES, ticker, Runnable::run);
+        assertNull(unavailable.getRoutingTable());
+        assertTrue(unavailable.split(bulk("1"), NODE_SERVERS).isEmpty());
+    }
+
+    @Test
+    public void servesStaleRoutingTableWhileRefreshing() throws IOException {
+        final List<Runnable> pendingRefreshes = new ArrayList<>();
+        final ShardRouter background = new ShardRouter(client, gson, 1L, TimeUnit.MINUTES, ticker, pendingRefreshes::add);
+
+        assertNull(background.getRoutingTable());
+        assertTrue(background.split(bulk("1", "3"), NODE_SERVERS).isEmpty());
+        assertEquals(1, pendingRefreshes.size());
+
+        pendingRefreshes.remove(0).run();
+        final ShardRoutingTable table = background.getRoutingTable();
+        assertEquals(2, background.split(bulk("1", "3"), NODE_SERVERS).size());
+
+        background.invalidate();
+        assertSame(table, background.getRoutingTable());
+        assertSame(table, background.getRoutingTable());
+        // a single refresh at a time
+        assertEquals(1, pendingRefreshes.size());
+        assertEquals(1L, background.getRefreshes());
+    }
+
+    private static RawBulk bulk(String... ids) {
+        final RawBulk.Builder builder = new RawBulk.Builder().defaultIndex("twitter").defaultType("doc");
+        for (String id : ids) {
+            builder.addItem(RawBulk.Item.index(null, null, id, SOURCE));
+        }
+        return builder.build();
+    }
+
+    private static List<String> ids(RawBulk bulk) {
+        final List<String> ids = new ArrayList<>();
+        for (RawBulk.Item item : bulk.getItems()) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private BulkResult result(ShardRouter.Split split, String json, int statusCode) {
+        return split.getBulk().createNewElasticSearchResult(json, statusCode, statusCode == 200 ? "OK" : "Too Many Requests", gson);
+    }
+
+    private static class ManualTicker extends Ticker {
+        private long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long time, TimeUnit unit) {
+            nanos += unit.toNanos(time);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.graylog.jest.okhttp.bulk;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardRoutingTableTest {
+    static final String CLUSTER_STATE = "{" +
+            "\"metadata\":{\"indices\":{" +
+            "\"twitter\":{\"settings\":{\"index\":{\"number_of_shards\":\"2\"}},\"aliases\":[\"tweets\",\"social\"]}," +
+            "\"scaled\":{\"settings\":{\"index\":{\"number_of_shards\":\"2\"}},\"routing_num_shards\":8,\"aliases\":[\"social\"]}," +
+            "\"partitioned\":{\"settings\":{\"index\":{\"number_of_shards\":\"4\",\"routing_partition_size\":\"2\"}}}" +
+            "}}," +
+            "\"routing_table\":{\"indices\":{" +
+            "\"twitter\":{\"shards\":{" +
+            "\"0\":[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"node-a\"},{\"state\":\"STARTED\",\"primary\":false,\"node\":\"node-b\"}]," +
+            "\"1\":[{\"state\":\"RELOCATING\",\"primary\":true,\"node\":\"node-b\"},{\"state\":\"UNASSIGNED\",\"primary\":false,\"node\":null}]}}," +
+            "\"scaled\":{\"shards\":{" +
+            "\"0\":[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"node-a\"}]," +
+            "\"1\":[{\"state\":\"INITIALIZING\",\"primary\":true,\"node\":\"node-b\"}]}}," +
+            "\"partitioned\":{\"shards\":{" +
+            "\"0\":[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"node-a\"}]," +
+            "\"1\":[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"node-b\"}]," +
+            "\"2\":[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"node-a\"}]," +
+            "\"3\":[{\"state\":\"STARTED\",\"primary\":true,\"node\":\"node-b\"}]}}" +
+            "}}}";
+
+    private final ShardRoutingTable table = ShardRoutingTable.parse(new JsonParser().parse(CLUSTER_STATE).getAsJsonObject());
+
+    @Test
+    public void hashesLikeElasticsearch() {
+        assertEquals(0x5a0cb7c3, Murmur3.hash("hell"));
+        assertEquals(0xd7c31989, Murmur3.hash("hello"));
+        assertEquals(0x22ab2984, Murmur3.hash("hello w"));
+        assertEquals(0xdf0ca123, Murmur3.hash("hello wo"));
+        assertEquals(0xe7744d61, Murmur3.hash("hello wor"));
+        assertEquals(0xe07db09c, Murmur3.hash("The quick brown fox jumps over the lazy dog"));
+        assertEquals(0x4e63d2ad, Murmur3.hash("The quick brown fox jumps over the lazy cog"));
+    }
+
+    @Test
+    public void computesShardFromIdOrRouting() {
+        assertEquals(3, table.size());
+        assertEquals(Math.floorMod(Murmur3.hash("hello"), 2), table.shardId("twitter", "hello", null));
+        assertEquals(Math.floorMod(Murmur3.hash("hello"), 2), table.shardId("twitter", "other", "hello"));
+        assertEquals(-1, table.shardId("twitter", null, null));
+        assertEquals(-1, table.shardId("unknown", "hello", null));
+    }
+
+    @Test
+    public void scalesDownRoutingShards() {
+        for (String id : new String[]{"hell", "hello", "hello w", "hello wo", "hello wor"}) {
+            assertEquals(Math.floorMod(Murmur3.hash(id), 8) / 4, table.shardId("scaled", id, null));
+        }
+    }
+
+    @Test
+    public void offsetsRoutingWithinPartition() {
+        final int expected = Math.floorMod(Murmur3.hash("user") + Math.floorMod(Murmur3.hash("hello"), 2), 4);
+        assertEquals(expected, table.shardId("partitioned", "hello", "user"));
+        assertEquals(-1, table.shardId("partitioned", null, "user"));
+    }
+
+    @Test
+    public void resolvesPrimaryNodes() {
+        final String node0 = table.shardId("twitter", "hello", null) == 0 ? "node-a" : "node-b";
+        assertEquals(node0, table.primaryNode("twitter", "hello", null));
+        assertEquals(node0, table.primaryNode("tweets", "hello", null));
+        // aliases of several indices are ambiguous
+        assertNull(table.primaryNode("social", "hello", null));
+    }
+
+    @Test
+    public void ignoresPrimariesWhichAreNotActive() {
+        String id = null;
+        for (String candidate : new String[]{"hell", "hello", "hello w", "hello wo", "hello wor"}) {
+            if (table.shardId("scaled", candidate, null) == 1) {
+                id = candidate;
+            }
+        }
+        assertNull(table.primaryNode("scaled", id, null));
+    }
+
+    @Test
+    public void parsesIncompleteStateAsEmpty() {
+        assertEquals(0, ShardRoutingTable.parse(new JsonObject()).size());
+    }
+}
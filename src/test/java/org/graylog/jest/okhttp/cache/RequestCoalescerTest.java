@@ -0,0 +1,117 @@
+package org.graylog.jest.okhttp.cache;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Index;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import io.searchbox.params.Parameters;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestCoalescerTest {
+    private static final MediaType JSON = MediaType.parse("application/json; utf-8");
+
+    private RequestCoalescer coalescer;
+    private RequestKey key;
+
+    @Before
+    public void setUp() throws IOException {
+        coalescer = new RequestCoalescer(ImmutableSet.of(Search.class));
+        final Request request = new Request.Builder()
+                .url("http://localhost:9200/_search")
+                .post(RequestBody.create(JSON, "{}"))
+                .build();
+        key = RequestKey.of(new Search.Builder("{}").build(), request);
+    }
+
+    @Test
+    public void onlyCoalescesWhitelistedActions() {
+        assertTrue(coalescer.isCoalescable(new Search.Builder("{}").build()));
+        assertFalse(coalescer.isCoalescable(new Index.Builder("{}").index("test").type("doc").build()));
+    }
+
+    @Test
+    public void doesNotCoalesceScrollsOrSideEffects() {
+        final RequestCoalescer coalescer = new RequestCoalescer(ImmutableSet.of(Search.class, SearchScroll.class, Index.class));
+
+        assertFalse(coalescer.isCoalescable(new Search.Builder("{}").setParameter(Parameters.SCROLL, "1m").build()));
+        assertFalse(coalescer.isCoalescable(new SearchScroll.Builder("scroll-id", "1m").build()));
+        assertFalse(coalescer.isCoalescable(new Index.Builder("{}").index("test").type("doc").id("1").build()));
+    }
+
+    @Test
+    public void followersStopWaitingAfterTimeout() throws IOException {
+        final RequestCoalescer.Flight leader = coalescer.join(key);
+        final RequestCoalescer.Flight follower = coalescer.join(key);
+
+        assertNull(follower.await(10L, TimeUnit.MILLISECONDS));
+
+        final JestResult result = new JestResult(new Gson());
+        leader.complete(result);
+        assertSame(result, follower.await(10L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void followersReceiveLeaderResult() throws IOException {
+        final RequestCoalescer.Flight leader = coalescer.join(key);
+        final RequestCoalescer.Flight follower = coalescer.join(key);
+        final AtomicReference<JestResult> asyncResult = new AtomicReference<>();
+        follower.future().thenAccept(asyncResult::set);
+
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        final JestResult result = new JestResult(new Gson());
+        leader.complete(result);
+
+        assertSame(result, follower.await());
+        assertSame(result, asyncResult.get());
+        assertEquals(2, coalescer.getRequests());
+        assertEquals(1, coalescer.getCoalescedRequests());
+    }
+
+    @Test
+    public void completedFlightIsNotReused() {
+        final RequestCoalescer.Flight first = coalescer.join(key);
+        first.complete(new JestResult(new Gson()));
+
+        final RequestCoalescer.Flight second = coalescer.join(key);
+
+        assertTrue(second.isLeader());
+        assertNotSame(first.future(), second.future());
+    }
+
+    @Test
+    public void failuresArePropagatedToFollowers() {
+        final RequestCoalescer.Flight leader = coalescer.join(key);
+        final RequestCoalescer.Flight follower = coalescer.join(key);
+
+        final IOException exception = new IOException("boom");
+        leader.fail(exception);
+
+        try {
+            follower.await();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertSame(exception, e);
+        }
+        assertTrue(coalescer.join(key).isLeader());
+    }
+}
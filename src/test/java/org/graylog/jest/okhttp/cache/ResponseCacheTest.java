@@ -0,0 +1,95 @@
+package org.graylog.jest.okhttp.cache;
+
+import com.google.common.collect.ImmutableSet;
+import io.searchbox.core.Get;
+import io.searchbox.core.Index;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import io.searchbox.params.Parameters;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+    private static final MediaType JSON = MediaType.parse("application/json; utf-8");
+
+    private ResponseCache cache;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() {
+        cache = new ResponseCache(1024L * 1024L, 1L, TimeUnit.MINUTES, ImmutableSet.of(Search.class, Get.class));
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void onlyCachesWhitelistedActions() {
+        assertTrue(cache.isCacheable(new Search.Builder("{}").build()));
+        assertFalse(cache.isCacheable(new Index.Builder("{}").index("test").type("doc").build()));
+    }
+
+    @Test
+    public void doesNotCacheScrollsOrSideEffects() {
+        final ResponseCache cache = new ResponseCache(1024L, 1L, TimeUnit.MINUTES, ImmutableSet.of(Search.class, SearchScroll.class, Index.class));
+
+        assertFalse(cache.isCacheable(new Search.Builder("{}").setParameter(Parameters.SCROLL, "1m").build()));
+        assertFalse(cache.isCacheable(new SearchScroll.Builder("scroll-id", "1m").build()));
+        assertFalse(cache.isCacheable(new Index.Builder("{}").index("test").type("doc").id("1").build()));
+        assertTrue(cache.isCacheable(new Search.Builder("{}").addIndex("test").build()));
+    }
+
+    @Test
+    public void keysIgnoreServer() throws IOException {
+        final Search search = new Search.Builder("{}").addIndex("test").build();
+        final RequestKey first = RequestKey.of(search, post("http://node1:9200/test/_search", "{\"query\":{}}"));
+        final RequestKey second = RequestKey.of(search, post("http://node2:9200/test/_search", "{\"query\":{}}"));
+        final RequestKey other = RequestKey.of(search, post("http://node2:9200/test/_search", "{\"size\":1}"));
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    public void servesHitsFromCache() throws IOException {
+        final RequestKey key = RequestKey.of(new Search.Builder("{}").build(), post("http://localhost:9200/_search", "{}"));
+
+        final CachedResponse first = cache.get(key, () -> load(200));
+        final CachedResponse second = cache.get(key, () -> load(200));
+
+        assertEquals(1, loads.get());
+        assertEquals(first, second);
+        assertEquals(1L, cache.getStats().hitCount());
+        assertEquals(1L, cache.getStats().missCount());
+    }
+
+    @Test
+    public void doesNotCacheFailedResponses() throws IOException {
+        final RequestKey key = RequestKey.of(new Search.Builder("{}").build(), post("http://localhost:9200/_search", "{}"));
+
+        assertEquals(500, cache.get(key, () -> load(500)).getCode());
+        assertNull(cache.getIfPresent(key));
+        assertEquals(200, cache.get(key, () -> load(200)).getCode());
+        assertEquals(2, loads.get());
+    }
+
+    private CachedResponse load(int code) {
+        loads.incrementAndGet();
+        return new CachedResponse(code, "OK", "{\"hits\":{}}");
+    }
+
+    private static Request post(String url, String payload) {
+        return new Request.Builder().url(url).post(RequestBody.create(JSON, payload)).build();
+    }
+}
@@ -0,0 +1,39 @@
+package org.graylog.jest.okhttp.codec;
+
+import com.google.gson.Gson;
+import io.searchbox.core.Index;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchResult;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GsonJsonCodecTest {
+    private final GsonJsonCodec codec = new GsonJsonCodec(new Gson());
+
+    @Test
+    public void encodesActionPayload() {
+        final Index index = new Index.Builder(Collections.singletonMap("field", "value")).index("test").type("doc").build();
+
+        assertEquals("{\"field\":\"value\"}", codec.encode(index));
+    }
+
+    @Test
+    public void decodesResponseBody() throws IOException {
+        final Search search = new Search.Builder("{}").build();
+        final ResponseBody body = ResponseBody.create(MediaType.parse("application/json"),
+                "{\"took\":1,\"hits\":{\"total\":1,\"max_score\":1.0,\"hits\":[{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"1\",\"_source\":{\"field\":\"value\"}}]}}");
+
+        final SearchResult result = codec.decode(search, body, 200, "OK");
+
+        assertTrue(result.isSucceeded());
+        assertEquals(1, result.getJsonObject().getAsJsonObject("hits").getAsJsonArray("hits").size());
+        assertEquals("{\"field\":\"value\"}", result.getSourceAsString());
+    }
+}
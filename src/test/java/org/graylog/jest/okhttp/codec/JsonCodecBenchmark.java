@@ -0,0 +1,84 @@
+package org.graylog.jest.okhttp.codec;
+
+import com.google.gson.Gson;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestResult;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Index;
+import io.searchbox.core.Search;
+
+import java.util.Locale;
+
+/**
+ * Measures the decoding throughput of a {@link JsonCodec} for search hit and bulk response payloads.
+ * <p>
+ * Run with <code>java -cp target/test-classes:target/classes:&lt;dependencies&gt; org.graylog.jest.okhttp.codec.JsonCodecBenchmark [codec class]</code>.
+ * Without an argument the {@link GsonJsonCodec} is measured, other codecs need a public no-arg constructor.
+ * </p>
+ */
+public class JsonCodecBenchmark {
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 10_000;
+
+    private static volatile JestResult sink;
+
+    public static void main(String[] args) throws Exception {
+        final JsonCodec codec = args.length == 0
+                ? new GsonJsonCodec(new Gson())
+                : (JsonCodec) Class.forName(args[0]).getConstructor().newInstance();
+
+        final String searchResponse = searchResponse(100);
+        final String bulkResponse = bulkResponse(1000);
+        final Search search = new Search.Builder("{}").build();
+        final Bulk bulk = new Bulk.Builder().addAction(new Index.Builder("{}").index("test").type("doc").build()).build();
+
+        run(codec, search, searchResponse, WARMUP);
+        run(codec, bulk, bulkResponse, WARMUP);
+        report(codec, "search, 100 hits", search, searchResponse);
+        report(codec, "bulk, 1000 items", bulk, bulkResponse);
+    }
+
+    private static void report(JsonCodec codec, String name, Action<?> action, String body) {
+        final long nanos = run(codec, action, body, ITERATIONS);
+        System.out.println(String.format(Locale.ENGLISH, "%s %-18s %10.1f ops/s %8.1f MB/s",
+                codec.getClass().getSimpleName(), name,
+                ITERATIONS * 1e9 / nanos,
+                (double) body.length() * ITERATIONS * 1e3 / nanos));
+    }
+
+    private static long run(JsonCodec codec, Action<?> action, String body, int iterations) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = codec.decode(action, body, 200, "OK");
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static String searchResponse(int hits) {
+        final StringBuilder sb = new StringBuilder("{\"took\":3,\"timed_out\":false,\"_shards\":{\"total\":5,\"successful\":5,\"failed\":0},")
+                .append("\"hits\":{\"total\":").append(hits).append(",\"max_score\":1.0,\"hits\":[");
+        for (int i = 0; i < hits; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"_index\":\"logs\",\"_type\":\"message\",\"_id\":\"").append(i).append("\",\"_score\":1.0,")
+                    .append("\"_source\":{\"message\":\"GET /index.html HTTP/1.1 200 ").append(i).append("\",")
+                    .append("\"source\":\"web-").append(i % 10).append("\",\"timestamp\":\"2017-01-01T00:00:00.000Z\",")
+                    .append("\"took_ms\":").append(i * 7 % 100).append(",\"tags\":[\"http\",\"access\"]}}");
+        }
+        return sb.append("]}}").toString();
+    }
+
+    private static String bulkResponse(int items) {
+        final StringBuilder sb = new StringBuilder("{\"took\":30,\"errors\":false,\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"index\":{\"_index\":\"logs\",\"_type\":\"message\",\"_id\":\"").append(i)
+                    .append("\",\"_version\":1,\"result\":\"created\",\"_shards\":{\"total\":2,\"successful\":1,\"failed\":0},")
+                    .append("\"created\":true,\"status\":201}}");
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,89 @@
+package org.graylog.jest.okhttp.config.discovery;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.config.exception.CouldNotConnectException;
+import io.searchbox.cluster.NodesInfo;
+import org.graylog.jest.okhttp.config.HttpClientConfig;
+import org.graylog.jest.okhttp.http.JestHttpClient;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.ConnectException;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NodeAttributeCheckerTest {
+    @Test
+    public void parseNodesWithRoles() {
+        final JsonObject nodesInfo = new JsonParser().parse("{\"nodes\":{" +
+                "\"n1\":{\"roles\":[\"master\",\"data\"],\"attributes\":{\"zone\":\"a\"},\"http\":{\"publish_address\":\"10.0.0.1:9200\"}}," +
+                "\"n2\":{\"roles\":[],\"http\":{\"publish_address\":\"coordinating/10.0.0.2:9201\"}}," +
+                "\"n3\":{\"roles\":[\"data\"]}" +
+                "}}").getAsJsonObject();
+
+        final List<NodeInfo> nodes = NodeAttributeChecker.parseNodes(nodesInfo, "https://");
+
+        assertEquals(2, nodes.size());
+        assertEquals(new NodeInfo("n1", "https://10.0.0.1:9200", ImmutableSet.of("master", "data"), ImmutableMap.of("zone", "a")), nodes.get(0));
+        assertEquals("https://10.0.0.2:9201", nodes.get(1).getServer());
+        assertTrue(nodes.get(1).isCoordinatingOnly());
+    }
+
+    @Test
+    public void parseNodesWithLegacyAttributes() {
+        final JsonObject nodesInfo = new JsonParser().parse("{\"nodes\":{" +
+                "\"n1\":{\"attributes\":{\"master\":\"false\",\"data\":\"false\",\"client\":\"true\"},\"http_address\":\"inet[/127.0.0.1:9200]\"}" +
+                "}}").getAsJsonObject();
+
+        final List<NodeInfo> nodes = NodeAttributeChecker.parseNodes(nodesInfo, "http://");
+
+        assertEquals(1, nodes.size());
+        assertEquals("http://127.0.0.1:9200", nodes.get(0).getServer());
+        assertTrue(nodes.get(0).isCoordinatingOnly());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void removesOnlyUnreachableServer() throws Exception {
+        final JsonObject nodesInfo = new JsonParser().parse("{\"nodes\":{" +
+                "\"n1\":{\"roles\":[\"data\"],\"attributes\":{\"zone\":\"a\"},\"http\":{\"publish_address\":\"10.0.0.1:9200\"}}," +
+                "\"n2\":{\"roles\":[\"data\"],\"attributes\":{\"zone\":\"b\"},\"http\":{\"publish_address\":\"10.0.0.2:9200\"}}" +
+                "}}").getAsJsonObject();
+        final JestResult result = new JestResult(new Gson());
+        result.setJsonObject(nodesInfo);
+        result.setSucceeded(true);
+
+        final JestHttpClient client = mock(JestHttpClient.class);
+        when(client.execute(any(NodesInfo.class)))
+                .thenReturn(result)
+                .thenThrow(new CouldNotConnectException("http://10.0.0.1:9200/_nodes/http", new ConnectException("Connection refused")));
+        final NodeAttributeChecker checker = new NodeAttributeChecker(client, new HttpClientConfig.Builder("http://localhost:9200")
+                .discoveryEnabled(true)
+                .build());
+
+        checker.runOneIteration();
+        when(client.getNodes()).thenReturn(NodeAttributeChecker.parseNodes(nodesInfo, "http://"));
+        checker.runOneIteration();
+
+        verify(client).setServers(ImmutableSet.of("http://10.0.0.1:9200", "http://10.0.0.2:9200"));
+        verify(client).setServers(ImmutableSet.of("http://10.0.0.2:9200"));
+        final ArgumentCaptor<Collection> nodes = ArgumentCaptor.forClass(Collection.class);
+        verify(client, times(2)).setNodes(nodes.capture());
+        final Collection<NodeInfo> remainingNodes = nodes.getAllValues().get(1);
+        assertEquals(1, remainingNodes.size());
+        assertEquals("n2", remainingNodes.iterator().next().getId());
+    }
+}
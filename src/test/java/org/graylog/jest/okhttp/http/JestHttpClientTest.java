@@ -1,10 +1,22 @@
 package org.graylog.jest.okhttp.http;
 
+import io.searchbox.action.GenericResultAbstractAction;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Get;
+import io.searchbox.core.Index;
 import io.searchbox.core.Search;
 import io.searchbox.core.search.sort.Sort;
+import okhttp3.Dispatcher;
 import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
 import okio.BufferedSink;
 import okio.Okio;
 import okio.Sink;
@@ -12,6 +24,14 @@ import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.graylog.jest.okhttp.JestClientFactory;
+import org.graylog.jest.okhttp.action.MultiAction;
+import org.graylog.jest.okhttp.cache.RequestCoalescer;
+import org.graylog.jest.okhttp.cache.ResponseCache;
+import org.graylog.jest.okhttp.http.okhttp.SpilledRequestBody;
+import org.graylog.jest.okhttp.ratelimit.ByteBudget;
+import org.graylog.jest.okhttp.stats.ServerStats;
+import org.graylog.jest.okhttp.tenant.TenantQuotaExceededException;
+import org.graylog.jest.okhttp.tenant.TenantScheduler;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -19,12 +39,27 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -227,4 +262,373 @@ public class JestHttpClientTest {
         assertEquals(credentialsProviderMock, httpClientContextResult.getCredentialsProvider());
     }
 
+    @Test
+    public void resolveAppendsEncodedPathAndQuery() {
+        HttpUrl url = JestHttpClient.resolve(HttpUrl.parse("http://localhost:9200"), "test%2Cother/doc/_search?routing=a%2Cb&size=10");
+
+        assertEquals(Arrays.asList("test,other", "doc", "_search"), url.pathSegments());
+        assertEquals("routing=a%2Cb&size=10", url.encodedQuery());
+        assertEquals("http://localhost:9200/test%2Cother/doc/_search?routing=a%2Cb&size=10", url.toString());
+    }
+
+    @Test
+    public void resolveKeepsBasePath() {
+        HttpUrl url = JestHttpClient.resolve(HttpUrl.parse("http://localhost:9200/es/"), "/_cluster/health");
+
+        assertEquals("http://localhost:9200/es/_cluster/health", url.toString());
+    }
+
+    @Test
+    public void prepareRequestUsesCachedServerUrl() {
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        Search search = new Search.Builder("{}").addIndex("twitter").addType("tweet").build();
+
+        Request request = client.prepareRequest(search, "http://localhost:9200");
+
+        assertEquals(HttpUrl.parse("http://localhost:9200/twitter/tweet/_search"), request.url());
+        assertEquals("POST", request.method());
+    }
+
+    @Test
+    public void constructHttpMethodIgnoresCase() {
+        Request request = client.constructHttpMethod("post", "http://localhost/jest/post", "data").build();
+        assertEquals("POST", request.method());
+    }
+
+    @Test
+    public void spillsLargeRequestBodies() {
+        client.setSpillThreshold(10L, null);
+
+        Request small = client.prepareRequest(new Index.Builder("{}").index("test").type("doc").build(), "http://localhost:9200");
+        Request large = client.prepareRequest(new Index.Builder("{\"message\":\"large enough\"}").index("test").type("doc").build(), "http://localhost:9200");
+
+        assertFalse(small.body() instanceof SpilledRequestBody);
+        assertTrue(large.body() instanceof SpilledRequestBody);
+        ((SpilledRequestBody) large.body()).release();
+    }
+
+    @Test
+    public void passesTimeoutToSearches() {
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+
+        Request search = client.prepareRequest(new Search.Builder("{}").build(), "http://localhost:9200", 500L);
+        Request get = client.prepareRequest(new Get.Builder("test", "1").build(), "http://localhost:9200", 500L);
+        Request unbounded = client.prepareRequest(new Search.Builder("{}").build(), "http://localhost:9200");
+
+        String timeout = search.url().queryParameter("timeout");
+        assertNotNull(timeout);
+        assertTrue(timeout.endsWith("ms"));
+        assertTrue(Long.parseLong(timeout.substring(0, timeout.length() - 2)) <= 500L);
+        assertNull(get.url().queryParameter("timeout"));
+        assertNull(unbounded.url().queryParameter("timeout"));
+    }
+
+    @Test
+    public void passesTimeoutToSearchesOnServersWithoutCachedUrl() {
+        // not parseable as HttpUrl, so the request URL is built as a string
+        Request search = client.prepareRequest(new Search.Builder("{}").build(), "ws://localhost:9200", 500L);
+
+        String timeout = search.url().queryParameter("timeout");
+        assertNotNull(timeout);
+        assertTrue(timeout.endsWith("ms"));
+    }
+
+    @Test
+    public void requestKeysIgnoreSearchTimeout() throws IOException {
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        Search search = new Search.Builder("{}").addIndex("test").build();
+
+        Request first = client.prepareRequest(search, "http://localhost:9200", 500L);
+        Request second = client.prepareRequest(search, "http://localhost:9200", 900L);
+        assertNotEquals(first.url().queryParameter("timeout"), second.url().queryParameter("timeout"));
+        assertEquals(client.requestKey(search, first), client.requestKey(search, second));
+
+        Search shortTimeout = new Search.Builder("{}").addIndex("test").setParameter("timeout", "1s").build();
+        Search longTimeout = new Search.Builder("{}").addIndex("test").setParameter("timeout", "2s").build();
+        assertNotEquals(client.requestKey(shortTimeout, client.prepareRequest(shortTimeout, "http://localhost:9200", 500L)),
+                client.requestKey(longTimeout, client.prepareRequest(longTimeout, "http://localhost:9200", 500L)));
+    }
+
+    @Test
+    public void appliesActionTimeouts() {
+        client.setActionTimeouts(Collections.<Class<?>, Long>singletonMap(Search.class, 200L));
+
+        Request search = client.prepareRequest(new Search.Builder("{}").build(), "http://localhost:9200");
+        Request get = client.prepareRequest(new Get.Builder("test", "1").build(), "http://localhost:9200");
+
+        assertEquals(200L, CallContext.of(search).timeoutMillis);
+        assertEquals(0L, CallContext.of(get).timeoutMillis);
+    }
+
+    @Test
+    public void appliesSettingsOfCombinedActionsToMultiActions() {
+        client.setActionTimeouts(Collections.<Class<?>, Long>singletonMap(Get.class, 200L));
+        client.setActionPriorities(Collections.<Class<?>, Priority>singletonMap(Get.class, Priority.HIGH));
+
+        CallContext context = CallContext.of(client.prepareRequest(new CombinedGets(), "http://localhost:9200"));
+
+        assertEquals(Get.class, context.actionType);
+        assertEquals(200L, context.timeoutMillis);
+        assertEquals(Priority.HIGH, context.priority);
+        assertEquals(3, context.actionCount);
+    }
+
+    @Test
+    public void translatesFailuresAfterDeadline() throws InterruptedException {
+        CallContext context = new CallContext(null, "http://localhost:9200", 1L, Priority.NORMAL, null);
+        Thread.sleep(5L);
+
+        IOException translated = context.translate(new IOException("Canceled"));
+
+        assertTrue(translated instanceof SocketTimeoutException);
+        assertEquals("Canceled", translated.getCause().getMessage());
+        assertFalse(new CallContext("http://localhost:9200").translate(new IOException("Canceled")) instanceof SocketTimeoutException);
+    }
+
+    @Test
+    public void readsTenantFromHeader() {
+        client.setTenantScheduler(TenantScheduler.builder(1).build(), "X-Tenant-Id");
+
+        Request tenantRequest = client.prepareRequest(new Get.Builder("test", "1").setHeader("X-Tenant-Id", "acme").build(), "http://localhost:9200");
+        Request defaultRequest = client.prepareRequest(new Get.Builder("test", "1").build(), "http://localhost:9200");
+
+        assertEquals("acme", CallContext.of(tenantRequest).tenant);
+        assertNull(CallContext.of(defaultRequest).tenant);
+    }
+
+    @Test
+    public void tenantRejectionsDoNotCountAsServerFailures() throws IOException {
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("application/json"), "{\"found\":true}"))
+                        .build())
+                .build());
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        TenantScheduler scheduler = TenantScheduler.builder(10).rateLimit("acme", 0.001d).build();
+        client.setTenantScheduler(scheduler, "X-Tenant-Id");
+        Get get = new Get.Builder("test", "1").setHeader("X-Tenant-Id", "acme").build();
+
+        assertTrue(client.execute(get).isSucceeded());
+        try {
+            client.execute(get);
+            fail("Expected TenantQuotaExceededException");
+        } catch (TenantQuotaExceededException e) {
+            assertEquals("acme", e.getTenant());
+        }
+
+        ServerStats stats = client.getServerStats().get("http://localhost:9200");
+        assertEquals(0L, stats.getFailures());
+        assertEquals(0L, stats.getInFlight());
+        assertEquals(0, scheduler.getInFlight());
+        assertEquals(1L, scheduler.getStats("acme").getRejected());
+    }
+
+    @Test
+    public void releasesByteBudgetOnceResponseIsConsumed() throws IOException {
+        String body = "{\"_index\":\"test\",\"_id\":\"1\",\"found\":true}";
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                        .build())
+                .build());
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        ByteBudget budget = new ByteBudget(1024L, false);
+        client.setByteBudget(budget);
+
+        assertTrue(client.execute(new Index.Builder("{\"user\":\"kimchy\"}").index("test").type("doc").id("1").build()).isSucceeded());
+
+        assertEquals(0L, budget.getReservedBytes());
+        assertEquals(body.length(), budget.getPeakBytes());
+    }
+
+    @Test
+    public void accountsResponsesOfUnknownLengthWhileReading() throws IOException {
+        String body = "{\"_index\":\"test\",\"_id\":\"1\",\"found\":true}";
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("application/json"), -1L, new Buffer().writeUtf8(body)))
+                        .build())
+                .build());
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        ByteBudget budget = new ByteBudget(1024L, false);
+        client.setByteBudget(budget);
+
+        assertTrue(client.execute(new Get.Builder("test", "1").build()).isSucceeded());
+
+        assertEquals(0L, budget.getReservedBytes());
+        assertEquals(body.length(), budget.getPeakBytes());
+    }
+
+    @Test
+    public void queuedAsyncCallsDoNotHoldByteBudget() throws Exception {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(1);
+        final CountDownLatch respond = new CountDownLatch(1);
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .addInterceptor(chain -> {
+                    try {
+                        respond.await(5L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(MediaType.parse("application/json"), "{\"created\":true}"))
+                            .build();
+                })
+                .build());
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        // room for a single request body only
+        ByteBudget budget = new ByteBudget(20L, false);
+        client.setByteBudget(budget);
+
+        final CompletableFuture<JestResult> first = new CompletableFuture<>();
+        final CompletableFuture<JestResult> second = new CompletableFuture<>();
+        client.executeAsync(new Index.Builder("{\"user\":\"kimchy\"}").index("test").type("doc").id("1").build(), handler(first));
+        client.executeAsync(new Index.Builder("{\"user\":\"kimchy\"}").index("test").type("doc").id("2").build(), handler(second));
+        respond.countDown();
+
+        assertTrue(first.get(5L, TimeUnit.SECONDS).isSucceeded());
+        assertTrue(second.get(5L, TimeUnit.SECONDS).isSucceeded());
+        assertEquals(0L, budget.getRejected());
+        assertEquals(0L, budget.getReservedBytes());
+    }
+
+    @Test
+    public void coalescesConcurrentAsyncCacheMisses() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch respond = new CountDownLatch(1);
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    calls.incrementAndGet();
+                    try {
+                        respond.await(5L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(MediaType.parse("application/json"), "{\"_index\":\"test\",\"_id\":\"1\",\"found\":true}"))
+                            .build();
+                })
+                .build());
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        client.setResponseCache(new ResponseCache(1024L * 1024L, 1L, TimeUnit.MINUTES, Collections.singleton(Get.class)));
+
+        final List<CompletableFuture<JestResult>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final CompletableFuture<JestResult> result = new CompletableFuture<>();
+            client.executeAsync(new Get.Builder("test", "1").build(), handler(result));
+            results.add(result);
+        }
+        respond.countDown();
+
+        for (CompletableFuture<JestResult> result : results) {
+            assertTrue(result.get(5L, TimeUnit.SECONDS).isSucceeded());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void coalescedCallsGiveUpWaitingForSlowLeaderAtTheirDeadline() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch respond = new CountDownLatch(1);
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    calls.incrementAndGet();
+                    try {
+                        respond.await(5L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(MediaType.parse("application/json"), "{\"_index\":\"test\",\"_id\":\"1\",\"found\":true}"))
+                            .build();
+                })
+                .build());
+        client.setServers(new HashSet<>(Collections.singletonList("http://localhost:9200")));
+        client.setRequestCoalescer(new RequestCoalescer(Collections.singleton(Get.class)));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<JestResult> leader = executor.submit(() -> client.execute(new Get.Builder("test", "1").build()));
+            while (calls.get() == 0) {
+                Thread.sleep(10L);
+            }
+
+            final long startNanos = System.nanoTime();
+            try {
+                client.execute(new Get.Builder("test", "1").build(), 200L, TimeUnit.MILLISECONDS);
+                fail("Expected SocketTimeoutException");
+            } catch (SocketTimeoutException e) {
+                assertTrue(e.getMessage().contains("coalesced request"));
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 2000L);
+
+            respond.countDown();
+            assertTrue(leader.get(5L, TimeUnit.SECONDS).isSucceeded());
+            assertEquals(1, calls.get());
+        } finally {
+            respond.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static JestResultHandler<JestResult> handler(CompletableFuture<JestResult> future) {
+        return new JestResultHandler<JestResult>() {
+            @Override
+            public void completed(JestResult result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        };
+    }
+
+    private static class CombinedGets extends GenericResultAbstractAction implements MultiAction<JestResult> {
+        private CombinedGets() {
+            setURI("_mget");
+        }
+
+        @Override
+        public String getRestMethodName() {
+            return "POST";
+        }
+
+        @Override
+        public Class<?> getCombinedActionType() {
+            return Get.class;
+        }
+
+        @Override
+        public int getCombinedActionCount() {
+            return 3;
+        }
+    }
 }
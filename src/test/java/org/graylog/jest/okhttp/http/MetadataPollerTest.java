@@ -0,0 +1,110 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import io.searchbox.client.JestResult;
+import io.searchbox.indices.settings.GetSettings;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MetadataPollerTest {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private JestHttpClient client;
+    private List<Request> requests;
+    private String settings;
+    private String clusterVersion;
+
+    @Before
+    public void setUp() {
+        requests = new ArrayList<>();
+        settings = "{\"test\":{\"settings\":{\"index\":{\"number_of_shards\":\"1\"}}}}";
+        clusterVersion = "{\"cluster_name\":\"test\",\"version\":42,\"state_uuid\":\"abc\"}";
+
+        client = new JestHttpClient();
+        client.setGson(new Gson());
+        client.setServers(ImmutableSet.of("http://localhost:9200"));
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    final Request request = chain.request();
+                    requests.add(request);
+                    final String body = request.url().encodedPath().startsWith("/_cluster/state") ? clusterVersion : settings;
+                    return new Response.Builder()
+                            .request(request)
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(JSON, body))
+                            .build();
+                })
+                .build());
+    }
+
+    @Test
+    public void returnsPreviousResultWhenResponseIsUnchanged() throws IOException {
+        final MetadataPoller poller = client.metadataPoller(false);
+        final GetSettings getSettings = new GetSettings.Builder().addIndex("test").build();
+
+        final JestResult first = poller.poll(getSettings);
+        final JestResult second = poller.poll(getSettings);
+
+        assertSame(first, second);
+        assertEquals(2, requests.size());
+        assertEquals(1, poller.getUnchanged());
+    }
+
+    @Test
+    public void deserializesChangedResponse() throws IOException {
+        final MetadataPoller poller = client.metadataPoller(false);
+        final GetSettings getSettings = new GetSettings.Builder().addIndex("test").build();
+
+        final JestResult first = poller.poll(getSettings);
+        settings = "{\"test\":{\"settings\":{\"index\":{\"number_of_shards\":\"2\"}}}}";
+        final JestResult second = poller.poll(getSettings);
+
+        assertNotSame(first, second);
+        assertEquals("2", second.getJsonObject().getAsJsonObject("test").getAsJsonObject("settings")
+                .getAsJsonObject("index").get("number_of_shards").getAsString());
+        assertEquals(0, poller.getUnchanged());
+    }
+
+    @Test
+    public void skipsFetchWhileClusterStateVersionIsUnchanged() throws IOException {
+        final MetadataPoller poller = client.metadataPoller(true);
+        final GetSettings getSettings = new GetSettings.Builder().addIndex("test").build();
+
+        final JestResult first = poller.poll(getSettings);
+        final JestResult second = poller.poll(getSettings);
+        assertSame(first, second);
+        assertEquals(3, requests.size());
+        assertEquals(1, poller.getSkipped());
+
+        clusterVersion = "{\"cluster_name\":\"test\",\"version\":43,\"state_uuid\":\"def\"}";
+        poller.poll(getSettings);
+        assertEquals(5, requests.size());
+        assertEquals(1, poller.getUnchanged());
+    }
+
+    @Test
+    public void addsFilterPath() throws IOException {
+        final MetadataPoller poller = client.metadataPoller(false);
+
+        poller.poll(new GetSettings.Builder().addIndex("test").build(), "*.settings.index.number_of_shards", "error");
+
+        assertEquals("*.settings.index.number_of_shards,error", requests.get(0).url().queryParameter("filter_path"));
+    }
+}
@@ -0,0 +1,60 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.collect.ImmutableSet;
+import io.searchbox.core.Get;
+import okhttp3.Request;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Compares the allocations of building requests from concatenated URL strings with building them from the
+ * cached, pre-parsed server URLs used by {@link JestHttpClient#prepareRequest(io.searchbox.action.Action, String)}.
+ * <p>
+ * Run with <code>java -cp target/test-classes:target/classes:&lt;dependencies&gt; org.graylog.jest.okhttp.http.PrepareRequestBenchmark</code>.
+ * Requires a HotSpot JVM for per-thread allocation accounting.
+ * </p>
+ */
+public class PrepareRequestBenchmark {
+    private static final String SERVER = "http://localhost:9200";
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        final JestHttpClient client = new JestHttpClient();
+        client.setServers(ImmutableSet.of(SERVER));
+        final Get get = new Get.Builder("twitter", "1").type("tweet").build();
+
+        final Runnable stringUrls = () -> {
+            final String url = SERVER + "/" + get.getURI();
+            sink = client.createHttpMethod(get.getRestMethodName(), url, null).build();
+        };
+        final Runnable cachedUrls = () -> sink = client.prepareRequest(get, SERVER);
+
+        run("string URLs", stringUrls, WARMUP);
+        run("cached URLs", cachedUrls, WARMUP);
+        report("string URLs", stringUrls);
+        report("cached URLs", cachedUrls);
+    }
+
+    private static void report(String name, Runnable task) {
+        final long bytes = run(name, task, ITERATIONS);
+        System.out.println(String.format(Locale.ENGLISH, "%-12s %8.1f bytes/request", name, (double) bytes / ITERATIONS));
+    }
+
+    private static long run(String name, Runnable task, int iterations) {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        if (!(sink instanceof Request)) {
+            throw new IllegalStateException(name + " did not build a request");
+        }
+        return allocated;
+    }
+}
@@ -0,0 +1,191 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.Search;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PriorityLanesTest {
+    private OkHttpClient okHttpClient;
+    private PriorityLanes lanes;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        okHttpClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(MediaType.parse("application/json"), "{\"hits\":{\"hits\":[]}}"))
+                        .build())
+                .build();
+        lanes = new PriorityLanes(ImmutableMap.of(Priority.LOW, 1));
+        lanes.setOkHttpClient(okHttpClient);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void lanesShareConnectionPoolButNotDispatcher() {
+        assertSame(okHttpClient.connectionPool(), lanes.client(Priority.HIGH).connectionPool());
+        assertSame(okHttpClient.connectionPool(), lanes.client(Priority.LOW).connectionPool());
+        assertNotSame(lanes.client(Priority.HIGH).dispatcher(), lanes.client(Priority.LOW).dispatcher());
+        assertEquals(1, lanes.client(Priority.LOW).dispatcher().getMaxRequests());
+        assertEquals(PriorityLanes.DEFAULT_CONCURRENCY, lanes.client(Priority.HIGH).dispatcher().getMaxRequests());
+    }
+
+    @Test
+    public void exhaustedLaneDoesNotBlockOtherLanes() throws Exception {
+        final Semaphore low = lanes.acquire(Priority.LOW);
+        final Future<Semaphore> waiting = executor.submit(() -> lanes.acquire(Priority.LOW));
+
+        try {
+            waiting.get(100L, TimeUnit.MILLISECONDS);
+            fail("Expected the low priority lane to be exhausted");
+        } catch (TimeoutException expected) {
+            // still waiting for a slot
+        }
+        lanes.acquire(Priority.HIGH).release();
+
+        low.release();
+        waiting.get(5L, TimeUnit.SECONDS).release();
+        assertEquals(2L, lanes.getStats(Priority.LOW).getCalls());
+        assertTrue(lanes.getStats(Priority.LOW).getMaxQueueDelay(TimeUnit.MILLISECONDS) >= 100L);
+    }
+
+    @Test
+    public void givesUpWaitingForSlotAfterTimeout() throws Exception {
+        final Semaphore low = lanes.acquire(Priority.LOW);
+
+        assertNull(lanes.acquire(Priority.LOW, 20L, TimeUnit.MILLISECONDS));
+
+        low.release();
+        lanes.acquire(Priority.LOW, 20L, TimeUnit.MILLISECONDS).release();
+        assertEquals(2L, lanes.getStats(Priority.LOW).getCalls());
+    }
+
+    @Test
+    public void shutdownStopsDispatchersOfAllLanes() {
+        lanes.shutdown();
+
+        for (Priority priority : Priority.values()) {
+            assertTrue(lanes.client(priority).dispatcher().executorService().isShutdown());
+        }
+    }
+
+    @Test
+    public void recordsQueueDelayOfAsynchronousCalls() throws InterruptedException {
+        final JestHttpClient client = new JestHttpClient();
+        client.setGson(new Gson());
+        client.setServers(ImmutableSet.of("http://localhost:9200"));
+        client.setOkHttpClient(okHttpClient);
+        assertNull(client.getLaneStats(Priority.HIGH));
+        client.setPriorityLanes(ImmutableMap.of());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        client.executeAsync(new Search.Builder("{}").build(), new JestResultHandler<JestResult>() {
+            @Override
+            public void completed(JestResult result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                latch.countDown();
+            }
+        }, Priority.HIGH);
+
+        assertTrue(latch.await(5L, TimeUnit.SECONDS));
+        assertEquals(1L, client.getLaneStats(Priority.HIGH).getCalls());
+        assertEquals(0L, client.getLaneStats(Priority.LOW).getCalls());
+    }
+
+    @Test
+    public void synchronousAndAsynchronousCallsShareLaneBudget() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch respond = new CountDownLatch(1);
+        final JestHttpClient client = new JestHttpClient();
+        client.setGson(new Gson());
+        client.setServers(ImmutableSet.of("http://localhost:9200"));
+        client.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        respond.await(5L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return new Response.Builder()
+                            .request(chain.request())
+                            .protocol(Protocol.HTTP_1_1)
+                            .code(200)
+                            .message("OK")
+                            .body(ResponseBody.create(MediaType.parse("application/json"), "{\"hits\":{\"hits\":[]}}"))
+                            .build();
+                })
+                .build());
+        client.setPriorityLanes(ImmutableMap.of(Priority.LOW, 1));
+
+        final Future<JestResult> sync = executor.submit(() -> client.execute(new Search.Builder("{}").build(), Priority.LOW));
+        while (running.get() == 0) {
+            Thread.sleep(10L);
+        }
+        final CountDownLatch async = new CountDownLatch(1);
+        client.executeAsync(new Search.Builder("{}").build(), new JestResultHandler<JestResult>() {
+            @Override
+            public void completed(JestResult result) {
+                async.countDown();
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                async.countDown();
+            }
+        }, Priority.LOW);
+
+        // the asynchronous call waits for the slot of the synchronous one
+        assertFalse(async.await(100L, TimeUnit.MILLISECONDS));
+        respond.countDown();
+
+        assertTrue(sync.get(5L, TimeUnit.SECONDS).isSucceeded());
+        assertTrue(async.await(5L, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        client.shutdownClient();
+    }
+}
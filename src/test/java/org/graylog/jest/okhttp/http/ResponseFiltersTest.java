@@ -0,0 +1,89 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.searchbox.cluster.NodesInfo;
+import io.searchbox.core.Get;
+import io.searchbox.core.Search;
+import io.searchbox.core.SearchScroll;
+import io.searchbox.params.Parameters;
+import okhttp3.HttpUrl;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResponseFiltersTest {
+    private final Map<Class<?>, List<String>> perAction = ImmutableMap.of(
+            Search.class, ImmutableList.of("hits.hits._source", "aggregations"));
+
+    @Test
+    public void appendsFilterPathForMatchingAction() {
+        final ResponseFilters filters = new ResponseFilters(perAction, Collections.emptyList());
+
+        final String url = filters.apply(new Search.Builder("{}").addIndex("test").build(), "http://localhost:9200/test/_search?size=10");
+
+        assertEquals("hits.hits._source,aggregations,error,status", HttpUrl.parse(url).queryParameter("filter_path"));
+        assertEquals("10", HttpUrl.parse(url).queryParameter("size"));
+    }
+
+    @Test
+    public void leavesOtherActionsUnchanged() {
+        final ResponseFilters filters = new ResponseFilters(perAction, Collections.emptyList());
+
+        final String url = "http://localhost:9200/test/doc/1";
+        assertEquals(url, filters.apply(new Get.Builder("test", "1").type("doc").build(), url));
+    }
+
+    @Test
+    public void usesDefaultFilterForOtherActions() {
+        final ResponseFilters filters = new ResponseFilters(perAction, ImmutableList.of("_source", "error"));
+
+        assertEquals("_source,error,status", filters.filterPathFor(new Get.Builder("test", "1").build()));
+    }
+
+    @Test
+    public void keepsFilterPathOfAction() {
+        final ResponseFilters filters = new ResponseFilters(perAction, Collections.emptyList());
+        final Search search = new Search.Builder("{}").setParameter("filter_path", "took").build();
+
+        final String url = "http://localhost:9200/_search?filter_path=took";
+        assertEquals(url, filters.apply(search, url));
+    }
+
+    @Test
+    public void noneDoesNotFilter() {
+        assertNull(ResponseFilters.NONE.filterPathFor(new Search.Builder("{}").setParameter(Parameters.SIZE, 1).build()));
+    }
+
+    @Test
+    public void doesNotApplyDefaultFilterToDiscoveryAndScrolls() {
+        final ResponseFilters filters = new ResponseFilters(perAction, ImmutableList.of("_source"));
+
+        assertNull(filters.filterPathFor(new NodesInfo.Builder().withHttp().build()));
+        assertNull(filters.filterPathFor(new SearchScroll.Builder("scroll-id", "1m").build()));
+
+        final String url = "http://localhost:9200/_nodes/http";
+        assertEquals(url, filters.apply(new NodesInfo.Builder().withHttp().build(), url));
+    }
+
+    @Test
+    public void doesNotApplyDefaultFilterToScrollSearches() {
+        final ResponseFilters filters = new ResponseFilters(Collections.emptyMap(), ImmutableList.of("hits.hits._id"));
+
+        assertNull(filters.filterPathFor(new Search.Builder("{}").setParameter(Parameters.SCROLL, "1m").build()));
+        assertEquals("hits.hits._id,error,status", filters.filterPathFor(new Search.Builder("{}").build()));
+    }
+
+    @Test
+    public void keepsScrollIdOfFilteredScrollSearches() {
+        final ResponseFilters filters = new ResponseFilters(perAction, Collections.emptyList());
+
+        assertEquals("hits.hits._source,aggregations,error,status,_scroll_id",
+                filters.filterPathFor(new Search.Builder("{}").setParameter(Parameters.SCROLL, "1m").build()));
+    }
+}
@@ -0,0 +1,123 @@
+package org.graylog.jest.okhttp.http;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.searchbox.cluster.Health;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Get;
+import io.searchbox.core.Search;
+import org.graylog.jest.okhttp.config.discovery.NodeInfo;
+import org.graylog.jest.okhttp.config.routing.RoutingRule;
+import org.graylog.jest.okhttp.stats.ServerStatsRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ServerSelectorTest {
+    private static final NodeInfo COORDINATING = new NodeInfo("c1", "http://coordinating:9200",
+            Collections.emptySet(), Collections.emptyMap());
+    private static final NodeInfo INGEST_1 = new NodeInfo("i1", "http://ingest1:9200",
+            ImmutableSet.of("ingest", "data"), ImmutableMap.of("box_type", "hot"));
+    private static final NodeInfo INGEST_2 = new NodeInfo("i2", "http://ingest2:9200",
+            ImmutableSet.of("ingest", "data"), ImmutableMap.of("box_type", "warm"));
+    private static final NodeInfo MASTER = new NodeInfo("m1", "http://master:9200",
+            ImmutableSet.of("master"), Collections.emptyMap());
+
+    private static final NodeInfo ZONE_A = new NodeInfo("a1", "http://zone-a:9200",
+            ImmutableSet.of("data"), ImmutableMap.of("zone", "a"));
+    private static final NodeInfo ZONE_B = new NodeInfo("b1", "http://zone-b:9200",
+            ImmutableSet.of("data"), ImmutableMap.of("zone", "b"));
+
+    private ServerStatsRegistry stats;
+    private ServerSelector selector;
+
+    @Before
+    public void setUp() {
+        stats = new ServerStatsRegistry();
+        selector = new ServerSelector(stats);
+        selector.setRoutingRules(Arrays.asList(
+                new RoutingRule.Builder(Search.class).coordinatingOnly().build(),
+                new RoutingRule.Builder(Bulk.class).requireRole("ingest").build(),
+                new RoutingRule.Builder(RoutingRule.CLUSTER_ADMIN_ACTIONS).requireRole("master").build()
+        ));
+        selector.setNodes(Arrays.asList(COORDINATING, INGEST_1, INGEST_2, MASTER));
+    }
+
+    @Test
+    public void routesActionsToMatchingNodes() {
+        assertEquals("http://coordinating:9200", selector.select(new Search.Builder("{}").build()));
+        assertEquals("http://master:9200", selector.select(new Health.Builder().build()));
+    }
+
+    @Test
+    public void roundRobinsOverMatchingNodes() {
+        final Set<String> servers = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            servers.add(selector.select(new Bulk.Builder().build()));
+        }
+        assertEquals(ImmutableSet.of("http://ingest1:9200", "http://ingest2:9200"), servers);
+    }
+
+    @Test
+    public void routesByAttribute() {
+        selector.setRoutingRules(Collections.singletonList(
+                new RoutingRule.Builder(Bulk.class).requireAttribute("box_type", "hot").build()));
+        assertEquals("http://ingest1:9200", selector.select(new Bulk.Builder().build()));
+    }
+
+    @Test
+    public void fallsBackIfNoRuleApplies() {
+        assertNull(selector.select(new Get.Builder("index", "id").build()));
+    }
+
+    @Test
+    public void fallsBackIfNoNodeMatches() {
+        selector.setNodes(Collections.singletonList(MASTER));
+        assertNull(selector.select(new Search.Builder("{}").build()));
+    }
+
+    @Test
+    public void prefersLocalZone() {
+        selector.setRoutingRules(Collections.emptyList());
+        selector.setNodes(Arrays.asList(ZONE_A, ZONE_B));
+        selector.setLocalZone("zone", "b");
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("http://zone-b:9200", selector.select(new Get.Builder("index", "id").build()));
+        }
+    }
+
+    @Test
+    public void spillsOverToOtherZonesIfLocalZoneIsUnhealthy() {
+        selector.setRoutingRules(Collections.emptyList());
+        selector.setNodes(Arrays.asList(ZONE_A, ZONE_B));
+        selector.setLocalZone("zone", "b");
+
+        stats.requestCompleted("http://zone-b:9200", stats.requestStarted("http://zone-b:9200"), true);
+        assertEquals("http://zone-a:9200", selector.select(new Get.Builder("index", "id").build()));
+
+        stats.requestCompleted("http://zone-b:9200", stats.requestStarted("http://zone-b:9200"), false);
+        assertEquals("http://zone-b:9200", selector.select(new Get.Builder("index", "id").build()));
+    }
+
+    @Test
+    public void spillsOverToOtherZonesIfLocalZoneIsSaturated() {
+        selector.setRoutingRules(Collections.emptyList());
+        selector.setNodes(Arrays.asList(ZONE_A, ZONE_B));
+        selector.setLocalZone("zone", "b");
+        selector.setSaturationThreshold(1);
+
+        stats.requestStarted("http://zone-b:9200");
+        assertEquals("http://zone-a:9200", selector.select(new Get.Builder("index", "id").build()));
+
+        stats.requestStarted("http://zone-a:9200");
+        assertEquals("http://zone-b:9200", selector.select(new Get.Builder("index", "id").build()));
+    }
+}
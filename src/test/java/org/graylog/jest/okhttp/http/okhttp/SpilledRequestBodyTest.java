@@ -0,0 +1,47 @@
+package org.graylog.jest.okhttp.http.okhttp;
+
+import okhttp3.MediaType;
+import okio.Buffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpilledRequestBodyTest {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void replaysBodyFromDisk() throws IOException {
+        final File directory = temporaryFolder.newFolder();
+        final SpilledRequestBody body = SpilledRequestBody.create(JSON, "{\"message\":\"h\u00e9llo\"}", directory);
+
+        assertTrue(body.getFile().exists());
+        assertEquals(directory, body.getFile().getParentFile());
+        assertEquals(20L, body.contentLength());
+
+        for (int i = 0; i < 2; i++) {
+            final Buffer buffer = new Buffer();
+            body.writeTo(buffer);
+            assertEquals("{\"message\":\"h\u00e9llo\"}", buffer.readUtf8());
+        }
+    }
+
+    @Test
+    public void releaseDeletesFile() throws IOException {
+        final SpilledRequestBody body = SpilledRequestBody.create(JSON, "{}", temporaryFolder.newFolder());
+
+        body.release();
+        body.release();
+
+        assertFalse(body.getFile().exists());
+    }
+}
@@ -0,0 +1,117 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ByteBudgetTest {
+    @Test
+    public void reservesAndReleasesBytes() throws Exception {
+        final ByteBudget budget = new ByteBudget(100L, false);
+        final ByteBudget.Reservation first = budget.reserve(60L);
+        final ByteBudget.Reservation second = budget.reserve(40L);
+        assertEquals(100L, budget.getReservedBytes());
+
+        first.close();
+        first.close();
+        assertEquals(40L, budget.getReservedBytes());
+
+        second.close();
+        assertEquals(0L, budget.getReservedBytes());
+        assertEquals(100L, budget.getPeakBytes());
+    }
+
+    @Test
+    public void accountsBytesWithoutWaiting() throws Exception {
+        final ByteBudget budget = new ByteBudget(100L, true);
+        budget.reserve(60L);
+
+        final ByteBudget.Reservation accounted = budget.account(80L);
+        assertEquals(140L, budget.getReservedBytes());
+        assertNull(budget.reserve(10L, 10L, TimeUnit.MILLISECONDS));
+
+        accounted.close();
+        assertEquals(60L, budget.getReservedBytes());
+        assertEquals(1L, budget.getWaits());
+    }
+
+    @Test
+    public void addsBytesToOpenReservationsOnly() {
+        final ByteBudget budget = new ByteBudget(100L, false);
+        final ByteBudget.Reservation reservation = budget.account(0L);
+
+        reservation.add(30L);
+        reservation.add(90L);
+        assertEquals(120L, budget.getReservedBytes());
+        assertEquals(120L, reservation.getBytes());
+
+        reservation.close();
+        reservation.add(10L);
+        assertEquals(0L, budget.getReservedBytes());
+        assertEquals(120L, budget.getPeakBytes());
+    }
+
+    @Test
+    public void failsFastWhenExhausted() throws Exception {
+        final ByteBudget budget = new ByteBudget(100L, false);
+        budget.reserve(60L);
+
+        try {
+            budget.reserve(50L);
+            fail("Expected ByteBudgetExceededException");
+        } catch (ByteBudgetExceededException e) {
+            assertEquals(50L, e.getRequestedBytes());
+        }
+        assertEquals(1L, budget.getRejected());
+        assertEquals(60L, budget.getReservedBytes());
+    }
+
+    @Test
+    public void grantsOversizedReservationWhenIdle() throws Exception {
+        final ByteBudget budget = new ByteBudget(100L, false);
+        final ByteBudget.Reservation reservation = budget.reserve(500L);
+
+        assertEquals(500L, budget.getReservedBytes());
+        reservation.close();
+        assertEquals(0L, budget.getReservedBytes());
+    }
+
+    @Test
+    public void blocksUntilBytesAreReleased() throws Exception {
+        final ByteBudget budget = new ByteBudget(100L, true);
+        final ByteBudget.Reservation first = budget.reserve(80L);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<ByteBudget.Reservation> waiting = executor.submit(() -> budget.reserve(50L));
+            try {
+                waiting.get(100L, TimeUnit.MILLISECONDS);
+                fail("Expected reservation to wait");
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+            first.close();
+            assertEquals(50L, waiting.get(1L, TimeUnit.SECONDS).getBytes());
+            assertEquals(1L, budget.getWaits());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void blockingReservationTimesOut() throws Exception {
+        final ByteBudget budget = new ByteBudget(100L, true);
+        budget.reserve(80L);
+
+        assertNull(budget.reserve(50L, 10L, TimeUnit.MILLISECONDS));
+        assertEquals(80L, budget.getReservedBytes());
+    }
+}
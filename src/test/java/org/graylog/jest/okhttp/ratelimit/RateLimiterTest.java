@@ -0,0 +1,167 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import io.searchbox.action.Action;
+import io.searchbox.core.Bulk;
+import io.searchbox.core.Search;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RateLimiterTest {
+    private static final String SERVER = "http://localhost:9200";
+    private static final String OTHER_SERVER = "http://localhost:9201";
+
+    private static void assertRejected(RateLimiter limiter, Class<?> actionType, String server) throws Exception {
+        try {
+            limiter.acquire(actionType, server);
+            fail("Expected RateLimitExceededException");
+        } catch (RateLimitExceededException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void unlimitedWithoutLimits() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(Bulk.class, SERVER);
+        }
+        assertEquals(0L, limiter.getRejected());
+    }
+
+    @Test
+    public void nonBlockingRejectsBeyondBurst() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        limiter.setLimit(Bulk.class, 0.001d, 2.0d);
+
+        limiter.acquire(Bulk.class, SERVER);
+        limiter.acquire(Bulk.class, OTHER_SERVER);
+        try {
+            limiter.acquire(Bulk.class, SERVER);
+            fail("Expected RateLimitExceededException");
+        } catch (RateLimitExceededException e) {
+            assertEquals(Bulk.class, e.getActionType());
+            assertNull(e.getServer());
+        }
+        limiter.acquire(Search.class, SERVER);
+        assertEquals(1L, limiter.getRejected());
+    }
+
+    @Test
+    public void serverLimitsOnlyApplyToTheirServer() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        limiter.setLimit(Bulk.class, SERVER, 0.001d, 1.0d);
+
+        limiter.acquire(Bulk.class, SERVER);
+        assertRejected(limiter, Bulk.class, SERVER);
+        limiter.acquire(Bulk.class, OTHER_SERVER);
+        limiter.acquire(Bulk.class, OTHER_SERVER);
+    }
+
+    @Test
+    public void matchesFirstAssignableType() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        limiter.setLimit(Search.class, 1000.0d, 1000.0d);
+        limiter.setLimit(Action.class, 0.001d, 1.0d);
+
+        limiter.acquire(Bulk.class, SERVER);
+        assertRejected(limiter, Bulk.class, SERVER);
+        limiter.acquire(Search.class, SERVER);
+        limiter.acquire(Search.class, SERVER);
+    }
+
+    @Test
+    public void limitsCanBeChangedAndRemovedAtRuntime() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        limiter.setLimit(Bulk.class, 0.001d, 1.0d);
+        limiter.acquire(Bulk.class, SERVER);
+        assertRejected(limiter, Bulk.class, SERVER);
+
+        limiter.setLimit(Bulk.class, 1000.0d, 1.0d);
+        Thread.sleep(5L);
+        limiter.acquire(Bulk.class, SERVER);
+
+        final List<RateLimit> limits = limiter.getLimits();
+        assertEquals(1, limits.size());
+        assertEquals(1000.0d, limits.get(0).getPermitsPerSecond(), 0.0001d);
+
+        limiter.removeLimits(Bulk.class);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(Bulk.class, SERVER);
+        }
+        assertTrue(limiter.getLimits().isEmpty());
+    }
+
+    @Test
+    public void blockingWaitsForTokens() throws Exception {
+        final RateLimiter limiter = new RateLimiter();
+        limiter.setLimit(Bulk.class, 20.0d, 1.0d);
+
+        final long start = System.nanoTime();
+        limiter.acquire(Bulk.class, SERVER);
+        limiter.acquire(Bulk.class, SERVER);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40L));
+        assertEquals(1L, limiter.getDelayed());
+        assertEquals(0L, limiter.getRejected());
+    }
+
+    @Test
+    public void serverRejectionKeepsTypeWideToken() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        limiter.setLimit(Bulk.class, 0.001d, 2.0d);
+        limiter.setLimit(Bulk.class, SERVER, 0.001d, 1.0d);
+
+        limiter.acquire(Bulk.class, SERVER);
+        assertRejected(limiter, Bulk.class, SERVER);
+        // the rejected call didn't use up the second token of the type-wide limit
+        limiter.acquire(Bulk.class, OTHER_SERVER);
+        assertRejected(limiter, Bulk.class, OTHER_SERVER);
+    }
+
+    @Test
+    public void blockingGivesUpAtDeadline() throws Exception {
+        final RateLimiter limiter = new RateLimiter();
+        limiter.setLimit(Bulk.class, 0.001d, 1.0d);
+
+        assertTrue(limiter.acquire(Bulk.class, SERVER, 10L, TimeUnit.MILLISECONDS));
+        final long start = System.nanoTime();
+        assertFalse(limiter.acquire(Bulk.class, SERVER, 10L, TimeUnit.MILLISECONDS));
+        // the token wouldn't be available in time, so there's no point in waiting
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1L));
+    }
+
+    @Test
+    public void blockingServerTimeoutKeepsTypeWideToken() throws Exception {
+        final RateLimiter limiter = new RateLimiter();
+        limiter.setLimit(Bulk.class, 0.001d, 2.0d);
+        limiter.setLimit(Bulk.class, SERVER, 0.001d, 1.0d);
+
+        assertTrue(limiter.acquire(Bulk.class, SERVER, 10L, TimeUnit.MILLISECONDS));
+        assertFalse(limiter.acquire(Bulk.class, SERVER, 10L, TimeUnit.MILLISECONDS));
+        assertTrue(limiter.acquire(Bulk.class, OTHER_SERVER, 10L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void combinedActionsTakeOneTokenEach() throws Exception {
+        final RateLimiter limiter = new RateLimiter(RateLimiter.Mode.NON_BLOCKING);
+        limiter.setLimit(Search.class, 0.001d, 3.0d);
+
+        assertTrue(limiter.acquire(Search.class, SERVER, 2, 0L, TimeUnit.MILLISECONDS));
+        try {
+            limiter.acquire(Search.class, SERVER, 2, 0L, TimeUnit.MILLISECONDS);
+            fail("Expected RateLimitExceededException");
+        } catch (RateLimitExceededException e) {
+            assertEquals(Search.class, e.getActionType());
+        }
+        limiter.acquire(Search.class, SERVER);
+        assertRejected(limiter, Search.class, SERVER);
+    }
+}
@@ -0,0 +1,121 @@
+package org.graylog.jest.okhttp.ratelimit;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+    private static class ManualTicker extends Ticker {
+        private long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long time, TimeUnit unit) {
+            nanos += unit.toNanos(time);
+        }
+    }
+
+    private final ManualTicker ticker = new ManualTicker();
+
+    @Test
+    public void allowsBurstUpToCapacity() {
+        final TokenBucket bucket = new TokenBucket(1.0d, 3.0d, ticker);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire(2));
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void letsRequestsLargerThanCapacityThroughWhenFull() {
+        final TokenBucket bucket = new TokenBucket(1.0d, 2.0d, ticker);
+
+        assertTrue(bucket.tryAcquire(5));
+        assertFalse(bucket.tryAcquire());
+
+        ticker.advance(4L, TimeUnit.SECONDS);
+        assertFalse(bucket.tryAcquire(5));
+        ticker.advance(1L, TimeUnit.SECONDS);
+        assertTrue(bucket.tryAcquire(5));
+    }
+
+    @Test
+    public void refillsAtRate() {
+        final TokenBucket bucket = new TokenBucket(10.0d, 1.0d, ticker);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        ticker.advance(50L, TimeUnit.MILLISECONDS);
+        assertFalse(bucket.tryAcquire());
+
+        ticker.advance(50L, TimeUnit.MILLISECONDS);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void refillIsCappedAtCapacity() {
+        final TokenBucket bucket = new TokenBucket(100.0d, 2.0d, ticker);
+        ticker.advance(1L, TimeUnit.MINUTES);
+
+        assertEquals(2.0d, bucket.getAvailableTokens(), 0.0001d);
+    }
+
+    @Test
+    public void setRateKeepsTokensWithinNewCapacity() {
+        final TokenBucket bucket = new TokenBucket(1.0d, 10.0d, ticker);
+        bucket.setRate(5.0d, 2.0d);
+
+        assertEquals(2.0d, bucket.getAvailableTokens(), 0.0001d);
+        assertEquals(5.0d, bucket.getPermitsPerSecond(), 0.0001d);
+        assertTrue(bucket.tryAcquire(2));
+
+        ticker.advance(200L, TimeUnit.MILLISECONDS);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    public void acquireWaitsForTokens() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(50.0d, 1.0d);
+        assertTrue(bucket.tryAcquire());
+
+        final long start = System.nanoTime();
+        bucket.acquire(1);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15L));
+    }
+
+    @Test
+    public void acquireGivesUpIfTokensWontBeAvailableInTime() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(1.0d, 1.0d, ticker);
+        assertTrue(bucket.tryAcquire());
+
+        assertEquals(-1L, bucket.acquire(1, 500L, TimeUnit.MILLISECONDS));
+
+        ticker.advance(1L, TimeUnit.SECONDS);
+        assertEquals(0L, bucket.acquire(1, 500L, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void releaseGivesBackTokensUpToCapacity() {
+        final TokenBucket bucket = new TokenBucket(1.0d, 2.0d, ticker);
+        assertTrue(bucket.tryAcquire(2));
+
+        bucket.release(1);
+        assertEquals(1.0d, bucket.getAvailableTokens(), 0.0001d);
+        bucket.release(5);
+        assertEquals(2.0d, bucket.getAvailableTokens(), 0.0001d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveRate() {
+        new TokenBucket(0.0d, 1.0d);
+    }
+}
@@ -0,0 +1,88 @@
+package org.graylog.jest.okhttp.scroll;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.searchbox.action.Action;
+import io.searchbox.client.JestClient;
+import io.searchbox.client.JestResult;
+import io.searchbox.client.JestResultHandler;
+import io.searchbox.core.ClearScroll;
+import io.searchbox.core.Search;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SlicedScrollExporterTest {
+    private final Gson gson = new Gson();
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void exportsAllSlicesAndClearsScrolls() throws IOException {
+        final JestClient client = mock(JestClient.class);
+        doAnswer(invocation -> {
+            final Action<?> action = (Action<?>) invocation.getArguments()[0];
+            final JestResultHandler<JestResult> handler = (JestResultHandler<JestResult>) invocation.getArguments()[1];
+            if (action instanceof Search) {
+                final String slice = action.getData(gson).contains("\"id\":0") ? "0" : "1";
+                handler.completed(result("{\"_scroll_id\":\"scroll-" + slice + "\",\"hits\":{\"hits\":[" +
+                        "{\"_id\":\"" + slice + "-a\"},{\"_id\":\"" + slice + "-b\"}]}}"));
+            } else {
+                handler.completed(result("{\"_scroll_id\":\"scroll-done\",\"hits\":{\"hits\":[]}}"));
+            }
+            return null;
+        }).when(client).executeAsync(any(Action.class), any(JestResultHandler.class));
+        when(client.execute(any(ClearScroll.class))).thenReturn(result("{}"));
+
+        final SlicedScrollExporter exporter = new SlicedScrollExporter.Builder(client, "{\"query\":{\"match_all\":{}}}")
+                .addIndex("test")
+                .slices(2)
+                .queueCapacity(1)
+                .build();
+
+        final List<String> ids = new ArrayList<>();
+        final List<SliceProgress> progress = exporter.export(hit -> ids.add(hit.get("_id").getAsString()));
+
+        final Set<String> expected = new HashSet<>();
+        expected.add("0-a");
+        expected.add("0-b");
+        expected.add("1-a");
+        expected.add("1-b");
+        assertEquals(expected, new HashSet<>(ids));
+        assertEquals(4, ids.size());
+
+        assertEquals(2, progress.size());
+        for (SliceProgress sliceProgress : progress) {
+            assertTrue(sliceProgress.isFinished());
+            assertEquals(2L, sliceProgress.getHits());
+        }
+
+        final ArgumentCaptor<ClearScroll> clearScroll = ArgumentCaptor.forClass(ClearScroll.class);
+        verify(client).execute(clearScroll.capture());
+        final String clearScrollRequest = clearScroll.getValue().getURI() + " " + clearScroll.getValue().getData(gson);
+        assertTrue(clearScrollRequest.contains("scroll-done"));
+    }
+
+    private JestResult result(String json) {
+        final JsonObject jsonObject = new JsonParser().parse(json).getAsJsonObject();
+        final JestResult result = new JestResult(gson);
+        result.setJsonObject(jsonObject);
+        result.setJsonString(json);
+        result.setResponseCode(200);
+        result.setSucceeded(true);
+        return result;
+    }
+}
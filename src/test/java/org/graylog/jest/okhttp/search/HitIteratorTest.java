@@ -0,0 +1,85 @@
+package org.graylog.jest.okhttp.search;
+
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class HitIteratorTest {
+    private static final String RESPONSE = "{\"took\":1,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}," +
+            "\"hits\":{\"total\":2,\"max_score\":null,\"hits\":[" +
+            "{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"1\",\"_score\":null,\"_source\":{\"name\":\"first\",\"count\":1},\"sort\":[1]}," +
+            "{\"_index\":\"test\",\"_type\":\"doc\",\"_id\":\"2\",\"_score\":1.5,\"_source\":{\"name\":\"second\",\"count\":2}}" +
+            "]},\"aggregations\":{\"names\":{\"buckets\":[]}}}";
+
+    private final Gson gson = new Gson();
+    private final AtomicInteger closed = new AtomicInteger();
+
+    @Test
+    public void bindsSourcesWhileReading() throws IOException {
+        final HitIterator<Document> hits = iterator(RESPONSE);
+
+        assertEquals(2L, hits.getTotal());
+        final StreamedHit<Document> first = hits.next();
+        assertEquals("test", first.getIndex());
+        assertEquals("doc", first.getType());
+        assertEquals("1", first.getId());
+        assertNull(first.getScore());
+        assertEquals("first", first.getSource().name);
+        assertEquals(1, first.getSource().count);
+
+        final StreamedHit<Document> second = hits.next();
+        assertEquals(Double.valueOf(1.5d), second.getScore());
+        assertEquals("second", second.getSource().name);
+
+        assertEquals(0, closed.get());
+        assertFalse(hits.hasNext());
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void readsTotalObject() throws IOException {
+        final HitIterator<Document> hits = iterator("{\"hits\":{\"total\":{\"value\":10,\"relation\":\"eq\"},\"hits\":[]}}");
+
+        assertEquals(10L, hits.getTotal());
+        assertFalse(hits.hasNext());
+    }
+
+    @Test
+    public void handlesResponsesWithoutHits() throws IOException {
+        final HitIterator<Document> hits = iterator("{\"count\":3}");
+
+        assertEquals(-1L, hits.getTotal());
+        assertFalse(hits.hasNext());
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void streamClosesIterator() throws IOException {
+        final List<String> names;
+        try (HitIterator<Document> hits = iterator(RESPONSE)) {
+            names = hits.stream().limit(1).map(hit -> hit.getSource().name).collect(Collectors.toList());
+        }
+
+        assertEquals(1, names.size());
+        assertEquals("first", names.get(0));
+        assertEquals(1, closed.get());
+    }
+
+    private HitIterator<Document> iterator(String response) throws IOException {
+        return new HitIterator<>(gson.getAdapter(Document.class), new StringReader(response), closed::incrementAndGet);
+    }
+
+    private static class Document {
+        private String name;
+        private int count;
+    }
+}
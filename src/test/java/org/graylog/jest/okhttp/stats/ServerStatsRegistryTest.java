@@ -0,0 +1,91 @@
+package org.graylog.jest.okhttp.stats;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServerStatsRegistryTest {
+    private static final String SERVER_1 = "http://node1:9200";
+    private static final String SERVER_2 = "http://node2:9200";
+
+    private ServerStatsRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new ServerStatsRegistry();
+        registry.setServers(ImmutableSet.of(SERVER_1, SERVER_2));
+    }
+
+    @Test
+    public void countsRequests() {
+        final long first = registry.requestStarted(SERVER_1);
+        final long second = registry.requestStarted(SERVER_1);
+        registry.requestStarted(SERVER_1);
+
+        registry.requestCompleted(SERVER_1, first, false);
+        registry.requestCompleted(SERVER_1, second, true);
+
+        final ServerStats.Snapshot snapshot = registry.snapshot().get(SERVER_1);
+        assertEquals(1L, snapshot.getInFlight());
+        assertEquals(1L, snapshot.getSuccesses());
+        assertEquals(1L, snapshot.getFailures());
+    }
+
+    @Test
+    public void tracksLatencyMovingAverage() {
+        final ServerStats stats = registry.get(SERVER_1);
+        assertEquals(-1.0d, stats.getLatencyEwma(TimeUnit.MILLISECONDS), 0.0d);
+
+        stats.requestStarted();
+        stats.requestCompleted(TimeUnit.MILLISECONDS.toNanos(10L), false);
+        assertEquals(10.0d, stats.getLatencyEwma(TimeUnit.MILLISECONDS), 0.001d);
+
+        stats.requestStarted();
+        stats.requestCompleted(TimeUnit.MILLISECONDS.toNanos(20L), false);
+        assertEquals(10.0d + ServerStats.LATENCY_ALPHA * 10.0d, stats.getLatencyEwma(TimeUnit.MILLISECONDS), 0.001d);
+    }
+
+    @Test
+    public void failingUntilNextSuccess() {
+        final ServerStats stats = registry.get(SERVER_1);
+        final long cooldown = TimeUnit.MINUTES.toNanos(1L);
+
+        registry.requestCompleted(SERVER_1, registry.requestStarted(SERVER_1), true);
+        assertTrue(stats.isFailing(System.nanoTime(), cooldown));
+        assertFalse(stats.isFailing(System.nanoTime() + cooldown, cooldown));
+
+        registry.requestCompleted(SERVER_1, registry.requestStarted(SERVER_1), false);
+        assertFalse(stats.isFailing(System.nanoTime(), cooldown));
+    }
+
+    @Test
+    public void setServersRetainsExistingStats() {
+        final ServerStats stats = registry.get(SERVER_1);
+        registry.requestStarted(SERVER_1);
+
+        registry.setServers(ImmutableSet.of(SERVER_1));
+
+        assertSame(stats, registry.get(SERVER_1));
+        assertNull(registry.get(SERVER_2));
+        assertEquals(1L, registry.get(SERVER_1).getInFlight());
+    }
+
+    @Test
+    public void tracksUnknownServers() {
+        registry.requestStarted("http://other:9200");
+
+        final Map<String, ServerStats.Snapshot> snapshot = registry.snapshot();
+        assertNotNull(snapshot.get("http://other:9200"));
+        assertEquals(3, snapshot.size());
+    }
+}
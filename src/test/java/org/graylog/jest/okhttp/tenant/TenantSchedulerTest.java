@@ -0,0 +1,227 @@
+package org.graylog.jest.okhttp.tenant;
+
+import com.google.common.base.Ticker;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TenantSchedulerTest {
+    @Test
+    public void admitsImmediatelyWithinBudget() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(2).build();
+        final List<String> admitted = new ArrayList<>();
+
+        scheduler.submit("a", () -> admitted.add("a"));
+        scheduler.submit("b", () -> admitted.add("b"));
+        scheduler.submit("a", () -> admitted.add("a2"));
+
+        assertEquals(2, admitted.size());
+        assertEquals(2, scheduler.getInFlight());
+        assertEquals(1, scheduler.getQueued("a"));
+
+        scheduler.release("b");
+        assertEquals(3, admitted.size());
+        assertEquals("a2", admitted.get(2));
+        assertEquals(2, scheduler.getStats("a").getAdmitted());
+    }
+
+    @Test
+    public void sharesSlotsFairlyBetweenBackloggedTenants() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(1).build();
+        final List<String> admitted = new ArrayList<>();
+        scheduler.submit("blocker", () -> admitted.add("blocker"));
+
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit("heavy", () -> admitted.add("heavy"));
+        }
+        scheduler.submit("light", () -> admitted.add("light"));
+
+        scheduler.release("blocker");
+        scheduler.release("heavy");
+
+        // the single call of the light tenant doesn't wait for the backlog of the heavy tenant
+        assertEquals("light", admitted.get(2));
+    }
+
+    @Test
+    public void admitsInProportionToWeights() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(1)
+                .weight("gold", 3.0d)
+                .build();
+        final List<String> admitted = new ArrayList<>();
+        scheduler.submit("blocker", () -> admitted.add("blocker"));
+        for (int i = 0; i < 8; i++) {
+            scheduler.submit("gold", () -> admitted.add("gold"));
+            scheduler.submit("bronze", () -> admitted.add("bronze"));
+        }
+
+        String current = "blocker";
+        for (int i = 0; i < 8; i++) {
+            scheduler.release(current);
+            current = admitted.get(admitted.size() - 1);
+        }
+
+        final List<String> firstEight = admitted.subList(1, 9);
+        assertEquals(6, firstEight.stream().filter("gold"::equals).count());
+        assertEquals(2, firstEight.stream().filter("bronze"::equals).count());
+    }
+
+    @Test
+    public void limitsInFlightPerTenant() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(10)
+                .maxInFlightPerTenant(1)
+                .build();
+        final List<String> admitted = new ArrayList<>();
+
+        scheduler.submit("a", () -> admitted.add("a"));
+        scheduler.submit("a", () -> admitted.add("a"));
+        scheduler.submit("b", () -> admitted.add("b"));
+
+        assertEquals(2, admitted.size());
+        assertEquals(1, scheduler.getQueued("a"));
+
+        scheduler.release("a");
+        assertEquals(3, admitted.size());
+    }
+
+    @Test
+    public void rejectsCallsBeyondQueueLimit() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(1)
+                .maxQueuedPerTenant(1)
+                .build();
+        scheduler.submit("a", () -> {
+        });
+        scheduler.submit("a", () -> {
+        });
+
+        try {
+            scheduler.submit("a", () -> {
+            });
+            fail("Expected TenantQuotaExceededException");
+        } catch (TenantQuotaExceededException e) {
+            assertEquals("a", e.getTenant());
+        }
+        assertEquals(1L, scheduler.getStats("a").getRejected());
+    }
+
+    @Test
+    public void rejectsCallsBeyondRateLimit() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(10)
+                .defaultRateLimit(0.001d)
+                .rateLimit("unlimited", 0.0d)
+                .build();
+        scheduler.submit("a", () -> {
+        });
+
+        try {
+            scheduler.submit("a", () -> {
+            });
+            fail("Expected TenantQuotaExceededException");
+        } catch (TenantQuotaExceededException e) {
+            assertEquals("a", e.getTenant());
+        }
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("unlimited", () -> {
+            });
+        }
+        assertEquals(5L, scheduler.getStats("unlimited").getAdmitted());
+    }
+
+    @Test
+    public void callsWithoutTenantBelongToDefaultTenant() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(1).build();
+        scheduler.acquire(null);
+
+        assertNotNull(scheduler.getStats(TenantScheduler.DEFAULT_TENANT));
+        scheduler.release(TenantScheduler.DEFAULT_TENANT);
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void acquireBlocksUntilReleaseAndRecordsWait() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(1).build();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            scheduler.acquire("a");
+            final Future<?> waiting = executor.submit(() -> {
+                scheduler.acquire("b");
+                return null;
+            });
+            try {
+                waiting.get(100L, TimeUnit.MILLISECONDS);
+                fail("Expected call to wait for a slot");
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+            scheduler.release("a");
+            waiting.get(1L, TimeUnit.SECONDS);
+            assertTrue(scheduler.getStats("b").getMaxWait(TimeUnit.MILLISECONDS) >= 100L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void acquireGivesUpAfterTimeout() throws Exception {
+        final TenantScheduler scheduler = TenantScheduler.builder(1).build();
+        scheduler.acquire("a");
+
+        assertFalse(scheduler.acquire("b", 10L, TimeUnit.MILLISECONDS));
+        assertEquals(0, scheduler.getQueued("b"));
+
+        scheduler.release("a");
+        assertEquals(0, scheduler.getInFlight());
+    }
+
+    @Test
+    public void evictsIdleTenantsWithoutCallsInFlightOrQueued() throws Exception {
+        final ManualTicker ticker = new ManualTicker();
+        final TenantScheduler scheduler = TenantScheduler.builder(1)
+                .idleTimeout(1L, TimeUnit.MINUTES)
+                .ticker(ticker)
+                .build();
+        scheduler.submit("idle", () -> {
+        });
+        scheduler.release("idle");
+        scheduler.submit("busy", () -> {
+        });
+        scheduler.submit("busy", () -> {
+        });
+
+        ticker.advance(1L, TimeUnit.MINUTES);
+        scheduler.submit("new", () -> {
+        });
+
+        assertNull(scheduler.getStats("idle"));
+        assertNotNull(scheduler.getStats("busy"));
+        assertEquals(1, scheduler.getQueued("busy"));
+        assertEquals(1, scheduler.getQueued("new"));
+    }
+
+    private static class ManualTicker extends Ticker {
+        private long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long time, TimeUnit unit) {
+            nanos += unit.toNanos(time);
+        }
+    }
+}